@@ -0,0 +1,40 @@
+package com.example.vuelos.benchmarks;
+
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.PersistenciaVuelos;
+import com.example.vuelos.repositories.VueloRepository;
+
+import java.time.LocalDate;
+
+// Genera catalogos de prueba para los benchmarks.
+// Los valores se reparten de forma uniforme: 8 empresas, 10 ciudades y 365 dias,
+// asi cada filtro deja pasar una fraccion conocida del catalogo (1/8, 1/10 y 1/365).
+final class Catalogo {
+
+    static final String[] EMPRESAS = {"Iberia", "Vueling", "Ryanair", "Turkish", "Air France", "Lufthansa", "Emirates", "Air Europa"};
+    static final String[] CIUDADES = {"Madrid", "Paris", "Rome", "London", "Berlin", "Lisbon", "New York", "Istanbul", "Dubai", "Buenos Aires"};
+    static final LocalDate PRIMER_DIA = LocalDate.of(2025, 1, 1);
+
+    private Catalogo() {
+    }
+
+    // Repositorio con el seed mas "tamano" vuelos generados
+    static VueloRepository repositorio(int tamano, String almacen) {
+        VueloRepository repository = new VueloRepository(PersistenciaVuelos.desactivada(), almacen);
+        for (int i = 0; i < tamano; i++) {
+            repository.save(vuelo(i, "BENCH-" + i));
+        }
+        return repository;
+    }
+
+    static Vuelo vuelo(int i, String nombre) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa(EMPRESAS[i % EMPRESAS.length])
+                .lugarSalida(CIUDADES[i % CIUDADES.length])
+                .lugarLlegada(CIUDADES[(i * 7 + 3) % CIUDADES.length])
+                .fechaSalida(PRIMER_DIA.plusDays(i % 365))
+                .fechaLlegada(PRIMER_DIA.plusDays(i % 365 + 1))
+                .build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.vuelos.benchmarks;
+
+import com.example.vuelos.models.Itinerario;
+import com.example.vuelos.repositories.VueloRepository;
+import com.example.vuelos.services.ItinerarioService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ItinerarioService.buscar con distintos tamaños de catalogo.
+// En el Catalogo cada ciudad solo vuela a otra, asi que Madrid -> Berlin necesita una escala (por London)
+// y cada dia hay tamano / 3650 salidas desde cada ciudad.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItinerarioBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int tamano;
+
+    @Param({"1", "3"})
+    public int maxEscalas;
+
+    private ItinerarioService service;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        VueloRepository repository = Catalogo.repositorio(tamano, "mapa");
+        service = new ItinerarioService(repository);
+    }
+
+    @Benchmark
+    public List<Itinerario> buscar() {
+        return service.buscar("Madrid", "Berlin", Catalogo.PRIMER_DIA, maxEscalas, 7, 5);
+    }
+}
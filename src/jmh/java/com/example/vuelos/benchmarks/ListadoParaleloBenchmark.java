@@ -0,0 +1,59 @@
+package com.example.vuelos.benchmarks;
+
+import com.example.vuelos.metricas.MetricasVuelos;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import com.example.vuelos.services.ConsultasParalelas;
+import com.example.vuelos.services.VueloService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// VueloService.listar en secuencial y en paralelo (ConsultasParalelas) con distintos tamaños de catalogo,
+// para ver a partir de cuantos candidatos compensa el paralelo (y ajustar vuelos.paralelo.umbral).
+// - ninguno: recorre la vista ordenada entera
+// - empresa: ordena 1/8 del catalogo (los candidatos del indice) por lugarLlegada
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListadoParaleloBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int tamano;
+
+    @Param({"secuencial", "paralelo"})
+    public String modo;
+
+    @Param({"ninguno", "empresa"})
+    public String filtro;
+
+    private VueloService service;
+    private ConsultasParalelas paralelas;
+    private FiltroVuelos filtroVuelos;
+    private String ordenarPor;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        VueloRepository repository = Catalogo.repositorio(tamano, "mapa");
+        paralelas = modo.equals("paralelo") ? new ConsultasParalelas(0, 0) : ConsultasParalelas.secuenciales();
+        service = new VueloService(repository, MetricasVuelos.desactivadas(repository), paralelas);
+        boolean empresa = filtro.equals("empresa");
+        filtroVuelos = FiltroVuelos.de(empresa ? "iberia" : null, null, null);
+        ordenarPor = empresa ? "lugarLlegada" : "fechaSalida";
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        paralelas.cerrar();
+    }
+
+    @Benchmark
+    public List<Vuelo> listar() {
+        return service.listar(filtroVuelos, ordenarPor);
+    }
+}
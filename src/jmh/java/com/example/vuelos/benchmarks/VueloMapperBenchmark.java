@@ -0,0 +1,54 @@
+package com.example.vuelos.benchmarks;
+
+import com.example.vuelos.dtos.VueloMapper;
+import com.example.vuelos.dtos.VueloResponseDTO;
+import com.example.vuelos.models.ApiResponse;
+import com.example.vuelos.models.Vuelo;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Coste de la capa de salida del listado: Vuelo -> DTO y DTOs -> JSON dentro del ApiResponse.
+// El JSON se escribe a un OutputStream que lo descarta, asi se mide la serializacion y no la copia a un byte[].
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VueloMapperBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int tamano;
+
+    private List<Vuelo> vuelos;
+    private ApiResponse<List<VueloResponseDTO>> respuesta;
+    private ObjectWriter escritor;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        vuelos = Catalogo.repositorio(tamano, "mapa").findAll();
+        respuesta = new ApiResponse<>(true, "Listado de vuelos", toDTOs());
+        escritor = JsonMapper.builder().build().writer();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public VueloResponseDTO toDTO() {
+        return VueloMapper.toDTO(vuelos.get(0));
+    }
+
+    @Benchmark
+    public List<VueloResponseDTO> toDTOs() {
+        return vuelos.stream().map(VueloMapper::toDTO).toList();
+    }
+
+    @Benchmark
+    public void serializarApiResponse() {
+        escritor.writeValue(OutputStream.nullOutputStream(), respuesta);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.vuelos.benchmarks;
+
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Operaciones basicas del repositorio con distintos tamaños de catalogo y los dos almacenes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VueloRepositoryBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int tamano;
+
+    @Param({"mapa", "columnar"})
+    public String almacen;
+
+    private VueloRepository repository;
+    private int siguiente;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        repository = Catalogo.repositorio(tamano, almacen);
+        siguiente = tamano;
+    }
+
+    // Cada llamada da de alta un vuelo nuevo y lo vuelve a eliminar, asi el catalogo se queda en "tamano" vuelos
+    // durante toda la medicion (sin eliminarlo creceria millones de vuelos y daria igual el tamano).
+    // El tiempo medido es el de save mas delete.
+    @Benchmark
+    public Vuelo save() {
+        int i = siguiente++;
+        Vuelo guardado = repository.save(Catalogo.vuelo(i, "SAVE-" + i));
+        repository.delete(guardado.getId());
+        return guardado;
+    }
+
+    @Benchmark
+    public Optional<Vuelo> findById() {
+        return repository.findById(1 + ThreadLocalRandom.current().nextInt(tamano + 10));
+    }
+
+    @Benchmark
+    public boolean existsNombreVuelo() {
+        return repository.existsNombreVuelo("BENCH-" + ThreadLocalRandom.current().nextInt(Math.max(tamano, 1)), null);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Vuelo> findAll() {
+        return repository.findAll();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.vuelos.benchmarks;
+
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.services.VueloService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// VueloService.listar con cada combinacion de filtros y de ordenarPor.
+// "filtro" indica que query params se envian (los valores siempre existen en el catalogo generado).
+// ruta = lugarSalida + lugarLlegada, rangoSalida = 30 dias de salida, enVueloEl = vuelos en el aire un dia.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VueloServiceBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int tamano;
+
+    @Param({"ninguno", "empresa", "lugarLlegada", "fechaSalida", "empresa+lugarLlegada", "todos",
+            "ruta", "rangoSalida", "enVueloEl"})
+    public String filtro;
+
+    @Param({"fechaSalida", "empresa", "lugarLlegada"})
+    public String ordenarPor;
+
+    private VueloService service;
+    private FiltroVuelos filtroVuelos;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        service = new VueloService(Catalogo.repositorio(tamano, "mapa"));
+        boolean todos = filtro.equals("todos");
+        boolean ruta = filtro.equals("ruta");
+        LocalDate dia = Catalogo.PRIMER_DIA.plusDays(40);
+        filtroVuelos = FiltroVuelos.de(
+                todos || filtro.contains("empresa") ? "iberia" : null,
+                ruta ? "Berlin" : null,
+                todos || ruta || filtro.contains("lugarLlegada") ? "Paris" : null,
+                todos || filtro.equals("fechaSalida") ? dia : null,
+                filtro.equals("rangoSalida") ? dia : null,
+                filtro.equals("rangoSalida") ? dia.plusDays(29) : null,
+                filtro.equals("enVueloEl") ? dia : null);
+    }
+
+    @Benchmark
+    public List<Vuelo> listar() {
+        return service.listar(filtroVuelos, ordenarPor);
+    }
+}
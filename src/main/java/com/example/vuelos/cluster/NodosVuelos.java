@@ -0,0 +1,167 @@
+package com.example.vuelos.cluster;
+
+import com.example.vuelos.exceptions.NodoNoDisponibleException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+// Cliente HTTP del router hacia los nodos del cluster (ver RouterVuelosController).
+// Los nodos son instancias normales de la APP, cada una con su vuelos.cluster.nodo, y se indican en orden
+// en "vuelos.cluster.nodos-url" (la primera URL es el nodo 0). El numero de URLs es el numero de nodos.
+// Las peticiones a varios nodos se mandan a la vez (cada una en su hilo virtual) y se espera a todas.
+// Si un nodo no responde se lanza un NodoNoDisponibleException (503): el router nunca devuelve un listado a medias.
+
+@Component
+@ConditionalOnProperty(name = "vuelos.cluster.rol", havingValue = "router")
+public class NodosVuelos {
+
+    private final List<String> urls;
+    private final Duration timeout;
+    private final HttpClient http;
+
+    public NodosVuelos(@Value("${vuelos.cluster.nodos-url}") List<String> urls,
+                       @Value("${vuelos.cluster.timeout-ms:10000}") long timeoutMs) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("vuelos.cluster.nodos-url no tiene ningun nodo");
+        }
+        this.urls = urls.stream()
+                .map(String::trim)
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .toList();
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    // Respuesta de un nodo, con el cuerpo ya leido
+    public record Respuesta(int nodo, int status, HttpHeaders cabeceras, byte[] cuerpo) {
+
+        public Optional<String> cabecera(String nombre) {
+            return cabeceras.firstValue(nombre);
+        }
+
+        public boolean correcta() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    public int nodos() {
+        return urls.size();
+    }
+
+    public int nodoDeNombre(String nombreVuelo) {
+        return ParticionVuelos.nodoDeNombre(nombreVuelo, urls.size());
+    }
+
+    public int nodoDeId(int id) {
+        return ParticionVuelos.nodoDeId(id, urls.size());
+    }
+
+    // Manda una peticion a un nodo. "cabeceras" son pares nombre, valor (los valores null no se mandan).
+    public Respuesta enviar(int nodo, String metodo, String ruta, byte[] cuerpo, String... cabeceras) {
+        return esperar(enviarAsync(nodo, metodo, ruta, cuerpo, cabeceras));
+    }
+
+    public Respuesta get(int nodo, String ruta, String... cabeceras) {
+        return enviar(nodo, "GET", ruta, null, cabeceras);
+    }
+
+    // GET a todos los nodos a la vez. Devuelve una respuesta por nodo, en orden de nodo.
+    public List<Respuesta> todos(String ruta) {
+        List<CompletableFuture<Respuesta>> pendientes = IntStream.range(0, urls.size())
+                .mapToObj(nodo -> enviarAsync(nodo, "GET", ruta, null))
+                .toList();
+        return pendientes.stream().map(NodosVuelos::esperar).toList();
+    }
+
+    // Igual que enviar pero sin esperar la respuesta (para mandar a varios nodos a la vez)
+    public CompletableFuture<Respuesta> enviarAsync(int nodo, String metodo, String ruta, byte[] cuerpo, String... cabeceras) {
+        HttpRequest peticion = peticion(nodo, ruta, cabeceras)
+                .timeout(timeout)
+                .method(metodo, cuerpo == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(cuerpo))
+                .build();
+        return http.sendAsync(peticion, HttpResponse.BodyHandlers.ofByteArray())
+                .handle((r, e) -> {
+                    if (e != null) {
+                        throw noDisponible(nodo, e);
+                    }
+                    return new Respuesta(nodo, r.statusCode(), r.headers(), r.body());
+                });
+    }
+
+    // GET a todos los nodos sin leer el cuerpo: se lee despues como un InputStream (para el export).
+    // Sin timeout de lectura, el export dura lo que tarde el cliente en leerlo.
+    public List<HttpResponse<InputStream>> abrirTodos(String ruta) {
+        List<CompletableFuture<HttpResponse<InputStream>>> pendientes = IntStream.range(0, urls.size())
+                .mapToObj(nodo -> http.sendAsync(peticion(nodo, ruta).GET().build(), HttpResponse.BodyHandlers.ofInputStream())
+                        .handle((r, e) -> {
+                            if (e != null) {
+                                throw noDisponible(nodo, e);
+                            }
+                            return r;
+                        }))
+                .toList();
+        try {
+            return pendientes.stream().map(NodosVuelos::esperar).toList();
+        } catch (NodoNoDisponibleException e) {
+            // Se cierran los que si han respondido
+            pendientes.forEach(p -> p.thenAccept(NodosVuelos::cerrar));
+            throw e;
+        }
+    }
+
+    public static void cerrar(HttpResponse<InputStream> respuesta) {
+        try {
+            respuesta.body().close();
+        } catch (IOException e) {
+            // La conexion ya estaba cerrada
+        }
+    }
+
+    private HttpRequest.Builder peticion(int nodo, String ruta, String... cabeceras) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(urls.get(nodo) + ruta));
+        for (int i = 0; i + 1 < cabeceras.length; i += 2) {
+            if (cabeceras[i + 1] != null) {
+                builder.header(cabeceras[i], cabeceras[i + 1]);
+            }
+        }
+        return builder;
+    }
+
+    private NodoNoDisponibleException noDisponible(int nodo, Throwable e) {
+        Throwable causa = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return new NodoNoDisponibleException("Nodo " + nodo + " no disponible (" + urls.get(nodo) + "): " + causa);
+    }
+
+    // Espera una peticion mandada con enviarAsync (si el nodo no responde lanza el NodoNoDisponibleException)
+    public static <T> T esperar(CompletableFuture<T> pendiente) {
+        try {
+            return pendiente.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) {
+                throw r;
+            }
+            throw e;
+        }
+    }
+}
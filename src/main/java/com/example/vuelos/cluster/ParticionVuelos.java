@@ -0,0 +1,81 @@
+package com.example.vuelos.cluster;
+
+import com.example.vuelos.utils.TextoUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Reparto de los vuelos entre los nodos de un cluster (ver RouterVuelosController).
+// Cada vuelo vive en el nodo que le toca por el hash de su nombreVuelo normalizado (la misma clave del indice unico),
+// asi dos nombres que solo cambian en MAYUS/MINUS van siempre al mismo nodo y el indice unico de ese nodo basta
+// para que el nombreVuelo sea unico en todo el cluster.
+// Las IDs tambien dicen en que nodo esta el vuelo: el nodo i (de n) solo genera las IDs i+1, i+1+n, i+1+2n...
+// asi el router sabe a que nodo mandar GET, PUT y DELETE /vuelos/{id} sin preguntar a nadie.
+// Con un solo nodo (por defecto) todo queda como siempre: IDs 1, 2, 3... y todos los nombres son del nodo.
+
+@Component
+public class ParticionVuelos {
+
+    // Numero de este nodo (de 0 a nodos - 1)
+    private final int nodo;
+    // Numero de nodos del cluster
+    private final int nodos;
+
+    public ParticionVuelos(@Value("${vuelos.cluster.nodo:0}") int nodo, @Value("${vuelos.cluster.nodos:1}") int nodos) {
+        if (nodos < 1 || nodo < 0 || nodo >= nodos) {
+            throw new IllegalArgumentException("vuelos.cluster.nodo tiene que estar entre 0 y vuelos.cluster.nodos - 1");
+        }
+        this.nodo = nodo;
+        this.nodos = nodos;
+    }
+
+    // Un solo nodo con todos los vuelos (sin cluster)
+    public static ParticionVuelos unica() {
+        return new ParticionVuelos(0, 1);
+    }
+
+    // Nodo al que le toca un nombreVuelo.
+    // El hashCode de String lo define Java, asi da lo mismo en el router y en todos los nodos.
+    // Se mezclan sus bits para que nombres seguidos ("V1", "V2"...) no vayan a nodos seguidos.
+    public static int nodoDeNombre(String nombreVuelo, int nodos) {
+        String clave = TextoUtils.normalizar(nombreVuelo);
+        if (clave == null) {
+            return 0;
+        }
+        int h = clave.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), nodos);
+    }
+
+    // Nodo que genera una ID
+    public static int nodoDeId(int id, int nodos) {
+        return Math.floorMod(id - 1, nodos);
+    }
+
+    // Posicion de una ID de este nodo en su secuencia (0, 1, 2...): las IDs del nodo van de n en n, la posicion no.
+    // Sirve para repartir por ID (cerrojos, filas) sin dejar huecos.
+    public int posicion(int id) {
+        return (id - 1) / nodos;
+    }
+
+    // Indica si el nombreVuelo le toca a este nodo
+    public boolean propio(String nombreVuelo) {
+        return nodoDeNombre(nombreVuelo, nodos) == nodo;
+    }
+
+    // Primera ID de este nodo
+    public int primerId() {
+        return nodo + 1;
+    }
+
+    // Primera ID de este nodo que no es menor que "id" (para seguir la secuencia tras recuperar vuelos)
+    public int alinear(int id) {
+        return id + Math.floorMod(nodo - (id - 1), nodos);
+    }
+
+    public int nodo() {
+        return nodo;
+    }
+
+    public int nodos() {
+        return nodos;
+    }
+}
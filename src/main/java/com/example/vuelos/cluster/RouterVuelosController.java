@@ -0,0 +1,527 @@
+package com.example.vuelos.cluster;
+
+import com.example.vuelos.cluster.NodosVuelos.Respuesta;
+import com.example.vuelos.dtos.EstadisticasResponseDTO;
+import com.example.vuelos.dtos.GrupoEstadisticasDTO;
+import com.example.vuelos.dtos.SugerenciaDTO;
+import com.example.vuelos.dtos.VueloLoteResultadoDTO;
+import com.example.vuelos.exceptions.BadRequestException;
+import com.example.vuelos.exceptions.ConflictException;
+import com.example.vuelos.exceptions.NodoNoDisponibleException;
+import com.example.vuelos.exceptions.PreconditionFailedException;
+import com.example.vuelos.models.ApiResponse;
+import com.example.vuelos.models.Cursor;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.services.VueloService;
+import com.example.vuelos.utils.CursorUtils;
+import com.example.vuelos.utils.TextoUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+// Router del cluster (perfil "router", ver application-router.properties).
+// Los vuelos se reparten entre varios nodos por el hash del nombreVuelo (ver ParticionVuelos) y cada nodo es la APP
+// de siempre con sus vuelos. El router expone la misma API en /vuelos y reparte cada peticion:
+// - Las de un solo vuelo van a su nodo: POST por el nombreVuelo del body, GET/PUT/DELETE /{id} por la ID.
+//   Como cada nombreVuelo solo puede estar en un nodo, el indice unico de ese nodo ya lo hace unico en todo el cluster.
+// - Los listados se piden a todos los nodos a la vez (scatter-gather) y se mezclan en el mismo orden que
+//   OrdenVuelo.comparador: cada nodo devuelve su parte ya ordenada, asi basta con una mezcla de k listas ordenadas.
+//   Los cursores de la paginacion (valor + ID) valen igual en todos los nodos, se manda el mismo a cada uno.
+// - Estadisticas, sugerencias, export y lotes se reparten o se juntan igual (ver cada endpoint).
+// - Itinerarios y el feed de cambios necesitan todos los vuelos a la vez y no estan disponibles en el router.
+// Los errores de los nodos (400, 404, 409, 412...) se devuelven tal cual, con el mismo ApiResponse.
+
+@RestController
+@RequestMapping("/vuelos")
+@ConditionalOnProperty(name = "vuelos.cluster.rol", havingValue = "router")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RouterVuelosController {
+
+    private static final Logger log = LoggerFactory.getLogger(RouterVuelosController.class);
+
+    private static final String JSON = MediaType.APPLICATION_JSON_VALUE;
+
+    private final NodosVuelos nodos;
+    private final JsonMapper jsonMapper;
+
+    public RouterVuelosController(NodosVuelos nodos, JsonMapper jsonMapper) {
+        this.nodos = nodos;
+        this.jsonMapper = jsonMapper;
+    }
+
+    // GET /vuelos
+    // Los filtros se reenvian tal cual a todos los nodos (cada uno los valida igual que sin cluster).
+    // Sin paginar se mezclan los listados completos. Paginado, cada nodo devuelve como mucho "limit" vuelos
+    // despues del cursor: se mezclan y se quedan los "limit" primeros. Hay pagina siguiente si sobra alguno
+    // o si algun nodo tiene mas, y su cursor es el del ultimo vuelo devuelto.
+    // El router no pone ETag en los listados (cada nodo tiene sus versiones).
+    @GetMapping
+    public ResponseEntity<?> listar(@RequestParam(required = false) String ordenarPor,
+                                    @RequestParam(required = false) Integer limit,
+                                    @RequestParam(required = false) String cursor,
+                                    HttpServletRequest request) {
+        List<Respuesta> respuestas = nodos.todos("/vuelos" + query(request));
+        Respuesta error = primerError(respuestas);
+        if (error != null) {
+            return reenviar(error);
+        }
+
+        // Los nodos ya han validado ordenarPor
+        OrdenVuelo orden = OrdenVuelo.de(ordenarPor);
+        List<JsonNode> raices = respuestas.stream().map(r -> leer(r.cuerpo())).toList();
+        List<List<JsonNode>> listas = raices.stream().map(RouterVuelosController::elementos).toList();
+
+        if (limit == null && cursor == null) {
+            return ResponseEntity.ok(new ApiResponse<>(true, "Listado de vuelos", mezclar(listas, orden, Integer.MAX_VALUE)));
+        }
+
+        int tamano = limit != null ? limit : VueloService.LIMIT_DEFECTO;
+        List<JsonNode> elementos = mezclar(listas, orden, tamano + 1);
+        boolean hayMas = elementos.size() > tamano
+                || raices.stream().anyMatch(r -> r.hasNonNull("siguienteCursor"));
+        if (elementos.size() > tamano) {
+            elementos = elementos.subList(0, tamano);
+        }
+        String siguienteCursor = hayMas && !elementos.isEmpty()
+                ? CursorUtils.codificar(Cursor.de(orden, vuelo(elementos.get(elementos.size() - 1))))
+                : null;
+        return ResponseEntity.ok(new ApiResponse<>(true, "Listado de vuelos", elementos, siguienteCursor));
+    }
+
+    // GET /vuelos/export
+    // Se abren los exports de todos los nodos y se copian uno detras de otro (cada linea es un vuelo completo).
+    // Si algun nodo responde con error se devuelve su error antes de empezar a escribir.
+    @GetMapping("/export")
+    public ResponseEntity<?> exportar(HttpServletRequest request) {
+        List<HttpResponse<InputStream>> exports = nodos.abrirTodos("/vuelos/export" + query(request));
+        for (HttpResponse<InputStream> export : exports) {
+            if (export.statusCode() != HttpStatus.OK.value()) {
+                try (InputStream cuerpo = export.body()) {
+                    ResponseEntity<?> error = ResponseEntity.status(export.statusCode())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(cuerpo.readAllBytes());
+                    exports.forEach(NodosVuelos::cerrar);
+                    return error;
+                } catch (IOException e) {
+                    exports.forEach(NodosVuelos::cerrar);
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        StreamingResponseBody body = out -> {
+            try {
+                for (HttpResponse<InputStream> export : exports) {
+                    try (InputStream cuerpo = export.body()) {
+                        cuerpo.transferTo(out);
+                    }
+                }
+            } finally {
+                exports.forEach(NodosVuelos::cerrar);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    // GET /vuelos/stats
+    // Se suman los vuelos de cada nodo y la duracion media se recalcula ponderada por el numero de vuelos.
+    // Los grupos se juntan por su valor normalizado (empresa o lugarLlegada sin MAYUS/MINUS, el dia) y se ordenan
+    // igual que en un nodo.
+    @GetMapping("/stats")
+    public ResponseEntity<?> estadisticas() {
+        List<Respuesta> respuestas = nodos.todos("/vuelos/stats");
+        Respuesta error = primerError(respuestas);
+        if (error != null) {
+            return reenviar(error);
+        }
+
+        Acumulado total = new Acumulado(null);
+        Map<String, Acumulado> porEmpresa = new HashMap<>();
+        Map<String, Acumulado> porLugarLlegada = new HashMap<>();
+        Map<String, Acumulado> porFechaSalida = new HashMap<>();
+        for (Respuesta r : respuestas) {
+            JsonNode data = leer(r.cuerpo()).path("data");
+            total.sumar(data.path("vuelos").asLong(), data.get("duracionMediaDias"));
+            sumarGrupos(porEmpresa, data.path("porEmpresa"));
+            sumarGrupos(porLugarLlegada, data.path("porLugarLlegada"));
+            sumarGrupos(porFechaSalida, data.path("porFechaSalida"));
+        }
+
+        EstadisticasResponseDTO dto = new EstadisticasResponseDTO(total.vuelos, total.media(),
+                grupos(porEmpresa, String.CASE_INSENSITIVE_ORDER),
+                grupos(porLugarLlegada, String.CASE_INSENSITIVE_ORDER),
+                grupos(porFechaSalida, Comparator.naturalOrder()));
+        return ResponseEntity.ok(new ApiResponse<>(true, "Estadisticas de vuelos", dto));
+    }
+
+    // GET /vuelos/suggest
+    // Cada nodo devuelve sus k valores con mas vuelos, se suman por valor y se quedan los k con mas vuelos.
+    // Es aproximado: un valor que no esta entre los k primeros de ningun nodo no aparece aunque en total tenga mas.
+    @GetMapping("/suggest")
+    public ResponseEntity<?> sugerir(@RequestParam(required = false) Integer k, HttpServletRequest request) {
+        List<Respuesta> respuestas = nodos.todos("/vuelos/suggest" + query(request));
+        Respuesta error = primerError(respuestas);
+        if (error != null) {
+            return reenviar(error);
+        }
+
+        Map<String, Acumulado> sugerencias = new HashMap<>();
+        for (Respuesta r : respuestas) {
+            for (JsonNode s : leer(r.cuerpo()).path("data")) {
+                sugerencias.computeIfAbsent(TextoUtils.plegar(s.path("valor").asString()),
+                                c -> new Acumulado(s.path("valor").asString()))
+                        .sumar(s.path("vuelos").asLong(), null);
+            }
+        }
+        List<SugerenciaDTO> data = sugerencias.values().stream()
+                .sorted(Comparator.comparingLong((Acumulado a) -> a.vuelos).reversed()
+                        .thenComparing(a -> a.valor, String.CASE_INSENSITIVE_ORDER))
+                .limit(k != null ? k : VueloService.SUGERENCIAS_DEFECTO)
+                .map(a -> new SugerenciaDTO(a.valor, a.vuelos))
+                .toList();
+        return ResponseEntity.ok(new ApiResponse<>(true, "Sugerencias", data));
+    }
+
+    // GET /vuelos/itinerarios y GET /vuelos/changes
+    // Un itinerario enlaza vuelos de varios nodos y el feed de cambios no tiene un orden comun entre nodos:
+    // en el cluster hay que pedirlos a cada nodo.
+    @GetMapping({"/itinerarios", "/changes"})
+    public ResponseEntity<ApiResponse<Void>> noDisponible(HttpServletRequest request) {
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                .body(new ApiResponse<>(false, "No disponible en el cluster: " + request.getRequestURI(), null));
+    }
+
+    // GET /vuelos/{id}
+    // Al nodo de la ID, con el If-None-Match del cliente (el ETag es el del nodo)
+    @GetMapping("/{id}")
+    public ResponseEntity<?> obtenerPorId(@PathVariable int id,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return reenviar(nodos.get(nodos.nodoDeId(id), "/vuelos/" + id, HttpHeaders.IF_NONE_MATCH, ifNoneMatch));
+    }
+
+    // POST /vuelos
+    // Al nodo del nombreVuelo. Si el body no se puede leer se manda al nodo 0, que devuelve el mismo error de siempre.
+    @PostMapping
+    public ResponseEntity<?> crear(@RequestBody byte[] cuerpo) {
+        int nodo = nodos.nodoDeNombre(nombreVuelo(cuerpo));
+        return reenviar(nodos.enviar(nodo, "POST", "/vuelos", cuerpo, HttpHeaders.CONTENT_TYPE, JSON));
+    }
+
+    // PUT /vuelos/{id}
+    // Si el nombreVuelo nuevo es del mismo nodo (lo normal), al nodo de la ID con su If-Match.
+    // Si es de otro nodo el vuelo se mueve: se crea en el nodo nuevo (alli se comprueba que el nombre no existe)
+    // y despues se elimina del anterior; si eso falla se deshace el alta. El vuelo queda con una ID nueva,
+    // que se devuelve en el body y en la cabecera Location. El If-Match se comprueba antes con el ETag actual,
+    // y la eliminacion lleva como If-Match el ETag leido: si otra peticion cambia el vuelo entre medias,
+    // el nodo devuelve un 412, se deshace el alta y no se pierde su cambio.
+    @PutMapping("/{id}")
+    public ResponseEntity<?> actualizar(@PathVariable int id,
+                                        @RequestBody byte[] cuerpo,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        int origen = nodos.nodoDeId(id);
+        String nombre = nombreVuelo(cuerpo);
+        if (nombre == null || nodos.nodoDeNombre(nombre) == origen) {
+            return reenviar(nodos.enviar(origen, "PUT", "/vuelos/" + id, cuerpo,
+                    HttpHeaders.CONTENT_TYPE, JSON, HttpHeaders.IF_MATCH, ifMatch));
+        }
+        return mover(id, origen, nodos.nodoDeNombre(nombre), cuerpo, ifMatch);
+    }
+
+    // DELETE /vuelos/{id} (con el If-Match del cliente)
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> eliminar(@PathVariable int id,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return reenviar(nodos.enviar(nodos.nodoDeId(id), "DELETE", "/vuelos/" + id, null, HttpHeaders.IF_MATCH, ifMatch));
+    }
+
+    // POST /vuelos/batch (JSON o NDJSON)
+    // Las operaciones se reparten por nodo (crear por el nombreVuelo, actualizar y eliminar por la ID) y cada nodo
+    // recibe su parte como un lote, todos a la vez. Los resultados se juntan en el orden original.
+    // Un lote atomico solo se acepta si todas sus operaciones son del mismo nodo (no hay transacciones entre nodos).
+    // Dentro de un lote no se puede cambiar un nombreVuelo por uno de otro nodo (el nodo lo rechaza con un 400).
+    // Si un nodo no responde solo sus operaciones salen con 503, las de los demas nodos se aplican igual.
+    @PostMapping("/batch")
+    public ResponseEntity<?> lote(@RequestBody byte[] cuerpo,
+                                  @RequestParam(defaultValue = "false") boolean atomico,
+                                  @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType) {
+        List<JsonNode> operaciones = operaciones(cuerpo, contentType);
+        String ruta = "/vuelos/batch?atomico=" + atomico;
+
+        // nodo -> posiciones de sus operaciones en el lote original
+        Map<Integer, List<Integer>> porNodo = new TreeMap<>();
+        for (int i = 0; i < operaciones.size(); i++) {
+            porNodo.computeIfAbsent(nodoDeOperacion(operaciones.get(i)), n -> new ArrayList<>()).add(i);
+        }
+        if (porNodo.size() <= 1) {
+            // Lote vacio (el nodo devuelve el error de siempre) o de un solo nodo: las posiciones no cambian
+            int nodo = porNodo.isEmpty() ? 0 : porNodo.keySet().iterator().next();
+            return reenviar(nodos.enviar(nodo, "POST", ruta, cuerpo, HttpHeaders.CONTENT_TYPE, contentType));
+        }
+        if (atomico) {
+            throw new BadRequestException("Un lote atomico solo puede tener operaciones de un mismo nodo del cluster");
+        }
+
+        Map<Integer, CompletableFuture<Respuesta>> pendientes = new TreeMap<>();
+        porNodo.forEach((nodo, posiciones) -> {
+            ArrayNode parte = jsonMapper.createArrayNode();
+            posiciones.forEach(i -> parte.add(operaciones.get(i)));
+            pendientes.put(nodo, nodos.enviarAsync(nodo, "POST", ruta, jsonMapper.writeValueAsBytes(parte),
+                    HttpHeaders.CONTENT_TYPE, JSON));
+        });
+
+        JsonNode[] resultados = new JsonNode[operaciones.size()];
+        pendientes.forEach((nodo, pendiente) -> {
+            List<Integer> posiciones = porNodo.get(nodo);
+            Respuesta r;
+            try {
+                r = NodosVuelos.esperar(pendiente);
+            } catch (NodoNoDisponibleException e) {
+                errorEnTodas(resultados, posiciones, HttpStatus.SERVICE_UNAVAILABLE.value(), e.getMessage());
+                return;
+            }
+            JsonNode raiz = leer(r.cuerpo());
+            if (r.status() == HttpStatus.OK.value() || r.status() == HttpStatus.MULTI_STATUS.value()) {
+                for (JsonNode resultado : raiz.path("data")) {
+                    int original = posiciones.get(resultado.path("indice").asInt());
+                    ((ObjectNode) resultado).put("indice", original);
+                    resultados[original] = resultado;
+                }
+            } else {
+                // El nodo ha rechazado su parte entera: el mismo error para cada una de sus operaciones
+                errorEnTodas(resultados, posiciones, r.status(), raiz.path("message").asString());
+            }
+        });
+
+        long correctos = Arrays.stream(resultados).filter(r -> r.path("success").asBoolean()).count();
+        boolean todosCorrectos = correctos == resultados.length;
+        String message = "Lote procesado: " + correctos + " correctas, " + (resultados.length - correctos) + " con error";
+        return ResponseEntity.status(todosCorrectos ? HttpStatus.OK : HttpStatus.MULTI_STATUS)
+                .body(new ApiResponse<>(todosCorrectos, message, Arrays.asList(resultados)));
+    }
+
+    // Mismo resultado con error para todas las operaciones de un nodo (en su posicion del lote original)
+    private void errorEnTodas(JsonNode[] resultados, List<Integer> posiciones, int status, String message) {
+        for (int original : posiciones) {
+            resultados[original] = jsonMapper.valueToTree(new VueloLoteResultadoDTO(original, status, false, message, null));
+        }
+    }
+
+    // Mueve un vuelo a otro nodo porque su nombreVuelo nuevo es de ese nodo (ver actualizar)
+    private ResponseEntity<?> mover(int id, int origen, int destino, byte[] cuerpo, String ifMatch) {
+        Respuesta actual = nodos.get(origen, "/vuelos/" + id);
+        if (!actual.correcta()) {
+            return reenviar(actual);
+        }
+        String etagLeido = actual.cabecera(HttpHeaders.ETAG).orElse(null);
+        if (ifMatch != null && !ifMatch.isBlank() && !coincide(ifMatch, etagLeido)) {
+            throw new PreconditionFailedException("El vuelo ha cambiado desde que se leyo (If-Match no coincide)");
+        }
+
+        Respuesta creado = nodos.enviar(destino, "POST", "/vuelos", cuerpo, HttpHeaders.CONTENT_TYPE, JSON);
+        if (!creado.correcta()) {
+            return reenviar(creado);
+        }
+        JsonNode raiz = leer(creado.cuerpo());
+        int nuevoId = raiz.path("data").path("id").asInt();
+
+        Respuesta eliminado = nodos.enviar(origen, "DELETE", "/vuelos/" + id, null, HttpHeaders.IF_MATCH, etagLeido);
+        if (!eliminado.correcta()) {
+            // Se ha cambiado, eliminado o archivado mientras tanto: se deshace el alta (solo si nadie la ha tocado)
+            Respuesta deshecho = nodos.enviar(destino, "DELETE", "/vuelos/" + nuevoId, null,
+                    HttpHeaders.IF_MATCH, creado.cabecera(HttpHeaders.ETAG).orElse(null));
+            if (!deshecho.correcta()) {
+                log.error("No se pudo deshacer el alta del vuelo {} (ID {}) en el nodo {} al moverlo desde el nodo {}: {}",
+                        id, nuevoId, destino, origen, deshecho.status());
+                throw new ConflictException("El vuelo ha cambiado mientras se movia y no se ha podido deshacer su alta en "
+                        + "el nodo " + destino + " (ID " + nuevoId + ")");
+            }
+            return reenviar(eliminado);
+        }
+
+        ((ObjectNode) raiz).put("message", "Vuelo actualizado correctamente");
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok().location(URI.create("/vuelos/" + nuevoId));
+        creado.cabecera(HttpHeaders.ETAG).ifPresent(respuesta::eTag);
+        return respuesta.body(raiz);
+    }
+
+    // Devuelve la respuesta de un nodo tal cual (status, body y cabeceras que importan al cliente)
+    private static ResponseEntity<?> reenviar(Respuesta r) {
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.status(r.status());
+        for (String cabecera : List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.LOCATION)) {
+            r.cabecera(cabecera).ifPresent(valor -> respuesta.header(cabecera, valor));
+        }
+        return r.cuerpo().length == 0 ? respuesta.build() : respuesta.body(r.cuerpo());
+    }
+
+    private static Respuesta primerError(List<Respuesta> respuestas) {
+        return respuestas.stream().filter(r -> !r.correcta()).findFirst().orElse(null);
+    }
+
+    private static String query(HttpServletRequest request) {
+        return request.getQueryString() == null ? "" : "?" + request.getQueryString();
+    }
+
+    private JsonNode leer(byte[] cuerpo) {
+        return jsonMapper.readTree(cuerpo);
+    }
+
+    // nombreVuelo del body de un POST/PUT, o null si no se puede leer (el nodo devolvera el error)
+    private String nombreVuelo(byte[] cuerpo) {
+        try {
+            return texto(leer(cuerpo).get("nombreVuelo"));
+        } catch (JacksonException e) {
+            return null;
+        }
+    }
+
+    private static String texto(JsonNode nodo) {
+        return nodo != null && nodo.isString() ? nodo.asString() : null;
+    }
+
+    // Operaciones del lote, en JSON (array) o NDJSON (una por linea)
+    private List<JsonNode> operaciones(byte[] cuerpo, String contentType) {
+        try {
+            if (contentType != null && MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+                return jsonMapper.readerFor(JsonNode.class).<JsonNode>readValues(cuerpo).readAll();
+            }
+            JsonNode raiz = leer(cuerpo);
+            if (!raiz.isArray()) {
+                throw new BadRequestException("El lote tiene que ser un array de operaciones");
+            }
+            List<JsonNode> operaciones = new ArrayList<>();
+            raiz.forEach(operaciones::add);
+            return operaciones;
+        } catch (JacksonException e) {
+            throw new BadRequestException("Body del lote inválido");
+        }
+    }
+
+    // Nodo de una operacion del lote: crear por el nombreVuelo, actualizar y eliminar por la ID.
+    // Si le falta lo que hace falta para elegir, va al nodo del nombre (o al 0) y alli se devuelve el error.
+    private int nodoDeOperacion(JsonNode operacion) {
+        JsonNode id = operacion.get("id");
+        boolean crear = "crear".equals(TextoUtils.normalizar(texto(operacion.get("operacion"))));
+        if (!crear && id != null && id.isInt()) {
+            return nodos.nodoDeId(id.asInt());
+        }
+        return nodos.nodoDeNombre(texto(operacion.path("vuelo").get("nombreVuelo")));
+    }
+
+    // Comprobacion fuerte de If-Match contra el ETag actual ("*" acepta cualquiera)
+    private static boolean coincide(String ifMatch, String etag) {
+        for (String parte : ifMatch.split(",")) {
+            String valor = parte.trim();
+            if (valor.equals("*") || valor.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<JsonNode> elementos(JsonNode raiz) {
+        List<JsonNode> elementos = new ArrayList<>();
+        raiz.path("data").forEach(elementos::add);
+        return elementos;
+    }
+
+    // Los campos del vuelo que usan los comparadores de OrdenVuelo y los cursores
+    private static Vuelo vuelo(JsonNode json) {
+        String fechaSalida = texto(json.get("fechaSalida"));
+        return Vuelo.builder()
+                .id(json.path("id").asInt())
+                .empresa(texto(json.get("empresa")))
+                .lugarLlegada(texto(json.get("lugarLlegada")))
+                .fechaSalida(fechaSalida == null ? null : LocalDate.parse(fechaSalida))
+                .build();
+    }
+
+    // Mezcla de listas ya ordenadas (una por nodo) en el orden de OrdenVuelo: una cola con el primero de cada lista.
+    // Se para al llegar a "maximo" vuelos.
+    private static List<JsonNode> mezclar(List<List<JsonNode>> listas, OrdenVuelo orden, int maximo) {
+        Comparator<Vuelo> comparador = orden.comparador();
+        PriorityQueue<Cabeza> cola = new PriorityQueue<>((a, b) -> comparador.compare(a.vuelo(), b.vuelo()));
+        for (List<JsonNode> lista : listas) {
+            Cabeza.siguiente(lista.iterator(), cola);
+        }
+        List<JsonNode> resultado = new ArrayList<>();
+        while (!cola.isEmpty() && resultado.size() < maximo) {
+            Cabeza cabeza = cola.poll();
+            resultado.add(cabeza.json());
+            Cabeza.siguiente(cabeza.resto(), cola);
+        }
+        return resultado;
+    }
+
+    // Primer vuelo pendiente de una de las listas que se mezclan
+    private record Cabeza(JsonNode json, Vuelo vuelo, Iterator<JsonNode> resto) {
+
+        static void siguiente(Iterator<JsonNode> resto, PriorityQueue<Cabeza> cola) {
+            if (resto.hasNext()) {
+                JsonNode json = resto.next();
+                cola.add(new Cabeza(json, vuelo(json), resto));
+            }
+        }
+    }
+
+    private static void sumarGrupos(Map<String, Acumulado> grupos, JsonNode lista) {
+        for (JsonNode grupo : lista) {
+            String valor = grupo.path("valor").asString();
+            grupos.computeIfAbsent(TextoUtils.normalizar(valor), c -> new Acumulado(valor))
+                    .sumar(grupo.path("vuelos").asLong(), grupo.get("duracionMediaDias"));
+        }
+    }
+
+    private static List<GrupoEstadisticasDTO> grupos(Map<String, Acumulado> grupos, Comparator<String> orden) {
+        return grupos.values().stream()
+                .sorted(Comparator.comparing((Acumulado a) -> a.valor, orden))
+                .map(a -> new GrupoEstadisticasDTO(a.valor, a.vuelos, a.media()))
+                .toList();
+    }
+
+    // Vuelos y suma de duraciones de un grupo (o del total) juntando los de todos los nodos.
+    // El valor que se muestra es el del primer nodo que lo tiene.
+    private static final class Acumulado {
+        private final String valor;
+        private long vuelos;
+        private double sumaDuracion;
+
+        Acumulado(String valor) {
+            this.valor = valor;
+        }
+
+        void sumar(long vuelos, JsonNode duracionMedia) {
+            this.vuelos += vuelos;
+            if (duracionMedia != null && duracionMedia.isNumber()) {
+                sumaDuracion += duracionMedia.asDouble() * vuelos;
+            }
+        }
+
+        Double media() {
+            return vuelos == 0 ? null : sumaDuracion / vuelos;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.vuelos.controllers;
+
+import com.example.vuelos.dtos.CambioVueloDTO;
+import com.example.vuelos.dtos.VueloMapper;
+import com.example.vuelos.models.CambioVuelo;
+import com.example.vuelos.services.CambiosService;
+import com.example.vuelos.services.CambiosService.Entrega;
+import com.example.vuelos.services.CambiosService.Suscripcion;
+import com.example.vuelos.utils.EtagUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Feed de cambios de los vuelos con Server-Sent Events (GET /vuelos/changes).
+// Cada suscriptor tiene su propio hilo virtual que le va enviando los cambios desde su posicion:
+// si el cliente lee despacio solo se para su hilo, las escrituras y los demas suscriptores siguen igual
+// (y si se queda demasiado atras recibe un "reinicio", ver CambiosService).
+
+@RestController
+@RequestMapping("/vuelos")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "vuelos.cluster.rol", havingValue = "nodo", matchIfMissing = true)
+public class CambiosController {
+
+    private final CambiosService service;
+    // Si no hay cambios en este tiempo se envia un comentario, asi se detecta si el cliente se ha ido
+    private final Duration latido;
+
+    public CambiosController(CambiosService service, @Value("${vuelos.cambios.latido-segundos:15}") long latidoSegundos) {
+        this.service = service;
+        this.latido = Duration.ofSeconds(latidoSegundos);
+    }
+
+    // GET /vuelos/changes
+    // Cada evento tiene como id "<arranque>-<secuencia>", como nombre el tipo (creado, actualizado, eliminado)
+    // y como datos un CambioVueloDTO. Para continuar donde se quedo se manda el id del ultimo evento recibido
+    // en "desde" o en la cabecera Last-Event-ID (el EventSource del navegador la manda solo al reconectar).
+    // Sin ninguno de los dos se reciben solo los cambios a partir de ahora.
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter cambios(
+            @RequestParam(required = false) String desde,
+            @RequestHeader(value = "Last-Event-ID", required = false) String ultimoEvento
+    ) {
+        Suscripcion suscripcion = service.suscribir(desde != null ? desde : ultimoEvento);
+        // Sin tiempo maximo: la conexion dura hasta que el cliente la cierra
+        SseEmitter emitter = new SseEmitter(0L);
+        AtomicBoolean activa = new AtomicBoolean(true);
+        emitter.onCompletion(() -> activa.set(false));
+        emitter.onTimeout(() -> activa.set(false));
+        emitter.onError(e -> activa.set(false));
+        Thread.ofVirtual().name("vuelos-cambios").start(() -> enviar(suscripcion, emitter, activa));
+        return emitter;
+    }
+
+    private void enviar(Suscripcion suscripcion, SseEmitter emitter, AtomicBoolean activa) {
+        try {
+            while (activa.get()) {
+                Entrega entrega = suscripcion.siguientes(latido);
+                if (entrega.reinicio()) {
+                    emitter.send(SseEmitter.event()
+                            .id(EtagUtils.idEvento(entrega.posicion()))
+                            .name("reinicio")
+                            .data(new CambioVueloDTO(entrega.posicion(), "reinicio", null, null), MediaType.APPLICATION_JSON));
+                } else if (entrega.cambios().isEmpty()) {
+                    emitter.send(SseEmitter.event().comment("latido"));
+                }
+                for (CambioVuelo cambio : entrega.cambios()) {
+                    emitter.send(SseEmitter.event()
+                            .id(EtagUtils.idEvento(cambio.secuencia()))
+                            .name(cambio.tipo().name().toLowerCase(Locale.ROOT))
+                            .data(VueloMapper.toCambioDTO(cambio), MediaType.APPLICATION_JSON));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // El cliente se ha desconectado (o la respuesta ya se ha cerrado): Spring completa el emitter
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.vuelos.controllers;
+
+import com.example.vuelos.dtos.CambioVueloDTO;
+import com.example.vuelos.dtos.VueloMapper;
+import com.example.vuelos.models.CambioVuelo;
+import com.example.vuelos.services.CambiosService;
+import com.example.vuelos.services.CambiosService.Entrega;
+import com.example.vuelos.services.CambiosService.Suscripcion;
+import com.example.vuelos.utils.EtagUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+// Version reactiva de CambiosController (perfil "reactivo", ver RutasVuelos): GET /vuelos/changes con Server-Sent Events.
+// Esperar cambios bloquea (ver CambiosService.Suscripcion), asi que como en Spring MVC cada suscriptor tiene su hilo virtual,
+// que va metiendo los eventos en un Flux. El hilo solo lee mas cambios cuando el cliente ha pedido mas eventos
+// (backpressure): si el cliente lee despacio su hilo se para y los eventos no se acumulan en memoria.
+
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class CambiosHandler {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<Object>> EVENTO = new ParameterizedTypeReference<>() {
+    };
+
+    private final CambiosService service;
+    private final Duration latido;
+
+    public CambiosHandler(CambiosService service, @Value("${vuelos.cambios.latido-segundos:15}") long latidoSegundos) {
+        this.service = service;
+        this.latido = Duration.ofSeconds(latidoSegundos);
+    }
+
+    // GET /vuelos/changes (mismos eventos que CambiosController)
+    public Mono<ServerResponse> cambios(ServerRequest request) {
+        String desde = request.queryParam("desde")
+                .orElse(request.headers().firstHeader("Last-Event-ID"));
+        Suscripcion suscripcion = service.suscribir(desde);
+
+        Flux<ServerSentEvent<Object>> eventos = Flux.create(sink -> {
+            Thread hilo = Thread.ofVirtual().name("vuelos-cambios").unstarted(() -> enviar(suscripcion, sink));
+            sink.onRequest(n -> LockSupport.unpark(hilo));
+            // Al cancelar (el cliente se ha ido) se interrumpe la espera de cambios
+            sink.onDispose(hilo::interrupt);
+            hilo.start();
+        });
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(eventos, EVENTO);
+    }
+
+    private void enviar(Suscripcion suscripcion, FluxSink<ServerSentEvent<Object>> sink) {
+        try {
+            while (!sink.isCancelled()) {
+                if (sink.requestedFromDownstream() <= 0) {
+                    LockSupport.park();
+                    if (Thread.interrupted()) {
+                        return;
+                    }
+                    continue;
+                }
+                Entrega entrega = suscripcion.siguientes(latido);
+                if (entrega.reinicio()) {
+                    sink.next(ServerSentEvent.builder((Object) new CambioVueloDTO(entrega.posicion(), "reinicio", null, null))
+                            .id(EtagUtils.idEvento(entrega.posicion()))
+                            .event("reinicio")
+                            .build());
+                } else if (entrega.cambios().isEmpty()) {
+                    sink.next(ServerSentEvent.builder().comment("latido").build());
+                }
+                for (CambioVuelo cambio : entrega.cambios()) {
+                    sink.next(ServerSentEvent.builder((Object) VueloMapper.toCambioDTO(cambio))
+                            .id(EtagUtils.idEvento(cambio.secuencia()))
+                            .event(cambio.tipo().name().toLowerCase(Locale.ROOT))
+                            .build());
+                }
+            }
+        } catch (InterruptedException e) {
+            // El cliente se ha desconectado
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Sin esto el hilo terminaria y el cliente se quedaria esperando eventos que no van a llegar
+            sink.error(e);
+        }
+    }
+}
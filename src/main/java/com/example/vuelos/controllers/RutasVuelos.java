@@ -0,0 +1,40 @@
+package com.example.vuelos.controllers;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+// Rutas de la API reactiva (perfil "reactivo", ver application-reactivo.properties).
+// Con este perfil la aplicacion arranca con WebFlux (Netty) en vez de Spring MVC (Tomcat):
+// VueloController y CambiosController no se cargan y las mismas URLs las atienden VueloHandler y CambiosHandler.
+// El contrato es el mismo (paths, parametros, status, cabeceras y envoltorio ApiResponse).
+// Las rutas concretas (/export, /stats...) van antes que /{id}.
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(name = "vuelos.cluster.rol", havingValue = "nodo", matchIfMissing = true)
+public class RutasVuelos {
+
+    @Bean
+    public RouterFunction<ServerResponse> rutasVuelos(VueloHandler vuelos, CambiosHandler cambios) {
+        return route()
+                .path("/vuelos", builder -> builder
+                        .GET("", vuelos::listar)
+                        .GET("/export", vuelos::exportar)
+                        .GET("/itinerarios", vuelos::buscarItinerarios)
+                        .GET("/stats", vuelos::estadisticas)
+                        .GET("/suggest", vuelos::sugerir)
+                        .GET("/changes", cambios::cambios)
+                        .GET("/{id}", vuelos::obtenerPorId)
+                        .POST("", vuelos::crear)
+                        .POST("/batch", vuelos::lote)
+                        .PUT("/{id}", vuelos::actualizar)
+                        .DELETE("/{id}", vuelos::eliminar))
+                .build();
+    }
+}
@@ -1,19 +1,45 @@
 package com.example.vuelos.controllers;
 
+import com.example.vuelos.dtos.EstadisticasResponseDTO;
+import com.example.vuelos.dtos.ItinerarioResponseDTO;
+import com.example.vuelos.dtos.SugerenciaDTO;
+import com.example.vuelos.dtos.VueloLoteRequestDTO;
+import com.example.vuelos.dtos.VueloLoteResultadoDTO;
 import com.example.vuelos.dtos.VueloMapper;
 import com.example.vuelos.dtos.VueloRequestDTO;
 import com.example.vuelos.dtos.VueloResponseDTO;
+import com.example.vuelos.exceptions.BadRequestException;
 import com.example.vuelos.models.ApiResponse;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OperacionLote;
+import com.example.vuelos.models.Pagina;
+import com.example.vuelos.models.ResultadoLote;
 import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.services.CacheListados;
+import com.example.vuelos.services.ItinerarioService;
 import com.example.vuelos.services.VueloService;
 import com.example.vuelos.utils.DateUtils;
+import com.example.vuelos.utils.EtagUtils;
 import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
 
-import java.time.LocalDate;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 
 // Es el controlador para gestionar los vuelos.
@@ -23,48 +49,198 @@ import java.util.List;
 
 @RestController
 @RequestMapping("/vuelos")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "vuelos.cluster.rol", havingValue = "nodo", matchIfMissing = true)
 public class VueloController {
 
     // Capa de negocio.
     // Se inyecta por constructor (inyección recomendada en Spring).
 
     private final VueloService service;
+    private final CacheListados cacheListados;
+    private final ItinerarioService itinerarios;
 
-    public VueloController(VueloService service) {
+    // Para el export NDJSON: se escribe cada vuelo como una linea JSON independiente (separadas por "\n")
+    // usando la misma configuracion de Jackson que el resto de la API.
+    private final ObjectWriter escritorNdjson;
+    // Para el lote en NDJSON: lee una operacion por linea.
+    private final ObjectReader lectorLote;
+
+    // Cada cuantos vuelos se vacia el buffer hacia el cliente durante el export
+    private static final int VUELOS_POR_FLUSH = 256;
+
+    public VueloController(VueloService service, CacheListados cacheListados, ItinerarioService itinerarios,
+                           JsonMapper jsonMapper) {
         this.service = service;
+        this.cacheListados = cacheListados;
+        this.itinerarios = itinerarios;
+        this.escritorNdjson = jsonMapper.writerFor(VueloResponseDTO.class).withRootValueSeparator("\n");
+        this.lectorLote = jsonMapper.readerFor(VueloLoteRequestDTO.class);
     }
 
     // GET /vuelos
     // Lista los vuelos con filtros combinables y ordenamiento (son opcionales pero puedes usar los filtros)
+    // Ademas de empresa, lugarLlegada y fechaSalida se puede filtrar por lugarSalida (con lugarLlegada = una ruta),
+    // por un rango de salida (fechaSalidaDesde / fechaSalidaHasta) y por los vuelos en el aire un dia (enVueloEl).
+    // Si se indica "limit" o "cursor" el listado se pagina: se devuelven como mucho "limit" vuelos
+    // y el envoltorio incluye "siguienteCursor" para pedir la pagina siguiente.
+    // La respuesta lleva un ETag con la version del repositorio para esos filtros: si el cliente lo manda en
+    // If-None-Match y no ha cambiado nada, se responde 304 sin calcular el listado ni serializar nada.
+    // Con "incluirHistorico=true" tambien salen los vuelos que ya han llegado y estan en el historico (sin cache).
     @GetMapping
     public ResponseEntity<ApiResponse<List<VueloResponseDTO>>> listar(
             @RequestParam(required = false) String empresa,
+            @RequestParam(required = false) String lugarSalida,
             @RequestParam(required = false) String lugarLlegada,
             @RequestParam(required = false) String fechaSalida,
-            @RequestParam(required = false) String ordenarPor
+            @RequestParam(required = false) String fechaSalidaDesde,
+            @RequestParam(required = false) String fechaSalidaHasta,
+            @RequestParam(required = false) String enVueloEl,
+            @RequestParam(required = false) String ordenarPor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean incluirHistorico,
+            WebRequest request
     ) {
 
-        // Convierte el query param "fechaSalida" (Si es valido) a LocalDate usando la utilidad en DateUtils.
+        // Las fechas se convierten a LocalDate con la utilidad en DateUtils.
         // Si el formato es inválido, la utilidad lanza una excepcion personalizada - BadRequestException
-        LocalDate fecha = DateUtils.parseLocalDateOrThrow(fechaSalida, "fechaSalida");
+        FiltroVuelos filtro = filtro(empresa, lugarSalida, lugarLlegada, fechaSalida, fechaSalidaDesde, fechaSalidaHasta, enVueloEl);
+
+        // La version se lee antes de calcular el listado: si cambia mientras tanto, el ETag se queda antiguo
+        // y la siguiente peticion recibe el listado nuevo (nunca al reves).
+        String etag = EtagUtils.etag(service.versionListado(filtro));
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
 
-        List<VueloResponseDTO> data = service
-                .listar(empresa, lugarLlegada, fecha, ordenarPor)
+        if (limit != null || cursor != null) {
+            Pagina<Vuelo> pagina = service.listarPagina(filtro, ordenarPor, limit, cursor, incluirHistorico);
+            List<VueloResponseDTO> data = pagina.elementos().stream()
+                    .map(VueloMapper::toDTO)
+                    .toList();
+            return ResponseEntity.status(HttpStatus.OK)
+                    .eTag(etag)
+                    .body(new ApiResponse<>(true, "Listado de vuelos", data, pagina.siguienteCursor()));
+        }
+
+        // Sin paginar el listado pasa por la cache (las mismas consultas se repiten mucho)
+        List<VueloResponseDTO> data = incluirHistorico
+                ? service.listar(filtro, ordenarPor, true).stream().map(VueloMapper::toDTO).toList()
+                : cacheListados.listar(filtro, ordenarPor);
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(etag)
+                .body(new ApiResponse<>(true, "Listado de vuelos", data));
+    }
+
+    // GET /vuelos/export
+    // Exporta el catalogo completo (o filtrado, con los mismos filtros que el listado) en formato NDJSON:
+    // un vuelo por linea, escrito directamente en la respuesta a medida que se recorre el repositorio.
+    // No se construye ninguna lista ni un JSON gigante, asi la memoria no crece con el tamaño del catalogo.
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportar(
+            @RequestParam(required = false) String empresa,
+            @RequestParam(required = false) String lugarSalida,
+            @RequestParam(required = false) String lugarLlegada,
+            @RequestParam(required = false) String fechaSalida,
+            @RequestParam(required = false) String fechaSalidaDesde,
+            @RequestParam(required = false) String fechaSalidaHasta,
+            @RequestParam(required = false) String enVueloEl
+    ) {
+        // Los parametros se validan antes de empezar a escribir, asi los errores siguen llegando como ApiResponse.
+        FiltroVuelos filtro = filtro(empresa, lugarSalida, lugarLlegada, fechaSalida, fechaSalidaDesde, fechaSalidaHasta, enVueloEl);
+        Stream<Vuelo> vuelos = service.listarFiltrados(filtro);
+
+        StreamingResponseBody body = out -> {
+            try (vuelos; JsonGenerator gen = escritorNdjson.createGenerator(out)) {
+                Iterator<Vuelo> it = vuelos.iterator();
+                int escritos = 0;
+                while (it.hasNext()) {
+                    escritorNdjson.writeValue(gen, VueloMapper.toDTO(it.next()));
+                    if (++escritos % VUELOS_POR_FLUSH == 0) {
+                        gen.flush();
+                    }
+                }
+                // Cada linea de NDJSON termina con "\n", tambien la ultima.
+                if (escritos > 0) {
+                    gen.writeRaw('\n');
+                }
+            }
+        };
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    // GET /vuelos/itinerarios
+    // Busca los k mejores itinerarios (con escalas) de origen a destino saliendo el dia "fecha".
+    // Cada vuelo sale del lugar al que llega el anterior, como pronto el dia que llega y como tarde maxEsperaDias despues.
+    // Se ordenan por fecha de llegada y despues por numero de escalas. Si no hay ninguno se devuelve una lista vacia.
+    // Opcionales: maxEscalas (0 a 3, por defecto 1), maxEsperaDias (0 a 7, por defecto 1) y k (1 a 20, por defecto 5).
+    @GetMapping("/itinerarios")
+    public ResponseEntity<ApiResponse<List<ItinerarioResponseDTO>>> buscarItinerarios(
+            @RequestParam(required = false) String origen,
+            @RequestParam(required = false) String destino,
+            @RequestParam(required = false) String fecha,
+            @RequestParam(required = false) Integer maxEscalas,
+            @RequestParam(required = false) Integer maxEsperaDias,
+            @RequestParam(required = false) Integer k
+    ) {
+        List<ItinerarioResponseDTO> data = itinerarios.buscar(origen, destino, DateUtils.parseLocalDateOrThrow(fecha, "fecha"),
+                        maxEscalas, maxEsperaDias, k)
                 .stream()
-                .map(VueloMapper::toDTO)
+                .map(VueloMapper::toItinerarioDTO)
                 .toList();
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(new ApiResponse<>(true, "Itinerarios encontrados", data));
+    }
 
+    // GET /vuelos/stats
+    // Numero de vuelos y duracion media, en total y por empresa, lugarLlegada y fechaSalida.
+    // Son contadores que el repositorio actualiza en cada escritura: no se recorre ningun vuelo.
+    // Con ETag (version global): si no ha cambiado ningun vuelo responde 304.
+    @GetMapping("/stats")
+    public ResponseEntity<ApiResponse<EstadisticasResponseDTO>> estadisticas(WebRequest request) {
+        String etag = EtagUtils.etag(service.versionEstadisticas());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
         return ResponseEntity.status(HttpStatus.OK)
-                .body(new ApiResponse<>(true, "Listado de vuelos", data));
+                .eTag(etag)
+                .body(new ApiResponse<>(true, "Estadisticas de vuelos", VueloMapper.toEstadisticasDTO(service.estadisticas())));
+    }
+
+    // GET /vuelos/suggest
+    // Autocompletar: los k valores de "campo" (empresa, lugarSalida o lugarLlegada) que empiezan por "q",
+    // de mas a menos vuelos. No importan MAYUS, MINUS ni acentos. k es opcional (1 a 50, por defecto 10).
+    @GetMapping("/suggest")
+    public ResponseEntity<ApiResponse<List<SugerenciaDTO>>> sugerir(
+            @RequestParam(required = false) String campo,
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer k
+    ) {
+        List<SugerenciaDTO> data = service.sugerir(campo, q, k).stream()
+                .map(VueloMapper::toSugerenciaDTO)
+                .toList();
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(new ApiResponse<>(true, "Sugerencias", data));
     }
 
     // GET /vuelos/{id}
-    // Devuelve un vuelo por su ID
+    // Devuelve un vuelo por su ID (tambien si ya ha llegado y esta en el historico)
+    // Con ETag (version del vuelo): si coincide con el If-None-Match se responde 304 sin mapear ni serializar.
     @GetMapping("/{id}")
-    public ResponseEntity<ApiResponse<VueloResponseDTO>> obtenerPorId(@PathVariable int id) {
+    public ResponseEntity<ApiResponse<VueloResponseDTO>> obtenerPorId(@PathVariable int id, WebRequest request) {
         // Si el ID no existe, el service lanza una excepcion personalizada - NotFoundException
         Vuelo v = service.obtenerPorId(id);
+        String etag = EtagUtils.etag(v.getVersion());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
         return ResponseEntity.status(HttpStatus.OK)
+                .eTag(etag)
                 .body(new ApiResponse<>(true, "Vuelo encontrado por ID", VueloMapper.toDTO(v)));
     }
 
@@ -77,18 +253,82 @@ public class VueloController {
         // Se convierte el DTO al modelo interno
         Vuelo creado = service.crear(VueloMapper.toModel(dto));
         return ResponseEntity.status(HttpStatus.CREATED)
+                .eTag(EtagUtils.etag(creado.getVersion()))
                 .body(new ApiResponse<>(true, "Vuelo creado correctamente", VueloMapper.toDTO(creado)));
     }
 
+    // POST /vuelos/batch
+    // Crea, actualiza y elimina muchos vuelos en una sola peticion (por ejemplo para importar horarios).
+    // El body es un array JSON de operaciones: {"operacion": "crear|actualizar|eliminar", "id": ..., "vuelo": {...}}
+    // Con "atomico=true" se aplican todas o ninguna, por defecto cada operacion se aplica por separado.
+    // Devuelve un resultado por operacion (en el mismo orden) con el codigo HTTP que tendria el endpoint individual.
+    // El codigo de la respuesta es 200 si todas salen bien y 207 (Multi-Status) si alguna falla.
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ApiResponse<List<VueloLoteResultadoDTO>>> lote(
+            @RequestBody List<VueloLoteRequestDTO> operaciones,
+            @RequestParam(defaultValue = "false") boolean atomico
+    ) {
+        return procesarLote(operaciones, atomico);
+    }
+
+    // POST /vuelos/batch con el body en NDJSON (una operacion por linea), igual que el anterior.
+    // Pensado para importadores que generan las operaciones linea a linea.
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ApiResponse<List<VueloLoteResultadoDTO>>> loteNdjson(
+            InputStream body,
+            @RequestParam(defaultValue = "false") boolean atomico
+    ) {
+        List<VueloLoteRequestDTO> operaciones;
+        try {
+            operaciones = lectorLote.<VueloLoteRequestDTO>readValues(body).readAll();
+        } catch (JacksonException e) {
+            throw new BadRequestException("Body NDJSON inválido");
+        }
+        return procesarLote(operaciones, atomico);
+    }
+
+    // Filtros del listado y del export a partir de los query params
+    private static FiltroVuelos filtro(String empresa, String lugarSalida, String lugarLlegada, String fechaSalida,
+                                       String fechaSalidaDesde, String fechaSalidaHasta, String enVueloEl) {
+        return FiltroVuelos.de(empresa, lugarSalida, lugarLlegada,
+                DateUtils.parseLocalDateOrThrow(fechaSalida, "fechaSalida"),
+                DateUtils.parseLocalDateOrThrow(fechaSalidaDesde, "fechaSalidaDesde"),
+                DateUtils.parseLocalDateOrThrow(fechaSalidaHasta, "fechaSalidaHasta"),
+                DateUtils.parseLocalDateOrThrow(enVueloEl, "enVueloEl"));
+    }
+
+    private ResponseEntity<ApiResponse<List<VueloLoteResultadoDTO>>> procesarLote(List<VueloLoteRequestDTO> operaciones,
+                                                                                 boolean atomico) {
+        List<OperacionLote> ops = operaciones == null ? List.of() : operaciones.stream()
+                .map(VueloMapper::toOperacion)
+                .toList();
+        List<ResultadoLote> resultados = service.procesarLote(ops, atomico);
+
+        long correctos = resultados.stream().filter(ResultadoLote::correcto).count();
+        boolean todosCorrectos = correctos == resultados.size();
+        List<VueloLoteResultadoDTO> data = resultados.stream()
+                .map(VueloMapper::toResultadoDTO)
+                .toList();
+        String message = "Lote procesado: " + correctos + " correctas, " + (resultados.size() - correctos) + " con error";
+
+        return ResponseEntity.status(todosCorrectos ? HttpStatus.OK : HttpStatus.MULTI_STATUS)
+                .body(new ApiResponse<>(todosCorrectos, message, data));
+    }
+
     // PUT /vuelos/{id}
     // Actualizar un vuelo existente
     // @Valid valida el body como hizo en el "crear"
     // Si el ID no existe, lanza la excepcion personalizada - NotFoundException
     // Si hay conflictos porque el nombre concuerda con el de otro vuelo, lanza la excepcion personalizada - ConflictException
+    // Si llega If-Match (el ETag de cuando se leyo el vuelo) y el vuelo ha cambiado desde entonces,
+    // lanza la excepcion personalizada - PreconditionFailedException (412) y no se pisa la otra actualizacion.
     @PutMapping("/{id}")
-    public ResponseEntity<ApiResponse<VueloResponseDTO>> actualizar(@PathVariable int id, @Valid @RequestBody VueloRequestDTO dto) {
-        Vuelo actualizado = service.actualizar(id, VueloMapper.toModel(dto));
+    public ResponseEntity<ApiResponse<VueloResponseDTO>> actualizar(@PathVariable int id,
+                                                                    @Valid @RequestBody VueloRequestDTO dto,
+                                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Vuelo actualizado = service.actualizar(id, VueloMapper.toModel(dto), EtagUtils.versionesAceptadas(ifMatch));
         return ResponseEntity.status(HttpStatus.OK)
+                .eTag(EtagUtils.etag(actualizado.getVersion()))
                 .body(new ApiResponse<>(true, "Vuelo actualizado correctamente", VueloMapper.toDTO(actualizado)));
     }
 
@@ -96,9 +336,11 @@ public class VueloController {
     // Eliminar un vuelo por ID
     // Si el ID no existe, el service lanza el NotFoundException
     // Si se elimina correctamente, el ApiResponse (Basicamente el envoltorio de la información), devolvemos success=true y data=null
+    // Con If-Match, como en el PUT, solo se elimina si el vuelo no ha cambiado desde que se leyo (si no, 412).
     @DeleteMapping("/{id}")
-    public ResponseEntity<ApiResponse<VueloResponseDTO>> eliminar(@PathVariable int id) {
-        service.eliminar(id);
+    public ResponseEntity<ApiResponse<VueloResponseDTO>> eliminar(@PathVariable int id,
+                                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        service.eliminar(id, EtagUtils.versionesAceptadas(ifMatch));
         return ResponseEntity.status(HttpStatus.OK)
                 .body(new ApiResponse<>(true, "Vuelo eliminado correctamente", null));
     }
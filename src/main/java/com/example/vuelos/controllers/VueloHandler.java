@@ -0,0 +1,308 @@
+package com.example.vuelos.controllers;
+
+import com.example.vuelos.dtos.VueloLoteRequestDTO;
+import com.example.vuelos.dtos.VueloLoteResultadoDTO;
+import com.example.vuelos.dtos.VueloMapper;
+import com.example.vuelos.dtos.VueloRequestDTO;
+import com.example.vuelos.dtos.VueloResponseDTO;
+import com.example.vuelos.exceptions.BadRequestException;
+import com.example.vuelos.exceptions.ValidacionException;
+import com.example.vuelos.models.ApiResponse;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.Pagina;
+import com.example.vuelos.models.ResultadoLote;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.services.ItinerarioService;
+import com.example.vuelos.services.VueloService;
+import com.example.vuelos.utils.DateUtils;
+import com.example.vuelos.utils.EtagUtils;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+// Version reactiva de VueloController (perfil "reactivo", ver RutasVuelos).
+// Mismas rutas, mismos parametros, mismos codigos HTTP y mismo envoltorio (ApiResponse), pero sin un hilo por peticion:
+// - El listado sin paginar es un Flux sacado del Stream perezoso del repositorio. Solo se leen y se serializan
+//   vuelos a medida que el cliente los va recibiendo (backpressure): un cliente lento no ocupa ningun hilo
+//   ni obliga a tener todo el listado en memoria. Se escribe en bloques de VUELOS_POR_BLOQUE vuelos.
+// - Las escrituras pueden esperar al disco (fsync del diario), y GET /vuelos/{id} y los listados con
+//   incluirHistorico=true pueden leer el historico, asi que se ejecutan en el scheduler boundedElastic
+//   y nunca bloquean los hilos del servidor.
+// - El resto (listado paginado sin historico, stats, suggest, itinerarios) solo lee memoria y se hace en el mismo hilo.
+// Los errores los devuelve GlobalWebExceptionHandler, igual que GlobalExceptionHandler en Spring MVC.
+// El listado sin paginar no pasa por la cache de listados: recogerlo en una lista es justo lo que se quiere evitar.
+
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class VueloHandler {
+
+    // Vuelos que se serializan juntos en un mismo buffer del listado
+    private static final int VUELOS_POR_BLOQUE = 256;
+
+    private final VueloService service;
+    private final ItinerarioService itinerarios;
+    private final Validator validator;
+    private final ObjectWriter escritorVuelo;
+    private final DataBufferFactory buffers = DefaultDataBufferFactory.sharedInstance;
+    // Principio y final del JSON del listado ({"success":true,...,"data":[ y ]}), los vuelos van entre los dos
+    private final byte[] inicioListado;
+    private final byte[] finListado;
+
+    public VueloHandler(VueloService service, ItinerarioService itinerarios, Validator validator, JsonMapper jsonMapper) {
+        this.service = service;
+        this.itinerarios = itinerarios;
+        this.validator = validator;
+        this.escritorVuelo = jsonMapper.writerFor(VueloResponseDTO.class);
+        // Se serializa el envoltorio con la lista vacia y se parte por "[]", asi tiene exactamente el formato de ApiResponse
+        String vacio = jsonMapper.writeValueAsString(new ApiResponse<>(true, "Listado de vuelos", List.of()));
+        int corte = vacio.lastIndexOf("[]") + 1;
+        this.inicioListado = vacio.substring(0, corte).getBytes(StandardCharsets.UTF_8);
+        this.finListado = vacio.substring(corte).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // GET /vuelos (mismos parametros que VueloController.listar)
+    public Mono<ServerResponse> listar(ServerRequest request) {
+        FiltroVuelos filtro = filtro(request);
+        String ordenarPor = parametro(request, "ordenarPor");
+        Integer limit = entero(request, "limit");
+        String cursor = parametro(request, "cursor");
+        boolean incluirHistorico = booleano(request, "incluirHistorico");
+
+        String etag = EtagUtils.etag(service.versionListado(filtro));
+        return request.checkNotModified(etag).switchIfEmpty(Mono.defer(() -> {
+            if (limit != null || cursor != null) {
+                Callable<Pagina<Vuelo>> leer = () -> service.listarPagina(filtro, ordenarPor, limit, cursor, incluirHistorico);
+                // El historico se lee de disco
+                Mono<Pagina<Vuelo>> pagina = incluirHistorico ? bloqueante(leer) : Mono.fromCallable(leer);
+                return pagina.flatMap(p -> ServerResponse.ok()
+                        .eTag(etag)
+                        .bodyValue(new ApiResponse<>(true, "Listado de vuelos",
+                                p.elementos().stream().map(VueloMapper::toDTO).toList(), p.siguienteCursor())));
+            }
+
+            // Se valida (y se crea el Stream) antes de empezar a responder, asi los errores llegan con su status
+            Stream<Vuelo> vuelos = service.listarOrdenados(filtro, ordenarPor, incluirHistorico);
+            Flux<DataBuffer> data = Flux.fromStream(vuelos)
+                    .map(VueloMapper::toDTO)
+                    .buffer(VUELOS_POR_BLOQUE)
+                    .index()
+                    .map(t -> bloque(t.getT2(), t.getT1() == 0));
+            if (incluirHistorico) {
+                // El historico se lee de disco
+                data = data.subscribeOn(Schedulers.boundedElastic());
+            }
+            Flux<DataBuffer> cuerpo = Flux.concat(
+                    Mono.fromSupplier(() -> buffers.wrap(inicioListado)),
+                    data,
+                    Mono.fromSupplier(() -> buffers.wrap(finListado)));
+            return ServerResponse.ok()
+                    .eTag(etag)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(BodyInserters.fromDataBuffers(cuerpo));
+        }));
+    }
+
+    // GET /vuelos/export
+    // Un vuelo por linea (NDJSON), el codificador de Jackson escribe cada elemento del Flux a medida que llega.
+    public Mono<ServerResponse> exportar(ServerRequest request) {
+        Flux<VueloResponseDTO> vuelos = Flux.fromStream(service.listarFiltrados(filtro(request)))
+                .map(VueloMapper::toDTO);
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(vuelos, VueloResponseDTO.class);
+    }
+
+    // GET /vuelos/itinerarios
+    public Mono<ServerResponse> buscarItinerarios(ServerRequest request) {
+        List<?> data = itinerarios.buscar(parametro(request, "origen"), parametro(request, "destino"),
+                        DateUtils.parseLocalDateOrThrow(parametro(request, "fecha"), "fecha"),
+                        entero(request, "maxEscalas"), entero(request, "maxEsperaDias"), entero(request, "k"))
+                .stream()
+                .map(VueloMapper::toItinerarioDTO)
+                .toList();
+        return ServerResponse.ok().bodyValue(new ApiResponse<>(true, "Itinerarios encontrados", data));
+    }
+
+    // GET /vuelos/stats
+    public Mono<ServerResponse> estadisticas(ServerRequest request) {
+        String etag = EtagUtils.etag(service.versionEstadisticas());
+        return request.checkNotModified(etag).switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                .eTag(etag)
+                .bodyValue(new ApiResponse<>(true, "Estadisticas de vuelos",
+                        VueloMapper.toEstadisticasDTO(service.estadisticas())))));
+    }
+
+    // GET /vuelos/suggest
+    public Mono<ServerResponse> sugerir(ServerRequest request) {
+        List<?> data = service.sugerir(parametro(request, "campo"), parametro(request, "q"), entero(request, "k"))
+                .stream()
+                .map(VueloMapper::toSugerenciaDTO)
+                .toList();
+        return ServerResponse.ok().bodyValue(new ApiResponse<>(true, "Sugerencias", data));
+    }
+
+    // GET /vuelos/{id}
+    public Mono<ServerResponse> obtenerPorId(ServerRequest request) {
+        int id = id(request);
+        return bloqueante(() -> service.obtenerPorId(id))
+                .flatMap(v -> {
+                    String etag = EtagUtils.etag(v.getVersion());
+                    return request.checkNotModified(etag).switchIfEmpty(Mono.defer(() -> ServerResponse.ok()
+                            .eTag(etag)
+                            .bodyValue(new ApiResponse<>(true, "Vuelo encontrado por ID", VueloMapper.toDTO(v)))));
+                });
+    }
+
+    // POST /vuelos
+    public Mono<ServerResponse> crear(ServerRequest request) {
+        return cuerpoValidado(request)
+                .flatMap(dto -> bloqueante(() -> service.crear(VueloMapper.toModel(dto))))
+                .flatMap(creado -> ServerResponse.status(HttpStatus.CREATED)
+                        .eTag(EtagUtils.etag(creado.getVersion()))
+                        .bodyValue(new ApiResponse<>(true, "Vuelo creado correctamente", VueloMapper.toDTO(creado))));
+    }
+
+    // POST /vuelos/batch, con el body en JSON (un array) o en NDJSON (una operacion por linea):
+    // el decodificador de Jackson lee los dos formatos como un Flux de operaciones.
+    public Mono<ServerResponse> lote(ServerRequest request) {
+        boolean atomico = booleano(request, "atomico");
+        return request.bodyToFlux(VueloLoteRequestDTO.class)
+                .map(VueloMapper::toOperacion)
+                .collectList()
+                .flatMap(ops -> bloqueante(() -> service.procesarLote(ops, atomico)))
+                .flatMap(resultados -> {
+                    long correctos = resultados.stream().filter(ResultadoLote::correcto).count();
+                    boolean todosCorrectos = correctos == resultados.size();
+                    List<VueloLoteResultadoDTO> data = resultados.stream()
+                            .map(VueloMapper::toResultadoDTO)
+                            .toList();
+                    String message = "Lote procesado: " + correctos + " correctas, " + (resultados.size() - correctos) + " con error";
+                    return ServerResponse.status(todosCorrectos ? HttpStatus.OK : HttpStatus.MULTI_STATUS)
+                            .bodyValue(new ApiResponse<>(todosCorrectos, message, data));
+                });
+    }
+
+    // PUT /vuelos/{id} (con If-Match opcional)
+    public Mono<ServerResponse> actualizar(ServerRequest request) {
+        int id = id(request);
+        String ifMatch = request.headers().firstHeader(HttpHeaders.IF_MATCH);
+        return cuerpoValidado(request)
+                .flatMap(dto -> bloqueante(() -> service.actualizar(id, VueloMapper.toModel(dto), EtagUtils.versionesAceptadas(ifMatch))))
+                .flatMap(actualizado -> ServerResponse.ok()
+                        .eTag(EtagUtils.etag(actualizado.getVersion()))
+                        .bodyValue(new ApiResponse<>(true, "Vuelo actualizado correctamente", VueloMapper.toDTO(actualizado))));
+    }
+
+    // DELETE /vuelos/{id} (con If-Match opcional)
+    public Mono<ServerResponse> eliminar(ServerRequest request) {
+        int id = id(request);
+        String ifMatch = request.headers().firstHeader(HttpHeaders.IF_MATCH);
+        return bloqueante(() -> {
+            service.eliminar(id, EtagUtils.versionesAceptadas(ifMatch));
+            return id;
+        }).flatMap(eliminado -> ServerResponse.ok()
+                .bodyValue(new ApiResponse<>(true, "Vuelo eliminado correctamente", null)));
+    }
+
+    // Filtros del listado y del export a partir de los query params
+    private static FiltroVuelos filtro(ServerRequest request) {
+        return FiltroVuelos.de(parametro(request, "empresa"), parametro(request, "lugarSalida"), parametro(request, "lugarLlegada"),
+                DateUtils.parseLocalDateOrThrow(parametro(request, "fechaSalida"), "fechaSalida"),
+                DateUtils.parseLocalDateOrThrow(parametro(request, "fechaSalidaDesde"), "fechaSalidaDesde"),
+                DateUtils.parseLocalDateOrThrow(parametro(request, "fechaSalidaHasta"), "fechaSalidaHasta"),
+                DateUtils.parseLocalDateOrThrow(parametro(request, "enVueloEl"), "enVueloEl"));
+    }
+
+    // Lee el body y lo valida como haria @Valid en VueloController
+    private Mono<VueloRequestDTO> cuerpoValidado(ServerRequest request) {
+        return request.bodyToMono(VueloRequestDTO.class)
+                .switchIfEmpty(Mono.error(() -> new BadRequestException("Datos incorrectos")))
+                .doOnNext(dto -> {
+                    Set<ConstraintViolation<VueloRequestDTO>> violaciones = validator.validate(dto);
+                    if (!violaciones.isEmpty()) {
+                        Map<String, String> errores = new HashMap<>();
+                        violaciones.forEach(v -> errores.put(v.getPropertyPath().toString(), v.getMessage()));
+                        throw new ValidacionException(errores);
+                    }
+                });
+    }
+
+    // Serializa un bloque de vuelos del listado, separados por comas (y con una coma delante si no es el primero)
+    private DataBuffer bloque(List<VueloResponseDTO> vuelos, boolean primero) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 * vuelos.size());
+        for (int i = 0; i < vuelos.size(); i++) {
+            if (i > 0 || !primero) {
+                out.write(',');
+            }
+            out.writeBytes(escritorVuelo.writeValueAsBytes(vuelos.get(i)));
+        }
+        return buffers.wrap(out.toByteArray());
+    }
+
+    // Ejecuta una llamada que puede bloquear (disco) fuera de los hilos del servidor
+    private static <T> Mono<T> bloqueante(Callable<T> llamada) {
+        return Mono.fromCallable(llamada).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static String parametro(ServerRequest request, String nombre) {
+        return request.queryParam(nombre).orElse(null);
+    }
+
+    private static Integer entero(ServerRequest request, String nombre) {
+        String valor = parametro(request, nombre);
+        if (valor == null || valor.isBlank()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(valor.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(nombre + " inválido. Debe ser un numero entero");
+        }
+    }
+
+    // Como en Spring MVC, sin valor es false. Cualquier valor que no sea true o false es un 400.
+    private static boolean booleano(ServerRequest request, String nombre) {
+        String valor = parametro(request, nombre);
+        if (valor == null || valor.isBlank()) {
+            return false;
+        }
+        return switch (valor.trim().toLowerCase(Locale.ROOT)) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new BadRequestException(nombre + " inválido. Usa true o false");
+        };
+    }
+
+    private static int id(ServerRequest request) {
+        try {
+            return Integer.parseInt(request.pathVariable("id"));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("id inválido. Debe ser un numero entero");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.vuelos.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO de cada evento de GET /vuelos/changes
+// tipo: creado, actualizado, eliminado o reinicio (en un reinicio id y vuelo son null).
+// vuelo es el vuelo despues del cambio (al eliminar, el vuelo eliminado).
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class CambioVueloDTO {
+    private long secuencia;
+    private String tipo;
+    private Integer id;
+    private VueloResponseDTO vuelo;
+}
@@ -0,0 +1,22 @@
+package com.example.vuelos.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+// DTO de salida de GET /vuelos/stats
+// Numero de vuelos y duracion media en dias (null si no hay vuelos), en total y por cada grupo.
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class EstadisticasResponseDTO {
+    private long vuelos;
+    private Double duracionMediaDias;
+    // Ordenados por empresa / lugarLlegada (sin distinguir mayusculas) y por dia
+    private List<GrupoEstadisticasDTO> porEmpresa;
+    private List<GrupoEstadisticasDTO> porLugarLlegada;
+    private List<GrupoEstadisticasDTO> porFechaSalida;
+}
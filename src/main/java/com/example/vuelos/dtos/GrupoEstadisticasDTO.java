@@ -0,0 +1,16 @@
+package com.example.vuelos.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+// Un grupo de las estadisticas: el valor del campo (empresa, lugarLlegada o fechaSalida) y sus vuelos
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class GrupoEstadisticasDTO {
+    private String valor;
+    private long vuelos;
+    private Double duracionMediaDias;
+}
@@ -0,0 +1,24 @@
+package com.example.vuelos.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// DTO de salida de GET /vuelos/itinerarios
+// Cada itinerario lleva sus vuelos en orden y un resumen (escalas, salida, llegada y duracion total).
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class ItinerarioResponseDTO {
+    private List<VueloResponseDTO> vuelos;
+    // 0 si es un vuelo directo
+    private int escalas;
+    private LocalDate fechaSalida;
+    private LocalDate fechaLlegada;
+    // Dias desde la salida del primer vuelo hasta la llegada del ultimo
+    private long duracionDias;
+}
@@ -0,0 +1,15 @@
+package com.example.vuelos.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO de salida de GET /vuelos/suggest: el valor sugerido y cuantos vuelos lo tienen
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class SugerenciaDTO {
+    private String valor;
+    private long vuelos;
+}
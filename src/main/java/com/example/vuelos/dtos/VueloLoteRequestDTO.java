@@ -0,0 +1,20 @@
+package com.example.vuelos.dtos;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO de entrada de cada operacion de un lote (POST /vuelos/batch)
+// operacion: "crear", "actualizar" o "eliminar"
+// id: obligatorio para actualizar y eliminar
+// vuelo: obligatorio para crear y actualizar (mismo formato que el body del POST/PUT)
+
+// Aqui no se usa @Valid: cada operacion se valida por separado en el service,
+// asi un error en una operacion no invalida la peticion entera y se devuelve en su resultado.
+
+@Getter
+@Setter
+public class VueloLoteRequestDTO {
+    private String operacion;
+    private Integer id;
+    private VueloRequestDTO vuelo;
+}
@@ -0,0 +1,20 @@
+package com.example.vuelos.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO de salida de cada operacion de un lote
+// Tiene el mismo codigo HTTP y mensaje que devolveria el endpoint individual (201, 200, 400, 404, 409...)
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class VueloLoteResultadoDTO {
+    // Posicion de la operacion dentro del lote
+    private int indice;
+    private int status;
+    private boolean success;
+    private String message;
+    private VueloResponseDTO data;
+}
@@ -1,8 +1,17 @@
 package com.example.vuelos.dtos;
 
+import com.example.vuelos.exceptions.GlobalExceptionHandler;
+import com.example.vuelos.models.CambioVuelo;
+import com.example.vuelos.models.EstadisticasVuelos;
+import com.example.vuelos.models.Itinerario;
+import com.example.vuelos.models.OperacionLote;
+import com.example.vuelos.models.ResultadoLote;
+import com.example.vuelos.models.Sugerencia;
 import com.example.vuelos.models.Vuelo;
 
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
 
 // Mapper para convertir entre el modelo interno y los DTOs de la API
 // Basicamente evita exponer directamente el modelo de dominio en los endpoints
@@ -16,14 +25,14 @@ public class VueloMapper {
     // Y las validaciones basicas se ejecutan en el Controller con el @Valid
 
     public static Vuelo toModel(VueloRequestDTO dto) {
-        Vuelo v = new Vuelo();
-        v.setNombreVuelo(dto.getNombreVuelo());
-        v.setEmpresa(dto.getEmpresa());
-        v.setLugarSalida(dto.getLugarSalida());
-        v.setLugarLlegada(dto.getLugarLlegada());
-        v.setFechaSalida(dto.getFechaSalida());
-        v.setFechaLlegada(dto.getFechaLlegada());
-        return v;
+        return Vuelo.builder()
+                .nombreVuelo(dto.getNombreVuelo())
+                .empresa(dto.getEmpresa())
+                .lugarSalida(dto.getLugarSalida())
+                .lugarLlegada(dto.getLugarLlegada())
+                .fechaSalida(dto.getFechaSalida())
+                .fechaLlegada(dto.getFechaLlegada())
+                .build();
     }
 
     public static VueloResponseDTO toDTO(Vuelo vuelo) {
@@ -40,4 +49,75 @@ public class VueloMapper {
                 duracion
         );
     }
+
+    // Convierte una operacion de un lote al modelo interno.
+    // Si la operacion no es ninguna de las permitidas, el tipo queda null y el service devuelve el error en su resultado.
+    public static OperacionLote toOperacion(VueloLoteRequestDTO dto) {
+        OperacionLote.Tipo tipo = null;
+        if (dto.getOperacion() != null) {
+            tipo = switch (dto.getOperacion().trim().toLowerCase(Locale.ROOT)) {
+                case "crear" -> OperacionLote.Tipo.CREAR;
+                case "actualizar" -> OperacionLote.Tipo.ACTUALIZAR;
+                case "eliminar" -> OperacionLote.Tipo.ELIMINAR;
+                default -> null;
+            };
+        }
+        Vuelo vuelo = dto.getVuelo() != null ? toModel(dto.getVuelo()) : null;
+        return new OperacionLote(tipo, dto.getId(), vuelo);
+    }
+
+    // Convierte el resultado de una operacion de un lote al DTO de salida,
+    // con el mismo codigo HTTP y mensaje que devolveria el endpoint individual.
+    public static VueloLoteResultadoDTO toResultadoDTO(ResultadoLote resultado) {
+        if (!resultado.correcto()) {
+            int status = GlobalExceptionHandler.statusDe(resultado.error()).value();
+            return new VueloLoteResultadoDTO(resultado.indice(), status, false, resultado.error().getMessage(), null);
+        }
+        VueloResponseDTO data = resultado.vuelo() != null ? toDTO(resultado.vuelo()) : null;
+        return switch (resultado.tipo()) {
+            case CREAR -> new VueloLoteResultadoDTO(resultado.indice(), 201, true, "Vuelo creado correctamente", data);
+            case ACTUALIZAR -> new VueloLoteResultadoDTO(resultado.indice(), 200, true, "Vuelo actualizado correctamente", data);
+            case ELIMINAR -> new VueloLoteResultadoDTO(resultado.indice(), 200, true, "Vuelo eliminado correctamente", null);
+        };
+    }
+
+    public static ItinerarioResponseDTO toItinerarioDTO(Itinerario itinerario) {
+        return new ItinerarioResponseDTO(
+                itinerario.vuelos().stream().map(VueloMapper::toDTO).toList(),
+                itinerario.escalas(),
+                itinerario.fechaSalida(),
+                itinerario.fechaLlegada(),
+                itinerario.duracionDias()
+        );
+    }
+
+    public static EstadisticasResponseDTO toEstadisticasDTO(EstadisticasVuelos estadisticas) {
+        return new EstadisticasResponseDTO(
+                estadisticas.vuelos(),
+                estadisticas.duracionMediaDias(),
+                toGruposDTO(estadisticas.porEmpresa()),
+                toGruposDTO(estadisticas.porLugarLlegada()),
+                toGruposDTO(estadisticas.porFechaSalida())
+        );
+    }
+
+    private static List<GrupoEstadisticasDTO> toGruposDTO(List<EstadisticasVuelos.Grupo> grupos) {
+        return grupos.stream()
+                .map(g -> new GrupoEstadisticasDTO(g.valor(), g.vuelos(), g.duracionMediaDias()))
+                .toList();
+    }
+
+    // El tipo va en minusculas, igual que el nombre del evento
+    public static CambioVueloDTO toCambioDTO(CambioVuelo cambio) {
+        return new CambioVueloDTO(
+                cambio.secuencia(),
+                cambio.tipo().name().toLowerCase(Locale.ROOT),
+                cambio.id(),
+                toDTO(cambio.vuelo())
+        );
+    }
+
+    public static SugerenciaDTO toSugerenciaDTO(Sugerencia sugerencia) {
+        return new SugerenciaDTO(sugerencia.valor(), sugerencia.vuelos());
+    }
 }
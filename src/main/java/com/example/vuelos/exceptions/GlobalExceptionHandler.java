@@ -1,6 +1,8 @@
 package com.example.vuelos.exceptions;
 
+import com.example.vuelos.metricas.MetricasVuelos;
 import com.example.vuelos.models.ApiResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -15,15 +17,24 @@ import java.util.Map;
 // Recoge las excepciones personalizadas y las devuelve con el HttpsStatus correcto y con el envoltorio del ApiResponse
 // Tambien maneja otro tipo de excepciones diferentes.
 // La ventaja principal es que permite al cliente ver los errores de forma clara. (En el front o desde PostMan)
+// Cada excepcion gestionada se cuenta en las metricas (vuelos.errores, por tipo y status).
 
 
 // Al usar @RestControllerAdvice, Spring aplica este handler a todos los controllers.
 @RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class GlobalExceptionHandler {
 
+    private final MetricasVuelos metricas;
+
+    public GlobalExceptionHandler(MetricasVuelos metricas) {
+        this.metricas = metricas;
+    }
+
     // Maneja erorres 404 cuando el recurso no existe.
     @ExceptionHandler(NotFoundException.class)
     public ResponseEntity<ApiResponse<Void>> handleNotFoundException(NotFoundException ex) {
+        metricas.error(ex, HttpStatus.NOT_FOUND);
         return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(new ApiResponse<>(false, ex.getMessage(), null));
     }
@@ -31,6 +42,7 @@ public class GlobalExceptionHandler {
     // Maneja errores 400 cuando la petición tiene datos incorrectos o incoherentes.
     @ExceptionHandler(BadRequestException.class)
     public ResponseEntity<ApiResponse<Void>> handleBadRequestException(BadRequestException ex) {
+        metricas.error(ex, HttpStatus.BAD_REQUEST);
         return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(new ApiResponse<>(false, ex.getMessage(), null));
     }
@@ -38,14 +50,32 @@ public class GlobalExceptionHandler {
     // Maneja errores 409 cuando hay un conflicto con el estado actual del sistema.
     @ExceptionHandler(ConflictException.class)
     public ResponseEntity<ApiResponse<Void>> handleConflictException(ConflictException ex) {
+        metricas.error(ex, HttpStatus.CONFLICT);
         return ResponseEntity.status(HttpStatus.CONFLICT)
                 .body(new ApiResponse<>(false, ex.getMessage(), null));
     }
 
+    // Maneja errores 412 cuando el If-Match no coincide con la version actual del vuelo.
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ApiResponse<Void>> handlePreconditionFailedException(PreconditionFailedException ex) {
+        metricas.error(ex, HttpStatus.PRECONDITION_FAILED);
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body(new ApiResponse<>(false, ex.getMessage(), null));
+    }
+
+    // Maneja errores 503 cuando el router del cluster no puede hablar con un nodo.
+    @ExceptionHandler(NodoNoDisponibleException.class)
+    public ResponseEntity<ApiResponse<Void>> handleNodoNoDisponibleException(NodoNoDisponibleException ex) {
+        metricas.error(ex, HttpStatus.SERVICE_UNAVAILABLE);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ApiResponse<>(false, ex.getMessage(), null));
+    }
+
     // Maneja rutas inexistentes 404 cuando se intenta acceder a un endpoint que no existe.
     // Es obligatorio añadair en el application.properties los parametros señalados.
     @ExceptionHandler(NoHandlerFoundException.class)
     public ResponseEntity<ApiResponse<Void>> handleNoHandlerFoundException(NoHandlerFoundException ex) {
+        metricas.error(ex, HttpStatus.NOT_FOUND);
         String message = "Ruta no encontrada " + ex.getRequestURL();
         return ResponseEntity.status(HttpStatus.NOT_FOUND)
                 .body(new ApiResponse<>(false, message, null));
@@ -59,6 +89,7 @@ public class GlobalExceptionHandler {
     // Esto facilita al cliente entender qué campo provoco el error realmente.
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ApiResponse<Map<String, String>>> handleValidationErrorException(MethodArgumentNotValidException ex) {
+        metricas.error(ex, HttpStatus.BAD_REQUEST);
         Map<String, String> errors = new HashMap<>();
         ex.getBindingResult().getFieldErrors()
                 .forEach(e -> errors.put(e.getField(), e.getDefaultMessage()));
@@ -67,9 +98,31 @@ public class GlobalExceptionHandler {
                 .body(new ApiResponse<>(false, "Error de validación", errors));
     }
 
+    // Codigo HTTP que corresponde a cada excepcion personalizada.
+    // Se usa en los endpoints que devuelven varios resultados en una misma respuesta (por ejemplo el lote).
+    public static HttpStatus statusDe(RuntimeException ex) {
+        if (ex instanceof NotFoundException) {
+            return HttpStatus.NOT_FOUND;
+        }
+        if (ex instanceof BadRequestException) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        if (ex instanceof ConflictException) {
+            return HttpStatus.CONFLICT;
+        }
+        if (ex instanceof PreconditionFailedException) {
+            return HttpStatus.PRECONDITION_FAILED;
+        }
+        if (ex instanceof NodoNoDisponibleException) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
     // Captura cualquier otro error no gestionado.
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiResponse<Void>> handleException(Exception ex) {
+        metricas.error(ex, HttpStatus.INTERNAL_SERVER_ERROR);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(new ApiResponse<>(false, "ERROR INTERNO: " + ex.getMessage(), null));
     }
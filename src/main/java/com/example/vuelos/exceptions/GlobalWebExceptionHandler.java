@@ -0,0 +1,75 @@
+package com.example.vuelos.exceptions;
+
+import com.example.vuelos.metricas.MetricasVuelos;
+import com.example.vuelos.models.ApiResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebExceptionHandler;
+import reactor.core.publisher.Mono;
+import tools.jackson.databind.json.JsonMapper;
+
+// Equivalente a GlobalExceptionHandler para la API reactiva (perfil "reactivo", ver RutasVuelos).
+// Recoge las excepciones de las rutas funcionales y las devuelve con el mismo HttpStatus y el mismo envoltorio (ApiResponse).
+// Va antes que el manejador de errores por defecto de Spring Boot (que esta en el orden -1).
+// Cada excepcion gestionada se cuenta en las metricas igual que en Spring MVC (vuelos.errores, por tipo y status).
+//
+// Si la respuesta ya ha empezado a enviarse (por ejemplo un listado a medias) no se puede cambiar el status:
+// el error se deja pasar y la conexion se corta.
+
+@Component
+@Order(-2)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class GlobalWebExceptionHandler implements WebExceptionHandler {
+
+    private final MetricasVuelos metricas;
+    private final JsonMapper jsonMapper;
+
+    public GlobalWebExceptionHandler(MetricasVuelos metricas, JsonMapper jsonMapper) {
+        this.metricas = metricas;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    public Mono<Void> handle(ServerWebExchange exchange, Throwable ex) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (response.isCommitted() || !(ex instanceof Exception e)) {
+            return Mono.error(ex);
+        }
+
+        HttpStatus status;
+        ApiResponse<?> body;
+        if (e instanceof ValidacionException v) {
+            // Errores de validacion del body: un Map campo -> mensaje, como con @Valid
+            status = HttpStatus.BAD_REQUEST;
+            body = new ApiResponse<>(false, v.getMessage(), v.getErrores());
+        } else if (e instanceof ResponseStatusException r && r.getStatusCode().value() == HttpStatus.NOT_FOUND.value()) {
+            // Rutas inexistentes
+            status = HttpStatus.NOT_FOUND;
+            body = new ApiResponse<>(false, "Ruta no encontrada " + exchange.getRequest().getPath().value(), null);
+        } else if (e instanceof ResponseStatusException r) {
+            // Errores del propio WebFlux (body ilegible, metodo o Content-Type no soportado...)
+            status = HttpStatus.valueOf(r.getStatusCode().value());
+            body = new ApiResponse<>(false, r.getReason() != null ? r.getReason() : status.getReasonPhrase(), null);
+        } else if (e instanceof RuntimeException r && GlobalExceptionHandler.statusDe(r) != HttpStatus.INTERNAL_SERVER_ERROR) {
+            // Excepciones personalizadas (404, 400, 409, 412)
+            status = GlobalExceptionHandler.statusDe(r);
+            body = new ApiResponse<>(false, e.getMessage(), null);
+        } else {
+            status = HttpStatus.INTERNAL_SERVER_ERROR;
+            body = new ApiResponse<>(false, "ERROR INTERNO: " + e.getMessage(), null);
+        }
+        metricas.error(e, status);
+
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer buffer = response.bufferFactory().wrap(jsonMapper.writeValueAsBytes(body));
+        return response.writeWith(Mono.just(buffer));
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.vuelos.exceptions;
+
+// Excepcion custom para los errores de tipo 503 (Service Unavailable)
+// Se usa en el router del cluster cuando no puede hablar con uno de los nodos (caido, arrancando o sin responder a tiempo).
+// La excepcion es capturada por el Handler Global y este devuelve una respuesta dentro del envoltorio (ApiResponse) con código 503.
+
+public class NodoNoDisponibleException extends RuntimeException {
+    public NodoNoDisponibleException(String message) {
+        super(message);
+    }
+}
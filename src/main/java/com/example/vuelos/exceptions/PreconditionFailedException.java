@@ -0,0 +1,12 @@
+package com.example.vuelos.exceptions;
+
+// Excepcion custom para los errores de tipo 412 (Precondition Failed)
+// Se usa cuando el cliente manda un If-Match y el vuelo ya no esta en esa version,
+// por ejemplo porque otra peticion lo ha actualizado despues de que el cliente lo leyera.
+// La excepcion es capturada por el Handler Global y este devuelve una respuesta dentro del envoltorio (ApiResponse) con código 412.
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
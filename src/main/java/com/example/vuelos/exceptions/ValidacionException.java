@@ -0,0 +1,22 @@
+package com.example.vuelos.exceptions;
+
+import java.util.Map;
+
+// Excepcion custom para los errores de validacion del body (400) en la API reactiva.
+// En Spring MVC estos errores los lanza @Valid (MethodArgumentNotValidException), en las rutas funcionales
+// no hay @Valid y el handler valida el DTO a mano. Lleva los errores por campo (campo -> mensaje).
+// La excepcion es capturada por GlobalWebExceptionHandler, que devuelve el mismo ApiResponse que GlobalExceptionHandler.
+
+public class ValidacionException extends RuntimeException {
+
+    private final Map<String, String> errores;
+
+    public ValidacionException(Map<String, String> errores) {
+        super("Error de validación");
+        this.errores = errores;
+    }
+
+    public Map<String, String> getErrores() {
+        return errores;
+    }
+}
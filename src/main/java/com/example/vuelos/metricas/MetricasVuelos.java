@@ -0,0 +1,282 @@
+package com.example.vuelos.metricas;
+
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Metricas de la API (Micrometer), se publican en /actuator/prometheus.
+// Los endpoints HTTP ya los mide Spring (http.server.requests), aqui van las del service y el repositorio:
+// - vuelos.servicio: tiempo de cada metodo del service (tag metodo)
+// - vuelos.repositorio: tiempo de cada operacion del repositorio (tag operacion)
+// - vuelos.listado y vuelos.listado.resultados: tiempo y nº de vuelos devueltos del listado,
+//   por combinacion de filtros, ordenarPor y si esta paginado. Las combinaciones con lugarSalida, rangoSalida
+//   o enVueloEl se registran la primera vez que se usan (son muchas y la mayoria no se usara nunca).
+// - vuelos.errores: excepciones que llegan al GlobalExceptionHandler (tags tipo y status)
+// - vuelos.almacen.vuelos: nº de vuelos guardados
+// - vuelos.cache.listado: consultas a la cache del listado (tag resultado: acierto, fallo u obsoleta),
+//   vuelos.cache.listado.descartadas, vuelos.cache.listado.entradas y vuelos.cache.listado.peso
+//
+// Se llama en cada peticion, asi que no puede reservar memoria: todos los Timer y contadores se crean al arrancar
+// y se guardan en arrays/EnumMap, medir es coger System.nanoTime() y buscar el Timer por posicion.
+
+@Component
+public class MetricasVuelos {
+
+    public enum MetodoServicio {
+        CREAR("crear"),
+        LISTAR_FILTRADOS("listarFiltrados"),
+        LISTAR("listar"),
+        LISTAR_ORDENADOS("listarOrdenados"),
+        LISTAR_PAGINA("listarPagina"),
+        OBTENER_POR_ID("obtenerPorId"),
+        ACTUALIZAR("actualizar"),
+        ELIMINAR("eliminar"),
+        PROCESAR_LOTE("procesarLote"),
+        BUSCAR_ITINERARIOS("buscarItinerarios"),
+        ESTADISTICAS("estadisticas"),
+        SUGERIR("sugerir");
+
+        private final String tag;
+
+        MetodoServicio(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public enum OperacionRepositorio {
+        SAVE("save"),
+        UPDATE("update"),
+        RESTORE("restore"),
+        DELETE("delete"),
+        FIND_BY_ID("findById"),
+        FIND_BY_FILTRO("findByFiltro"),
+        EXISTS_NOMBRE_VUELO("existsNombreVuelo");
+
+        private final String tag;
+
+        OperacionRepositorio(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    // Nombre de cada combinacion de filtros, la posicion es la mascara de filtros activos (ver combinacion())
+    private static final String[] COMBINACIONES = {
+            "ninguno", "empresa", "lugarLlegada", "empresa+lugarLlegada",
+            "fechaSalida", "empresa+fechaSalida", "lugarLlegada+fechaSalida", "todos"
+    };
+    // Filtros que se añaden al nombre de las combinaciones extra (bits 8, 16 y 32 de la mascara)
+    private static final String[] FILTROS_EXTRA = {"lugarSalida", "rangoSalida", "enVueloEl"};
+    private static final int NUM_COMBINACIONES = COMBINACIONES.length << FILTROS_EXTRA.length;
+    private static final int NUM_ORDENES = OrdenVuelo.values().length;
+
+    private final MeterRegistry registry;
+    private final Map<MetodoServicio, Timer> servicio = new EnumMap<>(MetodoServicio.class);
+    private final Map<OperacionRepositorio, Timer> repositorio = new EnumMap<>(OperacionRepositorio.class);
+    // [paginado][combinacion de filtros][orden]
+    private final Timer[][][] listado = new Timer[2][COMBINACIONES.length][OrdenVuelo.values().length];
+    private final DistributionSummary[][][] resultados = new DistributionSummary[2][COMBINACIONES.length][OrdenVuelo.values().length];
+    // Combinaciones con filtros extra, se crean al usarlas (posicion = ver posicionExtra())
+    private final AtomicReferenceArray<Timer> listadoExtra = new AtomicReferenceArray<>(2 * NUM_COMBINACIONES * NUM_ORDENES);
+    private final AtomicReferenceArray<DistributionSummary> resultadosExtra =
+            new AtomicReferenceArray<>(2 * NUM_COMBINACIONES * NUM_ORDENES);
+    // Cache del listado
+    private final Counter cacheAciertos;
+    private final Counter cacheFallos;
+    private final Counter cacheObsoletas;
+    private final Counter cacheDescartadas;
+    // Los tipos de excepcion (y sus status) son pocos, el contador de cada par se crea la primera vez.
+    // Una misma excepcion puede acabar con distintos status (por ejemplo las de Spring MVC), asi que la clave lleva los dos.
+    private record TipoError(Class<?> tipo, HttpStatus status) {
+    }
+
+    private final ConcurrentHashMap<TipoError, Counter> errores = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MetricasVuelos(MeterRegistry registry, VueloRepository repository) {
+        this.registry = registry;
+        for (MetodoServicio m : MetodoServicio.values()) {
+            servicio.put(m, Timer.builder("vuelos.servicio")
+                    .description("Tiempo de los metodos de VueloService")
+                    .tag("metodo", m.tag)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (OperacionRepositorio o : OperacionRepositorio.values()) {
+            repositorio.put(o, Timer.builder("vuelos.repositorio")
+                    .description("Tiempo de las operaciones de VueloRepository")
+                    .tag("operacion", o.tag)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (int p = 0; p < 2; p++) {
+            for (int c = 0; c < COMBINACIONES.length; c++) {
+                for (OrdenVuelo orden : OrdenVuelo.values()) {
+                    listado[p][c][orden.ordinal()] = timerListado(p, c, orden);
+                    resultados[p][c][orden.ordinal()] = resultadosListado(p, c, orden);
+                }
+            }
+        }
+        Gauge.builder("vuelos.almacen.vuelos", repository, VueloRepository::count)
+                .description("Numero de vuelos guardados")
+                .register(registry);
+        cacheAciertos = contadorCache("acierto");
+        cacheFallos = contadorCache("fallo");
+        cacheObsoletas = contadorCache("obsoleta");
+        cacheDescartadas = Counter.builder("vuelos.cache.listado.descartadas")
+                .description("Entradas descartadas de la cache del listado por falta de espacio")
+                .register(registry);
+    }
+
+    // Metricas que no se publican en ningun sitio (para usar el service fuera de Spring, por ejemplo en los benchmarks)
+    public static MetricasVuelos desactivadas(VueloRepository repository) {
+        return new MetricasVuelos(new CompositeMeterRegistry(), repository);
+    }
+
+    // "inicio" es el System.nanoTime() de cuando empezo la operacion
+    public void servicio(MetodoServicio metodo, long inicio) {
+        servicio.get(metodo).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+
+    public void repositorio(OperacionRepositorio operacion, long inicio) {
+        repositorio.get(operacion).record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+
+    public void listado(FiltroVuelos filtro, OrdenVuelo orden, boolean paginado, long inicio, int vuelos) {
+        int p = paginado ? 1 : 0;
+        int c = combinacion(filtro);
+        if (c < COMBINACIONES.length) {
+            listado[p][c][orden.ordinal()].record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            resultados[p][c][orden.ordinal()].record(vuelos);
+            return;
+        }
+        int i = posicionExtra(p, c, orden);
+        Timer timer = listadoExtra.get(i);
+        DistributionSummary resumen = resultadosExtra.get(i);
+        if (timer == null || resumen == null) {
+            // Si dos hilos llegan a la vez, el registry devuelve el mismo medidor a los dos
+            timer = timerListado(p, c, orden);
+            resumen = resultadosListado(p, c, orden);
+            listadoExtra.set(i, timer);
+            resultadosExtra.set(i, resumen);
+        }
+        timer.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        resumen.record(vuelos);
+    }
+
+    // Tamaño de la cache del listado (nº de entradas y peso en vuelos)
+    public void cache(Cache<?, ?> cache) {
+        Gauge.builder("vuelos.cache.listado.entradas", cache, Cache::estimatedSize)
+                .description("Entradas en la cache del listado")
+                .register(registry);
+        Gauge.builder("vuelos.cache.listado.peso", cache,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L))
+                .description("Vuelos guardados en la cache del listado")
+                .baseUnit("vuelos")
+                .register(registry);
+    }
+
+    public void cacheAcierto() {
+        cacheAciertos.increment();
+    }
+
+    public void cacheFallo() {
+        cacheFallos.increment();
+    }
+
+    // La entrada existia pero una escritura la ha dejado obsoleta
+    public void cacheObsoleta() {
+        cacheObsoletas.increment();
+    }
+
+    public void cacheDescartada() {
+        cacheDescartadas.increment();
+    }
+
+    public void error(Exception ex, HttpStatus status) {
+        TipoError clave = new TipoError(ex.getClass(), status);
+        Counter contador = errores.get(clave);
+        if (contador == null) {
+            contador = errores.computeIfAbsent(clave, k -> Counter.builder("vuelos.errores")
+                    .description("Excepciones gestionadas por GlobalExceptionHandler")
+                    .tags("tipo", k.tipo().getSimpleName(), "status", String.valueOf(k.status().value()))
+                    .register(registry));
+        }
+        contador.increment();
+    }
+
+    private Timer timerListado(int p, int c, OrdenVuelo orden) {
+        return Timer.builder("vuelos.listado")
+                .description("Tiempo del listado de vuelos")
+                .tags("filtros", nombreCombinacion(c), "ordenarPor", ordenarPor(orden), "paginado", String.valueOf(p == 1))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private DistributionSummary resultadosListado(int p, int c, OrdenVuelo orden) {
+        return DistributionSummary.builder("vuelos.listado.resultados")
+                .description("Numero de vuelos devueltos por el listado")
+                .baseUnit("vuelos")
+                .tags("filtros", nombreCombinacion(c), "ordenarPor", ordenarPor(orden), "paginado", String.valueOf(p == 1))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    // Nombre de una combinacion: la de los filtros originales y despues los extra, separados por "+"
+    private static String nombreCombinacion(int c) {
+        int originales = c & (COMBINACIONES.length - 1);
+        StringBuilder nombre = new StringBuilder(originales == 0 && c != 0 ? "" : COMBINACIONES[originales]);
+        for (int i = 0; i < FILTROS_EXTRA.length; i++) {
+            if ((c & (COMBINACIONES.length << i)) != 0) {
+                nombre.append(nombre.isEmpty() ? "" : "+").append(FILTROS_EXTRA[i]);
+            }
+        }
+        return nombre.toString();
+    }
+
+    private static int posicionExtra(int p, int c, OrdenVuelo orden) {
+        return (p * NUM_COMBINACIONES + c) * NUM_ORDENES + orden.ordinal();
+    }
+
+    private Counter contadorCache(String resultado) {
+        return Counter.builder("vuelos.cache.listado")
+                .description("Consultas a la cache del listado")
+                .tag("resultado", resultado)
+                .register(registry);
+    }
+
+    // Valor del query param "ordenarPor" de cada criterio
+    private static String ordenarPor(OrdenVuelo orden) {
+        return switch (orden) {
+            case FECHA_SALIDA -> "fechaSalida";
+            case EMPRESA -> "empresa";
+            case LUGAR_LLEGADA -> "lugarLlegada";
+        };
+    }
+
+    // Mascara de filtros activos: empresa = 1, lugarLlegada = 2, fechaSalida = 4,
+    // lugarSalida = 8, rangoSalida = 16, enVueloEl = 32
+    private static int combinacion(FiltroVuelos filtro) {
+        return (filtro.empresa() != null ? 1 : 0)
+                | (filtro.lugarLlegada() != null ? 2 : 0)
+                | (filtro.fechaSalida() != null ? 4 : 0)
+                | (filtro.lugarSalida() != null ? 8 : 0)
+                | (filtro.rangoSalida() ? 16 : 0)
+                | (filtro.enVueloEl() != null ? 32 : 0);
+    }
+}
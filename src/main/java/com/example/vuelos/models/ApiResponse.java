@@ -1,5 +1,6 @@
 package com.example.vuelos.models;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -16,10 +17,19 @@ public class ApiResponse<T> {
     private String message;
     // Es la información de la respuesta que pedimos a la API
     private T data;
+    // Cursor para pedir la pagina siguiente de un listado paginado
+    // Solo aparece en el JSON en los listados paginados que tienen mas paginas.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String siguienteCursor;
 
     public ApiResponse(boolean success, String message, T data) {
         this.success = success;
         this.message = message;
         this.data = data;
     }
+
+    public ApiResponse(boolean success, String message, T data, String siguienteCursor) {
+        this(success, message, data);
+        this.siguienteCursor = siguienteCursor;
+    }
 }
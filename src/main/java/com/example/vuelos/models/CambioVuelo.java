@@ -0,0 +1,12 @@
+package com.example.vuelos.models;
+
+// Cambio de un vuelo para el feed de cambios (GET /vuelos/changes).
+// La secuencia es unica y creciente: los cambios de un mismo vuelo tienen siempre la secuencia en el orden
+// en que se aplicaron. vuelo es el vuelo despues del cambio (al eliminar, el que se ha eliminado).
+
+public record CambioVuelo(long secuencia, Tipo tipo, int id, Vuelo vuelo) {
+
+    public enum Tipo {
+        CREADO, ACTUALIZADO, ELIMINADO
+    }
+}
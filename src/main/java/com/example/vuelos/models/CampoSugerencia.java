@@ -0,0 +1,39 @@
+package com.example.vuelos.models;
+
+import java.util.function.Function;
+
+// Campos que se pueden autocompletar en GET /vuelos/suggest (el query param "campo").
+
+public enum CampoSugerencia {
+    EMPRESA("empresa", Vuelo::getEmpresa),
+    LUGAR_SALIDA("lugarSalida", Vuelo::getLugarSalida),
+    LUGAR_LLEGADA("lugarLlegada", Vuelo::getLugarLlegada);
+
+    // Nombre del campo tal y como llega en el query param
+    private final String parametro;
+    private final Function<Vuelo, String> campo;
+
+    CampoSugerencia(String parametro, Function<Vuelo, String> campo) {
+        this.parametro = parametro;
+        this.campo = campo;
+    }
+
+    public String parametro() {
+        return parametro;
+    }
+
+    // Valor del campo en el vuelo
+    public String valor(Vuelo v) {
+        return campo.apply(v);
+    }
+
+    // Campo con ese nombre (sin importar MAYUS o MINUS), o null si no hay ninguno
+    public static CampoSugerencia de(String parametro) {
+        for (CampoSugerencia c : values()) {
+            if (c.parametro.equalsIgnoreCase(parametro == null ? "" : parametro.trim())) {
+                return c;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.vuelos.models;
+
+// Posicion dentro de un listado paginado (keyset pagination).
+// Guarda el criterio de orden y la clave del ultimo vuelo devuelto (valor del campo + id),
+// la pagina siguiente empieza justo despues de esa clave.
+// Al no depender de un offset, la paginacion es estable aunque se creen o eliminen vuelos entre una pagina y otra.
+// En la API viaja codificado como un String opaco (ver CursorUtils).
+
+public record Cursor(OrdenVuelo orden, Object valor, int id) {
+
+    // Cursor que apunta al vuelo indicado.
+    public static Cursor de(OrdenVuelo orden, Vuelo v) {
+        return new Cursor(orden, orden.clave(v), v.getId());
+    }
+
+    // Indica si el vuelo va despues de la posicion del cursor.
+    public boolean esAnterior(Vuelo v) {
+        int c = orden.compararClave(valor, orden.clave(v));
+        return c != 0 ? c < 0 : id < v.getId();
+    }
+}
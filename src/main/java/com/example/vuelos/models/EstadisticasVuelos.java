@@ -0,0 +1,15 @@
+package com.example.vuelos.models;
+
+import java.util.List;
+
+// Estadisticas del catalogo: numero de vuelos y duracion media (en dias), en total y por empresa,
+// por lugarLlegada (destino) y por fechaSalida.
+// La duracion media es null si no hay ningun vuelo con las dos fechas.
+
+public record EstadisticasVuelos(long vuelos, Double duracionMediaDias,
+                                 List<Grupo> porEmpresa, List<Grupo> porLugarLlegada, List<Grupo> porFechaSalida) {
+
+    // Un valor del campo (como se escribio la primera vez) con sus vuelos
+    public record Grupo(String valor, long vuelos, Double duracionMediaDias) {
+    }
+}
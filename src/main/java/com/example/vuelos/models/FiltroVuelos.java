@@ -0,0 +1,95 @@
+package com.example.vuelos.models;
+
+import com.example.vuelos.utils.TextoUtils;
+
+import java.time.LocalDate;
+
+// Filtros combinables del listado ya normalizados:
+// - empresa, lugarSalida y lugarLlegada (lugarSalida + lugarLlegada = una ruta)
+// - fechaSalida: un dia exacto
+// - fechaSalidaDesde / fechaSalidaHasta: rango de dias de salida (ambos incluidos, cada extremo es opcional)
+// - enVueloEl: vuelos que estan en el aire ese dia (fechaSalida <= dia <= fechaLlegada)
+// Los Strings se guardan con TextoUtils.normalizar, asi se normalizan una sola vez por peticion
+// y no una vez por cada vuelo que se compara.
+// Si un filtro no se usa, su campo es null.
+
+public record FiltroVuelos(String empresa,
+                           String lugarSalida,
+                           String lugarLlegada,
+                           LocalDate fechaSalida,
+                           LocalDate fechaSalidaDesde,
+                           LocalDate fechaSalidaHasta,
+                           LocalDate enVueloEl) {
+
+    // Crea el filtro a partir de los query params, los valores null o vacíos se ignoran.
+    public static FiltroVuelos de(String empresa,
+                                  String lugarSalida,
+                                  String lugarLlegada,
+                                  LocalDate fechaSalida,
+                                  LocalDate fechaSalidaDesde,
+                                  LocalDate fechaSalidaHasta,
+                                  LocalDate enVueloEl) {
+        return new FiltroVuelos(normalizarFiltro(empresa), normalizarFiltro(lugarSalida), normalizarFiltro(lugarLlegada),
+                fechaSalida, fechaSalidaDesde, fechaSalidaHasta, enVueloEl);
+    }
+
+    // Solo con los filtros originales (empresa, lugarLlegada, fechaSalida).
+    public static FiltroVuelos de(String empresa, String lugarLlegada, LocalDate fechaSalida) {
+        return de(empresa, null, lugarLlegada, fechaSalida, null, null, null);
+    }
+
+    // Indica si no hay ningun filtro activo.
+    public boolean vacio() {
+        return empresa == null && lugarSalida == null && lugarLlegada == null && fechaSalida == null
+                && !rangoSalida() && enVueloEl == null;
+    }
+
+    // Indica si hay rango de fechaSalida (al menos uno de los extremos).
+    public boolean rangoSalida() {
+        return fechaSalidaDesde != null || fechaSalidaHasta != null;
+    }
+
+    // Primer dia de salida posible segun los filtros de fecha (null = sin limite).
+    public LocalDate salidaMinima() {
+        return mayor(fechaSalida, fechaSalidaDesde);
+    }
+
+    // Ultimo dia de salida posible segun los filtros de fecha (null = sin limite).
+    // Un vuelo en el aire el dia D ha salido como muy tarde ese dia.
+    public LocalDate salidaMaxima() {
+        return menor(menor(fechaSalida, fechaSalidaHasta), enVueloEl);
+    }
+
+    // Comprueba si un vuelo cumple todos los filtros activos.
+    // Se compara sin crear Strings nuevos (TextoUtils.coincide).
+    public boolean cumple(Vuelo v) {
+        return (empresa == null || TextoUtils.coincide(v.getEmpresa(), empresa))
+                && (lugarSalida == null || TextoUtils.coincide(v.getLugarSalida(), lugarSalida))
+                && (lugarLlegada == null || TextoUtils.coincide(v.getLugarLlegada(), lugarLlegada))
+                && (fechaSalida == null || fechaSalida.equals(v.getFechaSalida()))
+                && (fechaSalidaDesde == null || (v.getFechaSalida() != null && !v.getFechaSalida().isBefore(fechaSalidaDesde)))
+                && (fechaSalidaHasta == null || (v.getFechaSalida() != null && !v.getFechaSalida().isAfter(fechaSalidaHasta)))
+                && (enVueloEl == null || enVuelo(v, enVueloEl));
+    }
+
+    // Indica si el vuelo esta en el aire ese dia (sale ese dia o antes y llega ese dia o despues).
+    public static boolean enVuelo(Vuelo v, LocalDate dia) {
+        return v.getFechaSalida() != null && v.getFechaLlegada() != null
+                && !v.getFechaSalida().isAfter(dia) && !v.getFechaLlegada().isBefore(dia);
+    }
+
+    private static String normalizarFiltro(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return TextoUtils.normalizar(value);
+    }
+
+    private static LocalDate mayor(LocalDate a, LocalDate b) {
+        return a == null ? b : b == null || a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate menor(LocalDate a, LocalDate b) {
+        return a == null ? b : b == null || a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.vuelos.models;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+// Itinerario de origen a destino: los vuelos (tramos) en el orden en que se toman.
+// Cada tramo sale del lugar al que llega el anterior, y nunca antes de que el anterior haya llegado
+// (fechaLlegada del tramo n <= fechaSalida del tramo n+1).
+
+public record Itinerario(List<Vuelo> vuelos) {
+
+    public Itinerario {
+        vuelos = List.copyOf(vuelos);
+    }
+
+    // Numero de escalas (un vuelo directo tiene 0)
+    public int escalas() {
+        return vuelos.size() - 1;
+    }
+
+    public LocalDate fechaSalida() {
+        return vuelos.getFirst().getFechaSalida();
+    }
+
+    public LocalDate fechaLlegada() {
+        return vuelos.getLast().getFechaLlegada();
+    }
+
+    // Dias desde la salida del primer tramo hasta la llegada del ultimo
+    public long duracionDias() {
+        return ChronoUnit.DAYS.between(fechaSalida(), fechaLlegada());
+    }
+}
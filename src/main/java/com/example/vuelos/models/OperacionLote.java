@@ -0,0 +1,16 @@
+package com.example.vuelos.models;
+
+// Una operacion dentro de un lote (POST /vuelos/batch).
+// - CREAR usa "vuelo".
+// - ACTUALIZAR usa "id" y "vuelo".
+// - ELIMINAR usa solo "id".
+// Si la operacion recibida no es valida, tipo es null y el service la marca como error.
+
+public record OperacionLote(Tipo tipo, Integer id, Vuelo vuelo) {
+
+    public enum Tipo {
+        CREAR,
+        ACTUALIZAR,
+        ELIMINAR
+    }
+}
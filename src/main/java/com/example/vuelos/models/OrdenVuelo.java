@@ -0,0 +1,56 @@
+package com.example.vuelos.models;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+// Criterios de ordenacion del listado (el query param "ordenarPor").
+// Cada criterio sabe de que campo sale su clave y como se comparan las claves.
+// La ID se usa siempre como desempate, asi el orden es total y el mismo en cada peticion.
+// El repositorio usa estas mismas claves para mantener sus vistas ya ordenadas.
+
+public enum OrdenVuelo {
+    FECHA_SALIDA(Vuelo::getFechaSalida, Comparator.naturalOrder()),
+    EMPRESA(Vuelo::getEmpresa, String.CASE_INSENSITIVE_ORDER),
+    LUGAR_LLEGADA(Vuelo::getLugarLlegada, String.CASE_INSENSITIVE_ORDER);
+
+    private final Function<Vuelo, Object> campo;
+    private final Comparator<Object> comparadorClave;
+    private final Comparator<Vuelo> comparador;
+
+    @SuppressWarnings("unchecked")
+    <T> OrdenVuelo(Function<Vuelo, T> campo, Comparator<? super T> comparadorClave) {
+        this.campo = (Function<Vuelo, Object>) campo;
+        this.comparadorClave = (Comparator<Object>) comparadorClave;
+        this.comparador = (a, b) -> {
+            int c = compararClave(clave(a), clave(b));
+            return c != 0 ? c : Integer.compare(a.getId(), b.getId());
+        };
+    }
+
+    // Criterio de un valor de "ordenarPor" (fechaSalida si no viene), null si no es ninguno de los 3
+    public static OrdenVuelo de(String ordenarPor) {
+        if (ordenarPor == null || ordenarPor.isBlank()) {
+            return FECHA_SALIDA;
+        }
+        return switch (ordenarPor.trim()) {
+            case "fechaSalida" -> FECHA_SALIDA;
+            case "empresa" -> EMPRESA;
+            case "lugarLlegada" -> LUGAR_LLEGADA;
+            default -> null;
+        };
+    }
+
+    // Valor del campo por el que se ordena
+    public Object clave(Vuelo v) {
+        return campo.apply(v);
+    }
+
+    public int compararClave(Object a, Object b) {
+        return comparadorClave.compare(a, b);
+    }
+
+    // Comparador completo: clave y despues la ID.
+    public Comparator<Vuelo> comparador() {
+        return comparador;
+    }
+}
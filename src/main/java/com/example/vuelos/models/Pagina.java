@@ -0,0 +1,9 @@
+package com.example.vuelos.models;
+
+import java.util.List;
+
+// Una pagina de un listado paginado.
+// siguienteCursor es null cuando ya no quedan mas elementos.
+
+public record Pagina<T>(List<T> elementos, String siguienteCursor) {
+}
@@ -0,0 +1,12 @@
+package com.example.vuelos.models;
+
+// Resultado de una operacion de un lote, en la misma posicion (indice) que la operacion recibida.
+// Si la operacion se ha aplicado, error es null y vuelo tiene el vuelo creado/actualizado (null al eliminar).
+// Si no, error tiene la excepcion que explica por que (la misma que lanzaria el endpoint individual).
+
+public record ResultadoLote(int indice, OperacionLote.Tipo tipo, Vuelo vuelo, RuntimeException error) {
+
+    public boolean correcto() {
+        return error == null;
+    }
+}
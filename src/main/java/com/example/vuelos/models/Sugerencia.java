@@ -0,0 +1,6 @@
+package com.example.vuelos.models;
+
+// Un valor sugerido para autocompletar (como se escribio la primera vez) y cuantos vuelos lo tienen.
+
+public record Sugerencia(String valor, long vuelos) {
+}
@@ -1,36 +1,35 @@
 package com.example.vuelos.models;
 
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+import lombok.With;
 
 import java.time.LocalDate;
 
 // Es donde se crea la entidad Vuelo, con sus campos propios (id, nombreVuelo, empresa etc...)
-// Usamos Lombok para generar Getters, setters y toString.
+// Usamos Lombok para generar Getters, equals/hashCode y toString.
 // Estos campos se usan en la capa de persistencia Repository y en el service.
 // No se expone directamente en la API, si no que se manejan a partir de los DTOs
 
 // Use lombok en el proyecto porque facilita mucho la vida.
-// Data genera los getters, setters y toString automaticamente.
-// NoArgsConstructor genera el constructor vacío.
-@Data
-@NoArgsConstructor
+// Value hace la clase inmutable: todos los campos son final y no hay setters.
+// Asi un vuelo guardado no puede cambiar nunca, quien lo esta leyendo (un listado, una ordenacion, el export)
+// siempre ve todos sus campos de la misma version. Para "modificarlo" se crea otro con toBuilder() o withX().
+// Builder genera Vuelo.builder()...build() para crearlo.
+@Value
+@Builder(toBuilder = true)
 public class Vuelo {
-    private int id;
-    private String nombreVuelo;
-    private String empresa;
-    private String lugarSalida;
-    private String lugarLlegada;
-    private LocalDate fechaSalida;
-    private LocalDate fechaLlegada;
-
-    private Vuelo(int id, String nombreVuelo, String empresa, String lugarSalida, String lugarLlegada, LocalDate fechaSalida, LocalDate fechaLlegada) {
-        this.id = id;
-        this.nombreVuelo = nombreVuelo;
-        this.empresa = empresa;
-        this.lugarSalida = lugarSalida;
-        this.lugarLlegada = lugarLlegada;
-        this.fechaSalida = fechaSalida;
-        this.fechaLlegada = fechaLlegada;
-    }
+    // La pone el repositorio al guardar
+    @With
+    int id;
+    String nombreVuelo;
+    String empresa;
+    String lugarSalida;
+    String lugarLlegada;
+    LocalDate fechaSalida;
+    LocalDate fechaLlegada;
+    // Version del vuelo: empieza en 1 y sube en cada actualizacion (la pone el repositorio, no llega en la API).
+    // Se usa para los ETag y para el If-Match del PUT.
+    @With
+    long version;
 }
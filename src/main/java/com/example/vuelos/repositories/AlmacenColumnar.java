@@ -0,0 +1,357 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.cluster.ParticionVuelos;
+import com.example.vuelos.models.Vuelo;
+
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Almacen por columnas: en vez de un objeto Vuelo por fila se guarda cada campo en su propio array, indexado por la ID.
+// Las IDs salen de una secuencia, asi que son densas: en un cluster de n nodos cada nodo genera una de cada n IDs
+// (ver ParticionVuelos), y la fila de una ID es su posicion en la secuencia del nodo, (id - 1) / n.
+// - empresa, lugarSalida y lugarLlegada se repiten mucho: se guardan como el codigo (int) de un diccionario de textos,
+//   cada texto distinto se guarda una sola vez.
+// - Las fechas se guardan como el dia epoch (int).
+// - nombreVuelo es unico por vuelo, asi que se guarda el String tal cual.
+// - La version del vuelo es un long.
+// Los objetos Vuelo solo se crean al leer (cada lectura devuelve uno nuevo), y los textos que llevan son los del
+// diccionario, compartidos por todos los vuelos.
+//
+// Las lecturas no cogen ningun cerrojo y las escrituras de IDs distintas no se esperan entre si:
+// - VueloRepository ya escribe cada ID con el cerrojo de su ID, asi que una fila nunca tiene dos escritores a la vez.
+// - Cada fila tiene un contador de escrituras (impar mientras se escribe). Quien lee copia la fila y despues comprueba
+//   que el contador no ha cambiado; si ha cambiado la vuelve a leer, asi nunca ve una fila a medio escribir.
+// - Las filas con vuelo se marcan en un mapa de bits, asi los recorridos solo visitan esas filas.
+// - Las columnas se publican juntas (Columnas) en un campo volatile. Crecer es lo unico que para a los escritores:
+//   escriben con el cerrojo de lectura de "crecer" (compartido entre ellos) y crecer coge el de escritura.
+class AlmacenColumnar implements AlmacenVuelos {
+
+    private static final int CAPACIDAD_INICIAL = 1024;
+    private static final int SIN_TEXTO = -1;
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+
+    // Nodo del cluster y numero de nodos: solo se guardan las IDs que genera este nodo
+    private final int nodo;
+    private final int nodos;
+
+    // Columnas (una fila por ID, ver fila())
+    private volatile Columnas columnas = new Columnas(CAPACIDAD_INICIAL);
+    private final ReentrantReadWriteLock crecer = new ReentrantReadWriteLock();
+    private final AtomicInteger total = new AtomicInteger();
+
+    // Diccionario de textos (texto <-> codigo). Los codigos no se borran nunca.
+    // Los textos solo se añaden con "cerrojoTextos"; el array se vuelve a publicar despues de cada alta.
+    private final Map<String, Integer> codigos = new ConcurrentHashMap<>();
+    private final ReentrantLock cerrojoTextos = new ReentrantLock();
+    private volatile String[] textos = new String[64];
+    private int numTextos;
+
+    AlmacenColumnar() {
+        this(ParticionVuelos.unica());
+    }
+
+    AlmacenColumnar(ParticionVuelos particion) {
+        this.nodo = particion.nodo();
+        this.nodos = particion.nodos();
+    }
+
+    // Todas las columnas con la misma capacidad, para cambiarlas de una vez al crecer
+    private static final class Columnas {
+        final String[] nombres;
+        final int[] empresas;
+        final int[] salidas;
+        final int[] llegadas;
+        final int[] fechasSalida;
+        final int[] fechasLlegada;
+        final long[] versiones;
+        // Contador de escrituras de cada fila (impar = se esta escribiendo)
+        final AtomicIntegerArray escrituras;
+        // Filas con vuelo (un bit por fila)
+        final AtomicLongArray vivos;
+
+        Columnas(int capacidad) {
+            this(new String[capacidad], new int[capacidad], new int[capacidad], new int[capacidad], new int[capacidad],
+                    new int[capacidad], new long[capacidad], new AtomicIntegerArray(capacidad),
+                    new AtomicLongArray((capacidad + 63) >>> 6));
+        }
+
+        private Columnas(String[] nombres, int[] empresas, int[] salidas, int[] llegadas, int[] fechasSalida,
+                         int[] fechasLlegada, long[] versiones, AtomicIntegerArray escrituras, AtomicLongArray vivos) {
+            this.nombres = nombres;
+            this.empresas = empresas;
+            this.salidas = salidas;
+            this.llegadas = llegadas;
+            this.fechasSalida = fechasSalida;
+            this.fechasLlegada = fechasLlegada;
+            this.versiones = versiones;
+            this.escrituras = escrituras;
+            this.vivos = vivos;
+        }
+
+        int capacidad() {
+            return nombres.length;
+        }
+
+        boolean vivo(int fila) {
+            return (vivos.get(fila >>> 6) & (1L << fila)) != 0;
+        }
+
+        // Copia con al menos "fila + 1" filas (crece un 50% cada vez). Nadie escribe mientras tanto.
+        Columnas crecer(int fila) {
+            int capacidad = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(fila + 1L, capacidad() + (capacidad() >> 1)));
+            AtomicIntegerArray nuevasEscrituras = new AtomicIntegerArray(capacidad);
+            for (int i = 0; i < escrituras.length(); i++) {
+                nuevasEscrituras.set(i, escrituras.get(i));
+            }
+            AtomicLongArray nuevosVivos = new AtomicLongArray((capacidad + 63) >>> 6);
+            for (int i = 0; i < vivos.length(); i++) {
+                nuevosVivos.set(i, vivos.get(i));
+            }
+            return new Columnas(Arrays.copyOf(nombres, capacidad), Arrays.copyOf(empresas, capacidad),
+                    Arrays.copyOf(salidas, capacidad), Arrays.copyOf(llegadas, capacidad),
+                    Arrays.copyOf(fechasSalida, capacidad), Arrays.copyOf(fechasLlegada, capacidad),
+                    Arrays.copyOf(versiones, capacidad), nuevasEscrituras, nuevosVivos);
+        }
+    }
+
+    @Override
+    public Vuelo get(int id) {
+        return leer(columnas, fila(id));
+    }
+
+    @Override
+    public boolean contiene(int id) {
+        int fila = fila(id);
+        Columnas c = columnas;
+        return fila >= 0 && fila < c.capacidad() && c.vivo(fila);
+    }
+
+    @Override
+    public void put(Vuelo v) {
+        int fila = fila(v.getId());
+        if (fila < 0) {
+            throw new IllegalArgumentException("ID que no genera este nodo: " + v.getId());
+        }
+        // Los codigos se sacan antes: el diccionario tiene su propio cerrojo
+        int empresa = codificar(v.getEmpresa());
+        int salida = codificar(v.getLugarSalida());
+        int llegada = codificar(v.getLugarLlegada());
+        Columnas c = columnasPara(fila);
+        try {
+            int escritura = empezarEscritura(c, fila);
+            c.nombres[fila] = v.getNombreVuelo();
+            c.empresas[fila] = empresa;
+            c.salidas[fila] = salida;
+            c.llegadas[fila] = llegada;
+            c.fechasSalida[fila] = fecha(v.getFechaSalida());
+            c.fechasLlegada[fila] = fecha(v.getFechaLlegada());
+            c.versiones[fila] = v.getVersion();
+            if ((c.vivos.getAndBitwiseOr(fila >>> 6, 1L << fila) & (1L << fila)) == 0) {
+                total.incrementAndGet();
+            }
+            c.escrituras.set(fila, escritura + 2);
+        } finally {
+            crecer.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Vuelo remove(int id) {
+        int fila = fila(id);
+        Columnas c = columnas;
+        if (fila < 0 || fila >= c.capacidad() || !c.vivo(fila)) {
+            return null;
+        }
+        c = columnasPara(fila);
+        try {
+            // Nadie mas escribe esta fila (cerrojo de la ID), asi que se puede leer tal cual
+            Vuelo eliminado = leer(c, fila);
+            if (eliminado != null) {
+                int escritura = empezarEscritura(c, fila);
+                c.vivos.getAndBitwiseAnd(fila >>> 6, ~(1L << fila));
+                c.nombres[fila] = null;
+                c.escrituras.set(fila, escritura + 2);
+                total.decrementAndGet();
+            }
+            return eliminado;
+        } finally {
+            crecer.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return total.get();
+    }
+
+    // Recorre solo las filas con vuelo (las que lo tenian al empezar, segun el mapa de bits de cada palabra),
+    // cada fila se lee (y se crea su Vuelo) al consumirla.
+    @Override
+    public Stream<Vuelo> stream() {
+        AtomicLongArray vivos = columnas.vivos;
+        return IntStream.range(0, vivos.length())
+                .flatMap(palabra -> filasVivas(vivos, palabra))
+                .mapToObj(fila -> leer(columnas, fila))
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public List<Vuelo> copia() {
+        Columnas c = columnas;
+        List<Vuelo> copia = new ArrayList<>(total.get());
+        for (int palabra = 0; palabra < c.vivos.length(); palabra++) {
+            for (long bits = c.vivos.get(palabra); bits != 0; bits &= bits - 1) {
+                Vuelo v = leer(c, (palabra << 6) + Long.numberOfTrailingZeros(bits));
+                if (v != null) {
+                    copia.add(v);
+                }
+            }
+        }
+        return List.copyOf(copia);
+    }
+
+    // Fila de una ID: su posicion en la secuencia de IDs de este nodo (-1 si la ID no es de este nodo)
+    private int fila(int id) {
+        if (id < 1 || ParticionVuelos.nodoDeId(id, nodos) != nodo) {
+            return -1;
+        }
+        return (id - 1) / nodos;
+    }
+
+    private int id(int fila) {
+        return fila * nodos + nodo + 1;
+    }
+
+    // Crea el Vuelo de una fila sin cerrojos: si la fila se escribe mientras se lee, se vuelve a leer.
+    private Vuelo leer(Columnas c, int fila) {
+        if (fila < 0 || fila >= c.capacidad()) {
+            return null;
+        }
+        while (true) {
+            int escritura = c.escrituras.get(fila);
+            if ((escritura & 1) == 0) {
+                boolean vivo = c.vivo(fila);
+                String nombre = c.nombres[fila];
+                int empresa = c.empresas[fila];
+                int salida = c.salidas[fila];
+                int llegada = c.llegadas[fila];
+                int fechaSalida = c.fechasSalida[fila];
+                int fechaLlegada = c.fechasLlegada[fila];
+                long version = c.versiones[fila];
+                // Las lecturas de la fila no pueden quedar despues de volver a leer el contador
+                VarHandle.acquireFence();
+                if (c.escrituras.get(fila) == escritura) {
+                    if (!vivo) {
+                        return null;
+                    }
+                    return Vuelo.builder()
+                            .id(id(fila))
+                            .nombreVuelo(nombre)
+                            .empresa(texto(empresa))
+                            .lugarSalida(texto(salida))
+                            .lugarLlegada(texto(llegada))
+                            .fechaSalida(fecha(fechaSalida))
+                            .fechaLlegada(fecha(fechaLlegada))
+                            .version(version)
+                            .build();
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // Marca la fila como "escribiendose" (contador impar) y devuelve el contador de antes.
+    // Al terminar se pone contador + 2, que publica la fila entera.
+    private static int empezarEscritura(Columnas c, int fila) {
+        int escritura = c.escrituras.get(fila);
+        c.escrituras.set(fila, escritura + 1);
+        // Las escrituras de la fila no pueden adelantarse a la marca
+        VarHandle.storeStoreFence();
+        return escritura;
+    }
+
+    // Columnas donde cabe la fila, con el cerrojo de lectura de "crecer" cogido (hay que soltarlo al terminar).
+    private Columnas columnasPara(int fila) {
+        while (true) {
+            crecer.readLock().lock();
+            Columnas c = columnas;
+            if (fila < c.capacidad()) {
+                return c;
+            }
+            crecer.readLock().unlock();
+            crecer.writeLock().lock();
+            try {
+                if (fila >= columnas.capacidad()) {
+                    columnas = columnas.crecer(fila);
+                }
+            } finally {
+                crecer.writeLock().unlock();
+            }
+        }
+    }
+
+    // Filas con vuelo de una palabra del mapa de bits
+    private static IntStream filasVivas(AtomicLongArray vivos, int palabra) {
+        long bits = vivos.get(palabra);
+        if (bits == 0) {
+            return IntStream.empty();
+        }
+        int[] filas = new int[Long.bitCount(bits)];
+        for (int i = 0; bits != 0; i++, bits &= bits - 1) {
+            filas[i] = (palabra << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        return IntStream.of(filas);
+    }
+
+    private int codificar(String texto) {
+        if (texto == null) {
+            return SIN_TEXTO;
+        }
+        Integer codigo = codigos.get(texto);
+        if (codigo != null) {
+            return codigo;
+        }
+        cerrojoTextos.lock();
+        try {
+            codigo = codigos.get(texto);
+            if (codigo == null) {
+                String[] actuales = textos;
+                if (numTextos == actuales.length) {
+                    actuales = Arrays.copyOf(actuales, actuales.length * 2);
+                }
+                actuales[numTextos] = texto;
+                textos = actuales;
+                codigo = numTextos++;
+                codigos.put(texto, codigo);
+            }
+            return codigo;
+        } finally {
+            cerrojoTextos.unlock();
+        }
+    }
+
+    private String texto(int codigo) {
+        return codigo == SIN_TEXTO ? null : textos[codigo];
+    }
+
+    private static int fecha(LocalDate fecha) {
+        return fecha == null ? SIN_FECHA : Math.toIntExact(fecha.toEpochDay());
+    }
+
+    private static LocalDate fecha(int epochDay) {
+        return epochDay == SIN_FECHA ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
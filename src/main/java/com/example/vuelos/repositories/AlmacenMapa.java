@@ -0,0 +1,50 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.Vuelo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Almacen con un ConcurrentHashMap (id -> vuelo).
+// Las lecturas devuelven el mismo objeto guardado y nunca bloquean.
+class AlmacenMapa implements AlmacenVuelos {
+
+    private final Map<Integer, Vuelo> vuelos = new ConcurrentHashMap<>();
+
+    @Override
+    public Vuelo get(int id) {
+        return vuelos.get(id);
+    }
+
+    @Override
+    public boolean contiene(int id) {
+        return vuelos.containsKey(id);
+    }
+
+    @Override
+    public void put(Vuelo vuelo) {
+        vuelos.put(vuelo.getId(), vuelo);
+    }
+
+    @Override
+    public Vuelo remove(int id) {
+        return vuelos.remove(id);
+    }
+
+    @Override
+    public int size() {
+        return vuelos.size();
+    }
+
+    @Override
+    public Stream<Vuelo> stream() {
+        return vuelos.values().stream();
+    }
+
+    @Override
+    public List<Vuelo> copia() {
+        return List.copyOf(vuelos.values());
+    }
+}
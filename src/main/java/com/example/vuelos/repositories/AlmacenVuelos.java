@@ -0,0 +1,47 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.cluster.ParticionVuelos;
+import com.example.vuelos.models.Vuelo;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+// Almacen principal del repositorio (id -> vuelo), sin indices ni cerrojos por ID: eso lo pone VueloRepository.
+// Hay dos implementaciones y se elige con "vuelos.almacen":
+// - mapa: un ConcurrentHashMap con los objetos Vuelo tal cual (por defecto).
+// - columnar: columnas de tipos primitivos, los Vuelo se crean solo al leerlos (ocupa mucha menos memoria).
+interface AlmacenVuelos {
+
+    // Vuelo con esa ID, o null si no existe
+    Vuelo get(int id);
+
+    boolean contiene(int id);
+
+    // Inserta o sustituye el vuelo con su ID
+    void put(Vuelo vuelo);
+
+    // Elimina el vuelo y lo devuelve, o null si no existia
+    Vuelo remove(int id);
+
+    int size();
+
+    // Recorre los vuelos sin copiarlos antes (puede ver o no las escrituras que ocurren mientras tanto)
+    Stream<Vuelo> stream();
+
+    // Copia de todos los vuelos en este momento
+    List<Vuelo> copia();
+
+    static AlmacenVuelos de(String tipo) {
+        return de(tipo, ParticionVuelos.unica());
+    }
+
+    // El columnar necesita saber que IDs genera este nodo para que sus columnas no tengan huecos
+    static AlmacenVuelos de(String tipo, ParticionVuelos particion) {
+        return switch (tipo.trim().toLowerCase(Locale.ROOT)) {
+            case "mapa" -> new AlmacenMapa();
+            case "columnar" -> new AlmacenColumnar(particion);
+            default -> throw new IllegalArgumentException("vuelos.almacen debe ser: mapa, columnar");
+        };
+    }
+}
@@ -0,0 +1,527 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.models.Vuelo;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Historico de vuelos en disco (almacen "frio", desactivado por defecto).
+// Los vuelos que ya han llegado (fechaLlegada antes de hoy) no los consulta nadie al reservar, pero ocupaban memoria
+// y hacian mas largos todos los recorridos. Cada "intervalo-minutos" un hilo los pasa del repositorio a este fichero
+// (ver VueloRepository.archivar) y en memoria solo quedan los vuelos de hoy en adelante.
+// - El fichero (historico.bin) solo crece: se le añaden bloques de hasta "vuelos-por-bloque" vuelos comprimidos
+//   con Deflater (empresas y ciudades se repiten mucho y comprimen muy bien), cada uno con su CRC.
+// - En memoria solo queda un resumen por bloque (donde esta, sus IDs ordenadas y el rango de fechaSalida, asi un filtro
+//   de fechas se salta los bloques que no le tocan sin leerlos) y un array por ID con el bloque que tiene su copia
+//   vigente, como las columnas de AlmacenColumnar (en un cluster de n nodos, la posicion de una ID es (id - 1) / n).
+//   En total unos 8 bytes por vuelo archivado.
+// - Los bloques leidos se guardan descomprimidos en una cache pequeña (Caffeine), por si se consultan seguidos.
+// - Los vuelos del historico son de solo lectura. Si un vuelo que ya esta en el fichero no se llega a quitar del
+//   repositorio (se modifico mientras tanto, o el proceso se cayo antes de apuntarlo en el diario), se añade
+//   un bloque de "anulados" con su ID: las copias anteriores dejan de valer y el vuelo sigue vivo en memoria.
+//   Si una ID aparece en varios bloques solo vale la copia del mas reciente.
+// - Si el proceso se cae a mitad de un bloque, al arrancar se corta el fichero en el ultimo bloque completo.
+//
+// Formato de un bloque:
+//   tipo (byte), nº de IDs, tamaño del contenido, CRC32 del contenido, fechaSalida minima y maxima (dia epoch),
+//   y despues el contenido: las IDs ordenadas (int) y, si es de vuelos, los vuelos en ese orden comprimidos.
+
+@Component
+public class ArchivoVuelos {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchivoVuelos.class);
+
+    private static final String FICHERO = "historico.bin";
+    private static final int TAM_CABECERA = 21;
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    // Tipos de bloque
+    private static final byte VUELOS = 1;
+    private static final byte ANULADOS = 2;
+
+    // Resumen en memoria de un bloque de vuelos
+    private record Bloque(int numero, long posicion, int tamano, int[] ids, int salidaMinima, int salidaMaxima) {
+
+        boolean enRango(LocalDate desde, LocalDate hasta) {
+            return (desde == null || salidaMaxima >= desde.toEpochDay()) && (hasta == null || salidaMinima <= hasta.toEpochDay());
+        }
+    }
+
+    private final boolean habilitado;
+    private final Path directorio;
+    private final long intervaloMinutos;
+    private final int vuelosPorBloque;
+
+    // Bloques de vuelos en el orden del fichero
+    private final List<Bloque> bloques = new CopyOnWriteArrayList<>();
+    // ID -> numero del bloque con su copia vigente + 1 (0 si no esta en el historico o se ha anulado).
+    // Solo lo cambia quien escribe (y crece copiandolo), las lecturas no se bloquean.
+    // Cada nodo del cluster solo archiva sus IDs (una de cada "nodos"), asi que se indexa por (id - 1) / nodos.
+    private volatile AtomicIntegerArray bloquePorId = new AtomicIntegerArray(CAPACIDAD_INICIAL);
+    private int nodos = 1;
+    // Mayor ID que ha pasado por el historico (aunque despues se haya anulado)
+    private int maximoId;
+    // Bloques descomprimidos, por numero de bloque
+    private final Cache<Integer, Vuelo[]> cache;
+    // Solo escribe un hilo a la vez (el del historico, o el arranque)
+    private final ReentrantLock cerrojoEscritura = new ReentrantLock();
+    // Para las lecturas se usan lecturas posicionales, que se pueden hacer desde varios hilos a la vez
+    private FileChannel canal;
+    private long tamano;
+    private ScheduledExecutorService hilo;
+
+    public ArchivoVuelos(@Value("${vuelos.historico.habilitado:false}") boolean habilitado,
+                         @Value("${vuelos.historico.directorio:data/historico}") String directorio,
+                         @Value("${vuelos.historico.intervalo-minutos:60}") long intervaloMinutos,
+                         @Value("${vuelos.historico.vuelos-por-bloque:1024}") int vuelosPorBloque,
+                         @Value("${vuelos.historico.cache-bloques:64}") long cacheBloques) {
+        this.habilitado = habilitado;
+        this.directorio = Path.of(directorio);
+        this.intervaloMinutos = intervaloMinutos;
+        this.vuelosPorBloque = vuelosPorBloque;
+        this.cache = Caffeine.newBuilder().maximumSize(cacheBloques).build();
+    }
+
+    // Historico desactivado: los vuelos se quedan siempre en memoria.
+    public static ArchivoVuelos desactivado() {
+        return new ArchivoVuelos(false, "data/historico", 0, 1024, 0);
+    }
+
+    public boolean habilitado() {
+        return habilitado;
+    }
+
+    int vuelosPorBloque() {
+        return vuelosPorBloque;
+    }
+
+    // Lee el resumen de todos los bloques (sin descomprimir los vuelos) y arranca el hilo que archiva.
+    // Se llama cuando el repositorio ya ha recuperado sus vuelos desde disco:
+    // - La secuencia de IDs se pone por encima de las del historico, asi nunca se reutiliza una ID archivada.
+    // - Las IDs que estan a la vez en el repositorio y en el historico se anulan aqui (vale la de memoria).
+    void abrir(VueloRepository repositorio) {
+        if (!habilitado) {
+            return;
+        }
+        nodos = repositorio.particion().nodos();
+        try {
+            Files.createDirectories(directorio);
+            canal = FileChannel.open(directorio.resolve(FICHERO),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            leerResumen();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el historico de vuelos en " + directorio, e);
+        }
+
+        List<Integer> enMemoria = new ArrayList<>();
+        for (Bloque b : bloques) {
+            for (int id : b.ids()) {
+                if (bloque(id) == b.numero() && repositorio.findById(id).isPresent()) {
+                    enMemoria.add(id);
+                }
+            }
+        }
+        repositorio.recuperarSiguienteId(maximoId + 1);
+        anular(enMemoria);
+        log.info("Historico de vuelos abierto: {} bloques", bloques.size());
+
+        if (intervaloMinutos > 0) {
+            hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "vuelos-historico");
+                t.setDaemon(true);
+                return t;
+            });
+            hilo.scheduleWithFixedDelay(() -> {
+                try {
+                    int archivados = repositorio.archivar(LocalDate.now());
+                    if (archivados > 0) {
+                        log.info("Vuelos pasados al historico: {}", archivados);
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Error pasando vuelos al historico", e);
+                }
+            }, intervaloMinutos, intervaloMinutos, TimeUnit.MINUTES);
+        }
+    }
+
+    // Se deja terminar el archivado que este en marcha (interrumpirlo a mitad de escribir cortaria el final del fichero)
+    @PreDestroy
+    public void cerrar() {
+        if (hilo != null) {
+            hilo.shutdown();
+            try {
+                if (!hilo.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.warn("El archivado de vuelos no ha terminado a tiempo al cerrar");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                log.warn("Error cerrando el historico de vuelos", e);
+            }
+        }
+    }
+
+    // Vuelo archivado con esa ID, o null si no esta en el historico
+    Vuelo buscar(int id) {
+        if (!habilitado) {
+            return null;
+        }
+        int bloque = bloque(id);
+        if (bloque < 0) {
+            return null;
+        }
+        Bloque b = bloques.get(bloque);
+        int i = Arrays.binarySearch(b.ids(), id);
+        return i < 0 ? null : vuelos(b)[i];
+    }
+
+    // Vuelos archivados con fechaSalida entre desde y hasta (null = sin limite), bloque a bloque.
+    // Solo se leen los bloques cuyo rango de fechas coincide, y cada ID sale una sola vez (su copia vigente).
+    Stream<Vuelo> recorrer(LocalDate desde, LocalDate hasta) {
+        if (!habilitado) {
+            return Stream.empty();
+        }
+        return bloques.stream()
+                .filter(b -> b.enRango(desde, hasta))
+                .flatMap(b -> {
+                    Vuelo[] vuelos = vuelos(b);
+                    return Arrays.stream(vuelos).filter(v -> bloque(v.getId()) == b.numero());
+                });
+    }
+
+    // Igual que recorrer, pero solo con los vuelos que cumplen "incluir" y ya ordenados por fechaSalida e ID.
+    // Los bloques se abren por orden de su fechaSalida minima y solo cuando hacen falta: un vuelo ya leido sale
+    // en cuanto ningun bloque sin abrir puede tener uno anterior. Quien solo necesita una pagina deja de leer
+    // (y de descomprimir) bloques al completarla.
+    Stream<Vuelo> recorrerPorFechaSalida(LocalDate desde, LocalDate hasta, Predicate<Vuelo> incluir) {
+        if (!habilitado) {
+            return Stream.empty();
+        }
+        List<Bloque> pendientes = bloques.stream()
+                .filter(b -> b.enRango(desde, hasta))
+                .sorted(Comparator.comparingInt(Bloque::salidaMinima))
+                .toList();
+        Iterator<Vuelo> ordenados = new Iterator<>() {
+            private final PriorityQueue<Vuelo> leidos = new PriorityQueue<>(OrdenVuelo.FECHA_SALIDA.comparador());
+            private int siguiente;
+
+            @Override
+            public boolean hasNext() {
+                while (siguiente < pendientes.size() && (leidos.isEmpty()
+                        || pendientes.get(siguiente).salidaMinima() <= leidos.peek().getFechaSalida().toEpochDay())) {
+                    Bloque b = pendientes.get(siguiente++);
+                    for (Vuelo v : vuelos(b)) {
+                        if (bloque(v.getId()) == b.numero() && incluir.test(v)) {
+                            leidos.add(v);
+                        }
+                    }
+                }
+                return !leidos.isEmpty();
+            }
+
+            @Override
+            public Vuelo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return leidos.poll();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(ordenados,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // Añade los vuelos al final del fichero (en bloques) y hace fsync. Cuando vuelve ya se pueden buscar.
+    void escribir(List<Vuelo> vuelos) {
+        List<Vuelo> ordenados = new ArrayList<>(vuelos);
+        ordenados.sort(Comparator.comparingInt(Vuelo::getId));
+        cerrojoEscritura.lock();
+        try {
+            for (int desde = 0; desde < ordenados.size(); desde += vuelosPorBloque) {
+                escribirBloque(ordenados.subList(desde, Math.min(desde + vuelosPorBloque, ordenados.size())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error escribiendo el historico de vuelos", e);
+        } finally {
+            cerrojoEscritura.unlock();
+        }
+    }
+
+    // Anula las copias archivadas de esas IDs (los vuelos siguen en el repositorio).
+    void anular(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        cerrojoEscritura.lock();
+        try {
+            int[] ordenadas = ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+            ByteArrayOutputStream contenido = new ByteArrayOutputStream(4 * ordenadas.length);
+            DataOutputStream out = new DataOutputStream(contenido);
+            for (int id : ordenadas) {
+                out.writeInt(id);
+            }
+            anadir(ANULADOS, ordenadas.length, contenido.toByteArray(), 0, 0);
+            for (int id : ordenadas) {
+                apuntar(id, 0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error escribiendo el historico de vuelos", e);
+        } finally {
+            cerrojoEscritura.unlock();
+        }
+    }
+
+    // ----- Escritura -----
+
+    private void escribirBloque(List<Vuelo> vuelos) throws IOException {
+        int[] ids = new int[vuelos.size()];
+        int minima = Integer.MAX_VALUE;
+        int maxima = Integer.MIN_VALUE;
+        ByteArrayOutputStream ids4 = new ByteArrayOutputStream(4 * ids.length);
+        DataOutputStream outIds = new DataOutputStream(ids4);
+        ByteArrayOutputStream datos = new ByteArrayOutputStream(64 * ids.length);
+        DataOutputStream out = new DataOutputStream(datos);
+        for (int i = 0; i < ids.length; i++) {
+            Vuelo v = vuelos.get(i);
+            ids[i] = v.getId();
+            int salida = Math.toIntExact(v.getFechaSalida().toEpochDay());
+            minima = Math.min(minima, salida);
+            maxima = Math.max(maxima, salida);
+            outIds.writeInt(v.getId());
+            out.writeLong(v.getVersion());
+            out.writeUTF(v.getNombreVuelo());
+            out.writeUTF(v.getEmpresa());
+            out.writeUTF(v.getLugarSalida());
+            out.writeUTF(v.getLugarLlegada());
+            out.writeInt(salida);
+            out.writeInt(Math.toIntExact(v.getFechaLlegada().toEpochDay()));
+        }
+        ids4.write(comprimir(datos.toByteArray()));
+
+        long posicion = anadir(VUELOS, ids.length, ids4.toByteArray(), minima, maxima);
+        Bloque bloque = new Bloque(bloques.size(), posicion, ids4.size(), ids, minima, maxima);
+        registrar(bloque);
+        cache.put(bloque.numero(), vuelos.toArray(Vuelo[]::new));
+    }
+
+    // Escribe un bloque al final del fichero con fsync y devuelve la posicion de su contenido
+    private long anadir(byte tipo, int numIds, byte[] contenido, int salidaMinima, int salidaMaxima) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(contenido);
+        ByteBuffer buffer = ByteBuffer.allocate(TAM_CABECERA + contenido.length);
+        buffer.put(tipo).putInt(numIds).putInt(contenido.length).putInt((int) crc.getValue())
+                .putInt(salidaMinima).putInt(salidaMaxima).put(contenido).flip();
+        long posicion = tamano;
+        while (buffer.hasRemaining()) {
+            canal.write(buffer, posicion + buffer.position());
+        }
+        canal.force(false);
+        tamano += TAM_CABECERA + contenido.length;
+        return posicion + TAM_CABECERA;
+    }
+
+    // El bloque se publica antes que sus IDs: quien encuentra una ID en el indice siempre encuentra su bloque.
+    // Un bloque nuevo deja sin valor las copias anteriores de sus IDs.
+    private void registrar(Bloque bloque) {
+        bloques.add(bloque);
+        for (int id : bloque.ids()) {
+            apuntar(id, bloque.numero() + 1);
+        }
+    }
+
+    private void apuntar(int id, int valor) {
+        if (id < 1) {
+            return;
+        }
+        maximoId = Math.max(maximoId, id);
+        int posicion = (id - 1) / nodos;
+        AtomicIntegerArray indice = bloquePorId;
+        if (posicion >= indice.length()) {
+            if (valor == 0) {
+                return;
+            }
+            AtomicIntegerArray mayor = new AtomicIntegerArray(Math.max(posicion + 1, indice.length() + indice.length() / 2));
+            for (int i = 0; i < indice.length(); i++) {
+                mayor.set(i, indice.get(i));
+            }
+            bloquePorId = mayor;
+            indice = mayor;
+        }
+        indice.set(posicion, valor);
+    }
+
+    // ----- Lectura -----
+
+    // Recorre el fichero leyendo solo las cabeceras y las IDs. Si el ultimo bloque esta a medias se corta ahi.
+    private void leerResumen() throws IOException {
+        long total = canal.size();
+        long posicion = 0;
+        ByteBuffer cabecera = ByteBuffer.allocate(TAM_CABECERA);
+        while (posicion < total) {
+            cabecera.clear();
+            if (leer(cabecera, posicion) < TAM_CABECERA) {
+                break;
+            }
+            cabecera.flip();
+            byte tipo = cabecera.get();
+            int numIds = cabecera.getInt();
+            int longitud = cabecera.getInt();
+            int crcEsperado = cabecera.getInt();
+            int salidaMinima = cabecera.getInt();
+            int salidaMaxima = cabecera.getInt();
+            if ((tipo != VUELOS && tipo != ANULADOS) || numIds < 0 || longitud < 4L * numIds
+                    || posicion + TAM_CABECERA + longitud > total) {
+                break;
+            }
+            ByteBuffer contenido = ByteBuffer.allocate(longitud);
+            leer(contenido, posicion + TAM_CABECERA);
+            CRC32 crc = new CRC32();
+            crc.update(contenido.array());
+            if ((int) crc.getValue() != crcEsperado) {
+                break;
+            }
+            contenido.flip();
+            int[] ids = new int[numIds];
+            for (int i = 0; i < numIds; i++) {
+                ids[i] = contenido.getInt();
+            }
+            if (tipo == VUELOS) {
+                registrar(new Bloque(bloques.size(), posicion + TAM_CABECERA, longitud, ids, salidaMinima, salidaMaxima));
+            } else {
+                for (int id : ids) {
+                    apuntar(id, 0);
+                }
+            }
+            posicion += TAM_CABECERA + longitud;
+        }
+        if (posicion < total) {
+            log.warn("Bloque incompleto al final del historico, se descarta desde el byte {}", posicion);
+            canal.truncate(posicion);
+        }
+        tamano = posicion;
+    }
+
+    // Vuelos de un bloque, desde la cache o leyendo y descomprimiendo el bloque
+    private Vuelo[] vuelos(Bloque b) {
+        return cache.get(b.numero(), n -> {
+            try {
+                return leerVuelos(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error leyendo el historico de vuelos", e);
+            }
+        });
+    }
+
+    private Vuelo[] leerVuelos(Bloque b) throws IOException {
+        ByteBuffer contenido = ByteBuffer.allocate(b.tamano());
+        leer(contenido, b.posicion());
+        int inicioDatos = 4 * b.ids().length;
+        byte[] datos = descomprimir(contenido.array(), inicioDatos, b.tamano() - inicioDatos);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos));
+        Vuelo[] vuelos = new Vuelo[b.ids().length];
+        for (int i = 0; i < vuelos.length; i++) {
+            vuelos[i] = Vuelo.builder()
+                    .id(b.ids()[i])
+                    .version(in.readLong())
+                    .nombreVuelo(in.readUTF())
+                    .empresa(in.readUTF())
+                    .lugarSalida(in.readUTF())
+                    .lugarLlegada(in.readUTF())
+                    .fechaSalida(LocalDate.ofEpochDay(in.readInt()))
+                    .fechaLlegada(LocalDate.ofEpochDay(in.readInt()))
+                    .build();
+        }
+        return vuelos;
+    }
+
+    private int leer(ByteBuffer buffer, long posicion) throws IOException {
+        int leidos = 0;
+        while (buffer.hasRemaining()) {
+            int n = canal.read(buffer, posicion + leidos);
+            if (n < 0) {
+                break;
+            }
+            leidos += n;
+        }
+        return leidos;
+    }
+
+    // Bloque con la copia vigente de la ID (-1 si no esta en el historico)
+    private int bloque(int id) {
+        if (id < 1) {
+            return -1;
+        }
+        int posicion = (id - 1) / nodos;
+        AtomicIntegerArray indice = bloquePorId;
+        return posicion >= indice.length() ? -1 : indice.get(posicion) - 1;
+    }
+
+    private static byte[] comprimir(byte[] datos) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(datos);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(datos.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] descomprimir(byte[] datos, int desde, int longitud) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(datos, desde, longitud);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(longitud * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Bloque del historico incompleto");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque del historico corrupto", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
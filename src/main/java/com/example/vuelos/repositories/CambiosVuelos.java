@@ -0,0 +1,107 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.CambioVuelo;
+import com.example.vuelos.models.Vuelo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Ultimos cambios de los vuelos (altas, actualizaciones y eliminaciones) para el feed de cambios.
+// Es un buffer circular de tamaño fijo: el cambio con secuencia s va a la posicion s % capacidad y
+// sobrescribe al de hace "capacidad" cambios. Las escrituras nunca esperan a nadie: quien lee despacio
+// simplemente se encuentra que sus cambios ya se han sobrescrito (ver leer) y tiene que volver a cargar los vuelos.
+// - El repositorio publica cada cambio con el cerrojo de la ID cogido, asi la secuencia de los cambios
+//   de un vuelo sigue el orden en que se aplicaron.
+// - Dos escrituras de IDs distintas pueden dejar su cambio en el buffer en otro orden que el de su secuencia:
+//   quien lee se para en el primer cambio que aun no esta escrito, asi nunca se salta ninguno.
+// - Quien espera cambios nuevos lo hace en una Condition (sin synchronized, ver hilos virtuales en el README),
+//   y las escrituras solo la avisan si hay alguien esperando.
+public class CambiosVuelos {
+
+    private final int capacidad;
+    private final AtomicReferenceArray<CambioVuelo> buffer;
+    // Ultima secuencia asignada (la primera es 1)
+    private final AtomicLong secuencia = new AtomicLong();
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Condition hayCambios = cerrojo.newCondition();
+    private final AtomicInteger esperando = new AtomicInteger();
+
+    CambiosVuelos(int capacidad) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("vuelos.cambios.capacidad tiene que ser mayor que 0");
+        }
+        this.capacidad = capacidad;
+        this.buffer = new AtomicReferenceArray<>(capacidad);
+    }
+
+    // Añade un cambio con la siguiente secuencia (hay que tener el cerrojo de la ID cogido).
+    void publicar(CambioVuelo.Tipo tipo, Vuelo vuelo) {
+        long s = secuencia.incrementAndGet();
+        buffer.set(posicion(s), new CambioVuelo(s, tipo, vuelo.getId(), vuelo));
+        if (esperando.get() > 0) {
+            cerrojo.lock();
+            try {
+                hayCambios.signalAll();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+    }
+
+    // Ultima secuencia asignada (0 si aun no hay cambios)
+    public long ultima() {
+        return secuencia.get();
+    }
+
+    // Cambios con secuencia mayor que "desde", en orden y como mucho "maximo".
+    // Se para en el primero que aun no esta escrito (puede devolver una lista vacia aunque ultima() sea mayor).
+    // Devuelve null si el siguiente cambio (desde + 1) ya se ha sobrescrito: se han perdido cambios.
+    public List<CambioVuelo> leer(long desde, int maximo) {
+        List<CambioVuelo> cambios = new ArrayList<>();
+        for (long s = desde + 1; cambios.size() < maximo && s <= secuencia.get(); s++) {
+            CambioVuelo c = buffer.get(posicion(s));
+            if (c == null || c.secuencia() < s) {
+                // Aun no se ha escrito
+                break;
+            }
+            if (c.secuencia() > s) {
+                // Sobrescrito por uno posterior
+                return cambios.isEmpty() ? null : cambios;
+            }
+            cambios.add(c);
+        }
+        return cambios;
+    }
+
+    // Espera hasta que haya algun cambio con secuencia mayor que "desde" o pase el tiempo.
+    // Devuelve false si se ha acabado el tiempo.
+    public boolean esperar(long desde, Duration espera) throws InterruptedException {
+        long restante = espera.toNanos();
+        esperando.incrementAndGet();
+        cerrojo.lock();
+        try {
+            // Se comprueba despues de apuntarse en "esperando": o la escritura ve que hay alguien esperando,
+            // o aqui ya se ve su secuencia.
+            while (secuencia.get() <= desde) {
+                if (restante <= 0) {
+                    return false;
+                }
+                restante = hayCambios.awaitNanos(restante);
+            }
+            return true;
+        } finally {
+            cerrojo.unlock();
+            esperando.decrementAndGet();
+        }
+    }
+
+    private int posicion(long s) {
+        return (int) (s % capacidad);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.EstadisticasVuelos;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.utils.TextoUtils;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Contadores de las estadisticas (ver VueloRepository.estadisticas): numero de vuelos y suma de duraciones,
+// en total y por empresa, lugarLlegada y fechaSalida. Cada escritura resta el vuelo anterior y suma el nuevo,
+// asi leerlos cuesta lo mismo que el numero de grupos y no el de vuelos.
+// - Los contadores son LongAdder (un contador repartido en celdas): las escrituras concurrentes casi nunca
+//   compiten por la misma celda.
+// - Para que una lectura sea exacta no puede coincidir con una escritura a medias (por ejemplo un vuelo que cambia
+//   de empresa ya restado de una y aun no sumado a la otra). Cada escritura cuenta cuando empieza y cuando termina:
+//   si al leer ninguna empezo ni estaba en curso, lo leido es exactamente el estado entre dos escrituras
+//   (ver leerSiEstable). Si no, el repositorio repite la lectura o para las escrituras un momento.
+// - Las claves son las normalizadas (como en los indices), el valor que se muestra es el de la primera vez.
+//   Los grupos que se quedan sin vuelos no se borran, simplemente no se muestran.
+class ContadoresVuelos {
+
+    // Contadores de un grupo (o del total)
+    private static final class Grupo {
+        private final String valor;
+        private final LongAdder vuelos = new LongAdder();
+        // Vuelos con las dos fechas y la suma de sus duraciones
+        private final LongAdder conDuracion = new LongAdder();
+        private final LongAdder sumaDuracion = new LongAdder();
+
+        private Grupo(String valor) {
+            this.valor = valor;
+        }
+
+        private void sumar(Vuelo v, int signo) {
+            vuelos.add(signo);
+            Long dias = duracion(v);
+            if (dias != null) {
+                conDuracion.add(signo);
+                sumaDuracion.add(signo * dias);
+            }
+        }
+
+        private EstadisticasVuelos.Grupo leer() {
+            long n = conDuracion.sum();
+            return new EstadisticasVuelos.Grupo(valor, vuelos.sum(), n == 0 ? null : (double) sumaDuracion.sum() / n);
+        }
+    }
+
+    private final Grupo total = new Grupo(null);
+    private final ConcurrentHashMap<String, Grupo> porEmpresa = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Grupo> porLugarLlegada = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<LocalDate, Grupo> porFechaSalida = new ConcurrentSkipListMap<>();
+    // Escrituras empezadas y terminadas (solo suben)
+    private final LongAdder iniciadas = new LongAdder();
+    private final LongAdder terminadas = new LongAdder();
+
+    // Resta el vuelo anterior y suma el nuevo (cualquiera de los dos puede ser null).
+    // Se llama con el cerrojo de la ID cogido.
+    void cambiar(Vuelo anterior, Vuelo nuevo) {
+        iniciadas.increment();
+        try {
+            sumar(anterior, -1);
+            sumar(nuevo, 1);
+        } finally {
+            terminadas.increment();
+        }
+    }
+
+    // Lee las estadisticas si ninguna escritura estaba a medias o ha empezado mientras tanto, si no devuelve null.
+    // Las dos sumas solo suben: si "iniciadas" despues de leer es igual a "terminadas" antes de leer,
+    // no ha habido ninguna escritura en curso durante toda la lectura.
+    EstadisticasVuelos leerSiEstable() {
+        long antes = terminadas.sum();
+        EstadisticasVuelos leidas = leer();
+        return iniciadas.sum() == antes ? leidas : null;
+    }
+
+    // Lee las estadisticas sin comprobar nada (hay que tener paradas las escrituras).
+    EstadisticasVuelos leer() {
+        EstadisticasVuelos.Grupo t = total.leer();
+        return new EstadisticasVuelos(t.vuelos(), t.duracionMediaDias(),
+                grupos(porEmpresa.values(), Comparator.comparing(EstadisticasVuelos.Grupo::valor, String.CASE_INSENSITIVE_ORDER)),
+                grupos(porLugarLlegada.values(), Comparator.comparing(EstadisticasVuelos.Grupo::valor, String.CASE_INSENSITIVE_ORDER)),
+                // Ya estan ordenados por dia
+                grupos(porFechaSalida.values(), null));
+    }
+
+    private void sumar(Vuelo v, int signo) {
+        if (v == null) {
+            return;
+        }
+        total.sumar(v, signo);
+        sumar(porEmpresa, TextoUtils.normalizar(v.getEmpresa()), v.getEmpresa(), v, signo);
+        sumar(porLugarLlegada, TextoUtils.normalizar(v.getLugarLlegada()), v.getLugarLlegada(), v, signo);
+        sumar(porFechaSalida, v.getFechaSalida(), v.getFechaSalida(), v, signo);
+    }
+
+    private static <K> void sumar(Map<K, Grupo> grupos, K clave, Object valor, Vuelo v, int signo) {
+        if (clave != null) {
+            grupos.computeIfAbsent(clave, k -> new Grupo(valor.toString().trim())).sumar(v, signo);
+        }
+    }
+
+    private static List<EstadisticasVuelos.Grupo> grupos(Iterable<Grupo> grupos, Comparator<EstadisticasVuelos.Grupo> orden) {
+        List<EstadisticasVuelos.Grupo> leidos = new ArrayList<>();
+        for (Grupo g : grupos) {
+            EstadisticasVuelos.Grupo leido = g.leer();
+            if (leido.vuelos() > 0) {
+                leidos.add(leido);
+            }
+        }
+        if (orden != null) {
+            leidos.sort(orden);
+        }
+        return leidos;
+    }
+
+    // Duracion en dias, o null si falta alguna fecha
+    private static Long duracion(Vuelo v) {
+        return v.getFechaSalida() == null || v.getFechaLlegada() == null
+                ? null
+                : ChronoUnit.DAYS.between(v.getFechaSalida(), v.getFechaLlegada());
+    }
+}
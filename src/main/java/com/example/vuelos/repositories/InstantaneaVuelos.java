@@ -0,0 +1,238 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.Vuelo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Formato binario de las instantaneas del repositorio (lo usa PersistenciaVuelos).
+// Esta pensado para arrancar rapido con catalogos grandes: el fichero se mapea en memoria (MappedByteBuffer)
+// y cada vuelo se lee con accesos de ancho fijo, sin parsear texto.
+//
+// Version 2 (la que se escribe):
+//   Cabecera (32 bytes): magic, version, primer segmento del diario (long), siguiente ID, nº de vuelos,
+//                        nº de cadenas, tamaño en bytes de las cadenas
+//   Vuelos (28 bytes cada uno): id, nombreVuelo, empresa, lugarSalida, lugarLlegada, fechaSalida, fechaLlegada
+//       - Los textos son el indice de la cadena en el diccionario (-1 si es null)
+//       - Las fechas son el dia epoch como int (Integer.MIN_VALUE si es null)
+//   Diccionario: (nº de cadenas + 1) offsets int y despues los bytes UTF-8 de todas las cadenas seguidas
+//   CRC32 de todo lo anterior (int)
+//
+// Las empresas y los aeropuertos se repiten mucho, con el diccionario cada texto se guarda (y se decodifica) una sola vez
+// y todos los vuelos que lo usan comparten el mismo String en memoria.
+// La version 1 (registros con writeUTF) se sigue pudiendo leer.
+final class InstantaneaVuelos {
+
+    static final int MAGIC = 0x56554C53; // "VULS"
+    static final int VERSION = 2;
+
+    private static final int VERSION_1 = 1;
+    private static final int TAM_CABECERA = 32;
+    private static final int TAM_VUELO = 28;
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+
+    // Datos de la cabecera que necesita la persistencia para seguir con el diario
+    record Cabecera(long primerSegmento, int siguienteId, int vuelos) {
+    }
+
+    private InstantaneaVuelos() {
+    }
+
+    // Escribe la instantanea en "ruta" y hace fsync. No renombra nada, eso lo hace quien llama.
+    static void escribir(Path ruta, long primerSegmento, int siguienteId, Collection<Vuelo> vuelos) throws IOException {
+        // Primera pasada: diccionario de cadenas
+        Map<String, Integer> indices = new HashMap<>();
+        List<byte[]> cadenas = new ArrayList<>();
+        long bytesCadenas = 0;
+        for (Vuelo v : vuelos) {
+            for (String s : new String[]{v.getNombreVuelo(), v.getEmpresa(), v.getLugarSalida(), v.getLugarLlegada()}) {
+                if (s != null && !indices.containsKey(s)) {
+                    indices.put(s, cadenas.size());
+                    byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                    cadenas.add(utf8);
+                    bytesCadenas += utf8.length;
+                }
+            }
+        }
+        if (bytesCadenas > Integer.MAX_VALUE) {
+            throw new IOException("Demasiados textos para una instantanea: " + bytesCadenas + " bytes");
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(ruta.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(primerSegmento);
+            out.writeInt(siguienteId);
+            out.writeInt(vuelos.size());
+            out.writeInt(cadenas.size());
+            out.writeInt((int) bytesCadenas);
+
+            for (Vuelo v : vuelos) {
+                out.writeInt(v.getId());
+                out.writeInt(indice(indices, v.getNombreVuelo()));
+                out.writeInt(indice(indices, v.getEmpresa()));
+                out.writeInt(indice(indices, v.getLugarSalida()));
+                out.writeInt(indice(indices, v.getLugarLlegada()));
+                out.writeInt(fecha(v.getFechaSalida()));
+                out.writeInt(fecha(v.getFechaLlegada()));
+            }
+
+            int offset = 0;
+            for (byte[] c : cadenas) {
+                out.writeInt(offset);
+                offset += c.length;
+            }
+            out.writeInt(offset);
+            for (byte[] c : cadenas) {
+                out.write(c);
+            }
+            out.flush();
+            // El CRC de todo lo anterior va al final, fuera del calculo
+            new DataOutputStream(fos).writeInt((int) checked.getChecksum().getValue());
+            fos.getFD().sync();
+        }
+    }
+
+    // Lee la instantanea y entrega cada vuelo a "destino".
+    // Primero se comprueba el CRC de todo el fichero, asi nunca se aplica a medias una instantanea corrupta.
+    static Cabecera leer(Path ruta, Consumer<Vuelo> destino) throws IOException {
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            if (tamano < 8) {
+                throw new IOException("Instantanea incompleta: " + ruta);
+            }
+            if (tamano > Integer.MAX_VALUE) {
+                // Un MappedByteBuffer no pasa de 2 GB (unos 50 millones de vuelos)
+                throw new IOException("Instantanea demasiado grande para mapear: " + ruta);
+            }
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Formato de instantanea desconocido: " + ruta);
+            }
+            int version = buffer.getInt(4);
+            if (version == VERSION_1) {
+                return leerVersion1(ruta, destino);
+            }
+            if (version != VERSION) {
+                throw new IOException("Version de instantanea no soportada (" + version + "): " + ruta);
+            }
+            return leerVersion2(ruta, buffer, destino);
+        }
+    }
+
+    private static Cabecera leerVersion2(Path ruta, ByteBuffer buffer, Consumer<Vuelo> destino) throws IOException {
+        int fin = buffer.limit() - 4;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, fin));
+        if ((int) crc.getValue() != buffer.getInt(fin)) {
+            throw new IOException("Instantanea corrupta (CRC): " + ruta);
+        }
+
+        long primerSegmento = buffer.getLong(8);
+        int siguienteId = buffer.getInt(16);
+        int numVuelos = buffer.getInt(20);
+        int numCadenas = buffer.getInt(24);
+        int bytesCadenas = buffer.getInt(28);
+        long inicioOffsets = TAM_CABECERA + (long) numVuelos * TAM_VUELO;
+        long inicioBytes = inicioOffsets + 4L * (numCadenas + 1);
+        if (numVuelos < 0 || numCadenas < 0 || bytesCadenas < 0 || inicioBytes + bytesCadenas != fin) {
+            throw new IOException("Instantanea corrupta (tamaños): " + ruta);
+        }
+
+        // Se decodifica cada cadena una sola vez
+        byte[] utf8 = new byte[bytesCadenas];
+        buffer.get((int) inicioBytes, utf8);
+        String[] cadenas = new String[numCadenas];
+        for (int i = 0; i < numCadenas; i++) {
+            int desde = buffer.getInt((int) inicioOffsets + 4 * i);
+            int hasta = buffer.getInt((int) inicioOffsets + 4 * (i + 1));
+            if (desde < 0 || hasta < desde || hasta > bytesCadenas) {
+                throw new IOException("Instantanea corrupta (diccionario): " + ruta);
+            }
+            cadenas[i] = new String(utf8, desde, hasta - desde, StandardCharsets.UTF_8);
+        }
+
+        for (int i = 0, pos = TAM_CABECERA; i < numVuelos; i++, pos += TAM_VUELO) {
+            destino.accept(Vuelo.builder()
+                    .id(buffer.getInt(pos))
+                    .nombreVuelo(cadena(cadenas, buffer.getInt(pos + 4), ruta))
+                    .empresa(cadena(cadenas, buffer.getInt(pos + 8), ruta))
+                    .lugarSalida(cadena(cadenas, buffer.getInt(pos + 12), ruta))
+                    .lugarLlegada(cadena(cadenas, buffer.getInt(pos + 16), ruta))
+                    .fechaSalida(fecha(buffer.getInt(pos + 20)))
+                    .fechaLlegada(fecha(buffer.getInt(pos + 24)))
+                    .build());
+        }
+        return new Cabecera(primerSegmento, siguienteId, numVuelos);
+    }
+
+    // Formato anterior: cabecera y despues cada vuelo precedido de un boolean, con los textos en writeUTF.
+    private static Cabecera leerVersion1(Path ruta, Consumer<Vuelo> destino) throws IOException {
+        try (InputStream fis = new BufferedInputStream(Files.newInputStream(ruta), 1 << 16)) {
+            CheckedInputStream checked = new CheckedInputStream(fis, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            in.readInt();
+            in.readInt();
+            long primerSegmento = in.readLong();
+            int siguienteId = in.readInt();
+            List<Vuelo> leidos = new ArrayList<>();
+            while (in.readBoolean()) {
+                leidos.add(Vuelo.builder()
+                        .id(in.readInt())
+                        .nombreVuelo(in.readUTF())
+                        .empresa(in.readUTF())
+                        .lugarSalida(in.readUTF())
+                        .lugarLlegada(in.readUTF())
+                        .fechaSalida(LocalDate.ofEpochDay(in.readLong()))
+                        .fechaLlegada(LocalDate.ofEpochDay(in.readLong()))
+                        .build());
+            }
+            int crcCalculado = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(fis).readInt() != crcCalculado) {
+                throw new IOException("Instantanea corrupta (CRC): " + ruta);
+            }
+            leidos.forEach(destino);
+            return new Cabecera(primerSegmento, siguienteId, leidos.size());
+        }
+    }
+
+    private static int indice(Map<String, Integer> indices, String s) {
+        return s == null ? -1 : indices.get(s);
+    }
+
+    private static String cadena(String[] cadenas, int indice, Path ruta) throws IOException {
+        if (indice == -1) {
+            return null;
+        }
+        if (indice < 0 || indice >= cadenas.length) {
+            throw new IOException("Instantanea corrupta (indice de cadena): " + ruta);
+        }
+        return cadenas[indice];
+    }
+
+    private static int fecha(LocalDate fecha) {
+        return fecha == null ? SIN_FECHA : Math.toIntExact(fecha.toEpochDay());
+    }
+
+    private static LocalDate fecha(int epochDay) {
+        return epochDay == SIN_FECHA ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
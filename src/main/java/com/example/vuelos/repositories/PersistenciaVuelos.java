@@ -0,0 +1,569 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.Vuelo;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Persistencia opcional del repositorio en disco (desactivada por defecto).
+// Basicamente es un diario de escrituras (write-ahead log) mas instantaneas periodicas:
+// - Cada escritura del repositorio (guardar/actualizar/eliminar) se añade al diario como un registro binario con CRC.
+// - Un hilo escritor junta los registros de muchas peticiones y los escribe de una vez con un FileChannel
+//   (group commit), asi un fsync sirve para todas las peticiones que llegaron mientras tanto.
+// - Cada cierto numero de registros se hace una instantanea (snapshot) del repositorio completo y se borran los
+//   segmentos del diario anteriores, asi el tiempo de arranque no crece sin limite.
+// - Al arrancar se carga la instantanea y se repiten los registros del diario posteriores a ella.
+//   El formato de la instantanea esta en InstantaneaVuelos (binario, se lee mapeado en memoria).
+//
+// Los registros guardan el estado completo del vuelo (o su eliminacion), asi repetir un registro dos veces
+// deja el mismo resultado. La instantanea solo para las escrituras mientras cambia de segmento y copia los vuelos.
+//
+// Politicas de fsync (vuelos.persistencia.fsync):
+// - siempre: la peticion espera a que su registro este en disco (fsync). Sobrevive a caidas del sistema.
+// - intervalo: la peticion espera a que su registro este escrito en el sistema operativo,
+//   y el fsync se hace cada "fsync-intervalo-ms". Sobrevive a caidas del proceso.
+// - nunca: igual que intervalo, pero el fsync lo decide el sistema operativo.
+
+@Component
+public class PersistenciaVuelos {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenciaVuelos.class);
+
+    private static final String FICHERO_INSTANTANEA = "instantanea.bin";
+
+    // Tipos de registro del diario
+    private static final byte GUARDADO = 1;
+    private static final byte ELIMINADO = 2;
+
+    public enum PoliticaFsync {
+        SIEMPRE,
+        INTERVALO,
+        NUNCA
+    }
+
+    private final boolean habilitada;
+    private final Path directorio;
+    private final PoliticaFsync politica;
+    private final long intervaloFsyncMs;
+    private final long instantaneaCada;
+
+    // Estado compartido entre las peticiones y el hilo escritor (protegido por "cerrojo")
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Condition hayPendientes = cerrojo.newCondition();
+    private final Condition hayEscritos = cerrojo.newCondition();
+    private ByteArrayOutputStream pendientes = new ByteArrayOutputStream();
+    private ByteArrayOutputStream enEscritura = new ByteArrayOutputStream();
+    // Numero de secuencia (LSN) del ultimo registro encolado, escrito y escrito con fsync
+    private long ultimoLsn;
+    private long lsnEscrito;
+    private long lsnForzado;
+    private IOException fallo;
+    private boolean cerrando;
+
+    // El canal del segmento actual del diario, solo lo usa quien tiene "cerrojoCanal"
+    private final ReentrantLock cerrojoCanal = new ReentrantLock();
+    private FileChannel canal;
+    private long segmento;
+    private long registrosDesdeInstantanea;
+
+    private Thread escritor;
+    private ExecutorService hiloInstantaneas;
+    private final AtomicBoolean instantaneaEnCurso = new AtomicBoolean();
+    // Repositorio que se persiste (para recuperar y para las instantaneas)
+    private VueloRepository repositorio;
+
+    public PersistenciaVuelos(@Value("${vuelos.persistencia.habilitada:false}") boolean habilitada,
+                              @Value("${vuelos.persistencia.directorio:data}") String directorio,
+                              @Value("${vuelos.persistencia.fsync:siempre}") String politica,
+                              @Value("${vuelos.persistencia.fsync-intervalo-ms:100}") long intervaloFsyncMs,
+                              @Value("${vuelos.persistencia.instantanea-cada:100000}") long instantaneaCada) {
+        this.habilitada = habilitada;
+        this.directorio = Path.of(directorio);
+        this.politica = PoliticaFsync.valueOf(politica.trim().toUpperCase(Locale.ROOT));
+        this.intervaloFsyncMs = intervaloFsyncMs;
+        this.instantaneaCada = instantaneaCada;
+    }
+
+    // Persistencia desactivada: el repositorio funciona solo en memoria.
+    public static PersistenciaVuelos desactivada() {
+        return new PersistenciaVuelos(false, "data", "siempre", 100, 100_000);
+    }
+
+    public boolean habilitada() {
+        return habilitada;
+    }
+
+    // Carga la instantanea y repite el diario sobre el repositorio, registro a registro y en orden.
+    // Despues abre un segmento nuevo del diario y arranca el hilo escritor.
+    // Devuelve true si habia datos en disco (en ese caso el repositorio no carga la seed).
+    boolean abrir(VueloRepository repositorio) {
+        if (!habilitada) {
+            return false;
+        }
+        this.repositorio = repositorio;
+        boolean hayDatos = false;
+        try {
+            Files.createDirectories(directorio);
+
+            long primerSegmento = 0;
+            Path instantanea = directorio.resolve(FICHERO_INSTANTANEA);
+            if (Files.exists(instantanea)) {
+                primerSegmento = leerInstantanea(instantanea);
+                hayDatos = true;
+            }
+
+            List<Long> segmentos = segmentos();
+            for (int i = 0; i < segmentos.size(); i++) {
+                long s = segmentos.get(i);
+                if (s < primerSegmento) {
+                    Files.deleteIfExists(rutaSegmento(s));
+                    continue;
+                }
+                boolean ultimo = i == segmentos.size() - 1;
+                hayDatos |= repetirSegmento(rutaSegmento(s), ultimo);
+            }
+
+            segmento = Math.max(primerSegmento, segmentos.isEmpty() ? 0 : segmentos.get(segmentos.size() - 1) + 1);
+            canal = abrirSegmento(segmento);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo recuperar el repositorio desde " + directorio, e);
+        }
+
+        hiloInstantaneas = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "vuelos-instantanea");
+            t.setDaemon(true);
+            return t;
+        });
+        escritor = new Thread(this::bucleEscritor, "vuelos-diario");
+        escritor.setDaemon(true);
+        escritor.start();
+        return hayDatos;
+    }
+
+    // Añade al diario el estado completo de un vuelo guardado o actualizado.
+    // Solo encola el registro (no espera al disco), devuelve su LSN para esperar despues con esperar().
+    // El repositorio lo llama con el cerrojo de la ID cogido, asi el orden del diario respeta el de cada vuelo.
+    public long registrarGuardado(Vuelo v) {
+        if (!habilitada) {
+            return 0;
+        }
+        return encolar(codificar(v));
+    }
+
+    // Igual que registrarGuardado pero para una eliminacion.
+    public long registrarEliminado(int id) {
+        if (!habilitada) {
+            return 0;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ELIMINADO);
+            out.writeInt(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return encolar(bytes.toByteArray());
+    }
+
+    // Espera a que el registro con ese LSN sea duradero segun la politica de fsync.
+    // Se llama sin ningun cerrojo del repositorio, asi mientras se espera al disco las demas escrituras siguen.
+    public void esperar(long lsn) {
+        if (!habilitada || lsn == 0) {
+            return;
+        }
+        cerrojo.lock();
+        try {
+            while ((politica == PoliticaFsync.SIEMPRE ? lsnForzado : lsnEscrito) < lsn) {
+                if (fallo != null) {
+                    throw new UncheckedIOException("Error escribiendo el diario de vuelos", fallo);
+                }
+                hayEscritos.awaitUninterruptibly();
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // Hace una instantanea en este momento (tambien se hace sola cada "instantanea-cada" registros).
+    public void instantanea() {
+        if (!habilitada || !instantaneaEnCurso.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            escribirInstantanea();
+        } catch (IOException e) {
+            log.error("No se pudo escribir la instantanea de vuelos", e);
+        } finally {
+            instantaneaEnCurso.set(false);
+        }
+    }
+
+    // Al parar la aplicacion se escriben los registros pendientes y se deja una instantanea,
+    // asi el siguiente arranque no tiene que repetir el diario.
+    @PreDestroy
+    public void cerrar() {
+        if (!habilitada || escritor == null) {
+            return;
+        }
+        cerrojo.lock();
+        try {
+            cerrando = true;
+            hayPendientes.signalAll();
+        } finally {
+            cerrojo.unlock();
+        }
+        try {
+            escritor.join();
+            hiloInstantaneas.shutdown();
+            hiloInstantaneas.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instantanea();
+        cerrojoCanal.lock();
+        try {
+            canal.close();
+        } catch (IOException e) {
+            log.warn("Error cerrando el diario de vuelos", e);
+        } finally {
+            cerrojoCanal.unlock();
+        }
+    }
+
+    // ----- Diario -----
+
+    // Añade un registro (longitud + CRC + contenido) al buffer pendiente y despierta al hilo escritor.
+    private long encolar(byte[] contenido) {
+        CRC32 crc = new CRC32();
+        crc.update(contenido);
+        cerrojo.lock();
+        try {
+            if (fallo != null) {
+                throw new UncheckedIOException("Error escribiendo el diario de vuelos", fallo);
+            }
+            escribirInt(pendientes, contenido.length);
+            escribirInt(pendientes, (int) crc.getValue());
+            pendientes.writeBytes(contenido);
+            hayPendientes.signal();
+            return ++ultimoLsn;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // Bucle del hilo escritor (group commit):
+    // coge todos los registros pendientes, los escribe de una vez, hace fsync si toca y avisa a quien espera.
+    private void bucleEscritor() {
+        long ultimoFsync = System.nanoTime();
+        boolean sinFsync = false;
+        long anterior = 0;
+        while (true) {
+            long hasta;
+            ByteArrayOutputStream lote;
+            cerrojo.lock();
+            try {
+                while (pendientes.size() == 0 && !cerrando) {
+                    if (sinFsync && politica == PoliticaFsync.INTERVALO) {
+                        // Si hay datos sin fsync, solo se espera hasta que toque el siguiente fsync
+                        if (!hayPendientes.await(intervaloFsyncMs, TimeUnit.MILLISECONDS)) {
+                            break;
+                        }
+                    } else {
+                        hayPendientes.await();
+                    }
+                }
+                if (pendientes.size() == 0 && cerrando) {
+                    break;
+                }
+                lote = pendientes;
+                pendientes = enEscritura;
+                enEscritura = lote;
+                hasta = ultimoLsn;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                cerrojo.unlock();
+            }
+
+            boolean forzado = false;
+            cerrojoCanal.lock();
+            try {
+                if (lote.size() > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(lote.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        canal.write(buffer);
+                    }
+                    sinFsync = true;
+                }
+                boolean tocaFsync = politica == PoliticaFsync.SIEMPRE
+                        || (politica == PoliticaFsync.INTERVALO
+                        && System.nanoTime() - ultimoFsync >= TimeUnit.MILLISECONDS.toNanos(intervaloFsyncMs));
+                if (sinFsync && tocaFsync) {
+                    canal.force(false);
+                    ultimoFsync = System.nanoTime();
+                    sinFsync = false;
+                    forzado = true;
+                }
+            } catch (IOException e) {
+                log.error("Error escribiendo el diario de vuelos", e);
+                cerrojo.lock();
+                try {
+                    fallo = e;
+                    hayEscritos.signalAll();
+                } finally {
+                    cerrojo.unlock();
+                }
+                return;
+            } finally {
+                cerrojoCanal.unlock();
+                lote.reset();
+            }
+
+            cerrojo.lock();
+            try {
+                lsnEscrito = hasta;
+                if (forzado) {
+                    lsnForzado = hasta;
+                }
+                hayEscritos.signalAll();
+            } finally {
+                cerrojo.unlock();
+            }
+
+            registrosDesdeInstantanea += hasta - anterior;
+            anterior = hasta;
+            if (registrosDesdeInstantanea >= instantaneaCada) {
+                registrosDesdeInstantanea = 0;
+                hiloInstantaneas.execute(this::instantanea);
+            }
+        }
+    }
+
+    // Repite los registros de un segmento.
+    // Si el ultimo segmento termina con un registro a medias (caida durante la escritura), se corta ahi.
+    // En cualquier otro segmento un registro roto es un error: se para en vez de perder datos sin avisar.
+    private boolean repetirSegmento(Path ruta, boolean ultimo) throws IOException {
+        boolean hayDatos = false;
+        long valido = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(ruta)))) {
+            while (true) {
+                byte[] contenido = leerRegistro(in);
+                if (contenido == null) {
+                    break;
+                }
+                aplicarRegistro(contenido);
+                valido += 8 + contenido.length;
+                hayDatos = true;
+            }
+        } catch (EOFException | CorruptoException e) {
+            if (!ultimo) {
+                throw new IOException("Segmento del diario corrupto: " + ruta, e);
+            }
+            log.warn("Registro incompleto al final de {}, se descarta desde el byte {}", ruta, valido);
+            try (FileChannel c = FileChannel.open(ruta, StandardOpenOption.WRITE)) {
+                c.truncate(valido);
+            }
+        }
+        return hayDatos;
+    }
+
+    // Lee un registro del diario, devuelve null al llegar al final del fichero justo entre dos registros.
+    private static byte[] leerRegistro(DataInputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return null;
+        }
+        int longitud = (b << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+        int crcEsperado = in.readInt();
+        if (longitud <= 0 || longitud > 1 << 20) {
+            throw new CorruptoException();
+        }
+        byte[] contenido = new byte[longitud];
+        in.readFully(contenido);
+        CRC32 crc = new CRC32();
+        crc.update(contenido);
+        if ((int) crc.getValue() != crcEsperado) {
+            throw new CorruptoException();
+        }
+        return contenido;
+    }
+
+    private void aplicarRegistro(byte[] contenido) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenido));
+        byte tipo = in.readByte();
+        switch (tipo) {
+            case GUARDADO -> repositorio.recuperarGuardado(leerVuelo(in));
+            case ELIMINADO -> repositorio.recuperarEliminado(in.readInt());
+            default -> throw new CorruptoException();
+        }
+    }
+
+    private List<Long> segmentos() throws IOException {
+        List<Long> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> ficheros = Files.newDirectoryStream(directorio, "diario-*.log")) {
+            for (Path f : ficheros) {
+                String nombre = f.getFileName().toString();
+                segmentos.add(Long.parseLong(nombre.substring("diario-".length(), nombre.length() - ".log".length())));
+            }
+        }
+        segmentos.sort(null);
+        return segmentos;
+    }
+
+    private Path rutaSegmento(long numero) {
+        return directorio.resolve(String.format("diario-%016d.log", numero));
+    }
+
+    private FileChannel abrirSegmento(long numero) throws IOException {
+        return FileChannel.open(rutaSegmento(numero),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // ----- Instantaneas -----
+
+    // 1. Con las escrituras del repositorio paradas (ver VueloRepository.conEscriturasParadas) se cambia a un segmento
+    //    nuevo del diario y se copian la siguiente ID y los vuelos. Cada escritura registra en el diario y aplica en
+    //    memoria con su cerrojo cogido, asi todo lo que ya esta en los segmentos anteriores esta en la copia,
+    //    y lo que se escriba despues va al segmento nuevo y se repetira tras la instantanea.
+    // 2. La copia se escribe (ya sin parar a nadie) en un fichero temporal que despues se renombra.
+    // 3. Se hace fsync del directorio (el renombrado tiene que estar en disco antes de borrar nada)
+    //    y se borran los segmentos anteriores.
+    private void escribirInstantanea() throws IOException {
+        Corte corte;
+        try {
+            corte = repositorio.conEscriturasParadas(() ->
+                    new Corte(cambiarSegmento(), repositorio.siguienteId(), repositorio.findAll()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        long primerSegmento = corte.primerSegmento();
+        List<Vuelo> vuelos = corte.vuelos();
+
+        Path temporal = directorio.resolve(FICHERO_INSTANTANEA + ".tmp");
+        InstantaneaVuelos.escribir(temporal, primerSegmento, corte.siguienteId(), vuelos);
+        Files.move(temporal, directorio.resolve(FICHERO_INSTANTANEA),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Si el proceso se cae antes de que el renombrado llegue a disco, al arrancar se lee la instantanea anterior
+        // y hacen falta los segmentos de despues de ella
+        if (!sincronizarDirectorio()) {
+            log.info("Instantanea de vuelos escrita: {} vuelos, los segmentos anteriores se borraran al arrancar", vuelos.size());
+            return;
+        }
+        for (long s : segmentos()) {
+            if (s < primerSegmento) {
+                Files.deleteIfExists(rutaSegmento(s));
+            }
+        }
+        log.info("Instantanea de vuelos escrita: {} vuelos, diario desde el segmento {}", vuelos.size(), primerSegmento);
+    }
+
+    // Lo que necesita la instantanea, copiado con las escrituras paradas
+    private record Corte(long primerSegmento, int siguienteId, List<Vuelo> vuelos) {
+    }
+
+    // Cierra el segmento actual del diario y abre el siguiente, devuelve su numero.
+    private long cambiarSegmento() {
+        cerrojoCanal.lock();
+        try {
+            if (politica != PoliticaFsync.NUNCA) {
+                canal.force(false);
+            }
+            canal.close();
+            segmento++;
+            canal = abrirSegmento(segmento);
+            return segmento;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            cerrojoCanal.unlock();
+        }
+    }
+
+    // fsync del directorio de datos, para que los renombrados y los ficheros nuevos sobrevivan a una caida.
+    // Algunos sistemas (Windows) no dejan abrir un directorio: devuelve false y no se puede asegurar.
+    private boolean sincronizarDirectorio() {
+        try (FileChannel dir = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            dir.force(true);
+            return true;
+        } catch (IOException e) {
+            log.warn("No se pudo hacer fsync del directorio {}: {}", directorio, e.toString());
+            return false;
+        }
+    }
+
+    // Carga la instantanea, devuelve el primer segmento del diario que hay que repetir despues.
+    private long leerInstantanea(Path ruta) throws IOException {
+        long inicio = System.nanoTime();
+        InstantaneaVuelos.Cabecera cabecera = InstantaneaVuelos.leer(ruta, repositorio::recuperarGuardado);
+        repositorio.recuperarSiguienteId(cabecera.siguienteId());
+        log.info("Instantanea de vuelos cargada: {} vuelos en {} ms", cabecera.vuelos(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        return cabecera.primerSegmento();
+    }
+
+    // ----- Formato binario de un vuelo -----
+
+    private static byte[] codificar(Vuelo v) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(GUARDADO);
+            escribirVuelo(out, v);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void escribirVuelo(DataOutputStream out, Vuelo v) throws IOException {
+        out.writeInt(v.getId());
+        out.writeUTF(v.getNombreVuelo());
+        out.writeUTF(v.getEmpresa());
+        out.writeUTF(v.getLugarSalida());
+        out.writeUTF(v.getLugarLlegada());
+        out.writeLong(v.getFechaSalida().toEpochDay());
+        out.writeLong(v.getFechaLlegada().toEpochDay());
+    }
+
+    private static Vuelo leerVuelo(DataInputStream in) throws IOException {
+        return Vuelo.builder()
+                .id(in.readInt())
+                .nombreVuelo(in.readUTF())
+                .empresa(in.readUTF())
+                .lugarSalida(in.readUTF())
+                .lugarLlegada(in.readUTF())
+                .fechaSalida(LocalDate.ofEpochDay(in.readLong()))
+                .fechaLlegada(LocalDate.ofEpochDay(in.readLong()))
+                .build();
+    }
+
+    private static void escribirInt(ByteArrayOutputStream out, int valor) {
+        out.write(valor >>> 24);
+        out.write(valor >>> 16);
+        out.write(valor >>> 8);
+        out.write(valor);
+    }
+
+    // Registro del diario con longitud o CRC incorrectos
+    private static class CorruptoException extends IOException {
+    }
+}
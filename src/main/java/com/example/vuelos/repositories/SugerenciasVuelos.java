@@ -0,0 +1,91 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.CampoSugerencia;
+import com.example.vuelos.models.Sugerencia;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.utils.TextoUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Indice para autocompletar (ver VueloRepository.sugerir): por cada campo, sus valores distintos ordenados
+// por el texto plegado (normalizado y sin acentos, ver TextoUtils.plegar) con cuantos vuelos tiene cada uno.
+// - Los valores que empiezan por un prefijo son un tramo seguido de la skip list, asi buscar solo recorre
+//   los valores que coinciden (y valores distintos hay pocos: empresas y ciudades).
+// - Cada escritura resta el vuelo anterior y suma el nuevo (con el cerrojo de la ID cogido). La skip list y los
+//   contadores son concurrentes: se puede buscar mientras se importan vuelos sin bloquear a nadie.
+// - Como en los demas indices, los valores que se quedan sin vuelos no se borran, simplemente no se sugieren.
+//   Se muestra el valor como se escribio la primera vez ("São Paulo" y "Sao Paulo" son el mismo).
+class SugerenciasVuelos {
+
+    private static final class Valor {
+        private final String valor;
+        private final LongAdder vuelos = new LongAdder();
+
+        private Valor(String valor) {
+            this.valor = valor;
+        }
+    }
+
+    // Primero los valores con mas vuelos y, a igualdad, en orden alfabetico
+    private static final Comparator<Sugerencia> MEJOR_PRIMERO = Comparator
+            .comparingLong(Sugerencia::vuelos).reversed()
+            .thenComparing(Sugerencia::valor, String.CASE_INSENSITIVE_ORDER);
+
+    private final Map<CampoSugerencia, ConcurrentSkipListMap<String, Valor>> indices = new EnumMap<>(CampoSugerencia.class);
+
+    SugerenciasVuelos() {
+        for (CampoSugerencia campo : CampoSugerencia.values()) {
+            indices.put(campo, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    // Resta el vuelo anterior y suma el nuevo (cualquiera de los dos puede ser null).
+    // Si el valor de un campo no cambia (lo normal al actualizar) no se toca.
+    void cambiar(Vuelo anterior, Vuelo nuevo) {
+        for (CampoSugerencia campo : CampoSugerencia.values()) {
+            String antes = anterior == null ? null : campo.valor(anterior);
+            String despues = nuevo == null ? null : campo.valor(nuevo);
+            String claveAntes = TextoUtils.plegar(antes);
+            String claveDespues = TextoUtils.plegar(despues);
+            if (claveAntes != null && claveAntes.equals(claveDespues)) {
+                continue;
+            }
+            ConcurrentSkipListMap<String, Valor> indice = indices.get(campo);
+            if (claveAntes != null && !claveAntes.isEmpty()) {
+                indice.computeIfAbsent(claveAntes, k -> new Valor(antes.trim())).vuelos.decrement();
+            }
+            if (claveDespues != null && !claveDespues.isEmpty()) {
+                indice.computeIfAbsent(claveDespues, k -> new Valor(despues.trim())).vuelos.increment();
+            }
+        }
+    }
+
+    // Los k valores con mas vuelos que empiezan por el prefijo (ya plegado). Con un prefijo vacio, los k con mas vuelos.
+    List<Sugerencia> buscar(CampoSugerencia campo, String prefijo, int k) {
+        ConcurrentSkipListMap<String, Valor> indice = indices.get(campo);
+        Map<String, Valor> tramo = prefijo.isEmpty()
+                ? indice
+                : indice.subMap(prefijo, true, prefijo + Character.MAX_VALUE, false);
+        // Monticulo con los k mejores hasta ahora, el peor arriba para poder sacarlo
+        PriorityQueue<Sugerencia> mejores = new PriorityQueue<>(k + 1, MEJOR_PRIMERO.reversed());
+        for (Valor v : tramo.values()) {
+            long vuelos = v.vuelos.sum();
+            if (vuelos > 0) {
+                mejores.add(new Sugerencia(v.valor, vuelos));
+                if (mejores.size() > k) {
+                    mejores.poll();
+                }
+            }
+        }
+        List<Sugerencia> sugerencias = new ArrayList<>(mejores);
+        sugerencias.sort(MEJOR_PRIMERO);
+        return sugerencias;
+    }
+}
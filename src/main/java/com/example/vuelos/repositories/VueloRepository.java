@@ -1,64 +1,436 @@
 package com.example.vuelos.repositories;
 
+import com.example.vuelos.cluster.ParticionVuelos;
+import com.example.vuelos.exceptions.ConflictException;
+import com.example.vuelos.exceptions.PreconditionFailedException;
+import com.example.vuelos.models.CambioVuelo;
+import com.example.vuelos.models.CampoSugerencia;
+import com.example.vuelos.models.Cursor;
+import com.example.vuelos.models.EstadisticasVuelos;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.models.Sugerencia;
 import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.utils.TextoUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // En esta clase se encuentra el repositorio en memoria (Asi podemos usar el programa sin una base de datos)
 // Basicamente simula una persistencia usando un Map (id -> vuelo)
+// El almacen principal se elige con "vuelos.almacen" (ver AlmacenVuelos): un Map de objetos Vuelo o columnas compactas.
+
+// Tomcat atiende cada peticion en un hilo distinto, asi que el repositorio tiene que ser seguro con concurrencia:
+// - Las lecturas no bloquean nunca (ConcurrentHashMap).
+// - Las escrituras se reparten en varios cerrojos segun la ID (lock striping), asi dos escrituras
+//   sobre vuelos distintos casi nunca se esperan entre ellas y el rendimiento escala con los nucleos.
+// - El nombreVuelo tiene un indice unico (nombre normalizado -> id), asi comprobar duplicados es O(1)
+//   y la reserva del nombre es atomica: dos altas simultaneas con el mismo nombre nunca pueden salir bien las dos.
+// - Para los filtros del listado hay indices secundarios (empresa, lugarSalida, lugarLlegada, ruta y fechaSalida -> ids).
+//   fechaSalida es una skip list ordenada por dia, asi un rango de fechas es un tramo del indice.
+//   Para "en el aire el dia D" se miran las salidas entre D - DURACION_CORTA y D (un tramo del mismo indice)
+//   y ademas los pocos vuelos que duran mas que eso, que se guardan aparte (largos).
+// - Para buscar itinerarios con escalas hay una lista de adyacencia del grafo de vuelos: por cada lugarSalida,
+//   sus salidas ordenadas por dia (ver findSalidas), asi las conexiones de una escala son un tramo de esa lista.
+//   Los indices solo guardan IDs: al leer siempre se resuelve el vuelo en el Map y se vuelve a comprobar el filtro,
+//   asi una entrada que se esta actualizando en ese momento nunca devuelve un vuelo que no cumple el filtro.
+// - Para cada criterio de "ordenarPor" hay una vista ya ordenada (skip list), listar es recorrerla en vez de ordenar.
+// - Opcionalmente cada escritura se guarda tambien en disco (ver PersistenciaVuelos), asi los datos sobreviven a un reinicio.
+// - Los vuelos son inmutables (ver Vuelo): al actualizar se sustituye el objeto entero,
+//   asi quien esta leyendo nunca ve un vuelo a medio actualizar.
+// - Cada vuelo tiene su version (1 al crearlo, +1 en cada actualizacion). update() puede recibir las versiones
+//   aceptadas (If-Match) y las comprueba con el cerrojo cogido, asi dos actualizaciones no se pisan sin enterarse.
+// - Hay un contador de version global y uno por cada clave de los indices (empresa, lugarLlegada, fechaSalida).
+//   Cada escritura sube los de los valores que tenia y tiene el vuelo, asi una cache de listados sabe
+//   exactamente si su resultado puede haber cambiado (ver version()).
+// - Las estadisticas (vuelos y duracion media por empresa, lugarLlegada y fechaSalida) son contadores que cada
+//   escritura actualiza con el cerrojo cogido (ver ContadoresVuelos), asi leerlas no recorre los vuelos.
+// - Para autocompletar empresa, lugarSalida y lugarLlegada hay un indice de sus valores ordenados sin acentos
+//   y con cuantos vuelos tiene cada uno (ver SugerenciasVuelos), tambien al dia en cada escritura.
+// - Cada alta, actualizacion y eliminacion se publica tambien (con el cerrojo cogido) en el feed de cambios
+//   (ver CambiosVuelos), asi quien tiene una copia de los vuelos se entera sin volver a pedirlos todos.
+// - Opcionalmente los vuelos que ya han llegado se pasan a un historico en disco (ver ArchivoVuelos y archivar()),
+//   asi en memoria (y en los indices, vistas y estadisticas) solo quedan los vuelos de hoy en adelante.
+// - En un cluster (ver ParticionVuelos) el repositorio solo genera las IDs de su nodo y solo carga la seed que le toca.
 
 @Repository
 public class VueloRepository {
 
-    // "Base de datos" en memoria
-    private final Map<Integer, Vuelo> vuelos = new HashMap<>();
-    // Secuencia simple para generar IDs incrementales, cada vez que se guarda un vuelo, se asigna un nuevo ID al siguiente.
-    private int idVuelo = 1;
+    // Numero de cerrojos para las escrituras (potencia de 2 para poder usar una mascara)
+    private static final int NUM_CERROJOS = 64;
+    // Numero de cambios que se guardan para el feed de cambios si no se indica otro
+    private static final int CAPACIDAD_CAMBIOS = 65_536;
+    // Veces que se intenta leer las estadisticas sin parar las escrituras
+    private static final int INTENTOS_ESTADISTICAS = 8;
+    // Si los candidatos de los indices superan 1/4 del total, sale mas a cuenta recorrer la vista ordenada filtrando
+    // que ordenar los candidatos.
+    private static final int FRACCION_RECORRIDO = 4;
+    // Los vuelos que duran mas dias que esto van al conjunto de largos (ver candidatosEnVuelo)
+    private static final int DURACION_CORTA = 31;
+    // Separador entre lugarSalida y lugarLlegada en la clave del indice de rutas (no aparece en un texto normal)
+    private static final char SEPARADOR_RUTA = '\u001F';
 
-    // Constructor del repositorio
-    // se cargan 10 vuelos precargados en la seed, se usa el metodo save para que se les asigne una ID automaticamente.
+    // "Base de datos" en memoria (id -> vuelo)
+    private final AlmacenVuelos vuelos;
+    // Indice unico de nombreVuelo (normalizado con TextoUtils) -> id del vuelo que lo usa.
+    private final ConcurrentHashMap<String, Integer> porNombre = new ConcurrentHashMap<>();
+    // Indices secundarios para los filtros: clave normalizada -> ids de los vuelos con ese valor.
+    // Las claves que se quedan sin vuelos no se borran (son pocas: empresas, ciudades y dias),
+    // asi una baja nunca compite con un alta concurrente que use la misma clave.
+    private final ConcurrentHashMap<String, Set<Integer>> porEmpresa = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Integer>> porLugarSalida = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Integer>> porLugarLlegada = new ConcurrentHashMap<>();
+    // lugarSalida + SEPARADOR_RUTA + lugarLlegada -> ids
+    private final ConcurrentHashMap<String, Set<Integer>> porRuta = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<LocalDate, Set<Integer>> porFechaSalida = new ConcurrentSkipListMap<>();
+    // Lista de adyacencia para los itinerarios: lugarSalida normalizado -> (fechaSalida, id) ordenados por dia
+    private final ConcurrentHashMap<String, NavigableSet<Salida>> salidasPorLugar = new ConcurrentHashMap<>();
+    // IDs de los vuelos que duran mas de DURACION_CORTA dias
+    private final Set<Integer> largos = ConcurrentHashMap.newKeySet();
+    // Versiones: global y por clave normalizada de cada indice. Solo suben, las claves no se borran nunca.
+    private final AtomicLong version = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> versionesEmpresa = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> versionesLugarSalida = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> versionesLugarLlegada = new ConcurrentHashMap<>();
+    // Ordenadas por dia para poder sumar las de un rango
+    private final ConcurrentSkipListMap<LocalDate, AtomicLong> versionesFechaSalida = new ConcurrentSkipListMap<>();
+    // Sube con cada escritura de un vuelo largo
+    private final AtomicLong versionLargos = new AtomicLong();
+    // Vistas ordenadas por cada criterio de "ordenarPor": (valor del campo, id) en orden.
+    private final Map<OrdenVuelo, NavigableSet<ClaveOrden>> vistas = crearVistas();
+    // Secuencia atomica para generar IDs incrementales, cada vez que se guarda un vuelo, se asigna un nuevo ID al siguiente.
+    // Al ser atomica dos peticiones simultaneas nunca reciben la misma ID.
+    // Avanza de "nodos" en "nodos", asi en un cluster cada nodo solo usa sus IDs (con un nodo: 1, 2, 3...).
+    private final AtomicInteger idVuelo;
+    // Nodo del cluster al que pertenece el repositorio
+    private final ParticionVuelos particion;
+    // Contadores de las estadisticas
+    private final ContadoresVuelos contadores = new ContadoresVuelos();
+    // Valores de los campos para autocompletar
+    private final SugerenciasVuelos sugerencias = new SugerenciasVuelos();
+    // Ultimos cambios para el feed de cambios
+    private final CambiosVuelos cambios;
+    // Cerrojos de escritura, cada ID usa siempre el mismo.
+    private final ReentrantLock[] cerrojos = new ReentrantLock[NUM_CERROJOS];
+    // Diario en disco de las escrituras (si la persistencia esta desactivada no hace nada)
+    private final PersistenciaVuelos persistencia;
+    // Historico en disco de los vuelos que ya han llegado (si esta desactivado no hace nada)
+    private final ArchivoVuelos archivo;
+
+    // Repositorio solo en memoria
     public VueloRepository() {
-        save(seed("H001-V", "Iberia", "Madrid", "Buenos Aires", LocalDate.of(2025, 3, 10), LocalDate.of(2025, 3, 11)));
-        save(seed("T100-V", "Turkish", "Istanbul", "New York", LocalDate.of(2025, 3, 10), LocalDate.of(2025, 3, 11)));
-        save(seed("E777-V", "Emirates", "Dubai", "Madrid", LocalDate.of(2025, 3, 12), LocalDate.of(2025, 3, 12)));
-        save(seed("A320-V", "Vueling", "Barcelona", "Paris", LocalDate.of(2025, 3, 9), LocalDate.of(2025, 3, 9)));
-        save(seed("AF500-V", "Air France", "Paris", "Rome", LocalDate.of(2025, 3, 8), LocalDate.of(2025, 3, 8)));
-        save(seed("LH220-V", "Lufthansa", "Frankfurt", "Lisbon", LocalDate.of(2025, 3, 15), LocalDate.of(2025, 3, 15)));
-        save(seed("AZ900-V", "ITA Airways", "Rome", "Istanbul", LocalDate.of(2025, 3, 11), LocalDate.of(2025, 3, 11)));
-        save(seed("UX010-V", "Air Europa", "Madrid", "New York", LocalDate.of(2025, 3, 14), LocalDate.of(2025, 3, 15)));
-        save(seed("IB999-V", "Iberia", "Madrid", "London", LocalDate.of(2025, 3, 7), LocalDate.of(2025, 3, 7)));
-        save(seed("TK333-V", "Turkish", "Istanbul", "Berlin", LocalDate.of(2025, 3, 13), LocalDate.of(2025, 3, 13)));
+        this(PersistenciaVuelos.desactivada());
+    }
+
+    public VueloRepository(PersistenciaVuelos persistencia) {
+        this(persistencia, new AlmacenMapa());
+    }
+
+    public VueloRepository(PersistenciaVuelos persistencia, String almacen) {
+        this(persistencia, AlmacenVuelos.de(almacen), CAPACIDAD_CAMBIOS);
+    }
+
+    @Autowired
+    public VueloRepository(PersistenciaVuelos persistencia, @Value("${vuelos.almacen:mapa}") String almacen,
+                           @Value("${vuelos.cambios.capacidad:" + CAPACIDAD_CAMBIOS + "}") int capacidadCambios,
+                           ArchivoVuelos archivo, ParticionVuelos particion) {
+        this(persistencia, AlmacenVuelos.de(almacen, particion), capacidadCambios, archivo, particion);
+    }
+
+    VueloRepository(PersistenciaVuelos persistencia, AlmacenVuelos almacen) {
+        this(persistencia, almacen, CAPACIDAD_CAMBIOS);
+    }
+
+    VueloRepository(PersistenciaVuelos persistencia, AlmacenVuelos almacen, int capacidadCambios) {
+        this(persistencia, almacen, capacidadCambios, ArchivoVuelos.desactivado());
+    }
+
+    VueloRepository(PersistenciaVuelos persistencia, AlmacenVuelos almacen, int capacidadCambios, ArchivoVuelos archivo) {
+        this(persistencia, almacen, capacidadCambios, archivo, ParticionVuelos.unica());
+    }
+
+    // Constructor del repositorio
+    // Si la persistencia esta activada y hay datos en disco, se recuperan y no se carga la seed.
+    // Si no, se cargan 10 vuelos precargados en la seed, se usa el metodo save para que se les asigne una ID automaticamente.
+    // Despues se abre el historico (si esta activado), que arranca su hilo para archivar los vuelos que ya han llegado.
+    VueloRepository(PersistenciaVuelos persistencia, AlmacenVuelos almacen, int capacidadCambios, ArchivoVuelos archivo,
+                    ParticionVuelos particion) {
+        for (int i = 0; i < NUM_CERROJOS; i++) {
+            cerrojos[i] = new ReentrantLock();
+        }
+        this.vuelos = almacen;
+        this.persistencia = persistencia;
+        this.archivo = archivo;
+        this.particion = particion;
+        this.idVuelo = new AtomicInteger(particion.primerId());
+        this.cambios = new CambiosVuelos(capacidadCambios);
+        if (!persistencia.abrir(this)) {
+            cargarSeed();
+        }
+        archivo.abrir(this);
+    }
+
+    // Carga los 10 vuelos de la seed (en un cluster, solo los que le tocan a este nodo)
+    private void cargarSeed() {
+        List<Vuelo> seed = List.of(
+                seed("H001-V", "Iberia", "Madrid", "Buenos Aires", LocalDate.of(2025, 3, 10), LocalDate.of(2025, 3, 11)),
+                seed("T100-V", "Turkish", "Istanbul", "New York", LocalDate.of(2025, 3, 10), LocalDate.of(2025, 3, 11)),
+                seed("E777-V", "Emirates", "Dubai", "Madrid", LocalDate.of(2025, 3, 12), LocalDate.of(2025, 3, 12)),
+                seed("A320-V", "Vueling", "Barcelona", "Paris", LocalDate.of(2025, 3, 9), LocalDate.of(2025, 3, 9)),
+                seed("AF500-V", "Air France", "Paris", "Rome", LocalDate.of(2025, 3, 8), LocalDate.of(2025, 3, 8)),
+                seed("LH220-V", "Lufthansa", "Frankfurt", "Lisbon", LocalDate.of(2025, 3, 15), LocalDate.of(2025, 3, 15)),
+                seed("AZ900-V", "ITA Airways", "Rome", "Istanbul", LocalDate.of(2025, 3, 11), LocalDate.of(2025, 3, 11)),
+                seed("UX010-V", "Air Europa", "Madrid", "New York", LocalDate.of(2025, 3, 14), LocalDate.of(2025, 3, 15)),
+                seed("IB999-V", "Iberia", "Madrid", "London", LocalDate.of(2025, 3, 7), LocalDate.of(2025, 3, 7)),
+                seed("TK333-V", "Turkish", "Istanbul", "Berlin", LocalDate.of(2025, 3, 13), LocalDate.of(2025, 3, 13))
+        );
+        for (Vuelo v : seed) {
+            if (particion.propio(v.getNombreVuelo())) {
+                save(v);
+            }
+        }
     }
 
     // Creamos un vuelo base sin ID
     // Solo se usa para el seed, el ID se asignará al llamar a save()
     private Vuelo seed(String nombreVuelo, String empresa, String lugarSalida, String lugarLlegada,
                        LocalDate fechaSalida, LocalDate fechaLlegada) {
-        Vuelo v = new Vuelo();
-        v.setNombreVuelo(nombreVuelo);
-        v.setEmpresa(empresa);
-        v.setLugarSalida(lugarSalida);
-        v.setLugarLlegada(lugarLlegada);
-        v.setFechaSalida(fechaSalida);
-        v.setFechaLlegada(fechaLlegada);
-        return v;
+        return Vuelo.builder()
+                .nombreVuelo(nombreVuelo)
+                .empresa(empresa)
+                .lugarSalida(lugarSalida)
+                .lugarLlegada(lugarLlegada)
+                .fechaSalida(fechaSalida)
+                .fechaLlegada(fechaLlegada)
+                .build();
     }
 
     // Guarda un vuelo en el Map asignandole un id incremental.
+    // Antes de guardarlo reserva el nombreVuelo en el indice unico, si ya lo tiene otro vuelo lanza un ConflictException.
+    // Devuelve el vuelo guardado (una copia del recibido con su ID y version).
     public Vuelo save(Vuelo vuelo) {
-        vuelo.setId(idVuelo++);
-        vuelos.put(vuelo.getId(), vuelo);
-        return vuelo;
+        int id = idVuelo.getAndAdd(particion.nodos());
+        Vuelo guardado = vuelo.toBuilder().id(id).version(1).build();
+
+        long lsn;
+        ReentrantLock cerrojo = cerrojo(id);
+        cerrojo.lock();
+        try {
+            reservarNombre(guardado.getNombreVuelo(), id);
+            lsn = registrarOLiberar(guardado, guardado.getNombreVuelo());
+            indexar(guardado);
+            vuelos.put(guardado);
+            subirVersiones(null, guardado);
+            contadores.cambiar(null, guardado);
+            sugerencias.cambiar(null, guardado);
+            cambios.publicar(CambioVuelo.Tipo.CREADO, guardado);
+        } finally {
+            cerrojo.unlock();
+        }
+        // Se espera al disco sin el cerrojo, asi las demas escrituras no se paran mientras tanto
+        persistencia.esperar(lsn);
+        return guardado;
+    }
+
+    // Actualiza un vuelo existente con los datos recibidos.
+    // Los vuelos son inmutables: se crea uno nuevo con los datos, la misma ID y la version siguiente,
+    // y se sustituye en el Map con una sola escritura (los lectores ven el anterior o el nuevo, nunca una mezcla).
+    // Devolvemos un Optional vacio si el vuelo no existe (o se ha eliminado mientras tanto).
+    // Si cambia el nombreVuelo, primero se reserva el nuevo y despues se libera el anterior.
+    public Optional<Vuelo> update(int id, Vuelo datos) {
+        return update(id, datos, null);
+    }
+
+    // Igual que el anterior, pero solo actualiza si la version actual del vuelo es una de las aceptadas
+    // (null = cualquiera). Si no lo es lanza un PreconditionFailedException.
+    public Optional<Vuelo> update(int id, Vuelo datos, LongPredicate versionAceptada) {
+        Vuelo nuevo;
+        long lsn;
+        ReentrantLock cerrojo = cerrojo(id);
+        cerrojo.lock();
+        try {
+            Vuelo actual = vuelos.get(id);
+            if (actual == null) {
+                return Optional.empty();
+            }
+            if (versionAceptada != null && !versionAceptada.test(actual.getVersion())) {
+                throw new PreconditionFailedException("El vuelo ha cambiado desde que se leyo (If-Match no coincide)");
+            }
+            reservarNombre(datos.getNombreVuelo(), id);
+
+            nuevo = datos.toBuilder().id(id).version(actual.getVersion() + 1).build();
+            // Se registra antes de liberar el nombre anterior: si otro vuelo lo coge, su registro ira despues en el diario.
+            // Si el diario falla solo se devuelve el nombre nuevo (si es otro) y el vuelo sigue como estaba.
+            boolean mismoNombre = Objects.equals(TextoUtils.normalizar(actual.getNombreVuelo()),
+                    TextoUtils.normalizar(nuevo.getNombreVuelo()));
+            lsn = registrarOLiberar(nuevo, mismoNombre ? null : nuevo.getNombreVuelo());
+            indexar(nuevo);
+            vuelos.put(nuevo);
+            subirVersiones(actual, nuevo);
+            contadores.cambiar(actual, nuevo);
+            sugerencias.cambiar(actual, nuevo);
+            cambios.publicar(CambioVuelo.Tipo.ACTUALIZADO, nuevo);
+
+            liberarNombreSiCambia(actual.getNombreVuelo(), nuevo.getNombreVuelo(), id);
+            desindexarCambios(actual, nuevo);
+        } finally {
+            cerrojo.unlock();
+        }
+        persistencia.esperar(lsn);
+        return Optional.of(nuevo);
+    }
+
+    // Vuelve a guardar un vuelo eliminado con su misma ID y version (por ejemplo al deshacer un lote atomico).
+    // Reserva de nuevo su nombreVuelo, si ya lo tiene otro vuelo lanza un ConflictException.
+    // Si la ID ya existe no hace nada.
+    public void restore(Vuelo vuelo) {
+        long lsn;
+        ReentrantLock cerrojo = cerrojo(vuelo.getId());
+        cerrojo.lock();
+        try {
+            if (vuelos.contiene(vuelo.getId())) {
+                return;
+            }
+            reservarNombre(vuelo.getNombreVuelo(), vuelo.getId());
+            lsn = registrarOLiberar(vuelo, vuelo.getNombreVuelo());
+            indexar(vuelo);
+            vuelos.put(vuelo);
+            subirVersiones(null, vuelo);
+            contadores.cambiar(null, vuelo);
+            sugerencias.cambiar(null, vuelo);
+            cambios.publicar(CambioVuelo.Tipo.CREADO, vuelo);
+        } finally {
+            cerrojo.unlock();
+        }
+        persistencia.esperar(lsn);
     }
 
     // Devuelve todos los vuelos existentes.
-    // Devolvemos lista los valores del Map
+    // Devolvemos una copia de los valores del Map, asi quien la recorre no se ve afectado por escrituras posteriores.
     public List<Vuelo> findAll() {
-        return new ArrayList<>(vuelos.values());
+        return vuelos.copia();
+    }
+
+
+    // Devuelve los vuelos que cumplen el filtro.
+    // Si no hay filtros se recorren todos los vuelos.
+    // Si hay filtros, se parte del indice con menos candidatos y solo se comprueban esos vuelos,
+    // asi el coste depende del tamaño del resultado y no del total de vuelos.
+    // El Stream es perezoso: los vuelos se van resolviendo a medida que se consumen.
+    public Stream<Vuelo> findByFiltro(FiltroVuelos filtro) {
+        if (filtro.vacio()) {
+            return vuelos.stream();
+        }
+        return resolver(candidatos(filtro), filtro);
     }
 
+    // Igual que findByFiltro pero devolviendo los vuelos ya ordenados segun el criterio.
+    // - Sin filtros, o si los filtros dejan pasar a muchos vuelos, se recorre la vista ordenada filtrando por el camino
+    //   (si se ordena por fechaSalida, solo el tramo de dias que permiten los filtros de fecha).
+    // - Si se ordena por fechaSalida y los candidatos salen de un dia o un rango de dias de salida,
+    //   se recorre solo ese tramo de la vista (ya esta en orden).
+    // - Si los filtros dejan pocos candidatos, se ordenan solo esos candidatos.
+    public Stream<Vuelo> findByFiltro(FiltroVuelos filtro, OrdenVuelo orden) {
+        return findByFiltro(filtro, orden, null);
+    }
+
+    // Igual que el anterior pero empezando justo despues de la posicion del cursor (null = desde el principio).
+    // Al recorrer una vista se salta directamente a la posicion del cursor (tailSet),
+    // y como el Stream es perezoso, quien solo necesita una pagina deja de recorrer al completarla.
+    public Stream<Vuelo> findByFiltro(FiltroVuelos filtro, OrdenVuelo orden, Cursor desde) {
+        NavigableSet<ClaveOrden> vista = vistas.get(orden);
+        if (filtro.vacio()) {
+            return recorrer(desde(vista, desde), orden, filtro);
+        }
+
+        Candidatos candidatos = candidatos(filtro);
+        boolean porFecha = orden == OrdenVuelo.FECHA_SALIDA;
+        if (porFecha && candidatos.porFechaSalida()) {
+            return recorrer(tramo(vista, filtro.salidaMinima(), filtro.salidaMaxima(), desde), orden, filtro);
+        }
+        if (candidatos.tamano() > vuelos.size() / FRACCION_RECORRIDO) {
+            NavigableSet<ClaveOrden> recorrido = porFecha
+                    ? tramo(vista, filtro.salidaMinima(), filtro.salidaMaxima(), desde)
+                    : desde(vista, desde);
+            return recorrer(recorrido, orden, filtro);
+        }
+        Stream<Vuelo> s = resolver(candidatos, filtro);
+        if (desde != null) {
+            s = s.filter(desde::esAnterior);
+        }
+        return s.sorted(orden.comparador());
+    }
+
+    // Igual que el anterior pero, si "incluirHistorico" es true, tambien con los vuelos del historico que cumplen el filtro.
+    // Los del historico se leen solo de los bloques cuyas fechas coinciden con el filtro y se mezclan con los de memoria
+    // (que ya vienen en orden), asi el resultado sigue en el mismo orden y con el cursor.
+    // - Por fechaSalida, el cursor tambien acota los bloques (los anteriores a su dia no se leen) y los bloques se van
+    //   leyendo a medida que se consume el Stream: una pagina solo descomprime los bloques que necesita.
+    // - Por empresa o lugarLlegada cualquier bloque del rango puede tener vuelos de la pagina, asi que se leen todos
+    //   y se ordenan (los bloques descomprimidos quedan en la cache para las paginas siguientes).
+    // Una ID que esta a la vez en memoria y en el historico (mientras se archiva) sale solo una vez, la de memoria.
+    public Stream<Vuelo> findByFiltro(FiltroVuelos filtro, OrdenVuelo orden, Cursor desde, boolean incluirHistorico) {
+        Stream<Vuelo> calientes = findByFiltro(filtro, orden, desde);
+        if (!incluirHistorico || !archivo.habilitado()) {
+            return calientes;
+        }
+        Predicate<Vuelo> incluir = v -> filtro.cumple(v) && !vuelos.contiene(v.getId()) && (desde == null || desde.esAnterior(v));
+        Stream<Vuelo> archivados;
+        if (orden == OrdenVuelo.FECHA_SALIDA) {
+            LocalDate minima = filtro.salidaMinima();
+            if (desde != null && (minima == null || minima.isBefore((LocalDate) desde.valor()))) {
+                minima = (LocalDate) desde.valor();
+            }
+            archivados = archivo.recorrerPorFechaSalida(minima, filtro.salidaMaxima(), incluir);
+        } else {
+            archivados = archivo.recorrer(filtro.salidaMinima(), filtro.salidaMaxima())
+                    .filter(incluir)
+                    .sorted(orden.comparador());
+        }
+        return mezclar(calientes, archivados, orden.comparador());
+    }
+
+    // Numero aproximado de vuelos que hay que mirar para resolver el filtro (los del indice mas pequeño,
+    // o todos si no hay filtros). Sirve para decidir si compensa ejecutar el listado en paralelo.
+    public long estimarCandidatos(FiltroVuelos filtro) {
+        return filtro.vacio() ? vuelos.size() : candidatos(filtro).tamano();
+    }
+
+    // Vuelos que salen de ese lugar entre esos dos dias (ambos incluidos), ordenados por fechaSalida y despues por ID.
+    // Es un tramo de la lista de adyacencia, asi que el coste solo depende de las salidas que hay en esos dias.
+    // Como en el resto de indices, cada vuelo se vuelve a comprobar contra el almacen al resolverlo.
+    public Stream<Vuelo> findSalidas(String lugarSalida, LocalDate desde, LocalDate hasta) {
+        String lugar = TextoUtils.normalizar(lugarSalida);
+        NavigableSet<Salida> salidas = lugar == null ? null : salidasPorLugar.get(lugar);
+        if (salidas == null || desde == null || hasta == null || desde.isAfter(hasta)) {
+            return Stream.empty();
+        }
+        return salidas.subSet(new Salida(desde, Integer.MIN_VALUE), true, new Salida(hasta, Integer.MAX_VALUE), true)
+                .stream()
+                .map(s -> {
+                    Vuelo v = vuelos.get(s.id());
+                    boolean vigente = v != null
+                            && s.fecha().equals(v.getFechaSalida())
+                            && TextoUtils.coincide(v.getLugarSalida(), lugar);
+                    return vigente ? v : null;
+                })
+                .filter(Objects::nonNull);
+    }
 
     // Buscar por ID.
     // Devolvemos un Optional con el vuelo si existe, o vacio si no existe.
@@ -66,25 +438,613 @@ public class VueloRepository {
         return Optional.ofNullable(vuelos.get(id));
     }
 
+    // Igual que findById pero, si el vuelo no esta en memoria, se busca en el historico (solo lectura).
+    public Optional<Vuelo> findByIdConHistorico(int id) {
+        Vuelo v = vuelos.get(id);
+        return Optional.ofNullable(v != null ? v : archivo.buscar(id));
+    }
+
+    // Indica si el vuelo esta solo en el historico (ya ha llegado y no se puede modificar).
+    public boolean archivado(int id) {
+        return !vuelos.contiene(id) && archivo.buscar(id) != null;
+    }
+
+    // Numero de vuelos guardados.
+    public int count() {
+        return vuelos.size();
+    }
+
     // Se verifica si el nombreVuelo esta duplicado
     // Basicamente, si se esta creando un vuelo cualquier coincidencia es duplicado.
     // Pero si se esta actualizando y la ID coincide con el vuelo que se esta cambiando, ahi si permite usar el mismo nombreVuelo
+    // Se consulta el indice unico, asi que no hace falta recorrer todos los vuelos.
     public boolean existsNombreVuelo(String nombreVuelo, Integer id) {
         if (nombreVuelo == null) {
             return false;
         }
-        return vuelos.values().stream().anyMatch(v ->
-                v.getNombreVuelo() != null
-                        && v.getNombreVuelo().equalsIgnoreCase(nombreVuelo)
-                        // Si ID es null (crear), siempre da true para cualquier vuelo encontrado
-                        // si ID no es null (actualizar), evita comparar contra si mismo.
-                        && (!Integer.valueOf(v.getId()).equals(id)));
-
+        Integer propietario = porNombre.get(TextoUtils.normalizar(nombreVuelo));
+        // Si ID es null (crear), cualquier vuelo encontrado es duplicado
+        // si ID no es null (actualizar), evita comparar contra si mismo.
+        return propietario != null && !propietario.equals(id);
     }
 
     // Elimina un vuelo por ID
     // Devolvemos true si existe y se ha eliminado, false si no existía.
     public boolean delete(int id) {
-        return vuelos.remove(id) != null;
+        return delete(id, null);
+    }
+
+    // Igual que el anterior, pero solo elimina si la version actual del vuelo es una de las aceptadas
+    // (null = cualquiera). Si no lo es lanza un PreconditionFailedException.
+    public boolean delete(int id, LongPredicate versionAceptada) {
+        long lsn;
+        ReentrantLock cerrojo = cerrojo(id);
+        cerrojo.lock();
+        try {
+            Vuelo actual = vuelos.get(id);
+            if (actual == null) {
+                return false;
+            }
+            if (versionAceptada != null && !versionAceptada.test(actual.getVersion())) {
+                throw new PreconditionFailedException("El vuelo ha cambiado desde que se leyo (If-Match no coincide)");
+            }
+            // Primero el diario: si falla, el vuelo sigue en memoria
+            lsn = persistencia.registrarEliminado(id);
+            Vuelo eliminado = vuelos.remove(id);
+            porNombre.remove(TextoUtils.normalizar(eliminado.getNombreVuelo()), id);
+            desindexarCambios(eliminado, null);
+            subirVersiones(eliminado, null);
+            contadores.cambiar(eliminado, null);
+            sugerencias.cambiar(eliminado, null);
+            cambios.publicar(CambioVuelo.Tipo.ELIMINADO, eliminado);
+        } finally {
+            cerrojo.unlock();
+        }
+        persistencia.esperar(lsn);
+        return true;
+    }
+
+    // Version de los vuelos que cumplen el filtro: cambia siempre que una escritura puede haber cambiado ese resultado
+    // (en su contenido o en su orden). Sin filtros es la version global, con filtros es la suma de las versiones
+    // de sus claves: como todas solo suben, la suma cambia en cuanto cambia cualquiera de ellas.
+    // Quien quiera cachear un resultado tiene que leer la version ANTES de calcularlo.
+    public long version(FiltroVuelos filtro) {
+        if (filtro.vacio()) {
+            return version.get();
+        }
+        long suma = 0;
+        if (filtro.empresa() != null) {
+            suma += versionDe(versionesEmpresa, filtro.empresa());
+        }
+        if (filtro.lugarSalida() != null) {
+            suma += versionDe(versionesLugarSalida, filtro.lugarSalida());
+        }
+        if (filtro.lugarLlegada() != null) {
+            suma += versionDe(versionesLugarLlegada, filtro.lugarLlegada());
+        }
+        if (filtro.fechaSalida() != null) {
+            suma += versionDe(versionesFechaSalida, filtro.fechaSalida());
+        }
+        if (filtro.rangoSalida()) {
+            suma += suma(tramo(versionesFechaSalida, filtro.fechaSalidaDesde(), filtro.fechaSalidaHasta()));
+        }
+        if (filtro.enVueloEl() != null) {
+            LocalDate dia = filtro.enVueloEl();
+            suma += suma(tramo(versionesFechaSalida, dia.minusDays(DURACION_CORTA), dia)) + versionLargos.get();
+        }
+        return suma;
+    }
+
+    // Estadisticas exactas de todos los vuelos (ver ContadoresVuelos).
+    // Primero se intenta leerlas sin parar a nadie. Si siempre coincide con alguna escritura (mucha carga),
+    // se cogen todos los cerrojos en orden: mientras tanto no hay escrituras a medias y la lectura es exacta.
+    // Cada escritura solo coge un cerrojo, asi que cogerlos todos en orden no puede bloquearse con ninguna.
+    public EstadisticasVuelos estadisticas() {
+        for (int i = 0; i < INTENTOS_ESTADISTICAS; i++) {
+            EstadisticasVuelos leidas = contadores.leerSiEstable();
+            if (leidas != null) {
+                return leidas;
+            }
+        }
+        return conEscriturasParadas(contadores::leer);
+    }
+
+    // Ejecuta la accion con todos los cerrojos cogidos en orden: mientras tanto no hay ninguna escritura a medias
+    // (por ejemplo registrada en el diario pero todavia no aplicada en memoria).
+    <T> T conEscriturasParadas(Supplier<T> accion) {
+        int cogidos = 0;
+        try {
+            for (; cogidos < NUM_CERROJOS; cogidos++) {
+                cerrojos[cogidos].lock();
+            }
+            return accion.get();
+        } finally {
+            for (int i = cogidos - 1; i >= 0; i--) {
+                cerrojos[i].unlock();
+            }
+        }
+    }
+
+    // Los k valores del campo con mas vuelos que empiezan por el prefijo, sin importar MAYUS, MINUS ni acentos.
+    public List<Sugerencia> sugerir(CampoSugerencia campo, String prefijo, int k) {
+        String plegado = TextoUtils.plegar(prefijo);
+        return sugerencias.buscar(campo, plegado == null ? "" : plegado, k);
+    }
+
+    // Pasa al historico los vuelos que han llegado antes de "hoy" y los quita de memoria. Devuelve cuantos se han pasado.
+    // 1. Se escriben en el historico (con fsync): desde ese momento ya se pueden leer de alli.
+    // 2. Cada vuelo se quita de memoria con su cerrojo cogido, solo si sigue siendo igual al que se archivo
+    //    (los vuelos son inmutables y llevan su version: si se ha actualizado o eliminado mientras tanto, ya no es igual).
+    //    Se quita como una eliminacion (indices, vistas, versiones, estadisticas, sugerencias y diario),
+    //    pero no se publica en el feed de cambios: el vuelo no se ha eliminado, sigue en GET /vuelos/{id}.
+    //    Su nombreVuelo queda libre para un vuelo nuevo (los vuelos de una ruta suelen repetir nombre cada dia).
+    // 3. Las copias archivadas de los que no se han quitado se anulan en el historico.
+    // Si el proceso se cae entre 1 y 2, al arrancar el historico anula las copias de los vuelos que siguen en memoria.
+    public int archivar(LocalDate hoy) {
+        if (!archivo.habilitado()) {
+            return 0;
+        }
+        List<Vuelo> llegados = vuelos.stream()
+                .filter(v -> v.getFechaLlegada() != null && v.getFechaLlegada().isBefore(hoy))
+                .toList();
+        if (llegados.isEmpty()) {
+            return 0;
+        }
+        archivo.escribir(llegados);
+
+        List<Integer> anulados = new ArrayList<>();
+        long lsn = 0;
+        for (Vuelo v : llegados) {
+            ReentrantLock cerrojo = cerrojo(v.getId());
+            cerrojo.lock();
+            try {
+                if (!v.equals(vuelos.get(v.getId()))) {
+                    anulados.add(v.getId());
+                    continue;
+                }
+                lsn = persistencia.registrarEliminado(v.getId());
+                vuelos.remove(v.getId());
+                porNombre.remove(TextoUtils.normalizar(v.getNombreVuelo()), v.getId());
+                desindexarCambios(v, null);
+                subirVersiones(v, null);
+                contadores.cambiar(v, null);
+                sugerencias.cambiar(v, null);
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+        persistencia.esperar(lsn);
+        archivo.anular(anulados);
+        return llegados.size() - anulados.size();
+    }
+
+    // Feed de los ultimos cambios (los de la recuperacion desde disco no se publican: son de antes de arrancar)
+    public CambiosVuelos cambios() {
+        return cambios;
+    }
+
+    // ----- Recuperacion desde disco (solo la usa PersistenciaVuelos al arrancar, antes de atender peticiones) -----
+
+    // Aplica un vuelo guardado en disco: lo inserta o sustituye al que tenga la misma ID.
+    // No se comprueba el nombre unico: el diario ya se escribio con los nombres validados.
+    // Las versiones no se guardan en disco: se cuentan de nuevo desde 1 (los ETag llevan el arranque, ver EtagUtils).
+    void recuperarGuardado(Vuelo leido) {
+        Vuelo anterior = vuelos.get(leido.getId());
+        Vuelo v = leido.withVersion(anterior == null ? 1 : anterior.getVersion() + 1);
+        recuperarEliminado(v.getId());
+        porNombre.put(TextoUtils.normalizar(v.getNombreVuelo()), v.getId());
+        indexar(v);
+        vuelos.put(v);
+        contadores.cambiar(null, v);
+        sugerencias.cambiar(null, v);
+        recuperarSiguienteId(v.getId() + 1);
+    }
+
+    // Aplica una eliminacion guardada en disco.
+    void recuperarEliminado(int id) {
+        Vuelo anterior = vuelos.remove(id);
+        if (anterior != null) {
+            porNombre.remove(TextoUtils.normalizar(anterior.getNombreVuelo()), id);
+            desindexarCambios(anterior, null);
+            contadores.cambiar(anterior, null);
+            sugerencias.cambiar(anterior, null);
+        }
+        recuperarSiguienteId(id + 1);
+    }
+
+    // La secuencia de IDs nunca vuelve atras, asi no se reutilizan IDs de vuelos eliminados.
+    void recuperarSiguienteId(int siguiente) {
+        idVuelo.accumulateAndGet(particion.alinear(siguiente), Math::max);
+    }
+
+    // Nodo del cluster al que pertenece el repositorio (el service comprueba con el que los nombres le tocan)
+    public ParticionVuelos particion() {
+        return particion;
+    }
+
+    int siguienteId() {
+        return idVuelo.get();
+    }
+
+    // Reserva el nombreVuelo para la ID en el indice unico.
+    // putIfAbsent es atomico: si dos peticiones reservan el mismo nombre a la vez, solo una lo consigue.
+    private void reservarNombre(String nombreVuelo, int id) {
+        if (nombreVuelo == null) {
+            return;
+        }
+        Integer propietario = porNombre.putIfAbsent(TextoUtils.normalizar(nombreVuelo), id);
+        if (propietario != null && propietario != id) {
+            throw new ConflictException("nombreVuelo ya utilizado");
+        }
+    }
+
+    // Registra en el diario el vuelo que se va a guardar, antes de tocar nada en memoria
+    // (el nombre ya esta reservado para que otro no lo coja mientras tanto).
+    // Si el diario ha fallado no se aplica nada: se libera el nombre reservado (null = ninguno) y se lanza el error.
+    private long registrarOLiberar(Vuelo vuelo, String nombreReservado) {
+        try {
+            return persistencia.registrarGuardado(vuelo);
+        } catch (RuntimeException e) {
+            liberarNombreSiCambia(nombreReservado, null, vuelo.getId());
+            throw e;
+        }
+    }
+
+    // Libera el nombre anterior de un vuelo actualizado, solo si el nombre normalizado ha cambiado.
+    private void liberarNombreSiCambia(String anterior, String nuevo, int id) {
+        String claveAnterior = TextoUtils.normalizar(anterior);
+        if (claveAnterior != null && !claveAnterior.equals(TextoUtils.normalizar(nuevo))) {
+            porNombre.remove(claveAnterior, id);
+        }
+    }
+
+    // Tramo de la vista que va despues del cursor (la vista entera si no hay cursor).
+    private static NavigableSet<ClaveOrden> desde(NavigableSet<ClaveOrden> vista, Cursor cursor) {
+        if (cursor == null) {
+            return vista;
+        }
+        return vista.tailSet(new ClaveOrden(cursor.valor(), cursor.id()), false);
+    }
+
+    // Tramo de la vista (ordenada por fechaSalida) con los dias entre min y max (null = sin limite)
+    // que va despues del cursor. Los limites se juntan en un solo subSet: un tailSet sobre un subSet
+    // con una clave fuera de su rango lanzaria una excepcion.
+    private static NavigableSet<ClaveOrden> tramo(NavigableSet<ClaveOrden> vista, LocalDate min, LocalDate max, Cursor cursor) {
+        Comparator<? super ClaveOrden> comparador = vista.comparator();
+        ClaveOrden inicio = min == null ? null : new ClaveOrden(min, Integer.MIN_VALUE);
+        boolean inicioIncluido = true;
+        if (cursor != null) {
+            ClaveOrden despues = new ClaveOrden(cursor.valor(), cursor.id());
+            if (inicio == null || comparador.compare(despues, inicio) >= 0) {
+                inicio = despues;
+                inicioIncluido = false;
+            }
+        }
+        ClaveOrden fin = max == null ? null : new ClaveOrden(max, Integer.MAX_VALUE);
+        if (inicio != null && fin != null) {
+            return comparador.compare(inicio, fin) > 0
+                    ? Collections.emptyNavigableSet()
+                    : vista.subSet(inicio, inicioIncluido, fin, true);
+        }
+        if (inicio != null) {
+            return vista.tailSet(inicio, inicioIncluido);
+        }
+        return fin != null ? vista.headSet(fin, true) : vista;
+    }
+
+    // Tramo de un mapa por dia con los dias entre desde y hasta (ambos incluidos, null = sin limite).
+    private static <V> NavigableMap<LocalDate, V> tramo(ConcurrentSkipListMap<LocalDate, V> mapa, LocalDate desde, LocalDate hasta) {
+        if (desde != null && hasta != null) {
+            return desde.isAfter(hasta) ? Collections.emptyNavigableMap() : mapa.subMap(desde, true, hasta, true);
+        }
+        if (desde != null) {
+            return mapa.tailMap(desde, true);
+        }
+        return hasta != null ? mapa.headMap(hasta, true) : mapa;
+    }
+
+    // Candidatos del indice mas pequeño entre los filtros activos.
+    private Candidatos candidatos(FiltroVuelos filtro) {
+        Candidatos candidatos = null;
+        if (filtro.empresa() != null) {
+            candidatos = menor(candidatos, Candidatos.de(porEmpresa.get(filtro.empresa()), false));
+        }
+        if (filtro.lugarSalida() != null && filtro.lugarLlegada() != null) {
+            // El indice de rutas ya tiene solo los de esa salida y esa llegada
+            candidatos = menor(candidatos, Candidatos.de(porRuta.get(ruta(filtro.lugarSalida(), filtro.lugarLlegada())), false));
+        } else if (filtro.lugarSalida() != null) {
+            candidatos = menor(candidatos, Candidatos.de(porLugarSalida.get(filtro.lugarSalida()), false));
+        } else if (filtro.lugarLlegada() != null) {
+            candidatos = menor(candidatos, Candidatos.de(porLugarLlegada.get(filtro.lugarLlegada()), false));
+        }
+        if (filtro.fechaSalida() != null) {
+            candidatos = menor(candidatos, Candidatos.de(porFechaSalida.get(filtro.fechaSalida()), true));
+        }
+        if (filtro.rangoSalida()) {
+            NavigableMap<LocalDate, Set<Integer>> dias = tramo(porFechaSalida, filtro.fechaSalidaDesde(), filtro.fechaSalidaHasta());
+            candidatos = menor(candidatos, Candidatos.de(dias.values(), true));
+        }
+        if (filtro.enVueloEl() != null) {
+            candidatos = menor(candidatos, candidatosEnVuelo(filtro.enVueloEl()));
+        }
+        return candidatos;
+    }
+
+    // Candidatos de los vuelos en el aire el dia D: salen entre D - DURACION_CORTA y D, o son largos.
+    // Asi no hace falta un indice por cada dia que dura un vuelo, y solo se mira un tramo de DURACION_CORTA dias.
+    private Candidatos candidatosEnVuelo(LocalDate dia) {
+        List<Set<Integer>> grupos = new ArrayList<>(tramo(porFechaSalida, dia.minusDays(DURACION_CORTA), dia).values());
+        grupos.add(largos);
+        return Candidatos.de(grupos, false);
+    }
+
+    // Convierte las IDs candidatas en vuelos, descartando los eliminados y los que ya no cumplen el filtro.
+    private Stream<Vuelo> resolver(Candidatos candidatos, FiltroVuelos filtro) {
+        return candidatos.ids()
+                .map(vuelos::get)
+                .filter(v -> v != null && filtro.cumple(v));
+    }
+
+    // Recorre (un tramo de) una vista ordenada.
+    // Una clave solo es valida si el vuelo sigue existiendo y sigue teniendo ese valor en el campo,
+    // asi las claves de un vuelo que se esta actualizando en ese momento no lo devuelven dos veces.
+    private Stream<Vuelo> recorrer(NavigableSet<ClaveOrden> vista, OrdenVuelo orden, FiltroVuelos filtro) {
+        return vista.stream()
+                .map(k -> {
+                    Vuelo v = vuelos.get(k.id());
+                    boolean vigente = v != null
+                            && orden.compararClave(k.valor(), orden.clave(v)) == 0
+                            && filtro.cumple(v);
+                    return vigente ? v : null;
+                })
+                .filter(Objects::nonNull);
+    }
+
+    // Añade el vuelo a los indices secundarios y a las vistas ordenadas.
+    // Se hace antes de publicarlo en el Map, asi un lector nunca encuentra un vuelo que falte en los indices.
+    private void indexar(Vuelo v) {
+        anadir(porEmpresa, TextoUtils.normalizar(v.getEmpresa()), v.getId());
+        anadir(porLugarSalida, TextoUtils.normalizar(v.getLugarSalida()), v.getId());
+        anadir(porLugarLlegada, TextoUtils.normalizar(v.getLugarLlegada()), v.getId());
+        anadir(porRuta, ruta(v), v.getId());
+        anadir(porFechaSalida, v.getFechaSalida(), v.getId());
+        Salida salida = Salida.de(v);
+        if (salida != null) {
+            salidasPorLugar.computeIfAbsent(TextoUtils.normalizar(v.getLugarSalida()), k -> new ConcurrentSkipListSet<>())
+                    .add(salida);
+        }
+        if (largo(v)) {
+            largos.add(v.getId());
+        }
+        for (OrdenVuelo orden : OrdenVuelo.values()) {
+            // Si ya hay una clave equivalente (actualizacion sin cambiar el campo), add no hace nada.
+            vistas.get(orden).add(new ClaveOrden(orden.clave(v), v.getId()));
+        }
+    }
+
+    // Quita el vuelo "anterior" de las claves que ya no comparte con el "nuevo" (null si se ha eliminado).
+    // Las claves que no cambian se dejan tal cual, porque indexar() ya las ha vuelto a añadir.
+    private void desindexarCambios(Vuelo anterior, Vuelo nuevo) {
+        String empresa = TextoUtils.normalizar(anterior.getEmpresa());
+        if (nuevo == null || !Objects.equals(empresa, TextoUtils.normalizar(nuevo.getEmpresa()))) {
+            quitar(porEmpresa, empresa, anterior.getId());
+        }
+        String salida = TextoUtils.normalizar(anterior.getLugarSalida());
+        if (nuevo == null || !Objects.equals(salida, TextoUtils.normalizar(nuevo.getLugarSalida()))) {
+            quitar(porLugarSalida, salida, anterior.getId());
+        }
+        String llegada = TextoUtils.normalizar(anterior.getLugarLlegada());
+        if (nuevo == null || !Objects.equals(llegada, TextoUtils.normalizar(nuevo.getLugarLlegada()))) {
+            quitar(porLugarLlegada, llegada, anterior.getId());
+        }
+        String ruta = ruta(anterior);
+        if (nuevo == null || !Objects.equals(ruta, ruta(nuevo))) {
+            quitar(porRuta, ruta, anterior.getId());
+        }
+        if (nuevo == null || !Objects.equals(anterior.getFechaSalida(), nuevo.getFechaSalida())) {
+            quitar(porFechaSalida, anterior.getFechaSalida(), anterior.getId());
+        }
+        Salida adyacente = Salida.de(anterior);
+        if (adyacente != null && (nuevo == null || !Objects.equals(salida, TextoUtils.normalizar(nuevo.getLugarSalida()))
+                || !adyacente.equals(Salida.de(nuevo)))) {
+            NavigableSet<Salida> salidas = salidasPorLugar.get(salida);
+            if (salidas != null) {
+                salidas.remove(adyacente);
+            }
+        }
+        if (largo(anterior) && (nuevo == null || !largo(nuevo))) {
+            largos.remove(anterior.getId());
+        }
+        for (OrdenVuelo orden : OrdenVuelo.values()) {
+            Object clave = orden.clave(anterior);
+            // Se compara con el comparador de la vista: si para ella es la misma clave, la entrada es compartida.
+            if (nuevo == null || orden.compararClave(clave, orden.clave(nuevo)) != 0) {
+                vistas.get(orden).remove(new ClaveOrden(clave, anterior.getId()));
+            }
+        }
+    }
+
+    // Sube la version global y las de las claves del vuelo antes y despues de la escritura (null si no hay).
+    // Se llama despues de publicar el cambio en el almacen: un lector que vea la version nueva ya ve el cambio.
+    private void subirVersiones(Vuelo anterior, Vuelo nuevo) {
+        subirVersiones(anterior);
+        subirVersiones(nuevo);
+        version.incrementAndGet();
+    }
+
+    private void subirVersiones(Vuelo v) {
+        if (v != null) {
+            subir(versionesEmpresa, TextoUtils.normalizar(v.getEmpresa()));
+            subir(versionesLugarSalida, TextoUtils.normalizar(v.getLugarSalida()));
+            subir(versionesLugarLlegada, TextoUtils.normalizar(v.getLugarLlegada()));
+            subir(versionesFechaSalida, v.getFechaSalida());
+            if (largo(v)) {
+                versionLargos.incrementAndGet();
+            }
+        }
+    }
+
+    private static <K> void subir(ConcurrentMap<K, AtomicLong> versiones, K clave) {
+        if (clave != null) {
+            versiones.computeIfAbsent(clave, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private static <K> long versionDe(ConcurrentMap<K, AtomicLong> versiones, K clave) {
+        AtomicLong v = versiones.get(clave);
+        return v == null ? 0 : v.get();
+    }
+
+    private static long suma(Map<LocalDate, AtomicLong> versiones) {
+        long suma = 0;
+        for (AtomicLong v : versiones.values()) {
+            suma += v.get();
+        }
+        return suma;
+    }
+
+    // Clave del indice de rutas (null si falta alguno de los dos lugares)
+    private static String ruta(Vuelo v) {
+        return ruta(TextoUtils.normalizar(v.getLugarSalida()), TextoUtils.normalizar(v.getLugarLlegada()));
+    }
+
+    private static String ruta(String salida, String llegada) {
+        return salida == null || llegada == null ? null : salida + SEPARADOR_RUTA + llegada;
+    }
+
+    // Indica si el vuelo dura mas de DURACION_CORTA dias
+    private static boolean largo(Vuelo v) {
+        return v.getFechaSalida() != null && v.getFechaLlegada() != null
+                && v.getFechaSalida().plusDays(DURACION_CORTA).isBefore(v.getFechaLlegada());
+    }
+
+    // Crea una vista ordenada (skip list concurrente) por cada criterio.
+    private static Map<OrdenVuelo, NavigableSet<ClaveOrden>> crearVistas() {
+        Map<OrdenVuelo, NavigableSet<ClaveOrden>> vistas = new EnumMap<>(OrdenVuelo.class);
+        for (OrdenVuelo orden : OrdenVuelo.values()) {
+            Comparator<ClaveOrden> comparador = (a, b) -> {
+                int c = orden.compararClave(a.valor(), b.valor());
+                return c != 0 ? c : Integer.compare(a.id(), b.id());
+            };
+            vistas.put(orden, new ConcurrentSkipListSet<>(comparador));
+        }
+        return vistas;
+    }
+
+    private static <K> void anadir(Map<K, Set<Integer>> indice, K clave, int id) {
+        if (clave != null) {
+            indice.computeIfAbsent(clave, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private static <K> void quitar(Map<K, Set<Integer>> indice, K clave, int id) {
+        if (clave != null) {
+            Set<Integer> ids = indice.get(clave);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+    }
+
+    // Mezcla dos Streams ya ordenados con el comparador en uno solo ordenado.
+    // Es perezoso como el resto: no se lee nada de ninguno de los dos hasta que se pide el primer vuelo.
+    private static Stream<Vuelo> mezclar(Stream<Vuelo> a, Stream<Vuelo> b, Comparator<Vuelo> comparador) {
+        Iterator<Vuelo> mezcla = new Iterator<>() {
+            private Iterator<Vuelo> itA;
+            private Iterator<Vuelo> itB;
+            private Vuelo siguienteA;
+            private Vuelo siguienteB;
+
+            @Override
+            public boolean hasNext() {
+                if (itA == null) {
+                    itA = a.iterator();
+                    itB = b.iterator();
+                    siguienteA = itA.hasNext() ? itA.next() : null;
+                    siguienteB = itB.hasNext() ? itB.next() : null;
+                }
+                return siguienteA != null || siguienteB != null;
+            }
+
+            @Override
+            public Vuelo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Vuelo v;
+                if (siguienteB == null || (siguienteA != null && comparador.compare(siguienteA, siguienteB) <= 0)) {
+                    v = siguienteA;
+                    siguienteA = itA.hasNext() ? itA.next() : null;
+                } else {
+                    v = siguienteB;
+                    siguienteB = itB.hasNext() ? itB.next() : null;
+                }
+                return v;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(mezcla, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(a::close)
+                .onClose(b::close);
+    }
+
+    // Devuelve los candidatos con menos IDs.
+    private static Candidatos menor(Candidatos actual, Candidatos otro) {
+        return actual == null || otro.tamano() < actual.tamano() ? otro : actual;
+    }
+
+    // IDs candidatas de un filtro: uno o varios grupos de un indice (un rango de dias son varios) y cuantas hay.
+    // "porFechaSalida" indica que son un dia o un rango de dias de salida, asi que tambien son un tramo de la vista
+    // ordenada por fechaSalida.
+    private record Candidatos(Collection<Set<Integer>> grupos, long tamano, boolean porFechaSalida) {
+
+        // Si la clave no existe en el indice (null), no hay ningun candidato.
+        static Candidatos de(Set<Integer> ids, boolean porFechaSalida) {
+            return ids == null
+                    ? new Candidatos(List.of(), 0, porFechaSalida)
+                    : new Candidatos(List.of(ids), ids.size(), porFechaSalida);
+        }
+
+        static Candidatos de(Collection<Set<Integer>> grupos, boolean porFechaSalida) {
+            long tamano = 0;
+            for (Set<Integer> ids : grupos) {
+                tamano += ids.size();
+            }
+            return new Candidatos(grupos, tamano, porFechaSalida);
+        }
+
+        // Con varios grupos una ID puede estar un momento en dos (mientras se actualiza su vuelo, o un vuelo largo
+        // que sale dentro del tramo), distinct evita devolverla dos veces.
+        Stream<Integer> ids() {
+            if (grupos.size() == 1) {
+                return grupos.iterator().next().stream();
+            }
+            return grupos.stream().flatMap(Set::stream).distinct();
+        }
+    }
+
+    // Entrada de la lista de adyacencia: dia de salida y la ID como desempate.
+    private record Salida(LocalDate fecha, int id) implements Comparable<Salida> {
+
+        // null si al vuelo le falta el lugar o la fecha de salida (no puede ser parte de un itinerario)
+        static Salida de(Vuelo v) {
+            return v.getLugarSalida() == null || v.getFechaSalida() == null ? null : new Salida(v.getFechaSalida(), v.getId());
+        }
+
+        @Override
+        public int compareTo(Salida otra) {
+            int c = fecha.compareTo(otra.fecha);
+            return c != 0 ? c : Integer.compare(id, otra.id);
+        }
+    }
+
+    // Entrada de una vista ordenada: valor del campo por el que se ordena y la ID como desempate.
+    private record ClaveOrden(Object valor, int id) {
+    }
+
+    // Cerrojo que le corresponde a una ID (siempre el mismo para la misma ID).
+    // Se usa la posicion de la ID en el nodo: en un cluster las IDs van de n en n y con la ID tal cual
+    // solo se usaria una parte de los cerrojos (uno solo con 64 nodos).
+    private ReentrantLock cerrojo(int id) {
+        return cerrojos[particion.posicion(id) & (NUM_CERROJOS - 1)];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package com.example.vuelos.services;
+
+import com.example.vuelos.dtos.VueloMapper;
+import com.example.vuelos.dtos.VueloResponseDTO;
+import com.example.vuelos.metricas.MetricasVuelos;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Cache del listado (GET /vuelos sin paginar): guarda la lista de DTOs ya filtrada, ordenada y mapeada.
+// - La clave es la consulta normalizada (filtros normalizados + criterio de orden),
+//   asi "Iberia" e " iberia " comparten la misma entrada.
+// - Cada entrada guarda la version del repositorio para sus filtros (VueloRepository.version) de cuando se calculo.
+//   Si al leerla la version ha cambiado es que una escritura ha tocado un vuelo con alguno de esos valores
+//   y se vuelve a calcular. Un alta de un vuelo de Iberia no invalida los listados filtrados por otra empresa.
+// - El tamaño se limita por peso: cada entrada pesa tantos vuelos como tiene, y se descartan las menos usadas.
+//   Un listado mas grande que el peso maximo no se guarda.
+
+@Service
+public class CacheListados {
+
+    private record Clave(FiltroVuelos filtro, OrdenVuelo orden) {
+    }
+
+    private record Entrada(long version, List<VueloResponseDTO> vuelos) {
+    }
+
+    private final VueloService service;
+    private final VueloRepository repository;
+    private final MetricasVuelos metricas;
+    // null si la cache esta desactivada
+    private final Cache<Clave, Entrada> cache;
+
+    public CacheListados(VueloService service,
+                         VueloRepository repository,
+                         MetricasVuelos metricas,
+                         @Value("${vuelos.cache.habilitada:true}") boolean habilitada,
+                         @Value("${vuelos.cache.peso-maximo:200000}") long pesoMaximo) {
+        this.service = service;
+        this.repository = repository;
+        this.metricas = metricas;
+        if (!habilitada) {
+            this.cache = null;
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(pesoMaximo)
+                .weigher((Clave clave, Entrada entrada) -> entrada.vuelos().size() + 1)
+                .removalListener((Clave clave, Entrada entrada, RemovalCause causa) -> {
+                    if (causa.wasEvicted()) {
+                        metricas.cacheDescartada();
+                    }
+                })
+                .build();
+        metricas.cache(cache);
+    }
+
+    // Igual que VueloService.listar pero devolviendo los DTOs, desde la cache si el resultado no ha cambiado.
+    public List<VueloResponseDTO> listar(FiltroVuelos filtro, String ordenarPor) {
+        if (cache == null) {
+            return calcular(filtro, ordenarPor);
+        }
+        // ordenarPor se valida aqui tambien, un valor invalido lanza el 400 antes de tocar la cache
+        Clave clave = new Clave(filtro, service.buildOrden(ordenarPor));
+
+        // La version se lee antes de calcular: si una escritura llega mientras tanto, la entrada ya nace obsoleta
+        long version = repository.version(filtro);
+        Entrada entrada = cache.getIfPresent(clave);
+        if (entrada != null && entrada.version() == version) {
+            metricas.cacheAcierto();
+            return entrada.vuelos();
+        }
+        if (entrada == null) {
+            metricas.cacheFallo();
+        } else {
+            metricas.cacheObsoleta();
+        }
+
+        List<VueloResponseDTO> vuelos = calcular(filtro, ordenarPor);
+        cache.put(clave, new Entrada(version, vuelos));
+        return vuelos;
+    }
+
+    private List<VueloResponseDTO> calcular(FiltroVuelos filtro, String ordenarPor) {
+        return service.listar(filtro, ordenarPor)
+                .stream()
+                .map(VueloMapper::toDTO)
+                .toList();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.vuelos.services;
+
+import com.example.vuelos.models.CambioVuelo;
+import com.example.vuelos.repositories.CambiosVuelos;
+import com.example.vuelos.repositories.VueloRepository;
+import com.example.vuelos.utils.EtagUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+// Feed de cambios de los vuelos (GET /vuelos/changes): cada suscripcion recorre los cambios que publica
+// el repositorio (ver CambiosVuelos) a partir de su posicion, a su propio ritmo.
+// - Una suscripcion nueva empieza en el ultimo cambio (solo recibe los siguientes), o justo despues del
+//   ultimo evento que recibio si se indica (para reconectar sin perder nada).
+// - Si se ha quedado tan atras que sus cambios ya se han sobrescrito, o el evento indicado es de otro arranque,
+//   recibe un "reinicio": tiene que volver a cargar los vuelos (GET /vuelos) y sigue desde el ultimo cambio.
+//   Aplicar un cambio es sustituir el vuelo entero, asi que repetir alguno despues de recargar no hace daño.
+
+@Service
+public class CambiosService {
+
+    private final CambiosVuelos cambios;
+    // Maximo de cambios que se entregan de una vez
+    private final int lote;
+
+    public CambiosService(VueloRepository repository, @Value("${vuelos.cambios.lote:256}") int lote) {
+        this.cambios = repository.cambios();
+        this.lote = lote;
+    }
+
+    // Cambios que se entregan de una vez a una suscripcion.
+    // Si reinicio es true no hay cambios: se han perdido y hay que volver a cargar los vuelos.
+    // posicion es la secuencia del ultimo cambio entregado (o desde la que se sigue despues de un reinicio).
+    public record Entrega(boolean reinicio, long posicion, List<CambioVuelo> cambios) {
+    }
+
+    // Abre una suscripcion despues del ultimo evento recibido: su id ("<arranque>-<secuencia>", ver EtagUtils)
+    // o directamente la secuencia. null = solo los cambios a partir de ahora.
+    public Suscripcion suscribir(String ultimoEvento) {
+        long ultima = cambios.ultima();
+        if (ultimoEvento == null || ultimoEvento.isBlank()) {
+            return new Suscripcion(ultima, false);
+        }
+        long desde = secuencia(ultimoEvento.trim());
+        if (desde < 0 || desde > ultima) {
+            // De otro arranque (las secuencias empiezan de nuevo) o no valido
+            return new Suscripcion(ultima, true);
+        }
+        return new Suscripcion(desde, false);
+    }
+
+    private static long secuencia(String ultimoEvento) {
+        try {
+            return Long.parseLong(ultimoEvento);
+        } catch (NumberFormatException e) {
+            return EtagUtils.secuenciaEvento(ultimoEvento);
+        }
+    }
+
+    // Posicion de un suscriptor en el feed. La usa un solo hilo (el que le envia los eventos).
+    public final class Suscripcion {
+
+        private long posicion;
+        private boolean reiniciar;
+
+        private Suscripcion(long posicion, boolean reiniciar) {
+            this.posicion = posicion;
+            this.reiniciar = reiniciar;
+        }
+
+        // Siguientes cambios. Si no hay ninguno espera como mucho "espera" y devuelve una entrega vacia.
+        public Entrega siguientes(Duration espera) throws InterruptedException {
+            if (reiniciar) {
+                reiniciar = false;
+                return new Entrega(true, posicion, List.of());
+            }
+            long limite = System.nanoTime() + espera.toNanos();
+            while (true) {
+                List<CambioVuelo> leidos = cambios.leer(posicion, lote);
+                if (leidos == null) {
+                    // Se ha quedado atras: se han sobrescrito cambios que no ha recibido
+                    posicion = cambios.ultima();
+                    return new Entrega(true, posicion, List.of());
+                }
+                if (!leidos.isEmpty()) {
+                    posicion = leidos.getLast().secuencia();
+                    return new Entrega(false, posicion, leidos);
+                }
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) {
+                    return new Entrega(false, posicion, List.of());
+                }
+                if (cambios.ultima() > posicion) {
+                    // El siguiente cambio tiene secuencia pero aun se esta escribiendo
+                    Thread.yield();
+                } else {
+                    cambios.esperar(posicion, Duration.ofNanos(restante));
+                }
+            }
+        }
+    }
+}
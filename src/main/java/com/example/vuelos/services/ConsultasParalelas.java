@@ -0,0 +1,63 @@
+package com.example.vuelos.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Stream;
+
+// Ejecucion en paralelo de los listados grandes.
+// Un listado con pocos candidatos se recorre en el hilo de la peticion (repartirlo cuesta mas de lo que ahorra).
+// A partir de "vuelos.paralelo.umbral" candidatos, el Stream del repositorio se ejecuta en paralelo:
+// el recorrido y el filtro se reparten por tramos y la ordenacion es un merge sort en paralelo.
+// - Se usa un ForkJoinPool propio y no el comun, asi un listado enorme no se queda con los hilos
+//   que usan otras partes de la aplicacion (y al reves). Un Stream paralelo lanzado desde una tarea
+//   de un ForkJoinPool reparte su trabajo en ese mismo pool.
+// - El orden del resultado es el mismo que en secuencial: los Streams ordenados conservan el orden
+//   y los comparadores de OrdenVuelo desempatan por ID, asi nunca hay dos vuelos "iguales".
+// Con un solo nucleo (o hilos = 1) no se crea el pool y todo va en secuencial.
+
+@Component
+public class ConsultasParalelas {
+
+    private final long umbral;
+    // null si todo va en secuencial
+    private final ForkJoinPool pool;
+
+    public ConsultasParalelas(@Value("${vuelos.paralelo.umbral:50000}") long umbral,
+                              @Value("${vuelos.paralelo.hilos:0}") int hilos) {
+        int paralelismo = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+        this.umbral = umbral;
+        this.pool = paralelismo > 1 ? new ForkJoinPool(paralelismo, ConsultasParalelas::hilo, null, false) : null;
+    }
+
+    // Todo en secuencial (por ejemplo para usar el service fuera de Spring)
+    public static ConsultasParalelas secuenciales() {
+        return new ConsultasParalelas(Long.MAX_VALUE, 1);
+    }
+
+    // Recoge el Stream en una lista, en paralelo si hay al menos "umbral" candidatos.
+    public <T> List<T> aLista(Stream<T> stream, long candidatos) {
+        if (pool == null || candidatos < umbral) {
+            return stream.toList();
+        }
+        return pool.submit(() -> stream.parallel().toList()).join();
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ForkJoinWorkerThread hilo(ForkJoinPool pool) {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("vuelos-consulta-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.vuelos.services;
+
+import com.example.vuelos.exceptions.BadRequestException;
+import com.example.vuelos.metricas.MetricasVuelos;
+import com.example.vuelos.metricas.MetricasVuelos.MetodoServicio;
+import com.example.vuelos.models.Itinerario;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import com.example.vuelos.utils.TextoUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Busqueda de itinerarios con escalas (GET /vuelos/itinerarios)
+// Los vuelos guardados forman un grafo que depende del tiempo: los lugares son los nodos y cada vuelo es una arista
+// que solo se puede tomar su fechaSalida. Un itinerario encadena vuelos donde cada uno sale del lugar al que llega
+// el anterior, como pronto el dia que llega y como tarde maxEsperaDias despues.
+//
+// La busqueda es "el mejor primero" (como Dijkstra): una cola de prioridad con los itinerarios a medias,
+// ordenada por el dia en que llegan y despues por numero de vuelos. Cada vez se saca el que antes llega:
+// - Si ya esta en el destino es el siguiente mejor itinerario (salen en orden: antes llegada, menos escalas).
+// - Si no, se añaden sus conexiones, que son un tramo de la lista de adyacencia del repositorio (findSalidas).
+// Un itinerario no repite lugar, y el ultimo vuelo permitido solo se toma si va al destino.
+// Para no recorrer todo el grafo, de cada lugar, dia de llegada, numero de vuelos y lugares ya visitados solo
+// se expanden los k primeros itinerarios: los que coinciden en todo eso tienen las mismas conexiones, asi que
+// uno mas solo puede dar itinerarios peores que esos k. (No vale juntar dias distintos: quien llega mas tarde
+// puede esperar hasta mas tarde y alcanzar vuelos que los otros no. Tampoco lugares visitados distintos:
+// quien ha pasado por un lugar ya no puede volver, y otro que no ha pasado si.)
+
+@Service
+public class ItinerarioService {
+
+    // Valores por defecto y maximos de los parametros
+    private static final int ESCALAS_DEFECTO = 1;
+    private static final int ESCALAS_MAXIMO = 3;
+    private static final int ESPERA_DEFECTO = 1;
+    private static final int ESPERA_MAXIMA = 7;
+    private static final int K_DEFECTO = 5;
+    private static final int K_MAXIMO = 20;
+    // Tope de itinerarios a medias que se sacan de la cola, por si el grafo tiene lugares con muchisimas conexiones
+    private static final int EXPANSIONES_MAXIMAS = 200_000;
+
+    // Itinerario a medias: el ultimo vuelo, el lugar (normalizado) al que llega y el resto de vuelos hacia atras.
+    // "orden" es el orden de llegada a la cola, asi los empates salen siempre igual.
+    private record Parcial(Vuelo vuelo, String lugar, Parcial anterior, int vuelos, long orden) {
+    }
+
+    // Donde y cuando acaba un itinerario a medias, con cuantos vuelos y por que lugares ha pasado (origen incluido)
+    private record Nodo(String lugar, LocalDate llegada, int vuelos, Set<String> visitados) {
+    }
+
+    private static final Comparator<Parcial> MEJOR_PRIMERO = Comparator
+            .comparing((Parcial p) -> p.vuelo().getFechaLlegada())
+            .thenComparingInt(Parcial::vuelos)
+            .thenComparingLong(Parcial::orden);
+
+    private final VueloRepository repository;
+    private final MetricasVuelos metricas;
+
+    // Service sin metricas (por ejemplo para los benchmarks)
+    public ItinerarioService(VueloRepository repository) {
+        this(repository, MetricasVuelos.desactivadas(repository));
+    }
+
+    @Autowired
+    public ItinerarioService(VueloRepository repository, MetricasVuelos metricas) {
+        this.repository = repository;
+        this.metricas = metricas;
+    }
+
+    // Busca los k mejores itinerarios de origen a destino saliendo el dia "fecha", con como mucho maxEscalas escalas.
+    // Los parametros null toman su valor por defecto. Si no hay ninguno devuelve una lista vacia.
+    public List<Itinerario> buscar(String origen, String destino, LocalDate fecha,
+                                   Integer maxEscalas, Integer maxEsperaDias, Integer k) {
+        long inicio = System.nanoTime();
+        try {
+            if (origen == null || origen.isBlank() || destino == null || destino.isBlank()) {
+                throw new BadRequestException("origen y destino son obligatorios");
+            }
+            if (fecha == null) {
+                throw new BadRequestException("fecha es obligatoria");
+            }
+            String desde = TextoUtils.normalizar(origen);
+            String hasta = TextoUtils.normalizar(destino);
+            if (desde.equals(hasta)) {
+                throw new BadRequestException("origen y destino no pueden ser el mismo lugar");
+            }
+            int escalas = validar(maxEscalas, "maxEscalas", 0, ESCALAS_MAXIMO, ESCALAS_DEFECTO);
+            int espera = validar(maxEsperaDias, "maxEsperaDias", 0, ESPERA_MAXIMA, ESPERA_DEFECTO);
+            int cuantos = validar(k, "k", 1, K_MAXIMO, K_DEFECTO);
+            return buscar(desde, hasta, fecha, escalas + 1, espera, cuantos);
+        } finally {
+            metricas.servicio(MetodoServicio.BUSCAR_ITINERARIOS, inicio);
+        }
+    }
+
+    private List<Itinerario> buscar(String origen, String destino, LocalDate fecha,
+                                    int maxVuelos, int espera, int k) {
+        PriorityQueue<Parcial> cola = new PriorityQueue<>(MEJOR_PRIMERO);
+        long[] orden = {0};
+        // El primer vuelo sale justo el dia pedido
+        repository.findSalidas(origen, fecha, fecha).forEach(v -> {
+            if (conectable(v, origen, null, 1, maxVuelos, destino)) {
+                cola.add(new Parcial(v, TextoUtils.normalizar(v.getLugarLlegada()), null, 1, orden[0]++));
+            }
+        });
+
+        List<Itinerario> itinerarios = new ArrayList<>();
+        // Cuantos itinerarios se han expandido desde cada nodo
+        Map<Nodo, Integer> expandidos = new HashMap<>();
+        int expansiones = 0;
+        while (!cola.isEmpty() && itinerarios.size() < k && expansiones++ < EXPANSIONES_MAXIMAS) {
+            Parcial p = cola.poll();
+            if (p.lugar().equals(destino)) {
+                itinerarios.add(itinerario(p));
+                continue;
+            }
+            LocalDate llegada = p.vuelo().getFechaLlegada();
+            if (p.vuelos() == maxVuelos || expandidos.merge(nodo(p, origen), 1, Integer::sum) > k) {
+                continue;
+            }
+            repository.findSalidas(p.lugar(), llegada, llegada.plusDays(espera)).forEach(v -> {
+                if (conectable(v, origen, p, p.vuelos() + 1, maxVuelos, destino)) {
+                    cola.add(new Parcial(v, TextoUtils.normalizar(v.getLugarLlegada()), p, p.vuelos() + 1, orden[0]++));
+                }
+            });
+        }
+        return itinerarios;
+    }
+
+    // Indica si el vuelo puede ser el vuelo numero "n" despues de "anterior" (null si es el primero):
+    // tiene que llegar a algun sitio, no volver a un lugar por el que ya ha pasado el itinerario,
+    // y si es el ultimo vuelo permitido tiene que ir al destino.
+    private static boolean conectable(Vuelo v, String origen, Parcial anterior, int n, int maxVuelos, String destino) {
+        if (v.getLugarLlegada() == null || v.getFechaLlegada() == null) {
+            return false;
+        }
+        if (n == maxVuelos && !TextoUtils.coincide(v.getLugarLlegada(), destino)) {
+            return false;
+        }
+        if (TextoUtils.coincide(v.getLugarLlegada(), origen)) {
+            return false;
+        }
+        for (Parcial p = anterior; p != null; p = p.anterior()) {
+            if (TextoUtils.coincide(v.getLugarLlegada(), p.lugar())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Nodo nodo(Parcial ultimo, String origen) {
+        Set<String> visitados = new HashSet<>();
+        visitados.add(origen);
+        for (Parcial p = ultimo.anterior(); p != null; p = p.anterior()) {
+            visitados.add(p.lugar());
+        }
+        return new Nodo(ultimo.lugar(), ultimo.vuelo().getFechaLlegada(), ultimo.vuelos(), visitados);
+    }
+
+    // Reconstruye los vuelos del itinerario desde el ultimo hacia atras
+    private static Itinerario itinerario(Parcial ultimo) {
+        Deque<Vuelo> vuelos = new ArrayDeque<>();
+        for (Parcial p = ultimo; p != null; p = p.anterior()) {
+            vuelos.addFirst(p.vuelo());
+        }
+        return new Itinerario(List.copyOf(vuelos));
+    }
+
+    private static int validar(Integer valor, String nombre, int minimo, int maximo, int defecto) {
+        if (valor == null) {
+            return defecto;
+        }
+        if (valor < minimo || valor > maximo) {
+            throw new BadRequestException(nombre + " inválido. Usa un valor entre " + minimo + " y " + maximo);
+        }
+        return valor;
+    }
+}
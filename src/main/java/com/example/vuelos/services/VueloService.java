@@ -1,17 +1,37 @@
 package com.example.vuelos.services;
 
+import com.example.vuelos.cluster.ParticionVuelos;
 import com.example.vuelos.exceptions.BadRequestException;
 import com.example.vuelos.exceptions.ConflictException;
 import com.example.vuelos.exceptions.NotFoundException;
+import com.example.vuelos.metricas.MetricasVuelos;
+import com.example.vuelos.metricas.MetricasVuelos.MetodoServicio;
+import com.example.vuelos.metricas.MetricasVuelos.OperacionRepositorio;
+import com.example.vuelos.models.CampoSugerencia;
+import com.example.vuelos.models.Cursor;
+import com.example.vuelos.models.EstadisticasVuelos;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OperacionLote;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.models.Pagina;
+import com.example.vuelos.models.ResultadoLote;
+import com.example.vuelos.models.Sugerencia;
 import com.example.vuelos.models.Vuelo;
 import com.example.vuelos.repositories.VueloRepository;
+import com.example.vuelos.utils.CursorUtils;
 import com.example.vuelos.utils.DateUtils;
+import com.example.vuelos.utils.TextoUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDate;
-import java.util.Comparator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongPredicate;
 import java.util.stream.Stream;
 
 // Capa de negocio para Vuelos
@@ -19,15 +39,35 @@ import java.util.stream.Stream;
 // Implemente filtros combinables para listar (empresa, lugarLlegada, fechaSalida)
 // Por default los vuelos se listan en el el orden de "fechaSalida", y como Bonus, tambien se pueden listar segun "empresa" y "lugarLlegada"
 // Aqui se decide que excepcion lanzar para que el Handler genere la respuesta HTTP.
+// Cada metodo publico y cada llamada al repositorio se mide con MetricasVuelos.
 
 @Service
 public class VueloService {
 
+    // Tamaño de pagina por defecto y maximo del listado paginado (el router del cluster usa el mismo por defecto)
+    public static final int LIMIT_DEFECTO = 100;
+    private static final int LIMIT_MAXIMO = 1000;
+    // Numero maximo de operaciones en un lote
+    private static final int LOTE_MAXIMO = 10_000;
+    // Numero de sugerencias por defecto y maximo para autocompletar
+    public static final int SUGERENCIAS_DEFECTO = 10;
+    private static final int SUGERENCIAS_MAXIMO = 50;
+
     // Dependencia de la persistencia en memoria
     private final VueloRepository repository;
+    private final MetricasVuelos metricas;
+    private final ConsultasParalelas paralelas;
 
+    // Service sin metricas y con los listados en secuencial (por ejemplo para los benchmarks)
     public VueloService(VueloRepository repository) {
+        this(repository, MetricasVuelos.desactivadas(repository), ConsultasParalelas.secuenciales());
+    }
+
+    @Autowired
+    public VueloService(VueloRepository repository, MetricasVuelos metricas, ConsultasParalelas paralelas) {
         this.repository = repository;
+        this.metricas = metricas;
+        this.paralelas = paralelas;
     }
 
     // Crear un vuelo nuevo
@@ -35,87 +75,390 @@ public class VueloService {
     // Comprueba si hay duplicados
     // Si esta correcto, lo guarda en el repositorio (y le asigna un ID)
     public Vuelo crear(Vuelo vuelo) {
-        validar(vuelo);
+        long inicio = System.nanoTime();
+        try {
+            validar(vuelo);
 
-        if (repository.existsNombreVuelo(vuelo.getNombreVuelo(), null)) {
-            throw new ConflictException("El vuelo ya existe (nombreVuelo repetido)");
+            if (existeNombre(vuelo.getNombreVuelo(), null)) {
+                throw new ConflictException("El vuelo ya existe (nombreVuelo repetido)");
+            }
+            return guardar(vuelo);
+        } finally {
+            metricas.servicio(MetodoServicio.CREAR, inicio);
         }
-        return repository.save(vuelo);
     }
 
     // Devuelve un Stream de vuelos aplicando filtros combinables.
     // Se usa Stream para poder usar varios filtros de manera limpia y eficiente.
     // Los filtros no son obligatorios, si el parámetro no esta, no se filtra por ese campo.
-    public Stream<Vuelo> listarFiltrados(String empresa, String lugarLlegada, LocalDate fechaSalida) {
-        // Se buscan todos lso vuelos en el repo
-        Stream<Vuelo> s = repository.findAll().stream();
-
-        // Para el filtro empresa (normalizamos para comparar sin importar MAYUS o MINUS
-        if (empresa != null && !empresa.isBlank()) {
-            String e = empresa.trim().toLowerCase(Locale.ROOT);
-            s = s.filter(v -> v.getEmpresa() != null && v.getEmpresa().toLowerCase(Locale.ROOT).equals(e));
+    public Stream<Vuelo> listarFiltrados(FiltroVuelos filtro) {
+        // Normalizamos los filtros una sola vez (para comparar sin importar MAYUS o MINUS)
+        // y el repositorio usa sus indices para no recorrer todos los vuelos.
+        // El Stream es perezoso, aqui solo se mide crearlo (el recorrido lo mide el endpoint que lo consume).
+        long inicio = System.nanoTime();
+        try {
+            validarFiltro(filtro);
+            return repository.findByFiltro(filtro);
+        } finally {
+            metricas.servicio(MetodoServicio.LISTAR_FILTRADOS, inicio);
         }
+    }
+
+    // Lista los vuelos filtrados y ordenados
+    // Si no se indica ordenarPor, el listado viene por default ordenado por fechaSalida.
+    public List<Vuelo> listar(FiltroVuelos filtro, String ordenarPor) {
+        return listar(filtro, ordenarPor, false);
+    }
 
-        // Para el filtro lugarLlegada
-        if (lugarLlegada != null && !lugarLlegada.isBlank()) {
-            String ll = lugarLlegada.trim().toLowerCase(Locale.ROOT);
-            s = s.filter(v -> v.getLugarLlegada() != null && v.getLugarLlegada().toLowerCase(Locale.ROOT).equals(ll));
+    // Igual que el anterior pero, si "incluirHistorico" es true, tambien con los vuelos que ya han llegado
+    // y estan en el historico en disco (ver ArchivoVuelos).
+    public List<Vuelo> listar(FiltroVuelos filtro, String ordenarPor, boolean incluirHistorico) {
 
+        long inicio = System.nanoTime();
+        try {
+            // Criterio de orden (fechaSalida por default)
+            OrdenVuelo orden = buildOrden(ordenarPor);
+            validarFiltro(filtro);
+
+            // El repositorio ya mantiene los vuelos ordenados por cada criterio,
+            // asi que aplica los filtros recorriendo el orden en vez de ordenar en cada peticion.
+            // Si hay muchos candidatos el recorrido (o la ordenacion) se hace en paralelo, ver ConsultasParalelas.
+            long inicioRepositorio = System.nanoTime();
+            List<Vuelo> vuelos = paralelas.aLista(repository.findByFiltro(filtro, orden, null, incluirHistorico),
+                    repository.estimarCandidatos(filtro));
+            metricas.repositorio(OperacionRepositorio.FIND_BY_FILTRO, inicioRepositorio);
+            metricas.listado(filtro, orden, false, inicio, vuelos.size());
+            return vuelos;
+        } finally {
+            metricas.servicio(MetodoServicio.LISTAR, inicio);
         }
+    }
 
-        // Filtro por fecha de salida exacta.
-        if (fechaSalida != null) {
-            s = s.filter(v -> fechaSalida.equals(v.getFechaSalida()));
+    // Igual que listar pero devolviendo el Stream perezoso del repositorio, sin recogerlo en una lista.
+    // Lo usa el listado reactivo (ver VueloHandler), que va sacando vuelos a medida que el cliente los pide.
+    // Como en listarFiltrados, aqui solo se mide crearlo.
+    public Stream<Vuelo> listarOrdenados(FiltroVuelos filtro, String ordenarPor, boolean incluirHistorico) {
+        long inicio = System.nanoTime();
+        try {
+            OrdenVuelo orden = buildOrden(ordenarPor);
+            validarFiltro(filtro);
+            return repository.findByFiltro(filtro, orden, null, incluirHistorico);
+        } finally {
+            metricas.servicio(MetodoServicio.LISTAR_ORDENADOS, inicio);
         }
+    }
 
-        return s;
+    // Lista una pagina de los vuelos filtrados y ordenados (keyset pagination).
+    // El cursor indica el ultimo vuelo de la pagina anterior (null para la primera pagina).
+    // Se piden limit + 1 vuelos al repositorio: si llega el extra, hay pagina siguiente y se devuelve su cursor.
+    // El repositorio deja de recorrer en cuanto se completa la pagina, no se ordena ni se copia todo el listado.
+    public Pagina<Vuelo> listarPagina(FiltroVuelos filtro,
+                                      String ordenarPor,
+                                      Integer limit,
+                                      String cursor) {
+        return listarPagina(filtro, ordenarPor, limit, cursor, false);
     }
 
-    // Lista los vuelos filtrados y ordenados
-    // Si no se indica ordenarPor, el listado viene por default ordenado por fechaSalida.
-    public List<Vuelo> listar(String empresa,
-                              String lugarLlegada,
-                              LocalDate fechaSalida,
-                              String ordenarPor) {
+    // Igual que el anterior pero, si "incluirHistorico" es true, tambien con los vuelos del historico.
+    public Pagina<Vuelo> listarPagina(FiltroVuelos filtro,
+                                      String ordenarPor,
+                                      Integer limit,
+                                      String cursor,
+                                      boolean incluirHistorico) {
 
-        // Comparador según el criterio default
-        Comparator<Vuelo> comp = buildComparator(ordenarPor);
+        long inicio = System.nanoTime();
+        try {
+            OrdenVuelo orden = buildOrden(ordenarPor);
+            int tamano = validarLimit(limit);
+            Cursor desde = CursorUtils.decodificar(cursor, orden);
+            validarFiltro(filtro);
 
-        // Aplicamos filtros y finalmente ordena con el comparador construido.
-        return listarFiltrados(empresa, lugarLlegada, fechaSalida)
-                .sorted(comp)
-                .toList();
+            long inicioRepositorio = System.nanoTime();
+            List<Vuelo> encontrados = repository.findByFiltro(filtro, orden, desde, incluirHistorico)
+                    .limit(tamano + 1L)
+                    .toList();
+            metricas.repositorio(OperacionRepositorio.FIND_BY_FILTRO, inicioRepositorio);
 
+            Pagina<Vuelo> pagina;
+            if (encontrados.size() <= tamano) {
+                pagina = new Pagina<>(encontrados, null);
+            } else {
+                List<Vuelo> elementos = encontrados.subList(0, tamano);
+                Vuelo ultimo = elementos.get(tamano - 1);
+                pagina = new Pagina<>(elementos, CursorUtils.codificar(Cursor.de(orden, ultimo)));
+            }
+            metricas.listado(filtro, orden, true, inicio, pagina.elementos().size());
+            return pagina;
+        } finally {
+            metricas.servicio(MetodoServicio.LISTAR_PAGINA, inicio);
+        }
     }
 
     // Actualizar un vuelo existente
     public Vuelo actualizar(int id, Vuelo vuelo) {
-        // Verifica si el vuelo existe, si no lanza un 404.
-        Vuelo vueloEncontrado = obtenerPorId(id);
-        // Valida los datos nuevos
-        validar(vuelo);
+        return actualizar(id, vuelo, null);
+    }
 
-        // Pasamos el ID actual para excluirlo del chequeo de duplicados
-        if (repository.existsNombreVuelo(vuelo.getNombreVuelo(), id)) {
-            throw new ConflictException("nombreVuelo ya utilizado");
-        }
+    // Actualizar un vuelo existente solo si su version es una de las aceptadas (If-Match, null = cualquiera).
+    // La comprobacion la hace el repositorio con el cerrojo del vuelo cogido: si otra peticion lo ha actualizado
+    // despues de que el cliente lo leyera, lanza un 412 en vez de pisar sus cambios.
+    public Vuelo actualizar(int id, Vuelo vuelo, LongPredicate versionAceptada) {
+        long inicio = System.nanoTime();
+        try {
+            // Verifica si el vuelo existe (y no esta en el historico), si no lanza un 404 (o un 409).
+            obtenerModificable(id);
+            // Valida los datos nuevos
+            validar(vuelo);
 
-        // Copiamos los datos al objeto existente.
-        vueloEncontrado.setNombreVuelo(vuelo.getNombreVuelo());
-        vueloEncontrado.setEmpresa(vuelo.getEmpresa());
-        vueloEncontrado.setLugarSalida(vuelo.getLugarSalida());
-        vueloEncontrado.setLugarLlegada(vuelo.getLugarLlegada());
-        vueloEncontrado.setFechaSalida(vuelo.getFechaSalida());
-        vueloEncontrado.setFechaLlegada(vuelo.getFechaLlegada());
+            // Pasamos el ID actual para excluirlo del chequeo de duplicados
+            if (existeNombre(vuelo.getNombreVuelo(), id)) {
+                throw new ConflictException("nombreVuelo ya utilizado");
+            }
 
-        return vueloEncontrado;
+            // El repositorio sustituye el vuelo por una copia con los datos nuevos (no se modifica el objeto guardado).
+            // Si otra peticion lo ha eliminado mientras tanto, lanza un 404.
+            return sustituir(id, vuelo, versionAceptada)
+                    .orElseThrow(() -> new NotFoundException("Vuelo no encontrado o eliminado recientemente"));
+        } finally {
+            metricas.servicio(MetodoServicio.ACTUALIZAR, inicio);
+        }
     }
 
     // Eliminar un vuelo por ID
     public void eliminar(int id) {
-        boolean eliminado = repository.delete(id);
-        if (!eliminado) {
-            throw new NotFoundException("Vuelo no encontrado o eliminado recientemente");
+        eliminar(id, null);
+    }
+
+    // Igual que el anterior, pero solo elimina si la version actual del vuelo es una de las aceptadas
+    // (If-Match, null = cualquiera). Si ha cambiado desde que se leyo lanza un PreconditionFailedException (412).
+    public void eliminar(int id, LongPredicate versionAceptada) {
+        long inicio = System.nanoTime();
+        try {
+            boolean eliminado = borrar(id, versionAceptada);
+            if (!eliminado) {
+                comprobarNoArchivado(id);
+                throw new NotFoundException("Vuelo no encontrado o eliminado recientemente");
+            }
+        } finally {
+            metricas.servicio(MetodoServicio.ELIMINAR, inicio);
+        }
+    }
+
+    // Procesa un lote de operaciones (crear, actualizar, eliminar) en una sola llamada.
+    // 1. Primera pasada: valida todas las operaciones (datos, fechas, IDs existentes) y detecta nombreVuelo repetidos,
+    //    tanto dentro del lote (con un Map de nombres normalizados) como contra el repositorio (indice unico, O(1)).
+    // 2. Segunda pasada: aplica las operaciones validas en orden.
+    // Si "atomico" es false, cada operacion se aplica por separado y las que fallan no afectan a las demas.
+    // Si "atomico" es true, o se aplican todas o ninguna: si alguna falla en la validacion no se aplica nada,
+    // y si alguna falla al aplicarse (por ejemplo otra peticion ha cogido el nombre mientras tanto)
+    // se deshacen las ya aplicadas en orden inverso. Cada una se deshace por separado y solo si nadie ha cambiado
+    // el vuelo despues del lote: si no se puede deshacer, su resultado lo indica y se siguen deshaciendo las demas.
+    // Devuelve un resultado por operacion, en el mismo orden.
+    public List<ResultadoLote> procesarLote(List<OperacionLote> operaciones, boolean atomico) {
+        long inicio = System.nanoTime();
+        try {
+            return procesar(operaciones, atomico);
+        } finally {
+            metricas.servicio(MetodoServicio.PROCESAR_LOTE, inicio);
+        }
+    }
+
+    private List<ResultadoLote> procesar(List<OperacionLote> operaciones, boolean atomico) {
+        if (operaciones == null || operaciones.isEmpty()) {
+            throw new BadRequestException("El lote no tiene operaciones");
+        }
+        if (operaciones.size() > LOTE_MAXIMO) {
+            throw new BadRequestException("El lote no puede tener mas de " + LOTE_MAXIMO + " operaciones");
+        }
+
+        int n = operaciones.size();
+        RuntimeException[] errores = new RuntimeException[n];
+        boolean hayErrores = false;
+
+        // nombreVuelo normalizado -> indice de la operacion que lo usa dentro del lote
+        Map<String, Integer> nombresLote = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            try {
+                prevalidar(operaciones.get(i), nombresLote, i);
+            } catch (RuntimeException e) {
+                errores[i] = e;
+                hayErrores = true;
+            }
+        }
+
+        if (atomico && hayErrores) {
+            return resultadosSinAplicar(operaciones, errores);
+        }
+
+        Vuelo[] vuelos = new Vuelo[n];
+        // Acciones para deshacer las operaciones aplicadas (solo en modo atomico)
+        Deque<Deshacer> deshacer = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (errores[i] != null) {
+                continue;
+            }
+            try {
+                vuelos[i] = aplicar(operaciones.get(i), i, atomico ? deshacer : null);
+            } catch (RuntimeException e) {
+                errores[i] = e;
+                if (atomico) {
+                    deshacerAplicadas(deshacer, errores);
+                    return resultadosSinAplicar(operaciones, errores);
+                }
+            }
+        }
+
+        List<ResultadoLote> resultados = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            resultados.add(new ResultadoLote(i, operaciones.get(i).tipo(), vuelos[i], errores[i]));
+        }
+        return resultados;
+    }
+
+    // Validaciones de una operacion del lote, sin modificar nada.
+    private void prevalidar(OperacionLote op, Map<String, Integer> nombresLote, int indice) {
+        if (op.tipo() == null) {
+            throw new BadRequestException("operacion inválida. Usa crear, actualizar o eliminar");
+        }
+        if (op.tipo() != OperacionLote.Tipo.CREAR && op.id() == null) {
+            throw new BadRequestException("id obligatorio para " + TextoUtils.normalizar(op.tipo().name()));
+        }
+        if (op.tipo() != OperacionLote.Tipo.CREAR) {
+            obtenerModificable(op.id());
+        }
+        if (op.tipo() == OperacionLote.Tipo.ELIMINAR) {
+            return;
+        }
+
+        validar(op.vuelo());
+        Integer repetido = nombresLote.putIfAbsent(TextoUtils.normalizar(op.vuelo().getNombreVuelo()), indice);
+        if (repetido != null) {
+            throw new ConflictException("nombreVuelo repetido dentro del lote (operacion " + repetido + ")");
+        }
+        if (existeNombre(op.vuelo().getNombreVuelo(), op.id())) {
+            throw new ConflictException(op.tipo() == OperacionLote.Tipo.CREAR
+                    ? "El vuelo ya existe (nombreVuelo repetido)"
+                    : "nombreVuelo ya utilizado");
+        }
+    }
+
+    // Accion que revierte la operacion "indice" del lote
+    private record Deshacer(int indice, Runnable accion) {
+    }
+
+    // Aplica una operacion ya validada.
+    // Si se recibe "deshacer", se apunta al principio la accion que la revierte. Las acciones comprueban la version:
+    // si otra peticion ha cambiado el vuelo despues del lote, no se pisa su cambio (lanzan un 412).
+    private Vuelo aplicar(OperacionLote op, int indice, Deque<Deshacer> deshacer) {
+        switch (op.tipo()) {
+            case CREAR -> {
+                Vuelo creado = guardar(op.vuelo());
+                if (deshacer != null) {
+                    // Si ya lo ha eliminado otra peticion no queda nada que deshacer
+                    deshacer.addFirst(new Deshacer(indice,
+                            () -> borrar(creado.getId(), v -> v == creado.getVersion())));
+                }
+                return creado;
+            }
+            case ACTUALIZAR -> {
+                Vuelo anterior = obtenerModificable(op.id());
+                Vuelo actualizado = sustituir(op.id(), op.vuelo())
+                        .orElseThrow(() -> new NotFoundException("Vuelo no encontrado o eliminado recientemente"));
+                if (deshacer != null) {
+                    deshacer.addFirst(new Deshacer(indice,
+                            () -> sustituir(anterior.getId(), anterior, v -> v == actualizado.getVersion())
+                                    .orElseThrow(() -> new NotFoundException("Vuelo eliminado por otra peticion"))));
+                }
+                return actualizado;
+            }
+            case ELIMINAR -> {
+                Vuelo anterior = obtenerModificable(op.id());
+                if (!borrar(op.id())) {
+                    throw new NotFoundException("Vuelo no encontrado o eliminado recientemente");
+                }
+                if (deshacer != null) {
+                    deshacer.addFirst(new Deshacer(indice, () -> restaurar(anterior)));
+                }
+                return null;
+            }
+            default -> throw new BadRequestException("operacion inválida. Usa crear, actualizar o eliminar");
+        }
+    }
+
+    // Deshace las operaciones ya aplicadas (la ultima primero). Si una no se puede deshacer
+    // (otra peticion ha cambiado el vuelo o cogido el nombre) se apunta en "errores" y se sigue con las demas.
+    private void deshacerAplicadas(Deque<Deshacer> deshacer, RuntimeException[] errores) {
+        for (Deshacer paso : deshacer) {
+            try {
+                paso.accion().run();
+            } catch (RuntimeException e) {
+                errores[paso.indice()] = new ConflictException(
+                        "Aplicada y no se ha podido deshacer: " + e.getMessage());
+            }
+        }
+    }
+
+    // Resultados de un lote atomico que no se ha aplicado:
+    // las operaciones con error lo mantienen y el resto se marcan como no aplicadas.
+    // (Las que no se han podido deshacer tienen su propio error, ver deshacerAplicadas.)
+    private List<ResultadoLote> resultadosSinAplicar(List<OperacionLote> operaciones, RuntimeException[] errores) {
+        List<ResultadoLote> resultados = new ArrayList<>(operaciones.size());
+        for (int i = 0; i < operaciones.size(); i++) {
+            RuntimeException error = errores[i] != null
+                    ? errores[i]
+                    : new ConflictException("No aplicado: el lote es atómico y otra operación tiene errores");
+            resultados.add(new ResultadoLote(i, operaciones.get(i).tipo(), null, error));
+        }
+        return resultados;
+    }
+
+    // Version del listado con esos filtros (VueloRepository.version): cambia cuando una escritura puede cambiar
+    // su resultado. El controller la usa para el ETag sin tener que calcular el listado.
+    public long versionListado(FiltroVuelos filtro) {
+        validarFiltro(filtro);
+        return repository.version(filtro);
+    }
+
+    // Estadisticas de todo el catalogo (vuelos y duracion media por empresa, lugarLlegada y fechaSalida).
+    // El repositorio las mantiene al dia en cada escritura, asi que no se recorre ningun vuelo.
+    public EstadisticasVuelos estadisticas() {
+        long inicio = System.nanoTime();
+        try {
+            return repository.estadisticas();
+        } finally {
+            metricas.servicio(MetodoServicio.ESTADISTICAS, inicio);
+        }
+    }
+
+    // Sugerencias para autocompletar un campo (empresa, lugarSalida o lugarLlegada) con lo que lleva escrito (q):
+    // los k valores con mas vuelos que empiezan por q, sin importar MAYUS, MINUS ni acentos.
+    // Sin q devuelve los k valores con mas vuelos.
+    public List<Sugerencia> sugerir(String campo, String q, Integer k) {
+        long inicio = System.nanoTime();
+        try {
+            CampoSugerencia c = CampoSugerencia.de(campo);
+            if (c == null) {
+                throw new BadRequestException("campo inválido. Usa empresa, lugarSalida o lugarLlegada");
+            }
+            if (k != null && (k < 1 || k > SUGERENCIAS_MAXIMO)) {
+                throw new BadRequestException("k inválido. Usa un valor entre 1 y " + SUGERENCIAS_MAXIMO);
+            }
+            return repository.sugerir(c, q, k == null ? SUGERENCIAS_DEFECTO : k);
+        } finally {
+            metricas.servicio(MetodoServicio.SUGERIR, inicio);
+        }
+    }
+
+    // Version de las estadisticas: la global del repositorio, cambia con cualquier escritura.
+    public long versionEstadisticas() {
+        return repository.version(FiltroVuelos.de(null, null, null));
+    }
+
+    // El rango de fechaSalida tiene que ser coherente (desde no puede ser posterior a hasta).
+    private void validarFiltro(FiltroVuelos filtro) {
+        if (filtro.fechaSalidaDesde() != null && filtro.fechaSalidaHasta() != null
+                && filtro.fechaSalidaDesde().isAfter(filtro.fechaSalidaHasta())) {
+            throw new BadRequestException("fechaSalidaDesde no puede ser posterior a fechaSalidaHasta");
         }
     }
 
@@ -123,8 +466,91 @@ public class VueloService {
     // Valida que el objeto no sea null, que las strings obligatorias no sean null/vacíos
     // que fechas no sean null
     // y que fechaSalida no sea posterior a fechaLlegada
+
+    // Buscar un vuelo por ID (GET /vuelos/{id}).
+    // Si no esta en memoria se busca en el historico, asi los vuelos que ya han llegado se siguen pudiendo consultar.
     public Vuelo obtenerPorId(int id) {
-        return repository.findById(id).orElseThrow(() -> new NotFoundException("Vuelo no encontrado"));
+        long inicio = System.nanoTime();
+        try {
+            Optional<Vuelo> vuelo = repository.findByIdConHistorico(id);
+            metricas.repositorio(OperacionRepositorio.FIND_BY_ID, inicio);
+            return vuelo.orElseThrow(() -> new NotFoundException("Vuelo no encontrado"));
+        } finally {
+            metricas.servicio(MetodoServicio.OBTENER_POR_ID, inicio);
+        }
+    }
+
+    // Vuelo que se va a actualizar o eliminar: solo los de memoria.
+    // Los del historico son de solo lectura, intentar modificarlos lanza un 409 en vez de un 404.
+    private Vuelo obtenerModificable(int id) {
+        long inicio = System.nanoTime();
+        Optional<Vuelo> vuelo = repository.findById(id);
+        metricas.repositorio(OperacionRepositorio.FIND_BY_ID, inicio);
+        return vuelo.orElseGet(() -> {
+            comprobarNoArchivado(id);
+            throw new NotFoundException("Vuelo no encontrado");
+        });
+    }
+
+    private void comprobarNoArchivado(int id) {
+        if (repository.archivado(id)) {
+            throw new ConflictException("El vuelo ya ha llegado y esta en el historico, no se puede modificar");
+        }
+    }
+
+    // ----- Llamadas al repositorio (medidas) -----
+
+    private Vuelo guardar(Vuelo vuelo) {
+        long inicio = System.nanoTime();
+        try {
+            return repository.save(vuelo);
+        } finally {
+            metricas.repositorio(OperacionRepositorio.SAVE, inicio);
+        }
+    }
+
+    private Optional<Vuelo> sustituir(int id, Vuelo vuelo) {
+        return sustituir(id, vuelo, null);
+    }
+
+    private Optional<Vuelo> sustituir(int id, Vuelo vuelo, LongPredicate versionAceptada) {
+        long inicio = System.nanoTime();
+        try {
+            return repository.update(id, vuelo, versionAceptada);
+        } finally {
+            metricas.repositorio(OperacionRepositorio.UPDATE, inicio);
+        }
+    }
+
+    private void restaurar(Vuelo vuelo) {
+        long inicio = System.nanoTime();
+        try {
+            repository.restore(vuelo);
+        } finally {
+            metricas.repositorio(OperacionRepositorio.RESTORE, inicio);
+        }
+    }
+
+    private boolean borrar(int id) {
+        return borrar(id, null);
+    }
+
+    private boolean borrar(int id, LongPredicate versionAceptada) {
+        long inicio = System.nanoTime();
+        try {
+            return repository.delete(id, versionAceptada);
+        } finally {
+            metricas.repositorio(OperacionRepositorio.DELETE, inicio);
+        }
+    }
+
+    private boolean existeNombre(String nombreVuelo, Integer id) {
+        long inicio = System.nanoTime();
+        try {
+            return repository.existsNombreVuelo(nombreVuelo, id);
+        } finally {
+            metricas.repositorio(OperacionRepositorio.EXISTS_NOMBRE_VUELO, inicio);
+        }
     }
 
     private void validar(Vuelo vuelo) {
@@ -142,24 +568,43 @@ public class VueloService {
 
         // la validacion para que fechaSalida no sea posterior a fechaLlegada
         DateUtils.validarRango(vuelo.getFechaSalida(), vuelo.getFechaLlegada());
+
+        comprobarParticion(vuelo.getNombreVuelo());
     }
 
-    // El comparador para ordenar el listado
+    // En un cluster cada nodo solo guarda los nombreVuelo que le tocan (ver ParticionVuelos), asi su indice unico
+    // basta para que el nombre sea unico en todo el cluster. El router ya manda cada vuelo a su nodo:
+    // esto evita que una peticion directa a un nodo (o un cambio de nombre) rompa el reparto.
+    private void comprobarParticion(String nombreVuelo) {
+        ParticionVuelos particion = repository.particion();
+        if (!particion.propio(nombreVuelo)) {
+            throw new BadRequestException("nombreVuelo pertenece al nodo "
+                    + ParticionVuelos.nodoDeNombre(nombreVuelo, particion.nodos()) + " del cluster, no al nodo " + particion.nodo());
+        }
+    }
+
+    // Valida el tamaño de pagina, si no se indica se usa el tamaño por defecto.
+    private int validarLimit(Integer limit) {
+        if (limit == null) {
+            return LIMIT_DEFECTO;
+        }
+        if (limit < 1 || limit > LIMIT_MAXIMO) {
+            throw new BadRequestException("limit inválido. Usa un valor entre 1 y " + LIMIT_MAXIMO);
+        }
+        return limit;
+    }
+
+    // El criterio para ordenar el listado
     // Tambien permite ordenar por empresa y lugarLlegada
+    // En todos los criterios la ID se usa como desempate (ver OrdenVuelo.comparador)
     // Si se esta usando algo diferente a esos 3, lanza una excepción
-    private Comparator<Vuelo> buildComparator(String ordenarPor) {
+    // (Tambien lo usa CacheListados para construir la clave de la cache)
+    OrdenVuelo buildOrden(String ordenarPor) {
         // Aqui hacemos caso a la consigna. Al listar los vuelos, estaran ordenados por fechaSalida.
-        if (ordenarPor == null || ordenarPor.isBlank()) {
-            return Comparator.comparing(Vuelo::getFechaSalida)
-                    .thenComparing(Vuelo::getId);
-        }
-
-        // Switch con criterios para el filtro permitidos.
-        return switch (ordenarPor.trim()) {
-            case "fechaSalida" -> Comparator.comparing(Vuelo::getFechaSalida);
-            case "empresa" -> Comparator.comparing(Vuelo::getEmpresa, String.CASE_INSENSITIVE_ORDER);
-            case "lugarLlegada" -> Comparator.comparing(Vuelo::getLugarLlegada, String.CASE_INSENSITIVE_ORDER);
-            default -> throw new BadRequestException("ordenarPor inválido. Usa empresa, lugarLlegada o fechaSalida");
-        };
+        OrdenVuelo orden = OrdenVuelo.de(ordenarPor);
+        if (orden == null) {
+            throw new BadRequestException("ordenarPor inválido. Usa empresa, lugarLlegada o fechaSalida");
+        }
+        return orden;
     }
 }
@@ -0,0 +1,55 @@
+package com.example.vuelos.utils;
+
+import com.example.vuelos.exceptions.BadRequestException;
+import com.example.vuelos.models.Cursor;
+import com.example.vuelos.models.OrdenVuelo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Utilidad de cursores para la paginacion del listado
+// Convierte un Cursor a un String opaco (Base64 URL) y al reves.
+// El cliente no tiene que entender el contenido, solo devolverlo tal cual en el query param "cursor".
+
+public class CursorUtils {
+
+    // Separador de los campos dentro del cursor. El valor va al final, asi puede contener el separador.
+    private static final String SEPARADOR = "|";
+
+    private CursorUtils() {
+        // Evita instanciar esta clase: solo contiene métodos estáticos.
+    }
+
+    // Codifica el cursor como "orden|id|valor" en Base64 URL (sin relleno, para poder ir en la URL sin escapar).
+    public static String codificar(Cursor cursor) {
+        String texto = cursor.orden().name() + SEPARADOR + cursor.id() + SEPARADOR + cursor.valor();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Decodifica el cursor recibido en el query param.
+    // Si viene null o vacío devuelve null (primera pagina).
+    // Si no es valido o es de otro criterio de orden, lanza una BadRequestException.
+    public static Cursor decodificar(String value, OrdenVuelo orden) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(value.trim()), StandardCharsets.UTF_8);
+            String[] partes = texto.split("\\|", 3);
+            if (partes.length != 3) {
+                throw new BadRequestException("cursor inválido");
+            }
+            if (!orden.name().equals(partes[0])) {
+                throw new BadRequestException("cursor inválido para este ordenarPor");
+            }
+            int id = Integer.parseInt(partes[1]);
+            Object valor = orden == OrdenVuelo.FECHA_SALIDA ? LocalDate.parse(partes[2]) : partes[2];
+            return new Cursor(orden, valor, id);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // IllegalArgumentException cubre Base64 y numeros mal formados
+            throw new BadRequestException("cursor inválido");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.vuelos.utils;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+// Utilidad de ETags (cabeceras ETag, If-None-Match e If-Match).
+// Los ETag son fuertes y llevan un identificador del arranque ademas de la version: "<arranque>-<version>".
+// Las versiones vuelven a empezar en cada arranque (no se guardan en disco), asi un ETag de antes de reiniciar
+// nunca coincide con uno nuevo aunque la version sea la misma.
+// Los id de los eventos del feed de cambios (GET /vuelos/changes) llevan el mismo prefijo por el mismo motivo.
+
+public class EtagUtils {
+
+    // Identificador de este arranque (aleatorio, en base 36 para que sea corto)
+    private static final String ARRANQUE = Long.toUnsignedString(new SecureRandom().nextLong(), 36);
+    private static final String PREFIJO = ARRANQUE + "-";
+
+    private EtagUtils() {
+        // Evita instanciar esta clase: solo contiene métodos estáticos.
+    }
+
+    // ETag fuerte (entre comillas) de una version
+    public static String etag(long version) {
+        return "\"" + PREFIJO + version + "\"";
+    }
+
+    // Id de un evento del feed de cambios: "<arranque>-<secuencia>" (sin comillas)
+    public static String idEvento(long secuencia) {
+        return PREFIJO + secuencia;
+    }
+
+    // Secuencia de un id de evento de este arranque, o -1 si es de otro arranque o no es valido
+    public static long secuenciaEvento(String id) {
+        if (id == null || !id.startsWith(PREFIJO)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(id.substring(PREFIJO.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Versiones aceptadas por la cabecera If-Match, o null si no viene (se acepta cualquiera).
+    // - "*" acepta cualquier version.
+    // - Puede venir una lista separada por comas.
+    // - Los ETag debiles (W/"...") y los de otro arranque no coinciden nunca (If-Match usa comparacion fuerte).
+    public static LongPredicate versionesAceptadas(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return null;
+        }
+        long[] versiones = new long[0];
+        for (String parte : ifMatch.split(",")) {
+            String etag = parte.trim();
+            if (etag.equals("*")) {
+                return version -> true;
+            }
+            long version = version(etag);
+            if (version >= 0) {
+                versiones = Arrays.copyOf(versiones, versiones.length + 1);
+                versiones[versiones.length - 1] = version;
+            }
+        }
+        long[] aceptadas = versiones;
+        return version -> {
+            for (long v : aceptadas) {
+                if (v == version) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    // Version de un ETag de este arranque, o -1 si es debil, de otro arranque o no es valido
+    private static long version(String etag) {
+        if (etag.length() < 2 || etag.charAt(0) != '"' || etag.charAt(etag.length() - 1) != '"') {
+            return -1;
+        }
+        return secuenciaEvento(etag.substring(1, etag.length() - 1));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.vuelos.utils;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Utilidad de texto para la APP
+// Normaliza los Strings que se usan como clave (indices del repositorio y filtros de los query params)
+// Asi la comparacion "sin importar MAYUS o MINUS" se hace en un solo sitio y siempre igual.
+
+public class TextoUtils {
+
+    // Marcas que quedan separadas de su letra al descomponer un texto (acentos, diéresis, tildes...)
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+
+    private TextoUtils() {
+        // Evita instanciar esta clase: solo contiene métodos estáticos.
+    }
+
+    // Devuelve el texto sin espacios alrededor y en minusculas.
+    // Si el valor viene null devuelve null.
+    public static String normalizar(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Comprueba si un valor, una vez normalizado, es igual a un texto que ya esta normalizado.
+    // Hace lo mismo que normalizar(value).equals(normalizado) pero sin crear ningun String,
+    // porque se usa en los filtros una vez por cada vuelo.
+    public static boolean coincide(String value, String normalizado) {
+        if (value == null || normalizado == null) {
+            return false;
+        }
+        int inicio = 0;
+        int fin = value.length();
+        while (inicio < fin && value.charAt(inicio) <= ' ') {
+            inicio++;
+        }
+        while (fin > inicio && value.charAt(fin - 1) <= ' ') {
+            fin--;
+        }
+        return fin - inicio == normalizado.length()
+                && value.regionMatches(true, inicio, normalizado, 0, normalizado.length());
+    }
+
+    // Igual que normalizar pero ademas sin acentos ("São Paulo" -> "sao paulo"), para buscar por prefijo
+    // sin que importe como se escriban. Si el texto es solo ASCII no hay nada que quitar.
+    public static String plegar(String value) {
+        String normalizado = normalizar(value);
+        if (normalizado == null) {
+            return null;
+        }
+        for (int i = 0; i < normalizado.length(); i++) {
+            if (normalizado.charAt(i) >= 0x80) {
+                return MARCAS.matcher(Normalizer.normalize(normalizado, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return normalizado;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.vuelos.carga;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prueba de carga sencilla contra una APP ya arrancada (no es un test de JUnit, se ejecuta con main).
+// Sirve para comparar el modo normal (hilos de plataforma de Tomcat) con el perfil "virtual" (hilos virtuales).
+//
+// Cada cliente repite peticiones sin pausa durante "segundos": un "escrituras"% son altas (POST /vuelos)
+// y el resto lecturas (GET /vuelos/{id} y GET /vuelos?limit=50). Al final imprime peticiones por segundo y latencias.
+// Las altas son las que se bloquean esperando al disco si la persistencia esta activada con fsync=siempre.
+//
+// Argumentos (todos opcionales): url clientes segundos escrituras
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.vuelos.carga.PruebaCarga \
+//       -Dexec.args="http://localhost:8080 400 30 20"
+public class PruebaCarga {
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clientes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int escrituras = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        HttpClient http = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        // Calentamiento: el JIT y las conexiones, no cuenta en el resultado
+        ejecutar(http, url, clientes, Math.min(5, segundos), escrituras, "calentamiento");
+        Resultado r = ejecutar(http, url, clientes, segundos, escrituras, "medicion");
+
+        System.out.printf(Locale.ROOT, "clientes=%d segundos=%d escrituras=%d%%%n", clientes, segundos, escrituras);
+        System.out.printf(Locale.ROOT, "peticiones=%d errores=%d throughput=%.0f req/s%n",
+                r.latencias.length, r.errores, r.latencias.length / (double) segundos);
+        System.out.printf(Locale.ROOT, "latencia ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                percentil(r.latencias, 50), percentil(r.latencias, 90), percentil(r.latencias, 99), percentil(r.latencias, 100));
+    }
+
+    private record Resultado(long[] latencias, long errores) {
+    }
+
+    // Un hilo virtual por cliente, cada uno guarda sus latencias en su propia lista (sin compartir nada)
+    private static Resultado ejecutar(HttpClient http, String url, int clientes, int segundos, int escrituras,
+                                      String fase) throws Exception {
+        long fin = System.nanoTime() + Duration.ofSeconds(segundos).toNanos();
+        AtomicLong errores = new AtomicLong();
+        AtomicLong secuencia = new AtomicLong();
+        String prefijo = fase.substring(0, 3).toUpperCase(Locale.ROOT) + "-" + System.currentTimeMillis() + "-";
+
+        List<Future<long[]>> tareas = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clientes; c++) {
+                tareas.add(pool.submit(() -> {
+                    long[] latencias = new long[1024];
+                    int n = 0;
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < fin) {
+                        HttpRequest peticion = random.nextInt(100) < escrituras
+                                ? alta(url, prefijo + secuencia.incrementAndGet())
+                                : random.nextBoolean()
+                                ? HttpRequest.newBuilder(URI.create(url + "/vuelos/" + (1 + random.nextInt(10)))).build()
+                                : HttpRequest.newBuilder(URI.create(url + "/vuelos?limit=50")).build();
+                        long inicio = System.nanoTime();
+                        try {
+                            HttpResponse<Void> respuesta = http.send(peticion, HttpResponse.BodyHandlers.discarding());
+                            if (respuesta.statusCode() >= 500) {
+                                errores.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errores.incrementAndGet();
+                            continue;
+                        }
+                        if (n == latencias.length) {
+                            latencias = Arrays.copyOf(latencias, n * 2);
+                        }
+                        latencias[n++] = System.nanoTime() - inicio;
+                    }
+                    return Arrays.copyOf(latencias, n);
+                }));
+            }
+        }
+
+        long[] todas = tareas.stream().map(PruebaCarga::resultado).flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(todas);
+        return new Resultado(todas, errores.get());
+    }
+
+    private static HttpRequest alta(String url, String nombre) {
+        String json = """
+                {"nombreVuelo":"%s","empresa":"Iberia","lugarSalida":"Madrid","lugarLlegada":"Paris",\
+                "fechaSalida":"2026-05-01","fechaLlegada":"2026-05-02"}""".formatted(nombre);
+        return HttpRequest.newBuilder(URI.create(url + "/vuelos"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static long[] resultado(Future<long[]> tarea) {
+        try {
+            return tarea.get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Percentil en milisegundos de latencias ya ordenadas
+    private static double percentil(long[] ordenadas, int p) {
+        if (ordenadas.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p / 100.0 * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, Math.min(i, ordenadas.length - 1))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.vuelos.carga;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prueba de conexiones lentas contra una APP ya arrancada (no es un test de JUnit, se ejecuta con main, como PruebaCarga).
+// Sirve para comparar cuantas conexiones aguanta Spring MVC (Tomcat) frente al perfil "reactivo" (WebFlux).
+//
+// Primero da de alta "vuelos" vuelos con POST /vuelos/batch, para que GET /vuelos sea una respuesta grande.
+// Despues abre "lentos" clientes que piden GET /vuelos y lo leen muy despacio (8 KB cada 100 ms) durante "segundos".
+// Mientras, una sonda pide GET /vuelos/1 cada 100 ms y mide su latencia.
+// Con MVC cada descarga lenta ocupa un hilo de Tomcat (bloqueado escribiendo en el socket): cuando hay mas lentos
+// que hilos la sonda espera o da timeout. Con WebFlux la descarga solo avanza cuando el cliente lee, sin ocupar hilo.
+//
+// Argumentos (todos opcionales): url lentos segundos vuelos
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.vuelos.carga.PruebaConexiones \
+//       -Dexec.args="http://localhost:8080 1000 30 20000"
+public class PruebaConexiones {
+
+    private static final int BLOQUE = 8 * 1024;
+    private static final Duration PAUSA = Duration.ofMillis(100);
+    private static final Duration TIMEOUT_SONDA = Duration.ofSeconds(5);
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080";
+        int lentos = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int vuelos = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        // La sonda va por su propio cliente para no esperar conexiones libres de los lentos
+        HttpClient sonda = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        sembrar(http, url, vuelos);
+
+        long fin = System.nanoTime() + Duration.ofSeconds(segundos).toNanos();
+        AtomicInteger abiertas = new AtomicInteger();
+        AtomicInteger maxAbiertas = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong erroresLentos = new AtomicLong();
+        long[] latencias;
+        long erroresSonda = 0;
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < lentos; c++) {
+                pool.submit(() -> leerDespacio(http, url, fin, abiertas, maxAbiertas, bytes, erroresLentos));
+            }
+
+            // Un hilo (el main) para la sonda: peticiones de una en una
+            latencias = new long[1024];
+            int n = 0;
+            while (System.nanoTime() < fin) {
+                HttpRequest peticion = HttpRequest.newBuilder(URI.create(url + "/vuelos/1")).timeout(TIMEOUT_SONDA).build();
+                long inicio = System.nanoTime();
+                try {
+                    HttpResponse<Void> respuesta = sonda.send(peticion, HttpResponse.BodyHandlers.discarding());
+                    if (respuesta.statusCode() != 200) {
+                        erroresSonda++;
+                    }
+                } catch (Exception e) {
+                    erroresSonda++;
+                }
+                if (n == latencias.length) {
+                    latencias = Arrays.copyOf(latencias, n * 2);
+                }
+                latencias[n++] = System.nanoTime() - inicio;
+                Thread.sleep(PAUSA);
+            }
+            latencias = Arrays.copyOf(latencias, n);
+        }
+        Arrays.sort(latencias);
+
+        System.out.printf(Locale.ROOT, "lentos=%d segundos=%d vuelos=%d%n", lentos, segundos, vuelos);
+        System.out.printf(Locale.ROOT, "conexiones lentas: maximo abiertas=%d errores=%d leido=%.1f MB%n",
+                maxAbiertas.get(), erroresLentos.get(), bytes.get() / 1_048_576.0);
+        System.out.printf(Locale.ROOT, "sonda GET /vuelos/1: peticiones=%d errores=%d%n", latencias.length, erroresSonda);
+        System.out.printf(Locale.ROOT, "latencia ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                percentil(latencias, 50), percentil(latencias, 90), percentil(latencias, 99), percentil(latencias, 100));
+    }
+
+    // Da de alta los vuelos en lotes de 1000 (un nombre distinto en cada ejecucion)
+    private static void sembrar(HttpClient http, String url, int vuelos) throws Exception {
+        String prefijo = "CON-" + System.currentTimeMillis() + "-";
+        for (int inicio = 0; inicio < vuelos; inicio += 1000) {
+            StringJoiner lote = new StringJoiner(",", "[", "]");
+            for (int i = inicio; i < Math.min(vuelos, inicio + 1000); i++) {
+                lote.add("""
+                        {"operacion":"crear","vuelo":{"nombreVuelo":"%s","empresa":"Iberia","lugarSalida":"Madrid",\
+                        "lugarLlegada":"Paris","fechaSalida":"2026-05-01","fechaLlegada":"2026-05-02"}}"""
+                        .formatted(prefijo + i));
+            }
+            HttpRequest peticion = HttpRequest.newBuilder(URI.create(url + "/vuelos/batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(lote.toString()))
+                    .build();
+            HttpResponse<Void> respuesta = http.send(peticion, HttpResponse.BodyHandlers.discarding());
+            if (respuesta.statusCode() != 200) {
+                throw new IllegalStateException("El lote ha devuelto " + respuesta.statusCode());
+            }
+        }
+    }
+
+    // Cada cliente lento repite GET /vuelos leyendo un bloque cada PAUSA hasta que se acaba el tiempo
+    private static void leerDespacio(HttpClient http, String url, long fin, AtomicInteger abiertas,
+                                     AtomicInteger maxAbiertas, AtomicLong bytes, AtomicLong errores) {
+        byte[] buffer = new byte[BLOQUE];
+        while (System.nanoTime() < fin) {
+            HttpRequest peticion = HttpRequest.newBuilder(URI.create(url + "/vuelos")).build();
+            try {
+                HttpResponse<InputStream> respuesta = http.send(peticion, HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream cuerpo = respuesta.body()) {
+                    maxAbiertas.accumulateAndGet(abiertas.incrementAndGet(), Math::max);
+                    try {
+                        int leidos;
+                        while (System.nanoTime() < fin && (leidos = cuerpo.readNBytes(buffer, 0, BLOQUE)) > 0) {
+                            bytes.addAndGet(leidos);
+                            Thread.sleep(PAUSA);
+                        }
+                    } finally {
+                        abiertas.decrementAndGet();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                errores.incrementAndGet();
+            }
+        }
+    }
+
+    // Percentil en milisegundos de latencias ya ordenadas
+    private static double percentil(long[] ordenadas, int p) {
+        if (ordenadas.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p / 100.0 * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, Math.min(i, ordenadas.length - 1))] / 1_000_000.0;
+    }
+}
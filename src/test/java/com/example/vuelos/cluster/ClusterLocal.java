@@ -0,0 +1,80 @@
+package com.example.vuelos.cluster;
+
+import com.example.vuelos.VuelosCrudApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Cluster de prueba en una sola JVM: N nodos y un router, cada uno en su puerto libre de localhost.
+// Cada instancia es un contexto de Spring independiente (sus vuelos, su repositorio, su Tomcat), como si fueran procesos distintos.
+// Lo usa RouterVuelosTest y tambien se puede arrancar a mano para probar con Postman o con PruebaCarga:
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.vuelos.cluster.ClusterLocal \
+//       -Dexec.args="3 8080"
+// (argumentos: numero de nodos y puerto del router, los nodos usan los puertos siguientes)
+public class ClusterLocal implements AutoCloseable {
+
+    private final List<ConfigurableApplicationContext> nodos = new ArrayList<>();
+    private final List<String> urlsNodos = new ArrayList<>();
+    private final ConfigurableApplicationContext router;
+
+    // Puerto 0 = uno libre cualquiera
+    public ClusterLocal(int numeroNodos, int puertoRouter) {
+        try {
+            for (int i = 0; i < numeroNodos; i++) {
+                ConfigurableApplicationContext nodo = arrancar(puertoRouter == 0 ? 0 : puertoRouter + 1 + i,
+                        "--vuelos.cluster.nodo=" + i,
+                        "--vuelos.cluster.nodos=" + numeroNodos);
+                nodos.add(nodo);
+                urlsNodos.add(url(nodo));
+            }
+            router = arrancar(puertoRouter,
+                    "--vuelos.cluster.rol=router",
+                    "--vuelos.cluster.nodos-url=" + String.join(",", urlsNodos));
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public String urlRouter() {
+        return url(router);
+    }
+
+    public String urlNodo(int nodo) {
+        return urlsNodos.get(nodo);
+    }
+
+    @Override
+    public void close() {
+        if (router != null) {
+            router.close();
+        }
+        nodos.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private static ConfigurableApplicationContext arrancar(int puerto, String... argumentos) {
+        List<String> args = new ArrayList<>(List.of(argumentos));
+        args.add("--server.port=" + puerto);
+        // Sin persistencia ni historico: cada arranque del cluster empieza con la seed repartida
+        args.add("--vuelos.persistencia.habilitada=false");
+        args.add("--vuelos.historico.habilitado=false");
+        return new SpringApplicationBuilder(VuelosCrudApplication.class).run(args.toArray(String[]::new));
+    }
+
+    private static String url(ConfigurableApplicationContext contexto) {
+        return "http://localhost:" + contexto.getEnvironment().getProperty("local.server.port");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numeroNodos = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int puertoRouter = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        try (ClusterLocal cluster = new ClusterLocal(numeroNodos, puertoRouter)) {
+            System.out.println("router: " + cluster.urlRouter());
+            System.out.println("nodos: " + String.join(", ", cluster.urlsNodos));
+            System.out.println("Pulsa Enter para parar el cluster");
+            System.in.read();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.vuelos.cluster;
+
+import com.example.vuelos.exceptions.BadRequestException;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.ArchivoVuelos;
+import com.example.vuelos.repositories.PersistenciaVuelos;
+import com.example.vuelos.repositories.VueloRepository;
+import com.example.vuelos.services.VueloService;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Reparto de los vuelos entre nodos: IDs de cada nodo, seed repartida y nombres que no son del nodo.
+class ParticionVuelosTest {
+
+    @Test
+    void cadaNodoGeneraSoloSusIds() {
+        for (int nodo = 0; nodo < 3; nodo++) {
+            VueloRepository repository = repositorio(nodo, 3);
+            for (int i = 0; i < 5; i++) {
+                Vuelo v = repository.save(vuelo(nombreDe(nodo, 3, "ID-" + i)));
+                assertEquals(nodo, ParticionVuelos.nodoDeId(v.getId(), 3));
+            }
+        }
+        // Con un nodo la secuencia es la de siempre
+        VueloRepository unico = repositorio(0, 1);
+        assertEquals(11, unico.save(vuelo("ID-X")).getId());
+
+        ParticionVuelos particion = new ParticionVuelos(1, 3);
+        assertEquals(2, particion.primerId());
+        assertEquals(2, particion.alinear(1));
+        assertEquals(2, particion.alinear(2));
+        assertEquals(5, particion.alinear(3));
+        assertEquals(8, particion.alinear(8));
+    }
+
+    @Test
+    void lasIdsDeUnNodoSeRepartenEntreTodosLosCerrojos() {
+        // El repositorio reparte sus 64 cerrojos por la posicion de la ID, no por la ID (que va de n en n)
+        for (int nodos : new int[]{1, 2, 3, 4, 64}) {
+            int nodo = nodos - 1;
+            VueloRepository repository = repositorio(nodo, nodos);
+            ParticionVuelos particion = repository.particion();
+            Set<Integer> cerrojos = new HashSet<>();
+            for (int i = 0; i < 64; i++) {
+                Vuelo v = repository.save(vuelo(nombreDe(nodo, nodos, "CERROJO-" + i)));
+                cerrojos.add(particion.posicion(v.getId()) & 63);
+            }
+            assertEquals(64, cerrojos.size(), nodos + " nodos");
+        }
+    }
+
+    @Test
+    void elAlmacenColumnarGuardaLasIdsDeCadaNodo() {
+        // Las IDs del nodo 1 de 3 son 2, 5, 8...: el columnar las guarda en filas seguidas
+        VueloRepository mapa = repositorio(1, 3);
+        VueloRepository columnar = new VueloRepository(PersistenciaVuelos.desactivada(), "columnar", 1_000,
+                ArchivoVuelos.desactivado(), new ParticionVuelos(1, 3));
+        for (VueloRepository repository : List.of(mapa, columnar)) {
+            for (int i = 0; i < 2_000; i++) {
+                Vuelo v = repository.save(vuelo(nombreDe(1, 3, "COL" + i)));
+                if (i % 7 == 0) {
+                    repository.delete(v.getId());
+                }
+            }
+        }
+        assertEquals(mapa.count(), columnar.count());
+        assertEquals(mapa.findAll().stream().sorted(Comparator.comparingInt(Vuelo::getId)).toList(),
+                columnar.findAll().stream().sorted(Comparator.comparingInt(Vuelo::getId)).toList());
+        Vuelo ultimo = columnar.save(vuelo(nombreDe(1, 3, "COL-ULTIMO")));
+        assertEquals(1, ParticionVuelos.nodoDeId(ultimo.getId(), 3));
+        assertEquals(ultimo, columnar.findById(ultimo.getId()).orElseThrow());
+        // Las IDs de los otros nodos no estan nunca
+        assertTrue(columnar.findById(ultimo.getId() - 1).isEmpty());
+        assertTrue(columnar.findById(ultimo.getId() + 1).isEmpty());
+    }
+
+    @Test
+    void laSeedSeReparteEntreLosNodosSinRepetir() {
+        List<String> todos = new ArrayList<>();
+        for (int nodo = 0; nodo < 3; nodo++) {
+            for (Vuelo v : repositorio(nodo, 3).findAll()) {
+                assertEquals(nodo, ParticionVuelos.nodoDeNombre(v.getNombreVuelo(), 3));
+                todos.add(v.getNombreVuelo());
+            }
+        }
+        List<String> seed = new VueloRepository().findAll().stream().map(Vuelo::getNombreVuelo).sorted().toList();
+        assertEquals(seed, todos.stream().sorted().toList());
+    }
+
+    @Test
+    void elNodoRechazaLosNombresDeOtroNodo() {
+        VueloService service = new VueloService(repositorio(0, 2));
+        String ajeno = nombreDe(1, 2, "AJ");
+
+        // MAYUS/MINUS y espacios no cambian el nodo (es la misma clave que el indice unico)
+        assertEquals(ParticionVuelos.nodoDeNombre(ajeno, 2), ParticionVuelos.nodoDeNombre(" " + ajeno.toLowerCase() + " ", 2));
+        assertThrows(BadRequestException.class, () -> service.crear(vuelo(ajeno)));
+
+        Vuelo propio = service.crear(vuelo(nombreDe(0, 2, "PR")));
+        assertThrows(BadRequestException.class, () -> service.actualizar(propio.getId(), vuelo(ajeno)));
+    }
+
+    private static VueloRepository repositorio(int nodo, int nodos) {
+        return new VueloRepository(PersistenciaVuelos.desactivada(), "mapa", 1_000, ArchivoVuelos.desactivado(),
+                new ParticionVuelos(nodo, nodos));
+    }
+
+    // Primer nombre "<prefijo>-<n>" que le toca al nodo
+    static String nombreDe(int nodo, int nodos, String prefijo) {
+        for (int n = 0; ; n++) {
+            String nombre = prefijo + "-" + n;
+            if (ParticionVuelos.nodoDeNombre(nombre, nodos) == nodo) {
+                return nombre;
+            }
+        }
+    }
+
+    static Vuelo vuelo(String nombre) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa("Iberia")
+                .lugarSalida("Madrid")
+                .lugarLlegada("Paris")
+                .fechaSalida(LocalDate.of(2026, 5, 1))
+                .fechaLlegada(LocalDate.of(2026, 5, 2))
+                .build();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.vuelos.cluster;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Cluster de 3 nodos y un router en localhost (ver ClusterLocal), probado desde fuera por HTTP como un cliente.
+// Todos los tests comparten el cluster: cada uno usa sus propios nombreVuelo.
+class RouterVuelosTest {
+
+    private static final int NODOS = 3;
+
+    private static ClusterLocal cluster;
+    private static final HttpClient http = HttpClient.newHttpClient();
+    private static final JsonMapper json = JsonMapper.builder().build();
+
+    @BeforeAll
+    static void arrancar() {
+        cluster = new ClusterLocal(NODOS, 0);
+    }
+
+    @AfterAll
+    static void parar() {
+        cluster.close();
+    }
+
+    @Test
+    void cadaVueloVaAlNodoDeSuNombreYElNombreEsUnicoEnElCluster() throws Exception {
+        for (int nodo = 0; nodo < NODOS; nodo++) {
+            String nombre = ParticionVuelosTest.nombreDe(nodo, NODOS, "UNI");
+            HttpResponse<String> creado = post("/vuelos", cuerpo(nombre, "2026-06-01"));
+            assertEquals(201, creado.statusCode());
+            int id = leer(creado).path("data").path("id").asInt();
+            assertEquals(nodo, ParticionVuelos.nodoDeId(id, NODOS));
+
+            // El mismo nombre en MAYUS/MINUS va al mismo nodo, que ya lo tiene
+            assertEquals(409, post("/vuelos", cuerpo(" " + nombre.toLowerCase() + " ", "2026-06-01")).statusCode());
+            assertEquals(200, get("/vuelos/" + id).statusCode());
+        }
+        // Un nodo no acepta nombres de otro aunque se le pida directamente
+        String ajeno = ParticionVuelosTest.nombreDe(1, NODOS, "AJENO");
+        assertEquals(400, enviar(cluster.urlNodo(0), "POST", "/vuelos", cuerpo(ajeno, "2026-06-01")).statusCode());
+    }
+
+    @Test
+    void elListadoJuntaTodosLosNodosEnOrden() throws Exception {
+        for (int i = 0; i < 9; i++) {
+            assertEquals(201, post("/vuelos", cuerpo("ORD-" + i, "2026-07-0" + (1 + i % 3))).statusCode());
+        }
+
+        for (String ordenarPor : List.of("fechaSalida", "empresa", "lugarLlegada")) {
+            List<JsonNode> vuelos = datos(get("/vuelos?ordenarPor=" + ordenarPor));
+            assertTrue(vuelos.size() >= 19);
+            List<JsonNode> ordenados = new ArrayList<>(vuelos);
+            ordenados.sort(Comparator.comparing((JsonNode v) -> v.path(ordenarPor).asString(), String.CASE_INSENSITIVE_ORDER)
+                    .thenComparingInt(v -> v.path("id").asInt()));
+            assertEquals(ids(ordenados), ids(vuelos));
+
+            // Paginando de 4 en 4 salen los mismos vuelos en el mismo orden
+            List<Integer> paginados = new ArrayList<>();
+            String cursor = null;
+            do {
+                HttpResponse<String> pagina = get("/vuelos?ordenarPor=" + ordenarPor + "&limit=4"
+                        + (cursor == null ? "" : "&cursor=" + cursor));
+                assertEquals(200, pagina.statusCode());
+                paginados.addAll(ids(datos(pagina)));
+                JsonNode siguiente = leer(pagina).get("siguienteCursor");
+                cursor = siguiente == null ? null : siguiente.asString();
+            } while (cursor != null);
+            assertEquals(ids(vuelos), paginados);
+        }
+
+        // Los errores de validacion de los nodos llegan igual
+        assertEquals(400, get("/vuelos?ordenarPor=precio").statusCode());
+    }
+
+    @Test
+    void cambiarElNombreAUnoDeOtroNodoMueveElVuelo() throws Exception {
+        String nombre = ParticionVuelosTest.nombreDe(0, NODOS, "MOV");
+        String nuevo = ParticionVuelosTest.nombreDe(2, NODOS, "MOV");
+        HttpResponse<String> creado = post("/vuelos", cuerpo(nombre, "2026-08-01"));
+        int id = leer(creado).path("data").path("id").asInt();
+        String etag = creado.headers().firstValue("ETag").orElseThrow();
+
+        // If-Match de otra version: 412 y no se mueve nada
+        assertEquals(412, put("/vuelos/" + id, cuerpo(nuevo, "2026-08-01"), "\"otro-1\"").statusCode());
+
+        HttpResponse<String> movido = put("/vuelos/" + id, cuerpo(nuevo, "2026-08-01"), etag);
+        assertEquals(200, movido.statusCode());
+        int nuevoId = leer(movido).path("data").path("id").asInt();
+        assertEquals(2, ParticionVuelos.nodoDeId(nuevoId, NODOS));
+        assertEquals("/vuelos/" + nuevoId, movido.headers().firstValue("Location").orElseThrow());
+        assertEquals(404, get("/vuelos/" + id).statusCode());
+        assertEquals(nuevo, leer(get("/vuelos/" + nuevoId)).path("data").path("nombreVuelo").asString());
+
+        // El nombre anterior queda libre
+        assertEquals(201, post("/vuelos", cuerpo(nombre, "2026-08-01")).statusCode());
+    }
+
+    @Test
+    void lasEstadisticasYLosLotesSeJuntanDeTodosLosNodos() throws Exception {
+        long antes = leer(get("/vuelos/stats")).path("data").path("vuelos").asLong();
+
+        StringBuilder lote = new StringBuilder("[");
+        for (int i = 0; i < 6; i++) {
+            lote.append(i == 0 ? "" : ",").append("{\"operacion\":\"crear\",\"vuelo\":")
+                    .append(cuerpo("LOT-" + i, "2026-09-01")).append('}');
+        }
+        // Repetido dentro del lote: el mismo nodo lo detecta
+        lote.append(",{\"operacion\":\"crear\",\"vuelo\":").append(cuerpo("lot-0", "2026-09-01")).append("}]");
+
+        HttpResponse<String> respuesta = post("/vuelos/batch", lote.toString());
+        assertEquals(207, respuesta.statusCode());
+        List<JsonNode> resultados = datos(respuesta);
+        assertEquals(7, resultados.size());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(i, resultados.get(i).path("indice").asInt());
+            assertEquals(i < 6 ? 201 : 409, resultados.get(i).path("status").asInt());
+        }
+
+        // Varios lotes a la vez (y otros tests) pueden sumar vuelos, pero estos 6 seguro que estan
+        assertTrue(leer(get("/vuelos/stats")).path("data").path("vuelos").asLong() >= antes + 6);
+
+        // Un lote atomico tiene que ser de un solo nodo
+        String atomico = "[{\"operacion\":\"crear\",\"vuelo\":" + cuerpo(ParticionVuelosTest.nombreDe(0, NODOS, "ATO"), "2026-09-01")
+                + "},{\"operacion\":\"crear\",\"vuelo\":" + cuerpo(ParticionVuelosTest.nombreDe(1, NODOS, "ATO"), "2026-09-01") + "}]";
+        assertEquals(400, post("/vuelos/batch?atomico=true", atomico).statusCode());
+    }
+
+    private static String cuerpo(String nombre, String fechaSalida) {
+        return """
+                {"nombreVuelo":"%s","empresa":"Iberia","lugarSalida":"Madrid","lugarLlegada":"Paris",\
+                "fechaSalida":"%s","fechaLlegada":"%s"}""".formatted(nombre, fechaSalida, fechaSalida);
+    }
+
+    private static HttpResponse<String> get(String ruta) throws Exception {
+        return enviar(cluster.urlRouter(), "GET", ruta, null);
+    }
+
+    private static HttpResponse<String> post(String ruta, String body) throws Exception {
+        return enviar(cluster.urlRouter(), "POST", ruta, body);
+    }
+
+    private static HttpResponse<String> put(String ruta, String body, String ifMatch) throws Exception {
+        HttpRequest peticion = HttpRequest.newBuilder(URI.create(cluster.urlRouter() + ruta))
+                .header("Content-Type", "application/json")
+                .header("If-Match", ifMatch)
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return http.send(peticion, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> enviar(String url, String metodo, String ruta, String body) throws Exception {
+        HttpRequest peticion = HttpRequest.newBuilder(URI.create(url + ruta))
+                .header("Content-Type", "application/json")
+                .method(metodo, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return http.send(peticion, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static JsonNode leer(HttpResponse<String> respuesta) {
+        return json.readTree(respuesta.body());
+    }
+
+    private static List<JsonNode> datos(HttpResponse<String> respuesta) {
+        List<JsonNode> datos = new ArrayList<>();
+        leer(respuesta).path("data").forEach(datos::add);
+        return datos;
+    }
+
+    private static List<Integer> ids(List<JsonNode> vuelos) {
+        return vuelos.stream().map(v -> v.path("id").asInt()).toList();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.Cursor;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.models.Vuelo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Historico de vuelos: los que ya han llegado salen de memoria y se siguen pudiendo leer desde disco.
+// Como en PersistenciaVuelosTest, los "reinicios" abren un historico nuevo sobre el mismo directorio.
+// Los bloques son de 4 vuelos para que la seed (10 vuelos de marzo de 2025) ocupe varios.
+class ArchivoVuelosTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 1, 1);
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void archivaLosVuelosQueYaHanLlegado() {
+        VueloRepository repository = abrir();
+        Vuelo futuro = repository.save(vuelo("HOT-1", LocalDate.of(2026, 5, 1)));
+        List<Vuelo> todos = repository.findByFiltro(FiltroVuelos.de(null, null, null), OrdenVuelo.FECHA_SALIDA).toList();
+
+        assertEquals(10, repository.archivar(HOY));
+        assertEquals(1, repository.count());
+        assertEquals(List.of(futuro), repository.findAll());
+        assertTrue(repository.findById(1).isEmpty());
+        assertEquals("H001-V", repository.findByIdConHistorico(1).orElseThrow().getNombreVuelo());
+        assertTrue(repository.archivado(1));
+        assertFalse(repository.archivado(futuro.getId()));
+        // El nombre queda libre para un vuelo nuevo
+        assertFalse(repository.existsNombreVuelo("H001-V", null));
+
+        // Con el historico el listado es el mismo que antes de archivar, en el mismo orden
+        for (OrdenVuelo orden : OrdenVuelo.values()) {
+            List<Vuelo> esperado = todos.stream().sorted(orden.comparador()).toList();
+            assertEquals(esperado, repository.findByFiltro(FiltroVuelos.de(null, null, null), orden, null, true).toList());
+        }
+        FiltroVuelos iberia = FiltroVuelos.de("iberia", null, null);
+        assertEquals(List.of(9, 1), repository.findByFiltro(iberia, OrdenVuelo.FECHA_SALIDA, null, true)
+                .map(Vuelo::getId).toList());
+        assertTrue(repository.findByFiltro(iberia, OrdenVuelo.FECHA_SALIDA).findAny().isEmpty());
+
+        // Nada mas que archivar
+        assertEquals(0, repository.archivar(HOY));
+    }
+
+    @Test
+    void unVueloActualizadoMientrasSeArchivaSigueEnMemoria() {
+        ArchivoVuelos archivo = archivo();
+        VueloRepository repository = new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenMapa(), 1_000, archivo);
+        Vuelo viejo = repository.findById(1).orElseThrow();
+
+        // Se escribe en el historico pero se actualiza antes de quitarlo de memoria (y su copia aun no se ha anulado)
+        archivo.escribir(List.of(viejo));
+        repository.update(1, viejo.toBuilder().fechaLlegada(LocalDate.of(2026, 2, 1)).build());
+
+        assertEquals(9, repository.archivar(HOY));
+        assertFalse(repository.archivado(1));
+        assertEquals(2, repository.findByIdConHistorico(1).orElseThrow().getVersion());
+        assertEquals(1, repository.findByFiltro(FiltroVuelos.de("iberia", null, null), OrdenVuelo.EMPRESA, null, true)
+                .filter(v -> v.getId() == 1).count());
+    }
+
+    @Test
+    void paginarConElHistoricoDevuelveLoMismoQueSinPaginar() {
+        VueloRepository repository = abrir();
+        // Vuelos pasados con fechas desordenadas, para que los bloques (de 4) se solapen en fechas
+        for (int i = 0; i < 30; i++) {
+            repository.save(vuelo("PAG-" + i, LocalDate.of(2025, 5, 1).plusDays((i * 7) % 19)));
+        }
+        repository.archivar(HOY);
+        repository.save(vuelo("PAG-HOT", LocalDate.of(2026, 5, 1)));
+
+        FiltroVuelos todos = FiltroVuelos.de(null, null, null);
+        for (OrdenVuelo orden : OrdenVuelo.values()) {
+            List<Vuelo> esperado = repository.findByFiltro(todos, orden, null, true).toList();
+            assertEquals(41, esperado.size());
+            List<Vuelo> paginados = new ArrayList<>();
+            Cursor cursor = null;
+            while (true) {
+                List<Vuelo> pagina = repository.findByFiltro(todos, orden, cursor, true).limit(4).toList();
+                if (pagina.isEmpty()) {
+                    break;
+                }
+                paginados.addAll(pagina);
+                cursor = Cursor.de(orden, pagina.get(pagina.size() - 1));
+            }
+            assertEquals(esperado, paginados, orden.toString());
+        }
+    }
+
+    @Test
+    void recuperaElHistoricoTrasUnReinicio() throws IOException {
+        VueloRepository repository = abrir();
+        Vuelo pasado = repository.save(vuelo("COLD-1", LocalDate.of(2025, 6, 1)));
+        repository.archivar(HOY);
+
+        // Simula una caida a mitad de escribir un bloque
+        Files.write(directorio.resolve("historico.bin"), new byte[]{1, 0, 0, 0, 9, 1, 2}, StandardOpenOption.APPEND);
+
+        // Sin persistencia se vuelve a cargar la seed (IDs 1 a 10): vale la copia de memoria y la archivada se anula
+        ArchivoVuelos archivo = archivo();
+        VueloRepository recuperado = new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenMapa(), 1_000, archivo);
+        assertTrue(recuperado.findById(1).isPresent());
+        assertNull(archivo.buscar(1));
+        assertEquals("COLD-1", recuperado.findByIdConHistorico(pasado.getId()).orElseThrow().getNombreVuelo());
+        // La secuencia de IDs no reutiliza las del historico
+        assertEquals(pasado.getId() + 1, recuperado.save(vuelo("HOT-2", LocalDate.of(2026, 5, 1))).getId());
+    }
+
+    private VueloRepository abrir() {
+        return new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenMapa(), 1_000, archivo());
+    }
+
+    private ArchivoVuelos archivo() {
+        return new ArchivoVuelos(true, directorio.toString(), 0, 4, 16);
+    }
+
+    private static Vuelo vuelo(String nombre, LocalDate llegada) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa("Ryanair")
+                .lugarSalida("Madrid")
+                .lugarLlegada("Paris")
+                .fechaSalida(llegada)
+                .fechaLlegada(llegada)
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.CambioVuelo;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.services.CambiosService;
+import com.example.vuelos.utils.EtagUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Feed de cambios: orden, buffer circular (los suscriptores atrasados reciben un reinicio) y escrituras concurrentes.
+class CambiosVuelosTest {
+
+    @Test
+    void cadaEscrituraPublicaSuCambioEnOrden() {
+        VueloRepository repository = new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenMapa(), 1_000);
+        CambiosVuelos cambios = repository.cambios();
+        long inicio = cambios.ultima();
+
+        Vuelo v = repository.save(vuelo("CDC-1"));
+        repository.update(v.getId(), vuelo("CDC-1").toBuilder().empresa("Vueling").build());
+        repository.delete(v.getId());
+        repository.restore(v);
+
+        List<CambioVuelo> leidos = cambios.leer(inicio, 100);
+        assertEquals(List.of(CambioVuelo.Tipo.CREADO, CambioVuelo.Tipo.ACTUALIZADO, CambioVuelo.Tipo.ELIMINADO, CambioVuelo.Tipo.CREADO),
+                leidos.stream().map(CambioVuelo::tipo).toList());
+        assertEquals(List.of(inicio + 1, inicio + 2, inicio + 3, inicio + 4), leidos.stream().map(CambioVuelo::secuencia).toList());
+        assertEquals("Vueling", leidos.get(1).vuelo().getEmpresa());
+        assertEquals(2, leidos.get(2).vuelo().getVersion());
+        assertEquals(List.of(), cambios.leer(inicio + 4, 100));
+    }
+
+    @Test
+    void unSuscriptorAtrasadoRecibeUnReinicio() throws Exception {
+        VueloRepository repository = new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenMapa(), 8);
+        CambiosService service = new CambiosService(repository, 3);
+        CambiosService.Suscripcion alDia = service.suscribir(null);
+        CambiosService.Suscripcion atrasada = service.suscribir(EtagUtils.idEvento(repository.cambios().ultima()));
+        for (int i = 0; i < 20; i++) {
+            repository.save(vuelo("CDC-" + i));
+        }
+        long ultima = repository.cambios().ultima();
+        // Solo quedan los 8 ultimos
+        assertNull(repository.cambios().leer(ultima - 9, 100));
+        assertEquals(8, repository.cambios().leer(ultima - 8, 100).size());
+
+        CambiosService.Entrega entrega = alDia.siguientes(Duration.ZERO);
+        assertTrue(entrega.reinicio());
+        assertEquals(ultima, entrega.posicion());
+        assertTrue(atrasada.siguientes(Duration.ZERO).reinicio());
+
+        // Despues del reinicio recibe los cambios siguientes, en lotes
+        repository.save(vuelo("CDC-20"));
+        entrega = alDia.siguientes(Duration.ofSeconds(1));
+        assertFalse(entrega.reinicio());
+        assertEquals(List.of(ultima + 1), entrega.cambios().stream().map(CambioVuelo::secuencia).toList());
+        assertTrue(alDia.siguientes(Duration.ZERO).cambios().isEmpty());
+
+        // Reconectar desde un evento reciente sigue justo despues, uno de otro arranque o del futuro es un reinicio
+        CambiosService.Suscripcion reconectada = service.suscribir(EtagUtils.idEvento(ultima - 1));
+        assertEquals(List.of(ultima, ultima + 1), reconectada.siguientes(Duration.ZERO).cambios().stream().map(CambioVuelo::secuencia).toList());
+        assertTrue(service.suscribir("otro-arranque-3").siguientes(Duration.ZERO).reinicio());
+        assertTrue(service.suscribir(String.valueOf(ultima + 100)).siguientes(Duration.ZERO).reinicio());
+    }
+
+    @Test
+    void conEscriturasConcurrentesNoSeSaltaNiRepiteNingunCambio() throws Exception {
+        VueloRepository repository = new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenMapa(), 100_000);
+        CambiosService service = new CambiosService(repository, 64);
+        CambiosService.Suscripcion suscripcion = service.suscribir(null);
+        long inicio = repository.cambios().ultima();
+        int hilos = 4;
+        int porHilo = 5_000;
+
+        List<Long> recibidas = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(hilos + 1)) {
+            Future<?> lector = pool.submit(() -> {
+                while (recibidas.size() < hilos * porHilo) {
+                    CambiosService.Entrega entrega = suscripcion.siguientes(Duration.ofSeconds(5));
+                    assertFalse(entrega.reinicio());
+                    entrega.cambios().forEach(c -> recibidas.add(c.secuencia()));
+                }
+                return null;
+            });
+            for (int t = 0; t < hilos; t++) {
+                int n = t;
+                pool.submit(() -> {
+                    for (int i = 0; i < porHilo; i++) {
+                        repository.save(vuelo("CDC-" + n + "-" + i));
+                    }
+                });
+            }
+            lector.get(60, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < recibidas.size(); i++) {
+            assertEquals(inicio + 1 + i, recibidas.get(i));
+        }
+    }
+
+    private static Vuelo vuelo(String nombre) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa("Iberia")
+                .lugarSalida("Madrid")
+                .lugarLlegada("Paris")
+                .fechaSalida(LocalDate.of(2025, 5, 1))
+                .fechaLlegada(LocalDate.of(2025, 5, 1))
+                .build();
+    }
+}
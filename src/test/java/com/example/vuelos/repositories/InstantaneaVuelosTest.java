@@ -0,0 +1,72 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.Vuelo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Ida y vuelta del formato binario de las instantaneas con el modelo Vuelo actual.
+class InstantaneaVuelosTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void escribirYLeerDevuelveLosMismosVuelos() throws IOException {
+        List<Vuelo> vuelos = new ArrayList<>();
+        for (int i = 1; i <= 1_000; i++) {
+            vuelos.add(vuelo(i, "V" + i, i % 2 == 0 ? "Iberia" : "Aerolíneas Argentinas", "Madrid", "São Paulo",
+                    LocalDate.of(2025, 1, 1).plusDays(i)));
+        }
+        // Campos sin valor y fechas extremas
+        vuelos.add(vuelo(5_000, "SIN-EMPRESA", null, "Madrid", "Paris", LocalDate.of(1900, 1, 1)));
+        Vuelo sinFechas = vuelo(5_001, "SIN-FECHAS", "Iberia", "Madrid", "Paris", null);
+        vuelos.add(sinFechas);
+
+        Path ruta = directorio.resolve("instantanea.bin");
+        InstantaneaVuelos.escribir(ruta, 7, 5_002, vuelos);
+
+        List<Vuelo> leidos = new ArrayList<>();
+        InstantaneaVuelos.Cabecera cabecera = InstantaneaVuelos.leer(ruta, leidos::add);
+
+        assertEquals(new InstantaneaVuelos.Cabecera(7, 5_002, vuelos.size()), cabecera);
+        assertEquals(vuelos, leidos);
+        // Los textos repetidos se decodifican una vez y se comparten
+        assertSame(leidos.get(0).getLugarSalida(), leidos.get(1).getLugarSalida());
+        assertSame(leidos.get(1).getEmpresa(), leidos.get(3).getEmpresa());
+    }
+
+    @Test
+    void rechazaUnaInstantaneaCorrupta() throws IOException {
+        Path ruta = directorio.resolve("instantanea.bin");
+        InstantaneaVuelos.escribir(ruta, 0, 2, List.of(vuelo(1, "V1", "Iberia", "Madrid", "Paris", LocalDate.of(2025, 1, 1))));
+
+        byte[] bytes = Files.readAllBytes(ruta);
+        bytes[40] ^= 1;
+        Files.write(ruta, bytes);
+
+        List<Vuelo> leidos = new ArrayList<>();
+        assertThrows(IOException.class, () -> InstantaneaVuelos.leer(ruta, leidos::add));
+        assertTrue(leidos.isEmpty());
+    }
+
+    private static Vuelo vuelo(int id, String nombre, String empresa, String salida, String llegada, LocalDate fecha) {
+        return Vuelo.builder()
+                .id(id)
+                .nombreVuelo(nombre)
+                .empresa(empresa)
+                .lugarSalida(salida)
+                .lugarLlegada(llegada)
+                .fechaSalida(fecha)
+                .fechaLlegada(fecha == null ? null : fecha.plusDays(1))
+                .build();
+    }
+}
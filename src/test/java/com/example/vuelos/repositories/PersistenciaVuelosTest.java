@@ -0,0 +1,147 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.models.Vuelo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Comprueba que el diario y las instantaneas recuperan el repositorio tras un reinicio.
+// Los "reinicios" abren un repositorio nuevo sobre el mismo directorio sin cerrar el anterior,
+// igual que si el proceso se hubiera caido.
+class PersistenciaVuelosTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void recuperaEscriturasConfirmadasDelDiario() {
+        VueloRepository repository = abrir();
+        Vuelo creado = repository.save(vuelo("WAL-1", "Iberia"));
+        Vuelo otro = repository.save(vuelo("WAL-2", "Iberia"));
+        repository.update(creado.getId(), vuelo("WAL-1B", "Vueling"));
+        repository.delete(otro.getId());
+        repository.delete(1);
+
+        VueloRepository recuperado = abrir();
+        assertEquals(repository.count(), recuperado.count());
+        assertEquals("WAL-1B", recuperado.findById(creado.getId()).orElseThrow().getNombreVuelo());
+        assertTrue(recuperado.findById(otro.getId()).isEmpty());
+        assertTrue(recuperado.findById(1).isEmpty());
+        assertTrue(recuperado.existsNombreVuelo("wal-1b", null));
+        // La secuencia de IDs sigue donde estaba, no reutiliza la del vuelo eliminado
+        assertEquals(otro.getId() + 1, recuperado.save(vuelo("WAL-3", "Iberia")).getId());
+    }
+
+    @Test
+    void recuperaInstantaneaMasDiarioPosterior() throws IOException {
+        PersistenciaVuelos persistencia = persistencia();
+        VueloRepository repository = new VueloRepository(persistencia);
+        Vuelo antes = repository.save(vuelo("SNAP-1", "Iberia"));
+        persistencia.instantanea();
+        Vuelo despues = repository.save(vuelo("SNAP-2", "Iberia"));
+        repository.delete(antes.getId());
+
+        // La instantanea ha borrado los segmentos anteriores
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            assertEquals(2, ficheros.count());
+        }
+
+        VueloRepository recuperado = abrir();
+        assertEquals(repository.count(), recuperado.count());
+        assertTrue(recuperado.findById(antes.getId()).isEmpty());
+        assertEquals("SNAP-2", recuperado.findById(despues.getId()).orElseThrow().getNombreVuelo());
+    }
+
+    @Test
+    void instantaneasDuranteEscriturasNoPierdenNinguna() throws Exception {
+        PersistenciaVuelos persistencia = new PersistenciaVuelos(true, directorio.toString(), "nunca", 100, 100_000);
+        VueloRepository repository = new VueloRepository(persistencia);
+        int hilos = 4;
+        CountDownLatch fin = new CountDownLatch(hilos);
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try {
+            for (int h = 0; h < hilos; h++) {
+                int hilo = h;
+                executor.execute(() -> {
+                    try {
+                        for (int i = 0; i < 300; i++) {
+                            Vuelo v = repository.save(vuelo("CONC-" + hilo + "-" + i, "Iberia"));
+                            if (i % 3 == 1) {
+                                repository.update(v.getId(), vuelo("CONC-" + hilo + "-" + i + "B", "Vueling"));
+                            } else if (i % 3 == 2) {
+                                repository.delete(v.getId());
+                            }
+                        }
+                    } finally {
+                        fin.countDown();
+                    }
+                });
+            }
+            while (fin.getCount() > 0) {
+                persistencia.instantanea();
+            }
+            assertTrue(fin.await(1, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        VueloRepository recuperado = abrir();
+        assertEquals(porId(repository.findAll()), porId(recuperado.findAll()));
+    }
+
+    @Test
+    void descartaUnRegistroIncompletoAlFinalDelDiario() throws IOException {
+        VueloRepository repository = abrir();
+        Vuelo creado = repository.save(vuelo("TORN-1", "Iberia"));
+
+        // Simula una caida a mitad de escribir un registro
+        Path segmento;
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            List<Path> segmentos = ficheros.filter(f -> f.getFileName().toString().startsWith("diario-")).sorted().toList();
+            segmento = segmentos.get(segmentos.size() - 1);
+        }
+        Files.write(segmento, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        VueloRepository recuperado = abrir();
+        assertEquals(repository.count(), recuperado.count());
+        assertTrue(recuperado.findById(creado.getId()).isPresent());
+    }
+
+    private static Map<Integer, String> porId(List<Vuelo> vuelos) {
+        return vuelos.stream().collect(Collectors.toMap(Vuelo::getId, v -> v.getNombreVuelo() + "/" + v.getEmpresa()));
+    }
+
+    private VueloRepository abrir() {
+        return new VueloRepository(persistencia());
+    }
+
+    private PersistenciaVuelos persistencia() {
+        return new PersistenciaVuelos(true, directorio.toString(), "siempre", 100, 100_000);
+    }
+
+    private static Vuelo vuelo(String nombre, String empresa) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa(empresa)
+                .lugarSalida("Madrid")
+                .lugarLlegada("Paris")
+                .fechaSalida(LocalDate.of(2025, 3, 10))
+                .fechaLlegada(LocalDate.of(2025, 3, 11))
+                .build();
+    }
+}
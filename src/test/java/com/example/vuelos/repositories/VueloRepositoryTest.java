@@ -0,0 +1,623 @@
+package com.example.vuelos.repositories;
+
+import com.example.vuelos.exceptions.BadRequestException;
+import com.example.vuelos.exceptions.ConflictException;
+import com.example.vuelos.exceptions.PreconditionFailedException;
+import com.example.vuelos.models.CampoSugerencia;
+import com.example.vuelos.models.Cursor;
+import com.example.vuelos.models.EstadisticasVuelos;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.models.Pagina;
+import com.example.vuelos.models.Sugerencia;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.services.VueloService;
+import com.example.vuelos.utils.CursorUtils;
+import com.example.vuelos.utils.TextoUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Prueba de estres del repositorio en memoria.
+// Varios hilos crean, actualizan y eliminan vuelos a la vez y se comprueba que no se pierde ninguna escritura
+// y que no se reparten IDs duplicadas.
+class VueloRepositoryTest {
+
+    private static final int HILOS = 8;
+    private static final int VUELOS_POR_HILO = 2_000;
+    private static final int VUELOS_SEED = 10;
+
+    @Test
+    void escriturasConcurrentesSinIdsDuplicadasNiPerdidas() throws Exception {
+        VueloRepository repository = new VueloRepository();
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch salida = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int h = 0; h < HILOS; h++) {
+                int hilo = h;
+                tareas.add(pool.submit(() -> {
+                    salida.await();
+                    for (int i = 0; i < VUELOS_POR_HILO; i++) {
+                        Vuelo v = repository.save(vuelo("S" + hilo + "-" + i, "Iberia", LocalDate.of(2025, 3, 10)));
+                        assertTrue(ids.add(v.getId()), "ID duplicada: " + v.getId());
+
+                        // Los pares se actualizan y los multiplos de 3 se eliminan
+                        if (i % 2 == 0) {
+                            assertTrue(repository.update(v.getId(), vuelo("U" + hilo + "-" + i, "Vueling", LocalDate.of(2025, 3, 11))).isPresent());
+                        }
+                        if (i % 3 == 0) {
+                            assertTrue(repository.delete(v.getId()));
+                        }
+                        // Mientras tanto se lee el listado completo para forzar lecturas concurrentes
+                        if (i % 500 == 0) {
+                            assertFalse(repository.findAll().isEmpty());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> t : tareas) {
+                t.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int eliminadosPorHilo = (VUELOS_POR_HILO + 2) / 3;
+        int esperados = VUELOS_SEED + HILOS * (VUELOS_POR_HILO - eliminadosPorHilo);
+        assertEquals(HILOS * VUELOS_POR_HILO, ids.size());
+        assertEquals(esperados, repository.count());
+        assertEquals(esperados, repository.findAll().size());
+
+        for (int h = 0; h < HILOS; h++) {
+            for (int i = 0; i < VUELOS_POR_HILO; i++) {
+                if (i % 3 == 0) {
+                    continue;
+                }
+                String nombre = (i % 2 == 0 ? "U" : "S") + h + "-" + i;
+                assertTrue(repository.existsNombreVuelo(nombre, null), "Se ha perdido " + nombre);
+            }
+        }
+    }
+
+    @Test
+    void altasConcurrentesConElMismoNombreSoloUnaGana() throws Exception {
+        VueloRepository repository = new VueloRepository();
+
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        try {
+            for (int ronda = 0; ronda < 200; ronda++) {
+                String nombre = "DUP-" + ronda;
+                CountDownLatch salida = new CountDownLatch(1);
+                List<Future<Boolean>> tareas = new ArrayList<>();
+                for (int h = 0; h < HILOS; h++) {
+                    // Mismo nombre con distintas mayusculas, el indice lo trata como duplicado
+                    String variante = h % 2 == 0 ? nombre : nombre.toLowerCase();
+                    tareas.add(pool.submit(() -> {
+                        salida.await();
+                        try {
+                            repository.save(vuelo(variante, "Iberia", LocalDate.of(2025, 3, 10)));
+                            return true;
+                        } catch (ConflictException e) {
+                            return false;
+                        }
+                    }));
+                }
+                salida.countDown();
+                int ganadores = 0;
+                for (Future<Boolean> t : tareas) {
+                    if (t.get(10, TimeUnit.SECONDS)) {
+                        ganadores++;
+                    }
+                }
+                assertEquals(1, ganadores, "Mas de un alta con " + nombre);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(VUELOS_SEED + 200, repository.count());
+    }
+
+    @Test
+    void filtrosUsanIndicesActualizados() {
+        VueloRepository repository = new VueloRepository();
+        Vuelo v = repository.save(vuelo("IDX-1", "Iberia", LocalDate.of(2025, 4, 1)));
+
+        assertEquals(List.of(v.getId()), ids(repository, FiltroVuelos.de(" IBERIA ", null, LocalDate.of(2025, 4, 1))));
+
+        repository.update(v.getId(), vuelo("IDX-1", "Ryanair", LocalDate.of(2025, 4, 2)));
+        assertTrue(ids(repository, FiltroVuelos.de("iberia", null, LocalDate.of(2025, 4, 1))).isEmpty());
+        assertEquals(List.of(v.getId()), ids(repository, FiltroVuelos.de("ryanair", "paris", LocalDate.of(2025, 4, 2))));
+
+        repository.delete(v.getId());
+        assertTrue(ids(repository, FiltroVuelos.de("ryanair", null, null)).isEmpty());
+        // Los vuelos del seed siguen ahi
+        assertEquals(2, ids(repository, FiltroVuelos.de("iberia", null, null)).size());
+    }
+
+    @Test
+    void vistasOrdenadasSeMantienenEnCadaEscritura() {
+        VueloRepository repository = new VueloRepository();
+        Vuelo a = repository.save(vuelo("ORD-1", "aerolineas", LocalDate.of(2025, 1, 1)));
+        Vuelo b = repository.save(vuelo("ORD-2", "Zeta Air", LocalDate.of(2025, 1, 1)));
+        repository.update(a.getId(), vuelo("ORD-1", "Zzz", LocalDate.of(2030, 1, 1)));
+        repository.delete(b.getId());
+
+        for (OrdenVuelo orden : OrdenVuelo.values()) {
+            List<Vuelo> esperado = repository.findAll().stream().sorted(orden.comparador()).toList();
+            assertEquals(esperado, repository.findByFiltro(FiltroVuelos.de(null, null, null), orden).toList());
+        }
+        List<Vuelo> porEmpresa = repository.findByFiltro(FiltroVuelos.de(null, null, null), OrdenVuelo.EMPRESA).toList();
+        assertEquals("Zzz", porEmpresa.get(porEmpresa.size() - 1).getEmpresa());
+        assertEquals(List.of(a.getId()), repository.findByFiltro(FiltroVuelos.de(null, null, LocalDate.of(2030, 1, 1)),
+                OrdenVuelo.FECHA_SALIDA).map(Vuelo::getId).toList());
+    }
+
+    @Test
+    void almacenColumnarDevuelveLoMismoQueElMapa() {
+        VueloRepository mapa = new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenMapa());
+        VueloRepository columnar = new VueloRepository(PersistenciaVuelos.desactivada(), new AlmacenColumnar());
+        for (VueloRepository repository : List.of(mapa, columnar)) {
+            // Suficientes vuelos para que las columnas tengan que crecer
+            for (int i = 0; i < 3_000; i++) {
+                Vuelo v = repository.save(vuelo("COL-" + i, i % 2 == 0 ? "Iberia" : "Ryanair", LocalDate.of(2025, 5, 1).plusDays(i % 7)));
+                if (i % 5 == 0) {
+                    repository.update(v.getId(), vuelo("COL-" + i + "B", "Vueling", LocalDate.of(2026, 1, 1)));
+                }
+                if (i % 7 == 0) {
+                    repository.delete(v.getId());
+                }
+            }
+        }
+
+        assertEquals(mapa.count(), columnar.count());
+        assertEquals(Set.copyOf(mapa.findAll()), Set.copyOf(columnar.findAll()));
+        assertEquals(mapa.findById(15).orElseThrow(), columnar.findById(15).orElseThrow());
+        assertTrue(columnar.findById(11).isEmpty());
+        FiltroVuelos filtro = FiltroVuelos.de("vueling", "paris", null);
+        for (OrdenVuelo orden : OrdenVuelo.values()) {
+            assertEquals(mapa.findByFiltro(filtro, orden).toList(), columnar.findByFiltro(filtro, orden).toList());
+        }
+        assertTrue(columnar.existsNombreVuelo("col-5b", null));
+    }
+
+    @Test
+    void almacenColumnarNuncaDevuelveUnaFilaAMedias() throws Exception {
+        AlmacenColumnar almacen = new AlmacenColumnar();
+        int hilos = 4;
+        // Cada hilo escribe sus IDs (como con el cerrojo de la ID), suficientes para que las columnas crezcan
+        int idsPorHilo = 600;
+        AtomicBoolean fin = new AtomicBoolean();
+        try (ExecutorService pool = Executors.newFixedThreadPool(hilos + 2)) {
+            List<Future<?>> escritores = new ArrayList<>();
+            for (int h = 0; h < hilos; h++) {
+                int hilo = h;
+                escritores.add(pool.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        int id = 1 + hilo + hilos * (i % idsPorHilo);
+                        if (i % 5 == 4) {
+                            almacen.remove(id);
+                        } else {
+                            almacen.put(Vuelo.builder().id(id).version(i).nombreVuelo("N" + i).empresa("E" + i)
+                                    .lugarSalida("Madrid").lugarLlegada("Paris")
+                                    .fechaSalida(LocalDate.ofEpochDay(i)).fechaLlegada(LocalDate.ofEpochDay(i)).build());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> lectores = new ArrayList<>();
+            for (int l = 0; l < 2; l++) {
+                lectores.add(pool.submit(() -> {
+                    int id = 1;
+                    while (!fin.get()) {
+                        comprobarFila(almacen.get(id));
+                        id = id % (hilos * idsPorHilo) + 1;
+                        if (id == 1) {
+                            almacen.stream().forEach(VueloRepositoryTest::comprobarFila);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> escritor : escritores) {
+                escritor.get(60, TimeUnit.SECONDS);
+            }
+            fin.set(true);
+            for (Future<?> lector : lectores) {
+                lector.get(60, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals(almacen.copia().size(), almacen.size());
+        assertEquals(almacen.size(), almacen.stream().count());
+    }
+
+    // Todos los campos de una fila son de la misma escritura
+    private static void comprobarFila(Vuelo v) {
+        if (v == null) {
+            return;
+        }
+        long i = v.getVersion();
+        assertEquals("N" + i, v.getNombreVuelo());
+        assertEquals("E" + i, v.getEmpresa());
+        assertEquals(i, v.getFechaSalida().toEpochDay());
+    }
+
+    @Test
+    void paginasConCursorRecorrenElListadoEnOrdenSinRepetir() {
+        VueloRepository repository = new VueloRepository();
+        VueloService service = new VueloService(repository);
+        // Muchos empates en cada criterio (misma fecha, misma empresa con distintas MAYUS, mismo destino)
+        String[] empresas = {"Iberia", "iberia", "Ryanair", "Vueling"};
+        String[] destinos = {"Paris", "Rome", "paris"};
+        for (int i = 0; i < 60; i++) {
+            LocalDate salida = LocalDate.of(2025, 7, 1).plusDays(i % 4);
+            repository.save(Vuelo.builder()
+                    .nombreVuelo("PAG-" + i)
+                    .empresa(empresas[i % empresas.length])
+                    .lugarSalida("Madrid")
+                    .lugarLlegada(destinos[i % destinos.length])
+                    .fechaSalida(salida)
+                    .fechaLlegada(salida)
+                    .build());
+        }
+
+        for (FiltroVuelos filtro : List.of(FiltroVuelos.de(null, null, null), FiltroVuelos.de("iberia", null, null))) {
+            for (String ordenarPor : List.of("fechaSalida", "empresa", "lugarLlegada")) {
+                OrdenVuelo orden = OrdenVuelo.de(ordenarPor);
+                List<Vuelo> esperado = service.listar(filtro, ordenarPor);
+                List<Vuelo> paginados = new ArrayList<>();
+                String cursor = null;
+                do {
+                    Pagina<Vuelo> pagina = service.listarPagina(filtro, ordenarPor, 7, cursor);
+                    assertTrue(pagina.elementos().size() <= 7);
+                    paginados.addAll(pagina.elementos());
+                    cursor = pagina.siguienteCursor();
+                    if (cursor != null) {
+                        // El cursor apunta al ultimo vuelo de la pagina y se decodifica igual que se codifico
+                        Cursor decodificado = CursorUtils.decodificar(cursor, orden);
+                        assertEquals(Cursor.de(orden, pagina.elementos().get(pagina.elementos().size() - 1)), decodificado);
+                        assertEquals(cursor, CursorUtils.codificar(decodificado));
+                    }
+                } while (cursor != null);
+
+                assertEquals(esperado, paginados, filtro + " " + ordenarPor);
+                // Con el mismo valor (sin importar MAYUS/MINUS) manda la ID
+                for (int i = 1; i < paginados.size(); i++) {
+                    Vuelo a = paginados.get(i - 1);
+                    Vuelo b = paginados.get(i);
+                    int c = orden.compararClave(orden.clave(a), orden.clave(b));
+                    assertTrue(c < 0 || (c == 0 && a.getId() < b.getId()), a + " antes de " + b);
+                }
+            }
+        }
+
+        // Eliminar un vuelo de la pagina ya leida no hace saltarse ni repetir ninguno en la siguiente
+        FiltroVuelos todos = FiltroVuelos.de(null, null, null);
+        Pagina<Vuelo> primera = service.listarPagina(todos, "empresa", 5, null);
+        repository.delete(primera.elementos().get(4).getId());
+        Pagina<Vuelo> segunda = service.listarPagina(todos, "empresa", 5, primera.siguienteCursor());
+        assertEquals(service.listar(todos, "empresa").subList(4, 9), segunda.elementos());
+    }
+
+    @Test
+    void cursorInvalidoEsUnBadRequest() {
+        VueloService service = new VueloService(new VueloRepository());
+        FiltroVuelos todos = FiltroVuelos.de(null, null, null);
+        String deEmpresa = service.listarPagina(todos, "empresa", 2, null).siguienteCursor();
+        assertNotNull(deEmpresa);
+
+        for (String cursor : List.of("no-es-base64!", cursorDe("FECHA_SALIDA|7"), cursorDe("FECHA_SALIDA|x|2025-03-10"),
+                cursorDe("FECHA_SALIDA|7|10-03-2025"), cursorDe("PRECIO|7|10"))) {
+            assertThrows(BadRequestException.class, () -> service.listarPagina(todos, "fechaSalida", 2, cursor), cursor);
+        }
+        // Un cursor de otro ordenarPor no vale
+        assertThrows(BadRequestException.class, () -> service.listarPagina(todos, "fechaSalida", 2, deEmpresa));
+        assertEquals(2, service.listarPagina(todos, "empresa", 2, deEmpresa).elementos().size());
+    }
+
+    private static String cursorDe(String texto) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void versionSoloCambiaConEscriturasQuePuedenAfectarAlFiltro() {
+        VueloRepository repository = new VueloRepository();
+        FiltroVuelos iberia = FiltroVuelos.de("iberia", null, null);
+        FiltroVuelos turkishABerlin = FiltroVuelos.de("turkish", "berlin", null);
+        FiltroVuelos todos = FiltroVuelos.de(null, null, null);
+        long vIberia = repository.version(iberia);
+        long vTurkish = repository.version(turkishABerlin);
+        long vTodos = repository.version(todos);
+
+        Vuelo v = repository.save(vuelo("VER-1", "Ryanair", LocalDate.of(2025, 6, 1)));
+        assertEquals(vIberia, repository.version(iberia));
+        assertEquals(vTurkish, repository.version(turkishABerlin));
+        assertNotEquals(vTodos, repository.version(todos));
+
+        // Pasa a ser de Iberia: cambia el listado de Iberia
+        repository.update(v.getId(), vuelo("VER-1", "Iberia", LocalDate.of(2025, 6, 1)));
+        assertNotEquals(vIberia, repository.version(iberia));
+        vIberia = repository.version(iberia);
+
+        // Deja de ser de Iberia: tambien cambia (por el valor anterior)
+        repository.update(v.getId(), vuelo("VER-1", "Ryanair", LocalDate.of(2025, 6, 1)));
+        assertNotEquals(vIberia, repository.version(iberia));
+
+        // Va a Paris, no a Berlin, pero basta con que coincida uno de los filtros
+        repository.save(vuelo("VER-2", "Turkish", LocalDate.of(2025, 6, 1)));
+        assertNotEquals(vTurkish, repository.version(turkishABerlin));
+    }
+
+    @Test
+    void actualizacionesConLaMismaVersionSoloUnaGana() throws Exception {
+        VueloRepository repository = new VueloRepository();
+        Vuelo v = repository.save(vuelo("IFM-1", "Iberia", LocalDate.of(2025, 6, 1)));
+        assertEquals(1, v.getVersion());
+
+        // Todos leyeron la version 1 y la mandan como If-Match: solo la primera actualizacion puede aplicarse
+        int hilos = 8;
+        AtomicInteger aplicadas = new AtomicInteger();
+        AtomicInteger rechazadas = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+        try (ExecutorService pool = Executors.newFixedThreadPool(hilos)) {
+            for (int t = 0; t < hilos; t++) {
+                int n = t;
+                pool.submit(() -> {
+                    salida.await();
+                    try {
+                        repository.update(v.getId(), vuelo("IFM-1", "Empresa" + n, LocalDate.of(2025, 6, 1)), version -> version == 1);
+                        aplicadas.incrementAndGet();
+                    } catch (PreconditionFailedException e) {
+                        rechazadas.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            salida.countDown();
+        }
+
+        assertEquals(1, aplicadas.get());
+        assertEquals(hilos - 1, rechazadas.get());
+        assertEquals(2, repository.findById(v.getId()).orElseThrow().getVersion());
+        // Sin If-Match se aplica siempre
+        assertEquals(3, repository.update(v.getId(), vuelo("IFM-1", "Iberia", LocalDate.of(2025, 6, 1))).orElseThrow().getVersion());
+    }
+
+    @Test
+    void rangosDeFechasEnVueloYRutasCoincidenConRecorrerTodo() {
+        VueloRepository repository = new VueloRepository();
+        String[] ciudades = {"Madrid", "Paris", "Rome", "Lisbon"};
+        for (int i = 0; i < 300; i++) {
+            LocalDate salida = LocalDate.of(2025, 1, 1).plusDays(i % 90);
+            // Uno de cada 50 dura mas de un mes (va al conjunto de largos)
+            int duracion = i % 50 == 0 ? 120 : i % 4;
+            repository.save(Vuelo.builder()
+                    .nombreVuelo("RNG-" + i)
+                    .empresa(i % 3 == 0 ? "Iberia" : "Ryanair")
+                    .lugarSalida(ciudades[i % ciudades.length])
+                    .lugarLlegada(ciudades[(i / ciudades.length) % ciudades.length])
+                    .fechaSalida(salida)
+                    .fechaLlegada(salida.plusDays(duracion))
+                    .build());
+        }
+        // Un vuelo corto pasa a ser largo y otro cambia de ruta
+        Vuelo corto = repository.findByFiltro(FiltroVuelos.de(null, null, LocalDate.of(2025, 1, 2))).findFirst().orElseThrow();
+        repository.update(corto.getId(), corto.toBuilder().fechaLlegada(corto.getFechaSalida().plusDays(200)).build());
+        Vuelo otro = repository.findById(40).orElseThrow();
+        repository.update(otro.getId(), otro.toBuilder().lugarSalida("Lisbon").lugarLlegada("Madrid").build());
+
+        LocalDate dia = LocalDate.of(2025, 3, 1);
+        List<FiltroVuelos> filtros = List.of(
+                FiltroVuelos.de(null, null, null, null, LocalDate.of(2025, 1, 10), LocalDate.of(2025, 1, 20), null),
+                FiltroVuelos.de("iberia", null, null, null, LocalDate.of(2025, 2, 1), null, null),
+                FiltroVuelos.de(null, null, null, null, null, LocalDate.of(2025, 1, 5), null),
+                FiltroVuelos.de(null, null, null, null, null, null, dia),
+                FiltroVuelos.de(null, null, null, null, null, null, LocalDate.of(2025, 6, 1)),
+                FiltroVuelos.de(null, "lisbon", "madrid", null, null, null, null),
+                FiltroVuelos.de("ryanair", "madrid", null, null, null, null, dia),
+                FiltroVuelos.de(null, null, null, LocalDate.of(2025, 1, 15), LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31), null));
+        for (FiltroVuelos filtro : filtros) {
+            List<Vuelo> todos = repository.findAll().stream().filter(filtro::cumple).toList();
+            assertFalse(todos.isEmpty(), filtro.toString());
+            assertEquals(Set.copyOf(todos), Set.copyOf(repository.findByFiltro(filtro).toList()), filtro.toString());
+            for (OrdenVuelo orden : OrdenVuelo.values()) {
+                List<Vuelo> esperado = todos.stream().sorted(orden.comparador()).toList();
+                assertEquals(esperado, repository.findByFiltro(filtro, orden).toList(), filtro + " " + orden);
+            }
+        }
+        // El vuelo que ahora es largo sigue en el aire meses despues
+        assertTrue(repository.findByFiltro(FiltroVuelos.de(null, null, null, null, null, null, LocalDate.of(2025, 6, 1)))
+                .anyMatch(v -> v.getId() == corto.getId()));
+
+        // La version de un rango cambia con una escritura dentro del rango y no con una fuera
+        FiltroVuelos enero = FiltroVuelos.de(null, null, null, null, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31), null);
+        long vEnero = repository.version(enero);
+        Vuelo marzo = repository.findByFiltro(FiltroVuelos.de(null, null, LocalDate.of(2025, 3, 20))).findFirst().orElseThrow();
+        repository.update(marzo.getId(), marzo.toBuilder().empresa("Vueling").build());
+        assertEquals(vEnero, repository.version(enero));
+        repository.update(marzo.getId(), marzo.toBuilder().fechaSalida(LocalDate.of(2025, 1, 20)).build());
+        assertNotEquals(vEnero, repository.version(enero));
+    }
+
+    @Test
+    void estadisticasCoincidenConRecorrerTodo() throws Exception {
+        VueloRepository repository = new VueloRepository();
+        String[] empresas = {"Iberia", " iberia", "Ryanair", "Vueling"};
+        for (int i = 0; i < 400; i++) {
+            LocalDate salida = LocalDate.of(2025, 1, 1).plusDays(i % 20);
+            repository.save(Vuelo.builder()
+                    .nombreVuelo("EST-" + i)
+                    .empresa(empresas[i % empresas.length])
+                    .lugarSalida("Madrid")
+                    .lugarLlegada(i % 3 == 0 ? "Paris" : "Rome")
+                    .fechaSalida(salida)
+                    .fechaLlegada(salida.plusDays(i % 5))
+                    .build());
+        }
+        for (int id = 20; id < 120; id += 2) {
+            repository.delete(id);
+            Vuelo v = repository.findById(id + 1).orElseThrow();
+            repository.update(v.getId(), v.toBuilder().empresa("Air Europa").lugarLlegada("Lisbon")
+                    .fechaLlegada(v.getFechaSalida().plusDays(10)).build());
+        }
+        comprobarEstadisticas(repository);
+
+        // Mientras unos hilos cambian vuelos de empresa y de dia, cada lectura tiene que cuadrar:
+        // la suma de cada grupo es el total (un vuelo nunca esta a medias entre dos grupos)
+        int total = repository.count();
+        int hilos = 4;
+        AtomicInteger lecturas = new AtomicInteger();
+        CountDownLatch fin = new CountDownLatch(hilos);
+        try (ExecutorService pool = Executors.newFixedThreadPool(hilos + 1)) {
+            for (int t = 0; t < hilos; t++) {
+                int n = t;
+                pool.submit(() -> {
+                    try {
+                        for (int i = 0; i < 2_000; i++) {
+                            int id = 1 + (i * 7 + n) % total;
+                            repository.findById(id).ifPresent(v -> repository.update(v.getId(), v.toBuilder()
+                                    .empresa(empresas[(n + v.getId()) % empresas.length] + n)
+                                    .fechaSalida(v.getFechaSalida().plusDays(1))
+                                    .fechaLlegada(v.getFechaLlegada().plusDays(1))
+                                    .build()));
+                        }
+                    } finally {
+                        fin.countDown();
+                    }
+                    return null;
+                });
+            }
+            Future<?> lector = pool.submit(() -> {
+                do {
+                    EstadisticasVuelos e = repository.estadisticas();
+                    assertEquals(total, e.vuelos());
+                    assertEquals(total, e.porEmpresa().stream().mapToLong(EstadisticasVuelos.Grupo::vuelos).sum());
+                    assertEquals(total, e.porFechaSalida().stream().mapToLong(EstadisticasVuelos.Grupo::vuelos).sum());
+                    lecturas.incrementAndGet();
+                } while (!fin.await(0, TimeUnit.MILLISECONDS));
+                return null;
+            });
+            lector.get(60, TimeUnit.SECONDS);
+        }
+        assertTrue(lecturas.get() > 0);
+        comprobarEstadisticas(repository);
+    }
+
+    @Test
+    void sugerenciasPorPrefijoSinAcentosOrdenadasPorVuelos() {
+        VueloRepository repository = new VueloRepository();
+        String[] destinos = {"São Paulo", "sao paulo ", "Santiago", "San José", "Salzburg", "Sevilla", "Seúl"};
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ids.add(repository.save(Vuelo.builder()
+                    .nombreVuelo("SUG-" + i)
+                    .empresa("Iberia")
+                    .lugarSalida("Madrid")
+                    // Cada destino tiene un numero de vuelos distinto
+                    .lugarLlegada(destinos[Integer.numberOfTrailingZeros(i + 1) % destinos.length])
+                    .fechaSalida(LocalDate.of(2025, 4, 1))
+                    .fechaLlegada(LocalDate.of(2025, 4, 2))
+                    .build()).getId());
+        }
+        for (int i = 0; i < 60; i++) {
+            Vuelo v = repository.findById(ids.get(i * 5)).orElseThrow();
+            if (i % 2 == 0) {
+                repository.update(v.getId(), v.toBuilder().lugarLlegada("Sevilla").build());
+            } else {
+                repository.delete(v.getId());
+            }
+        }
+
+        for (String q : List.of("s", "SA", "sao", "São P", "san ", "san jose", "se", "x", "")) {
+            List<Sugerencia> sugeridas = repository.sugerir(CampoSugerencia.LUGAR_LLEGADA, q, 3);
+            // Lo mismo recorriendo todos los vuelos
+            Map<String, Long> porDestino = repository.findAll().stream()
+                    .collect(Collectors.groupingBy(v -> TextoUtils.plegar(v.getLugarLlegada()), Collectors.counting()));
+            List<Long> esperadas = porDestino.entrySet().stream()
+                    .filter(e -> e.getKey().startsWith(TextoUtils.plegar(q)))
+                    .map(Map.Entry::getValue)
+                    .sorted(Comparator.reverseOrder())
+                    .limit(3)
+                    .toList();
+            assertEquals(esperadas, sugeridas.stream().map(Sugerencia::vuelos).toList(), q);
+        }
+        // "São Paulo" y "sao paulo " son el mismo valor y se muestra como se escribio la primera vez
+        List<Sugerencia> sao = repository.sugerir(CampoSugerencia.LUGAR_LLEGADA, "SAO", 5);
+        assertEquals(1, sao.size());
+        assertEquals("São Paulo", sao.getFirst().valor());
+        // Un valor que se queda sin vuelos deja de sugerirse
+        repository.findAll().stream().filter(v -> TextoUtils.coincide(v.getLugarLlegada(), "seúl"))
+                .forEach(v -> repository.delete(v.getId()));
+        assertTrue(repository.sugerir(CampoSugerencia.LUGAR_LLEGADA, "seu", 5).isEmpty());
+        long desdeMadrid = repository.findAll().stream().filter(v -> TextoUtils.coincide(v.getLugarSalida(), "madrid")).count();
+        assertEquals(List.of(new Sugerencia("Madrid", desdeMadrid)),
+                repository.sugerir(CampoSugerencia.LUGAR_SALIDA, "MA", 5));
+    }
+
+    // Compara las estadisticas con las calculadas recorriendo todos los vuelos
+    private static void comprobarEstadisticas(VueloRepository repository) {
+        List<Vuelo> todos = repository.findAll();
+        EstadisticasVuelos e = repository.estadisticas();
+        assertEquals(todos.size(), e.vuelos());
+        assertEquals(todos.stream().mapToLong(VueloRepositoryTest::duracion).average().orElseThrow(), e.duracionMediaDias(), 1e-9);
+        comprobarGrupos(todos, e.porEmpresa(), v -> TextoUtils.normalizar(v.getEmpresa()));
+        comprobarGrupos(todos, e.porLugarLlegada(), v -> TextoUtils.normalizar(v.getLugarLlegada()));
+        comprobarGrupos(todos, e.porFechaSalida(), v -> v.getFechaSalida().toString());
+    }
+
+    private static void comprobarGrupos(List<Vuelo> todos, List<EstadisticasVuelos.Grupo> grupos, Function<Vuelo, String> clave) {
+        Map<String, List<Vuelo>> esperados = todos.stream().collect(Collectors.groupingBy(clave));
+        assertEquals(esperados.size(), grupos.size());
+        for (EstadisticasVuelos.Grupo g : grupos) {
+            List<Vuelo> vuelos = esperados.get(TextoUtils.normalizar(g.valor()));
+            assertNotNull(vuelos, g.valor());
+            assertEquals(vuelos.size(), g.vuelos(), g.valor());
+            assertEquals(vuelos.stream().mapToLong(VueloRepositoryTest::duracion).average().orElseThrow(),
+                    g.duracionMediaDias(), 1e-9, g.valor());
+        }
+    }
+
+    private static long duracion(Vuelo v) {
+        return ChronoUnit.DAYS.between(v.getFechaSalida(), v.getFechaLlegada());
+    }
+
+    private static List<Integer> ids(VueloRepository repository, FiltroVuelos filtro) {
+        return repository.findByFiltro(filtro).map(Vuelo::getId).toList();
+    }
+
+    private static Vuelo vuelo(String nombre, String empresa, LocalDate fecha) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa(empresa)
+                .lugarSalida("Madrid")
+                .lugarLlegada("Paris")
+                .fechaSalida(fecha)
+                .fechaLlegada(fecha)
+                .build();
+    }
+}
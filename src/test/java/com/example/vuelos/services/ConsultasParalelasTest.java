@@ -0,0 +1,53 @@
+package com.example.vuelos.services;
+
+import com.example.vuelos.metricas.MetricasVuelos;
+import com.example.vuelos.models.FiltroVuelos;
+import com.example.vuelos.models.OrdenVuelo;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// El listado en paralelo tiene que devolver exactamente lo mismo, y en el mismo orden, que en secuencial.
+class ConsultasParalelasTest {
+
+    @Test
+    void paraleloDevuelveLoMismoQueSecuencial() {
+        VueloRepository repository = new VueloRepository();
+        String[] empresas = {"Iberia", "iberia ", "Ryanair", "Vueling"};
+        for (int i = 0; i < 20_000; i++) {
+            LocalDate salida = LocalDate.of(2025, 1, 1).plusDays(i % 60);
+            repository.save(Vuelo.builder()
+                    .nombreVuelo("PAR-" + i)
+                    .empresa(empresas[i % empresas.length])
+                    .lugarSalida("Madrid")
+                    .lugarLlegada(i % 7 == 0 ? "Paris" : "Rome")
+                    .fechaSalida(salida)
+                    .fechaLlegada(salida.plusDays(i % 3))
+                    .build());
+        }
+        VueloService secuencial = new VueloService(repository);
+        ConsultasParalelas paralelas = new ConsultasParalelas(0, 4);
+        VueloService paralelo = new VueloService(repository, MetricasVuelos.desactivadas(repository), paralelas);
+        try {
+            List<FiltroVuelos> filtros = List.of(
+                    FiltroVuelos.de(null, null, null),
+                    FiltroVuelos.de("iberia", null, null),
+                    FiltroVuelos.de(null, "paris", null),
+                    FiltroVuelos.de(null, null, null, null, LocalDate.of(2025, 1, 10), LocalDate.of(2025, 2, 10), null),
+                    FiltroVuelos.de(null, null, null, null, null, null, LocalDate.of(2025, 1, 20)));
+            for (FiltroVuelos filtro : filtros) {
+                for (String ordenarPor : List.of("fechaSalida", "empresa", "lugarLlegada")) {
+                    assertEquals(secuencial.listar(filtro, ordenarPor), paralelo.listar(filtro, ordenarPor),
+                            filtro + " " + ordenarPor);
+                }
+            }
+        } finally {
+            paralelas.cerrar();
+        }
+    }
+}
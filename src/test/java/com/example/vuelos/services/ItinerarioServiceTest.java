@@ -0,0 +1,166 @@
+package com.example.vuelos.services;
+
+import com.example.vuelos.models.Itinerario;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import com.example.vuelos.utils.TextoUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// La busqueda de itinerarios tiene que dar los mismos k mejores que probar todas las combinaciones de vuelos,
+// tambien despues de actualizar y borrar vuelos (la lista de adyacencia se mantiene en cada escritura).
+class ItinerarioServiceTest {
+
+    private static final String[] LUGARES = {"Madrid", "Paris", "Rome", "London", "Berlin", "Lisbon", "Dubai", "Oslo"};
+    private static final LocalDate INICIO = LocalDate.of(2025, 1, 1);
+
+    @Test
+    void losMejoresItinerariosCoincidenConProbarTodasLasCombinaciones() {
+        VueloRepository repository = new VueloRepository();
+        Random random = new Random(19);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            ids.add(repository.save(vuelo("IT-" + i, random)).getId());
+        }
+        ItinerarioService service = new ItinerarioService(repository);
+        comprobar(repository, service);
+
+        // Se cambian lugares y fechas de algunos vuelos y se borran otros
+        for (int i = 0; i < 200; i++) {
+            int id = ids.get(random.nextInt(ids.size()));
+            if (i % 2 == 0) {
+                repository.update(id, vuelo("UPD-" + id, random));
+            } else {
+                repository.delete(id);
+            }
+        }
+        comprobar(repository, service);
+    }
+
+    @Test
+    void respetaLasConexionesYLasEscalas() {
+        VueloRepository repository = new VueloRepository();
+        ItinerarioService service = new ItinerarioService(repository);
+        repository.save(vuelo("A", "Madrid", "Paris", 1, 2));
+        repository.save(vuelo("B", "Paris", "Oslo", 2, 2));
+        // Sale antes de que llegue el primero: no conecta
+        repository.save(vuelo("C", "Paris", "Oslo", 1, 1));
+        repository.save(vuelo("D", "Madrid", "Oslo", 1, 4));
+
+        List<Itinerario> itinerarios = service.buscar(" madrid", "OSLO", INICIO.plusDays(1), 1, 0, 5);
+        assertEquals(List.of(List.of("A", "B"), List.of("D")), nombres(itinerarios));
+        assertEquals(1, itinerarios.get(0).escalas());
+        assertEquals(1, itinerarios.get(0).duracionDias());
+
+        assertEquals(List.of(List.of("D")), nombres(service.buscar("Madrid", "Oslo", INICIO.plusDays(1), 0, 0, 5)));
+        assertTrue(service.buscar("Madrid", "Oslo", INICIO.plusDays(2), 1, 0, 5).isEmpty());
+    }
+
+    @Test
+    void noDescartaItinerariosQueLleganIgualPorOtrosLugares() {
+        VueloRepository repository = new VueloRepository();
+        ItinerarioService service = new ItinerarioService(repository);
+        // A Bravo se llega el mismo dia y con dos vuelos pasando por Charlie o por Eco,
+        // pero solo quien no ha pasado por Charlie puede seguir por Charlie hasta Delta
+        repository.save(vuelo("AC", "Alfa", "Charlie", 0, 0));
+        repository.save(vuelo("AE", "Alfa", "Eco", 0, 0));
+        repository.save(vuelo("CB", "Charlie", "Bravo", 0, 0));
+        repository.save(vuelo("EB", "Eco", "Bravo", 0, 0));
+        repository.save(vuelo("BC", "Bravo", "Charlie", 1, 1));
+        // Desde Alfa -> Charlie (dia 0) no se llega a tiempo con maxEsperaDias 1
+        repository.save(vuelo("CD", "Charlie", "Delta", 2, 2));
+
+        // Con k = 1 solo se expande un itinerario por nodo: Alfa -> Charlie -> Bravo no debe tapar a Alfa -> Eco -> Bravo
+        assertEquals(List.of(List.of("AE", "EB", "BC", "CD")),
+                nombres(service.buscar("Alfa", "Delta", INICIO, 3, 1, 1)));
+    }
+
+    private static void comprobar(VueloRepository repository, ItinerarioService service) {
+        for (int dia = 0; dia < 3; dia++) {
+            for (int escalas = 0; escalas <= 3; escalas++) {
+                String origen = LUGARES[dia];
+                String destino = LUGARES[LUGARES.length - 1 - escalas];
+                LocalDate fecha = INICIO.plusDays(dia);
+                List<Itinerario> esperados = todos(repository.findAll(), origen, destino, fecha, escalas + 1, 2);
+                List<Itinerario> encontrados = service.buscar(origen, destino, fecha, escalas, 2, 10);
+                // Puede haber empates en llegada y escalas, asi que se comparan esos dos valores
+                assertEquals(claves(esperados.subList(0, Math.min(10, esperados.size()))), claves(encontrados),
+                        origen + " -> " + destino + " " + fecha + " escalas " + escalas);
+                for (Itinerario itinerario : encontrados) {
+                    assertTrue(esperados.contains(itinerario), itinerario.toString());
+                }
+            }
+        }
+    }
+
+    // Todas las combinaciones validas, de la mejor a la peor
+    private static List<Itinerario> todos(List<Vuelo> vuelos, String origen, String destino, LocalDate fecha,
+                                          int maxVuelos, int espera) {
+        List<Itinerario> itinerarios = new ArrayList<>();
+        for (Vuelo v : vuelos) {
+            if (TextoUtils.coincide(v.getLugarSalida(), TextoUtils.normalizar(origen)) && v.getFechaSalida().equals(fecha)
+                    && !TextoUtils.coincide(v.getLugarLlegada(), TextoUtils.normalizar(origen))) {
+                extender(vuelos, new ArrayList<>(List.of(v)), origen, destino, maxVuelos, espera, itinerarios);
+            }
+        }
+        itinerarios.sort(Comparator.comparing(Itinerario::fechaLlegada).thenComparingInt(Itinerario::escalas));
+        return itinerarios;
+    }
+
+    private static void extender(List<Vuelo> vuelos, List<Vuelo> camino, String origen, String destino,
+                                 int maxVuelos, int espera, List<Itinerario> itinerarios) {
+        Vuelo ultimo = camino.getLast();
+        if (TextoUtils.coincide(ultimo.getLugarLlegada(), TextoUtils.normalizar(destino))) {
+            itinerarios.add(new Itinerario(camino));
+            return;
+        }
+        if (camino.size() == maxVuelos) {
+            return;
+        }
+        for (Vuelo v : vuelos) {
+            boolean conecta = TextoUtils.coincide(v.getLugarSalida(), TextoUtils.normalizar(ultimo.getLugarLlegada()))
+                    && !v.getFechaSalida().isBefore(ultimo.getFechaLlegada())
+                    && !v.getFechaSalida().isAfter(ultimo.getFechaLlegada().plusDays(espera))
+                    && !TextoUtils.coincide(v.getLugarLlegada(), TextoUtils.normalizar(origen))
+                    && camino.stream().noneMatch(c -> TextoUtils.coincide(v.getLugarLlegada(), TextoUtils.normalizar(c.getLugarLlegada())));
+            if (conecta) {
+                camino.add(v);
+                extender(vuelos, camino, origen, destino, maxVuelos, espera, itinerarios);
+                camino.removeLast();
+            }
+        }
+    }
+
+    private static List<String> claves(List<Itinerario> itinerarios) {
+        return itinerarios.stream().map(i -> i.fechaLlegada() + "/" + i.escalas()).toList();
+    }
+
+    private static List<List<String>> nombres(List<Itinerario> itinerarios) {
+        return itinerarios.stream().map(i -> i.vuelos().stream().map(Vuelo::getNombreVuelo).toList()).toList();
+    }
+
+    private static Vuelo vuelo(String nombre, Random random) {
+        String salida = LUGARES[random.nextInt(LUGARES.length)];
+        String llegada = LUGARES[random.nextInt(LUGARES.length)];
+        int dia = random.nextInt(10);
+        return vuelo(nombre, salida, llegada, dia, dia + random.nextInt(3));
+    }
+
+    private static Vuelo vuelo(String nombre, String salida, String llegada, int diaSalida, int diaLlegada) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa("Iberia")
+                .lugarSalida(salida)
+                .lugarLlegada(llegada)
+                .fechaSalida(INICIO.plusDays(diaSalida))
+                .fechaLlegada(INICIO.plusDays(diaLlegada))
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.vuelos.services;
+
+import com.example.vuelos.exceptions.ConflictException;
+import com.example.vuelos.exceptions.NotFoundException;
+import com.example.vuelos.models.OperacionLote;
+import com.example.vuelos.models.ResultadoLote;
+import com.example.vuelos.models.Vuelo;
+import com.example.vuelos.repositories.VueloRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Lotes atomicos que fallan a mitad: se deshacen las operaciones ya aplicadas,
+// sin pisar lo que otras peticiones hayan cambiado mientras tanto.
+class VueloServiceTest {
+
+    @Test
+    void loteAtomicoQueFallaAMitadDeshaceLasAplicadas() {
+        VueloRepository repository = new VueloRepository();
+        VueloService service = new VueloService(repository);
+        Vuelo a = repository.save(vuelo("LOT-A"));
+        Vuelo b = repository.save(vuelo("LOT-B"));
+        int total = repository.count();
+
+        // La ultima pasa la validacion (b existe) pero falla al aplicarse, porque la anterior ya lo ha eliminado
+        List<ResultadoLote> resultados = service.procesarLote(List.of(
+                new OperacionLote(OperacionLote.Tipo.ACTUALIZAR, a.getId(), vuelo("LOT-A2")),
+                new OperacionLote(OperacionLote.Tipo.CREAR, null, vuelo("LOT-N")),
+                new OperacionLote(OperacionLote.Tipo.ELIMINAR, b.getId(), null),
+                new OperacionLote(OperacionLote.Tipo.ACTUALIZAR, b.getId(), vuelo("LOT-B2"))), true);
+
+        assertTrue(resultados.stream().noneMatch(ResultadoLote::correcto));
+        assertInstanceOf(NotFoundException.class, resultados.get(3).error());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(resultados.get(i).error().getMessage().startsWith("No aplicado"), resultados.get(i).toString());
+        }
+        assertEquals(total, repository.count());
+        assertEquals("LOT-A", repository.findById(a.getId()).orElseThrow().getNombreVuelo());
+        assertEquals("LOT-B", repository.findById(b.getId()).orElseThrow().getNombreVuelo());
+        assertFalse(repository.existsNombreVuelo("LOT-N", null));
+    }
+
+    @Test
+    void siNoSePuedeDeshacerUnaSeSiguenDeshaciendoLasDemas() {
+        // Justo despues de que el lote elimine LOT-B, otra peticion coge su nombre y actualiza LOT-A
+        VueloRepository repository = new VueloRepository() {
+            @Override
+            public boolean delete(int id, LongPredicate versionAceptada) {
+                Optional<Vuelo> eliminado = findById(id);
+                boolean borrado = super.delete(id, versionAceptada);
+                if (eliminado.isPresent() && eliminado.get().getNombreVuelo().equals("LOT-B")) {
+                    save(vuelo("LOT-B"));
+                    Vuelo a = findById(id - 1).orElseThrow();
+                    update(a.getId(), a.toBuilder().empresa("Otra peticion").build());
+                }
+                return borrado;
+            }
+        };
+        VueloService service = new VueloService(repository);
+        Vuelo a = repository.save(vuelo("LOT-A"));
+        Vuelo b = repository.save(vuelo("LOT-B"));
+
+        List<ResultadoLote> resultados = service.procesarLote(List.of(
+                new OperacionLote(OperacionLote.Tipo.ACTUALIZAR, a.getId(), vuelo("LOT-A2")),
+                new OperacionLote(OperacionLote.Tipo.CREAR, null, vuelo("LOT-N")),
+                new OperacionLote(OperacionLote.Tipo.ELIMINAR, b.getId(), null),
+                new OperacionLote(OperacionLote.Tipo.ACTUALIZAR, b.getId(), vuelo("LOT-B2"))), true);
+
+        assertTrue(resultados.stream().noneMatch(ResultadoLote::correcto));
+        assertInstanceOf(NotFoundException.class, resultados.get(3).error());
+        // b no se puede restaurar (su nombre ya es de otro vuelo) y a no se pisa (ha cambiado despues del lote)
+        for (int i : new int[]{0, 2}) {
+            assertInstanceOf(ConflictException.class, resultados.get(i).error());
+            assertTrue(resultados.get(i).error().getMessage().startsWith("Aplicada y no se ha podido deshacer"),
+                    resultados.get(i).toString());
+        }
+        // La creacion si se ha deshecho, aunque antes fallara deshacer la eliminacion
+        assertTrue(resultados.get(1).error().getMessage().startsWith("No aplicado"));
+        assertFalse(repository.existsNombreVuelo("LOT-N", null));
+
+        Vuelo actualA = repository.findById(a.getId()).orElseThrow();
+        assertEquals("LOT-A2", actualA.getNombreVuelo());
+        assertEquals("Otra peticion", actualA.getEmpresa());
+        assertTrue(repository.findById(b.getId()).isEmpty());
+        assertTrue(repository.existsNombreVuelo("LOT-B", null));
+    }
+
+    private static Vuelo vuelo(String nombre) {
+        return Vuelo.builder()
+                .nombreVuelo(nombre)
+                .empresa("Iberia")
+                .lugarSalida("Madrid")
+                .lugarLlegada("Paris")
+                .fechaSalida(LocalDate.of(2025, 3, 10))
+                .fechaLlegada(LocalDate.of(2025, 3, 10))
+                .build();
+    }
+}